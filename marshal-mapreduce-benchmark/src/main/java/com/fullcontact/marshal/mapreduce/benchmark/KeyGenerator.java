@@ -0,0 +1,94 @@
+package com.fullcontact.marshal.mapreduce.benchmark;
+
+import com.fullcontact.marshal.ByteArray;
+import com.fullcontact.marshal.Marshal;
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.Random;
+
+/**
+ * Generates synthetic marshal keys of a configurable shape from record numbers.
+ *
+ * A key has a fixed number of fields cycling through strings, longs, integers, doubles and byte
+ * arrays. If the nesting depth is positive, the last field is a nested marshal of the same shape,
+ * recursively. Keys are a deterministic function of the record number modulo the cardinality, so
+ * the cardinality controls how many records share each key.
+ */
+public class KeyGenerator {
+    /**
+     * Configuration key for the number of fields per marshal.
+     */
+    public static final String FIELDS = "marshal.benchmark.fields";
+
+    /**
+     * Configuration key for the nesting depth.
+     */
+    public static final String DEPTH = "marshal.benchmark.depth";
+
+    /**
+     * Configuration key for the number of distinct keys.
+     */
+    public static final String CARDINALITY = "marshal.benchmark.cardinality";
+
+    static final int DEFAULT_FIELDS = 4;
+    static final int DEFAULT_DEPTH = 0;
+    static final long DEFAULT_CARDINALITY = 100000L;
+
+    private final int fields;
+    private final int depth;
+    private final long cardinality;
+
+    public KeyGenerator(int fields, int depth, long cardinality) {
+        this.fields = fields;
+        this.depth = depth;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * Creates a generator from the job configuration.
+     */
+    public static KeyGenerator fromConf(Configuration conf) {
+        return new KeyGenerator(conf.getInt(FIELDS, DEFAULT_FIELDS), conf.getInt(DEPTH, DEFAULT_DEPTH),
+                conf.getLong(CARDINALITY, DEFAULT_CARDINALITY));
+    }
+
+    /**
+     * Returns the key for the given record number.
+     */
+    public Marshal generate(long record) {
+        long id = record % this.cardinality;
+        return this.generate(new Random(id), id, this.depth);
+    }
+
+    private Marshal generate(Random random, long id, int depth) {
+        Marshal.Builder builder = Marshal.builder();
+        for(int i = 0; i < this.fields; i++) {
+            if(i == this.fields - 1 && depth > 0) {
+                builder.addMarshal(this.generate(random, id, depth - 1));
+                continue;
+            }
+
+            switch(i % 5) {
+                case 0:
+                    // shared prefix, as is typical for row keys
+                    builder.addString("key-" + (id % 100));
+                    break;
+                case 1:
+                    builder.addLong(id);
+                    break;
+                case 2:
+                    builder.addInteger(random.nextInt());
+                    break;
+                case 3:
+                    builder.addDouble(random.nextDouble());
+                    break;
+                default:
+                    byte[] bytes = new byte[8 + random.nextInt(8)];
+                    random.nextBytes(bytes);
+                    builder.addByteArray(new ByteArray(bytes));
+                    break;
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,272 @@
+package com.fullcontact.marshal.mapreduce.benchmark;
+
+import com.fullcontact.marshal.Marshal;
+import com.fullcontact.marshal.mapreduce.LexMarshalWritable;
+import com.fullcontact.marshal.mapreduce.MarshalSerialization;
+import com.fullcontact.marshal.mapreduce.MarshalSortComparator;
+import com.fullcontact.marshal.mapreduce.MarshalWritable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.lib.output.NullOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * End-to-end shuffle benchmark for marshal key types.
+ *
+ * Runs a synthetic MapReduce job on the local job runner for each key type and reports the
+ * throughput together with the shuffle counters of the job. Everything runs in a single JVM
+ * against the local file system, so the benchmark needs no cluster and no network. Settings are
+ * passed as generic options:
+ *
+ * <pre>
+ * ShuffleBenchmark -Dmarshal.benchmark.records=1000000 -Dmarshal.benchmark.fields=6 \
+ *     -Dmarshal.benchmark.depth=1 -Dmarshal.benchmark.keyTypes=MARSHAL_WRITABLE,LEX_MARSHAL_WRITABLE
+ * </pre>
+ *
+ * See {@link SyntheticInputFormat} and {@link KeyGenerator} for the shape settings. Each key type
+ * runs once for warm-up and then {@value #DEFAULT_RUNS} times by default.
+ */
+public class ShuffleBenchmark extends Configured implements Tool {
+    /**
+     * Configuration key for the comma-separated list of key types to run.
+     */
+    public static final String KEY_TYPES = "marshal.benchmark.keyTypes";
+
+    /**
+     * Configuration key for the number of measured runs per key type.
+     */
+    public static final String RUNS = "marshal.benchmark.runs";
+
+    private static final int DEFAULT_RUNS = 3;
+
+    /**
+     * Key types that can be benchmarked.
+     */
+    public enum KeyType {
+        /**
+         * {@link MarshalWritable} in the writable format, with the default comparator.
+         */
+        MARSHAL_WRITABLE {
+            @Override
+            void configure(Job job) {
+                job.setMapperClass(MarshalWritableMapper.class);
+                job.setMapOutputKeyClass(MarshalWritable.class);
+            }
+        },
+
+        /**
+         * {@link MarshalWritable} in the writable format, sorted entry by entry.
+         */
+        MARSHAL_WRITABLE_ENTRY_SORT {
+            @Override
+            void configure(Job job) {
+                MARSHAL_WRITABLE.configure(job);
+                job.setSortComparatorClass(MarshalSortComparator.class);
+            }
+        },
+
+        /**
+         * {@link LexMarshalWritable} in the lexicographic format.
+         */
+        LEX_MARSHAL_WRITABLE {
+            @Override
+            void configure(Job job) {
+                job.setMapperClass(LexMarshalWritableMapper.class);
+                job.setMapOutputKeyClass(LexMarshalWritable.class);
+            }
+        },
+
+        /**
+         * {@link Marshal} through {@link MarshalSerialization}, without a wrapper.
+         */
+        MARSHAL_SERIALIZATION {
+            @Override
+            void configure(Job job) {
+                MarshalSerialization.register(job.getConfiguration());
+                job.setMapperClass(MarshalMapper.class);
+                job.setMapOutputKeyClass(Marshal.class);
+                job.setSortComparatorClass(MarshalSortComparator.class);
+            }
+        };
+
+        abstract void configure(Job job);
+    }
+
+    /**
+     * Base mapper that converts each record number into a key of the configured shape.
+     */
+    abstract static class KeyMapper<K> extends Mapper<LongWritable, NullWritable, K, NullWritable> {
+        private KeyGenerator generator;
+
+        @Override
+        protected void setup(Context context) {
+            this.generator = KeyGenerator.fromConf(context.getConfiguration());
+        }
+
+        @Override
+        protected void map(LongWritable record, NullWritable value, Context context)
+                throws IOException, InterruptedException {
+            context.write(this.wrap(this.generator.generate(record.get())), NullWritable.get());
+        }
+
+        abstract K wrap(Marshal marshal);
+    }
+
+    static class MarshalWritableMapper extends KeyMapper<MarshalWritable> {
+        private final MarshalWritable key = new MarshalWritable();
+
+        @Override
+        MarshalWritable wrap(Marshal marshal) {
+            this.key.set(marshal);
+            return this.key;
+        }
+    }
+
+    static class LexMarshalWritableMapper extends KeyMapper<LexMarshalWritable> {
+        private final LexMarshalWritable key = new LexMarshalWritable();
+
+        @Override
+        LexMarshalWritable wrap(Marshal marshal) {
+            this.key.set(marshal);
+            return this.key;
+        }
+    }
+
+    static class MarshalMapper extends KeyMapper<Marshal> {
+        @Override
+        Marshal wrap(Marshal marshal) {
+            return marshal;
+        }
+    }
+
+    /**
+     * Reducer that only iterates over the values, so the reduce side measures the merge and the
+     * deserialization of keys.
+     */
+    static class CountingReducer<K> extends Reducer<K, NullWritable, NullWritable, NullWritable> {
+        @Override
+        protected void reduce(K key, Iterable<NullWritable> values, Context context) {
+            long count = 0;
+            for(NullWritable value : values)
+                count++;
+            context.getCounter("marshal.benchmark", "values").increment(count);
+        }
+    }
+
+    /**
+     * Results of a single run.
+     */
+    static class Result {
+        final KeyType keyType;
+        final long records;
+        final long millis;
+        final Counters counters;
+
+        Result(KeyType keyType, long records, long millis, Counters counters) {
+            this.keyType = keyType;
+            this.records = records;
+            this.millis = millis;
+            this.counters = counters;
+        }
+
+        long counter(TaskCounter counter) {
+            return this.counters.findCounter(counter).getValue();
+        }
+
+        void print(PrintStream out) {
+            out.printf("%-28s %12.0f %16d %18d %14d %10d%n",
+                    this.keyType,
+                    this.records * 1000.0 / Math.max(this.millis, 1),
+                    this.counter(TaskCounter.MAP_OUTPUT_BYTES),
+                    this.counter(TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES),
+                    this.counter(TaskCounter.SPILLED_RECORDS),
+                    this.counter(TaskCounter.GC_TIME_MILLIS));
+        }
+
+        static void printHeader(PrintStream out) {
+            out.printf("%-28s %12s %16s %18s %14s %10s%n", "key type", "records/sec",
+                    "map output bytes", "materialized bytes", "spilled recs", "gc millis");
+        }
+    }
+
+    /**
+     * Runs the benchmark job once for the given key type.
+     */
+    Result run(KeyType keyType) throws IOException, InterruptedException, ClassNotFoundException {
+        Configuration conf = new Configuration(this.getConf());
+
+        // run in process against the local file system
+        conf.set("mapreduce.framework.name", "local");
+        conf.set("mapred.job.tracker", "local");
+        conf.set("fs.defaultFS", "file:///");
+
+        Job job = Job.getInstance(conf, "marshal shuffle benchmark " + keyType);
+        job.setJarByClass(ShuffleBenchmark.class);
+        job.setInputFormatClass(SyntheticInputFormat.class);
+        job.setOutputFormatClass(NullOutputFormat.class);
+        job.setMapOutputValueClass(NullWritable.class);
+        job.setReducerClass(CountingReducer.class);
+        job.setOutputKeyClass(NullWritable.class);
+        job.setOutputValueClass(NullWritable.class);
+        job.setNumReduceTasks(1);
+        keyType.configure(job);
+
+        long start = System.nanoTime();
+        if(!job.waitForCompletion(false))
+            throw new IOException("Benchmark job for " + keyType + " failed.");
+        long millis = (System.nanoTime() - start) / 1000000L;
+
+        long records = job.getCounters().findCounter(TaskCounter.MAP_OUTPUT_RECORDS).getValue();
+        return new Result(keyType, records, millis, job.getCounters());
+    }
+
+    @Override
+    public int run(String[] args) throws Exception {
+        Configuration conf = this.getConf();
+        String[] keyTypes = conf.getStrings(KEY_TYPES, names(KeyType.values()));
+        int runs = conf.getInt(RUNS, DEFAULT_RUNS);
+
+        PrintStream out = System.out;
+        out.printf("records=%d splits=%d fields=%d depth=%d cardinality=%d%n",
+                conf.getLong(SyntheticInputFormat.RECORDS, SyntheticInputFormat.DEFAULT_RECORDS),
+                conf.getInt(SyntheticInputFormat.SPLITS, SyntheticInputFormat.DEFAULT_SPLITS),
+                conf.getInt(KeyGenerator.FIELDS, KeyGenerator.DEFAULT_FIELDS),
+                conf.getInt(KeyGenerator.DEPTH, KeyGenerator.DEFAULT_DEPTH),
+                conf.getLong(KeyGenerator.CARDINALITY, KeyGenerator.DEFAULT_CARDINALITY));
+        Result.printHeader(out);
+
+        for(String name : keyTypes) {
+            KeyType keyType = KeyType.valueOf(name.trim());
+
+            // warm up
+            this.run(keyType);
+
+            for(int i = 0; i < runs; i++)
+                this.run(keyType).print(out);
+        }
+
+        return 0;
+    }
+
+    private static String[] names(KeyType[] keyTypes) {
+        String[] names = new String[keyTypes.length];
+        for(int i = 0; i < keyTypes.length; i++)
+            names[i] = keyTypes[i].name();
+        return names;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(new Configuration(), new ShuffleBenchmark(), args));
+    }
+}
@@ -0,0 +1,142 @@
+package com.fullcontact.marshal.mapreduce.benchmark;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Input format that generates record numbers instead of reading files, so benchmark jobs need no
+ * input data. Each split produces a contiguous range of record numbers; mappers derive the
+ * synthetic keys from them.
+ */
+public class SyntheticInputFormat extends InputFormat<LongWritable, NullWritable> {
+    /**
+     * Configuration key for the total number of records to generate.
+     */
+    public static final String RECORDS = "marshal.benchmark.records";
+
+    /**
+     * Configuration key for the number of splits, and therefore map tasks.
+     */
+    public static final String SPLITS = "marshal.benchmark.splits";
+
+    static final long DEFAULT_RECORDS = 1000000L;
+    static final int DEFAULT_SPLITS = 1;
+
+    @Override
+    public List<InputSplit> getSplits(JobContext context) {
+        Configuration conf = context.getConfiguration();
+        long records = conf.getLong(RECORDS, DEFAULT_RECORDS);
+        int splits = conf.getInt(SPLITS, DEFAULT_SPLITS);
+
+        List<InputSplit> result = new ArrayList<InputSplit>(splits);
+        long start = 0;
+        for(int i = 0; i < splits; i++) {
+            long end = records * (i + 1) / splits;
+            result.add(new SyntheticSplit(start, end - start));
+            start = end;
+        }
+        return result;
+    }
+
+    @Override
+    public RecordReader<LongWritable, NullWritable> createRecordReader(InputSplit split,
+            TaskAttemptContext context) {
+        return new SyntheticRecordReader();
+    }
+
+    /**
+     * A range of record numbers.
+     */
+    public static class SyntheticSplit extends InputSplit implements Writable {
+        private long start;
+        private long length;
+
+        /**
+         * Constructor for the writable framework only!
+         */
+        public SyntheticSplit() {}
+
+        public SyntheticSplit(long start, long length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public long getLength() {
+            return this.length;
+        }
+
+        @Override
+        public String[] getLocations() {
+            return new String[0];
+        }
+
+        @Override
+        public void write(DataOutput dataOutput) throws IOException {
+            dataOutput.writeLong(this.start);
+            dataOutput.writeLong(this.length);
+        }
+
+        @Override
+        public void readFields(DataInput dataInput) throws IOException {
+            this.start = dataInput.readLong();
+            this.length = dataInput.readLong();
+        }
+    }
+
+    private static class SyntheticRecordReader extends RecordReader<LongWritable, NullWritable> {
+        private final LongWritable key = new LongWritable();
+        private long start;
+        private long end;
+        private long current;
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+            SyntheticSplit syntheticSplit = (SyntheticSplit)split;
+            this.start = syntheticSplit.start;
+            this.end = syntheticSplit.start + syntheticSplit.length;
+            this.current = this.start;
+        }
+
+        @Override
+        public boolean nextKeyValue() {
+            if(this.current >= this.end)
+                return false;
+            this.key.set(this.current++);
+            return true;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return this.key;
+        }
+
+        @Override
+        public NullWritable getCurrentValue() {
+            return NullWritable.get();
+        }
+
+        @Override
+        public float getProgress() {
+            if(this.end == this.start)
+                return 1.0f;
+            return (this.current - this.start) / (float)(this.end - this.start);
+        }
+
+        @Override
+        public void close() {}
+    }
+}
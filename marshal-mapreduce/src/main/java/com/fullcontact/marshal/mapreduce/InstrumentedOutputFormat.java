@@ -0,0 +1,125 @@
+package com.fullcontact.marshal.mapreduce;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobStatus;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FilterOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.IOException;
+
+/**
+ * Output format that wraps the output format of a job so that the counts of {@link
+ * MarshalInstrumentation} are published once the task's output is complete.
+ *
+ * A map task sorts and spills its last output after the mapper's cleanup, so the comparisons of
+ * that spill would otherwise not be published. The framework asks the output committer whether
+ * the task needs a commit after the final spill and before it reports the task's last counters;
+ * the committer of this format publishes the remaining counts then, and otherwise delegates to
+ * the committer of the wrapped format:
+ *
+ * <pre>
+ * InstrumentedOutputFormat.setOutputFormatClass(job, SequenceFileOutputFormat.class);
+ * </pre>
+ *
+ * Since the committer is a wrapper, code that casts the task's committer to that of the wrapped
+ * format, such as FileOutputFormat.getWorkOutputPath, cannot be used with it.
+ */
+public class InstrumentedOutputFormat<K, V> extends FilterOutputFormat<K, V> {
+    /**
+     * Configuration key for the wrapped output format class.
+     */
+    public static final String OUTPUT_FORMAT = "marshal.instrumentation.output.format";
+
+    /**
+     * Sets the output format of the job to this format, wrapping the given format.
+     */
+    @SuppressWarnings("rawtypes")
+    public static void setOutputFormatClass(Job job, Class<? extends OutputFormat> format) {
+        job.setOutputFormatClass(InstrumentedOutputFormat.class);
+        job.getConfiguration().setClass(OUTPUT_FORMAT, format, OutputFormat.class);
+    }
+
+    @Override
+    public RecordWriter<K, V> getRecordWriter(TaskAttemptContext context) throws IOException, InterruptedException {
+        this.configureBaseOut(context.getConfiguration());
+        return super.getRecordWriter(context);
+    }
+
+    @Override
+    public void checkOutputSpecs(JobContext context) throws IOException, InterruptedException {
+        this.configureBaseOut(context.getConfiguration());
+        super.checkOutputSpecs(context);
+    }
+
+    @Override
+    public OutputCommitter getOutputCommitter(TaskAttemptContext context) throws IOException, InterruptedException {
+        this.configureBaseOut(context.getConfiguration());
+        return new Committer(super.getOutputCommitter(context));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void configureBaseOut(Configuration conf) throws IOException {
+        if(this.baseOut != null)
+            return;
+
+        Class<?> format = conf.getClass(OUTPUT_FORMAT, null);
+        if(format == null)
+            throw new IOException("No output format is set for " + OUTPUT_FORMAT + ".");
+        this.baseOut = (OutputFormat<K, V>)ReflectionUtils.newInstance(format, conf);
+    }
+
+    /**
+     * Committer that publishes the instrumentation counts before deciding whether a task needs a
+     * commit, and otherwise delegates to another committer.
+     */
+    static final class Committer extends OutputCommitter {
+        private final OutputCommitter committer;
+
+        Committer(OutputCommitter committer) {
+            this.committer = committer;
+        }
+
+        @Override
+        public void setupJob(JobContext context) throws IOException {
+            this.committer.setupJob(context);
+        }
+
+        @Override
+        public void commitJob(JobContext context) throws IOException {
+            this.committer.commitJob(context);
+        }
+
+        @Override
+        public void abortJob(JobContext context, JobStatus.State state) throws IOException {
+            this.committer.abortJob(context, state);
+        }
+
+        @Override
+        public void setupTask(TaskAttemptContext context) throws IOException {
+            this.committer.setupTask(context);
+        }
+
+        @Override
+        public boolean needsTaskCommit(TaskAttemptContext context) throws IOException {
+            // called once the output is complete, including the final map-side spill
+            MarshalInstrumentation.publish(context);
+            return this.committer.needsTaskCommit(context);
+        }
+
+        @Override
+        public void commitTask(TaskAttemptContext context) throws IOException {
+            this.committer.commitTask(context);
+        }
+
+        @Override
+        public void abortTask(TaskAttemptContext context) throws IOException {
+            this.committer.abortTask(context);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.fullcontact.marshal.mapreduce;
+
+import com.fullcontact.marshal.ByteArray;
+import com.fullcontact.marshal.Marshal;
+import com.fullcontact.marshal.MarshalException;
+import com.fullcontact.marshal.mapreduce.MarshalInstrumentation.Counter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writable that reads and writes {@link Marshal} instances in the lexicographic format.
+ *
+ * The serialized form is a variable-length integer length followed by the bytes of {@link
+ * Marshal#toBytes}. Unlike {@link MarshalWritable}, keys sort in lexicographic marshal order,
+ * which is the order of HBase row keys, and the raw comparator is a single unsigned comparison of
+ * the embedded bytes. Reading does not decode the marshal; it is decoded on the first call to
+ * {@link #get}, and the raw bytes are available without decoding from {@link #getBytes}.
+ */
+public class LexMarshalWritable implements WritableComparable<LexMarshalWritable> {
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    static {
+        WritableComparator.define(LexMarshalWritable.class, new Comparator());
+    }
+
+    // the decoded marshal, or null if it has not been decoded yet
+    private Marshal marshal = null;
+
+    // lexicographic bytes of the current marshal
+    private byte[] bytes = EMPTY_BYTES;
+    private int offset = 0;
+    private int length = 0;
+
+    // whether bytes belongs to this writable and may be reused by readFields
+    private boolean ownsBytes = false;
+
+    /**
+     * Constructor for the writable framework only!
+     */
+    public LexMarshalWritable() {}
+
+    /**
+     * Create a writable from the given Marshal.
+     */
+    public LexMarshalWritable(Marshal marshal) {
+        this.set(marshal);
+    }
+
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        if(!MarshalInstrumentation.enabled) {
+            this.writeValue(dataOutput);
+            return;
+        }
+
+        MarshalInstrumentation.Counts counts = MarshalInstrumentation.counts();
+        long start = counts.start();
+
+        this.writeValue(dataOutput);
+
+        counts.stop(Counter.ENCODE_NANOS, start);
+        counts.add(Counter.ENCODE_CALLS, 1);
+        counts.add(Counter.ENCODED_BYTES, WritableUtils.getVIntSize(this.length) + this.length);
+        counts.add(Counter.ESCAPE_BYTES, MarshalInstrumentation.escapeBytes(this.bytes, this.offset, this.length));
+        // entries are only counted when the marshal is at hand, since counting must not decode
+        if(this.marshal != null)
+            counts.addEntries(this.marshal);
+    }
+
+    private void writeValue(DataOutput dataOutput) throws IOException {
+        WritableUtils.writeVInt(dataOutput, this.length);
+        dataOutput.write(this.bytes, this.offset, this.length);
+    }
+
+    @Override
+    public void readFields(DataInput dataInput) throws IOException {
+        if(!MarshalInstrumentation.enabled) {
+            this.readValue(dataInput);
+            return;
+        }
+
+        MarshalInstrumentation.Counts counts = MarshalInstrumentation.counts();
+        long start = counts.start();
+
+        this.readValue(dataInput);
+
+        counts.stop(Counter.DECODE_NANOS, start);
+        counts.add(Counter.DECODE_CALLS, 1);
+        counts.add(Counter.DECODED_BYTES, WritableUtils.getVIntSize(this.length) + this.length);
+    }
+
+    private void readValue(DataInput dataInput) throws IOException {
+        int length = WritableUtils.readVInt(dataInput);
+        if(length < 0)
+            throw new MarshalException("Invalid marshal length: " + length);
+
+        if(!this.ownsBytes || this.bytes.length < length) {
+            this.bytes = new byte[Math.max(length, this.ownsBytes ? this.bytes.length * 2 : 0)];
+            this.ownsBytes = true;
+        }
+        dataInput.readFully(this.bytes, 0, length);
+
+        this.offset = 0;
+        this.length = length;
+        this.marshal = null;
+    }
+
+    /**
+     * Returns the current Marshal, decoding it if needed.
+     *
+     * @throws IllegalStateException if the bytes that were read are not a valid marshal.
+     */
+    public Marshal get() {
+        if(this.marshal == null) {
+            // copy, since the buffer is reused by the next read
+            byte[] copy = new byte[this.length];
+            System.arraycopy(this.bytes, this.offset, copy, 0, this.length);
+            try {
+                this.marshal = Marshal.fromBytes(copy);
+            }
+            catch(MarshalException e) {
+                throw new IllegalStateException("Could not decode marshal.", e);
+            }
+        }
+        return this.marshal;
+    }
+
+    /**
+     * Returns the lexicographic bytes of the current Marshal without decoding it. The result is
+     * only valid until the next read.
+     */
+    public ByteArray getBytes() {
+        return new ByteArray(this.bytes, this.offset, this.offset + this.length);
+    }
+
+    /**
+     * Sets the current Marshal for this writable.
+     */
+    public void set(Marshal marshal) {
+        ByteArray byteArray = marshal.toByteArray();
+
+        this.marshal = marshal;
+        this.bytes = byteArray.backingArray();
+        this.offset = byteArray.beginIndex();
+        this.length = byteArray.size();
+        this.ownsBytes = false;
+    }
+
+    @Override
+    public int compareTo(LexMarshalWritable other) {
+        return ByteArray.compare(this.bytes, this.offset, this.offset + this.length,
+                other.bytes, other.offset, other.offset + other.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o)
+            return true;
+
+        if(o instanceof LexMarshalWritable)
+            return this.compareTo((LexMarshalWritable)o) == 0;
+
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return WritableComparator.hashBytes(this.bytes, this.offset, this.length);
+    }
+
+    @Override
+    public String toString() {
+        return this.get().toString();
+    }
+
+    /**
+     * Raw comparator that compares the embedded lexicographic bytes without decoding them.
+     */
+    public static class Comparator extends WritableComparator {
+        public Comparator() {
+            super(LexMarshalWritable.class);
+        }
+
+        @Override
+        public void setConf(Configuration conf) {
+            super.setConf(conf);
+            MarshalInstrumentation.configure(conf);
+        }
+
+        @Override
+        public int compare(byte[] bytes1, int startIndex1, int length1, byte[] bytes2, int startIndex2, int length2) {
+            if(!MarshalInstrumentation.enabled)
+                return compareEmbedded(bytes1, startIndex1, length1, bytes2, startIndex2, length2);
+
+            MarshalInstrumentation.Counts counts = MarshalInstrumentation.counts();
+            long start = counts.start();
+            int result = compareEmbedded(bytes1, startIndex1, length1, bytes2, startIndex2, length2);
+            counts.stop(Counter.COMPARE_NANOS, start);
+            counts.add(Counter.COMPARE_CALLS, 1);
+            return result;
+        }
+
+        private static int compareEmbedded(byte[] bytes1, int startIndex1, int length1,
+                byte[] bytes2, int startIndex2, int length2) {
+            int size1 = WritableUtils.decodeVIntSize(bytes1[startIndex1]);
+            int size2 = WritableUtils.decodeVIntSize(bytes2[startIndex2]);
+            return WritableComparator.compareBytes(bytes1, startIndex1 + size1, length1 - size1,
+                    bytes2, startIndex2 + size2, length2 - size2);
+        }
+    }
+}
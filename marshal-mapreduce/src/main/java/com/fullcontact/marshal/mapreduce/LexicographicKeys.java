@@ -0,0 +1,29 @@
+package com.fullcontact.marshal.mapreduce;
+
+import com.fullcontact.marshal.ByteArray;
+import com.fullcontact.marshal.Marshal;
+
+/**
+ * Converts supported MapReduce key types into their lexicographic marshal serialization.
+ */
+final class LexicographicKeys {
+    // static utility class
+    private LexicographicKeys() {}
+
+    /**
+     * Returns the lexicographic serialization of the marshal held by the given key.
+     *
+     * @throws IllegalArgumentException if the key type is not supported.
+     */
+    static ByteArray toByteArray(Object key) {
+        if(key instanceof LexMarshalWritable)
+            return ((LexMarshalWritable)key).getBytes();
+        else if(key instanceof MarshalWritable)
+            return ((MarshalWritable)key).get().toByteArray();
+        else if(key instanceof Marshal)
+            return ((Marshal)key).toByteArray();
+        else
+            throw new IllegalArgumentException("Unsupported marshal key type: " +
+                    (key == null ? null : key.getClass().getName()));
+    }
+}
@@ -0,0 +1,44 @@
+package com.fullcontact.marshal.mapreduce;
+
+import org.apache.hadoop.conf.Configuration;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Raw grouping comparator for {@link MarshalWritable} keys that considers only the first k
+ * entries of each key, where k is read from the job configuration. Keys are never deserialized;
+ * comparison stops at the first entry that differs.
+ *
+ * This comparator must be used with {@link MarshalSortComparator} as the sort comparator, which
+ * guarantees that all keys sharing the same first k entries arrive at the reducer together.
+ */
+public class MarshalGroupingComparator extends MarshalSortComparator {
+    /**
+     * Configuration key for the number of leading entries used for grouping.
+     */
+    public static final String PREFIX_LENGTH = "marshal.grouping.prefix.length";
+
+    private int prefixLength = Integer.MAX_VALUE;
+
+    /**
+     * Sets the number of leading entries of the key used for grouping.
+     */
+    public static void setPrefixLength(Configuration conf, int n) {
+        checkArgument(n >= 0, "The number of entries in the prefix must be non-negative.");
+        conf.setInt(PREFIX_LENGTH, n);
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        super.setConf(conf);
+
+        int n = conf.getInt(PREFIX_LENGTH, -1);
+        checkArgument(n >= 0, PREFIX_LENGTH + " must be set to a non-negative integer.");
+        this.prefixLength = n;
+    }
+
+    @Override
+    protected int getPrefixLength() {
+        return this.prefixLength;
+    }
+}
@@ -0,0 +1,96 @@
+package com.fullcontact.marshal.mapreduce;
+
+import com.fullcontact.marshal.ByteArray;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.partition.InputSampler;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Computes split points for {@link MarshalTotalOrderPartitioner} from a sample of the job input.
+ *
+ * Keys are sampled from the job's input format with any of Hadoop's {@link InputSampler.Sampler}
+ * implementations, sorted in lexicographic marshal order, and split into equally sized ranges,
+ * one per reduce task. The input keys must be marshal keys of the same type as the map output
+ * keys. Everything runs in the submitting process, so it works the same with the local job
+ * runner:
+ *
+ * <pre>
+ * job.setPartitionerClass(MarshalTotalOrderPartitioner.class);
+ * MarshalTotalOrderPartitioner.setPartitionFile(job.getConfiguration(), path);
+ * MarshalInputSampler.writePartitionFile(job,
+ *     new InputSampler.RandomSampler&lt;MarshalWritable, NullWritable&gt;(0.01, 10000, 10));
+ * </pre>
+ */
+public final class MarshalInputSampler {
+    // static utility class
+    private MarshalInputSampler() {}
+
+    /**
+     * Samples the job input and writes the split points for the job's number of reduce tasks to
+     * the partition file configured with {@link MarshalTotalOrderPartitioner#setPartitionFile}.
+     */
+    public static <K, V> void writePartitionFile(Job job, InputSampler.Sampler<K, V> sampler)
+            throws IOException, ClassNotFoundException, InterruptedException {
+        Configuration conf = job.getConfiguration();
+
+        @SuppressWarnings("unchecked")
+        InputFormat<K, V> inputFormat = (InputFormat<K, V>)
+            ReflectionUtils.newInstance(job.getInputFormatClass(), conf);
+        K[] samples = sampler.getSample(inputFormat, job);
+
+        List<ByteArray> keys = new ArrayList<ByteArray>(samples.length);
+        for(K sample : samples) {
+            keys.add(LexicographicKeys.toByteArray(sample));
+        }
+
+        List<ByteArray> splitPoints = computeSplitPoints(keys, job.getNumReduceTasks());
+        MarshalTotalOrderPartitioner.writeSplitPoints(conf,
+                MarshalTotalOrderPartitioner.getPartitionFile(conf), splitPoints);
+    }
+
+    /**
+     * Computes numPartitions-1 split points that divide the given sample of lexicographic keys
+     * into equally sized ranges. The sample is sorted in place.
+     *
+     * Split points are distinct and greater than the smallest sampled key, so every range
+     * contains part of the sample; runs of equal keys move the following split point past the run.
+     *
+     * @throws IllegalArgumentException if there are not enough distinct keys in the sample.
+     */
+    public static List<ByteArray> computeSplitPoints(List<ByteArray> sample, int numPartitions) {
+        checkArgument(numPartitions > 0, "The number of partitions must be positive.");
+
+        Collections.sort(sample);
+
+        List<ByteArray> splitPoints = new ArrayList<ByteArray>(numPartitions - 1);
+        float step = sample.size() / (float)numPartitions;
+        // index of the previous split point; starts at the smallest key so that no range is empty
+        int last = 0;
+        for(int i = 1; i < numPartitions; i++) {
+            int index = Math.max(Math.round(step * i), last + 1);
+
+            // skip past keys equal to the previous split point, so split points are distinct
+            while(index < sample.size() &&
+                    sample.get(index).compareTo(sample.get(last)) == 0) {
+                index++;
+            }
+            if(index >= sample.size())
+                throw new IllegalArgumentException("Sample of " + sample.size() + " keys has too " +
+                        "few distinct keys for " + numPartitions + " partitions.");
+
+            splitPoints.add(sample.get(index));
+            last = index;
+        }
+
+        return splitPoints;
+    }
+}
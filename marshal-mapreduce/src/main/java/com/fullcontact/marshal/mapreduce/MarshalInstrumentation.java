@@ -0,0 +1,326 @@
+package com.fullcontact.marshal.mapreduce;
+
+import com.fullcontact.marshal.EntryType;
+import com.fullcontact.marshal.Marshal;
+import com.fullcontact.marshal.MutableMarshal;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Optional instrumentation of marshal serialization and comparison in MapReduce tasks.
+ *
+ * When enabled with {@link #ENABLED}, the writables, {@link MarshalSerialization} and the raw
+ * comparators of this package count calls, bytes encoded and decoded, the top-level entries of
+ * each type that are encoded, escape bytes of the lexicographic format, and comparator
+ * invocations. Wall time is measured for one call out of every {@link #SAMPLE_INTERVAL} and
+ * scaled up. Counts accumulate in per-thread counters that only their thread writes, without
+ * locking, and are published as Hadoop counters by {@link #publish}:
+ *
+ * <pre>
+ * protected void setup(Context context) {
+ *     MarshalInstrumentation.setup(context);
+ * }
+ *
+ * protected void cleanup(Context context) {
+ *     MarshalInstrumentation.publish(context);
+ * }
+ * </pre>
+ *
+ * When disabled, the instrumented code paths only read a static flag. Only configurations that
+ * set {@link #ENABLED} change the flag, so classes configured without it leave it as it is.
+ * Bytes are only counted for the stream types used by the framework ({@link DataOutputStream}
+ * and {@link DataInputBuffer}). Counts are kept per JVM, so tasks running concurrently in the
+ * same JVM, as with the local job runner, share them.
+ *
+ * Comparisons made by the final map-side spill happen after the mapper's cleanup. To publish
+ * them with the map task, wrap the job's output format with {@link InstrumentedOutputFormat},
+ * whose committer publishes the remaining counts once the output is complete. Otherwise they are
+ * published with the next task that runs in the same JVM, or never for the last one.
+ */
+public final class MarshalInstrumentation {
+    /**
+     * Configuration key for enabling the instrumentation.
+     */
+    public static final String ENABLED = "marshal.instrumentation.enabled";
+
+    /**
+     * Configuration key for the number of calls per timed call. Rounded up to a power of two.
+     */
+    public static final String SAMPLE_INTERVAL = "marshal.instrumentation.sample.interval";
+
+    /**
+     * Counter group for the number of top-level entries of each type.
+     */
+    public static final String ENTRY_GROUP = "Marshal entries";
+
+    /**
+     * Counters published by the instrumentation.
+     */
+    public enum Counter {
+        ENCODE_CALLS,
+        ENCODED_BYTES,
+        ENCODE_NANOS,
+        DECODE_CALLS,
+        DECODED_BYTES,
+        DECODE_NANOS,
+        ESCAPE_BYTES,
+        COMPARE_CALLS,
+        COMPARE_NANOS
+    }
+
+    private static final int DEFAULT_SAMPLE_INTERVAL = 64;
+
+    // read on every instrumented call
+    static volatile boolean enabled = false;
+
+    // sample interval - 1, where the interval is a power of two
+    private static volatile int sampleMask = DEFAULT_SAMPLE_INTERVAL - 1;
+
+    // counters of the live threads that have recorded anything, for publishing
+    private static final List<Counts> ALL_COUNTS = new ArrayList<Counts>();
+
+    // unpublished counts of threads that have ended; guarded by ALL_COUNTS
+    private static final long[] RETIRED_COUNTERS = new long[Counter.values().length];
+    private static final long[] RETIRED_ENTRIES = new long[EntryType.values().length];
+
+    private static final ThreadLocal<Counts> COUNTS = new ThreadLocal<Counts>() {
+        @Override
+        protected Counts initialValue() {
+            Counts counts = new Counts();
+            synchronized(ALL_COUNTS) {
+                // fold in the threads that have ended, so that the list does not grow
+                drain(RETIRED_COUNTERS, RETIRED_ENTRIES, true);
+                ALL_COUNTS.add(counts);
+            }
+            return counts;
+        }
+    };
+
+    /**
+     * Counters of a single thread.
+     *
+     * Only the owning thread writes the counters, so increments need no atomic read-modify-write;
+     * the ordered writes make them visible to the publishing thread. Publishing never writes the
+     * counters, but remembers the values it has published and reports the difference.
+     */
+    static final class Counts {
+        private final Thread owner = Thread.currentThread();
+        private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+        private final AtomicLongArray entries = new AtomicLongArray(EntryType.values().length);
+        private int calls = 0;
+
+        // the values published so far; guarded by ALL_COUNTS
+        private final long[] publishedCounters = new long[Counter.values().length];
+        private final long[] publishedEntries = new long[EntryType.values().length];
+
+        /**
+         * Returns the start time if this call should be timed, or -1 otherwise.
+         */
+        long start() {
+            return ((this.calls++ & sampleMask) == 0) ? System.nanoTime() : -1;
+        }
+
+        /**
+         * Records a timed call that started at the given time, if it was sampled.
+         */
+        void stop(Counter counter, long start) {
+            if(start >= 0)
+                this.add(counter, (System.nanoTime() - start) * (sampleMask + 1));
+        }
+
+        void add(Counter counter, long value) {
+            increment(this.counters, counter.ordinal(), value);
+        }
+
+        void addEntries(Marshal marshal) {
+            for(int i = 0; i < marshal.size(); i++)
+                increment(this.entries, marshal.getTypeAt(i).ordinal(), 1);
+        }
+
+        void addEntries(MutableMarshal marshal) {
+            for(int i = 0; i < marshal.size(); i++)
+                increment(this.entries, marshal.getTypeAt(i).ordinal(), 1);
+        }
+
+        /**
+         * Adds the counts recorded since the last call to the given arrays.
+         */
+        void publishTo(long[] counters, long[] entries) {
+            publish(this.counters, this.publishedCounters, counters);
+            publish(this.entries, this.publishedEntries, entries);
+        }
+
+        // only called by the owning thread
+        private static void increment(AtomicLongArray array, int index, long value) {
+            array.lazySet(index, array.get(index) + value);
+        }
+
+        private static void publish(AtomicLongArray array, long[] published, long[] target) {
+            for(int i = 0; i < published.length; i++) {
+                long value = array.get(i);
+                target[i] += value - published[i];
+                published[i] = value;
+            }
+        }
+    }
+
+    // static utility class
+    private MarshalInstrumentation() {}
+
+    /**
+     * Enables or disables the instrumentation according to the configuration. Called by the
+     * configurable classes of this package, and by {@link #setup}. Settings that are absent from
+     * the configuration are left unchanged.
+     */
+    public static void configure(Configuration conf) {
+        if(conf == null)
+            return;
+
+        if(conf.get(SAMPLE_INTERVAL) != null) {
+            int interval = Math.max(conf.getInt(SAMPLE_INTERVAL, DEFAULT_SAMPLE_INTERVAL), 1);
+            int rounded = Integer.highestOneBit(interval);
+            if(rounded < interval)
+                rounded <<= 1;
+            sampleMask = rounded - 1;
+        }
+        if(conf.get(ENABLED) != null)
+            enabled = conf.getBoolean(ENABLED, false);
+    }
+
+    /**
+     * Configures the instrumentation for the given task.
+     */
+    public static void setup(TaskAttemptContext context) {
+        configure(context.getConfiguration());
+    }
+
+    /**
+     * Returns whether the instrumentation is enabled.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds the counts of all threads to the counters of the given task and resets them.
+     */
+    public static void publish(TaskAttemptContext context) {
+        for(CounterGroup group : collect()) {
+            for(org.apache.hadoop.mapreduce.Counter counter : group)
+                context.getCounter(group.getName(), counter.getName()).increment(counter.getValue());
+        }
+    }
+
+    /**
+     * Returns the sum of the counts of all threads since the last call. Counts that are zero are
+     * omitted.
+     */
+    static Counters collect() {
+        long[] counters = new long[Counter.values().length];
+        long[] entries = new long[EntryType.values().length];
+
+        synchronized(ALL_COUNTS) {
+            drain(counters, entries, false);
+            for(int i = 0; i < counters.length; i++) {
+                counters[i] += RETIRED_COUNTERS[i];
+                RETIRED_COUNTERS[i] = 0;
+            }
+            for(int i = 0; i < entries.length; i++) {
+                entries[i] += RETIRED_ENTRIES[i];
+                RETIRED_ENTRIES[i] = 0;
+            }
+        }
+
+        Counters result = new Counters();
+        for(Counter counter : Counter.values()) {
+            if(counters[counter.ordinal()] != 0)
+                result.findCounter(counter).increment(counters[counter.ordinal()]);
+        }
+        for(EntryType type : EntryType.values()) {
+            if(entries[type.ordinal()] != 0)
+                result.findCounter(ENTRY_GROUP, type.name()).increment(entries[type.ordinal()]);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the unpublished counts of the threads to the given arrays, only for the threads that
+     * have ended if requested, and forgets the threads that have ended. Called with the lock on
+     * ALL_COUNTS held.
+     */
+    private static void drain(long[] counters, long[] entries, boolean endedOnly) {
+        for(Iterator<Counts> iterator = ALL_COUNTS.iterator(); iterator.hasNext(); ) {
+            Counts counts = iterator.next();
+            // checked before reading, so that a thread that has ended has made its last writes
+            boolean ended = !counts.owner.isAlive();
+            if(ended || !endedOnly)
+                counts.publishTo(counters, entries);
+            if(ended)
+                iterator.remove();
+        }
+    }
+
+    /**
+     * Returns the number of threads whose counts are kept.
+     */
+    static int threadCount() {
+        synchronized(ALL_COUNTS) {
+            return ALL_COUNTS.size();
+        }
+    }
+
+    /**
+     * Returns the counters of the current thread.
+     */
+    static Counts counts() {
+        return COUNTS.get();
+    }
+
+    /**
+     * Returns the number of bytes written so far to the output, or -1 if unknown.
+     */
+    static long position(DataOutput dataOutput) {
+        return (dataOutput instanceof DataOutputStream) ? ((DataOutputStream)dataOutput).size() : -1;
+    }
+
+    /**
+     * Returns the current position of the input, or -1 if unknown.
+     */
+    static long position(DataInput dataInput) {
+        return (dataInput instanceof DataInputBuffer) ? ((DataInputBuffer)dataInput).getPosition() : -1;
+    }
+
+    /**
+     * Returns the number of bytes between two positions, or 0 if either is unknown.
+     */
+    static long distance(long before, long after) {
+        return (before >= 0 && after >= before) ? after - before : 0;
+    }
+
+    /**
+     * Returns the number of escape bytes in the lexicographic serialization of a marshal. Each
+     * escaped separator byte is written twice, so this is the number of escaped pairs.
+     */
+    static int escapeBytes(byte[] bytes, int offset, int length) {
+        int escapes = 0;
+        int end = offset + length;
+        for(int i = offset; i < end - 1; i++) {
+            if(bytes[i] == (byte)0xFE && bytes[i + 1] == (byte)0xFE) {
+                escapes++;
+                i++;
+            }
+        }
+        return escapes;
+    }
+}
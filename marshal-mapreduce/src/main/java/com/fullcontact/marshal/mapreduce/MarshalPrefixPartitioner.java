@@ -0,0 +1,82 @@
+package com.fullcontact.marshal.mapreduce;
+
+import com.fullcontact.marshal.ByteHash;
+import com.fullcontact.marshal.Marshal;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Partitions {@link MarshalWritable} keys by a hash of their first k entries, where k is read from
+ * the job configuration.
+ *
+ * The hash is a 64-bit hash of the writable serialization of the leading entries, so it never
+ * decodes entries and is consistent across JVMs. Keys with fewer than k entries are hashed on all
+ * of their entries. Combined with {@link MarshalGroupingComparator} configured with the same k,
+ * this sends every group to a single reducer:
+ *
+ * <pre>
+ * job.setPartitionerClass(MarshalPrefixPartitioner.class);
+ * MarshalPrefixPartitioner.setPrefixLength(job.getConfiguration(), 2);
+ * </pre>
+ */
+public class MarshalPrefixPartitioner<V> extends Partitioner<MarshalWritable, V> implements Configurable {
+    /**
+     * Configuration key for the number of leading entries used for partitioning.
+     */
+    public static final String PREFIX_LENGTH = "marshal.partitioner.prefix.length";
+
+    private Configuration conf;
+    private int prefixLength = Integer.MAX_VALUE;
+
+    // reused serialization buffer; partitioners are only used by a single thread
+    private final DataOutputBuffer buffer = new DataOutputBuffer();
+
+    /**
+     * Sets the number of leading entries of the key used for partitioning.
+     */
+    public static void setPrefixLength(Configuration conf, int n) {
+        checkArgument(n >= 0, "The number of entries in the prefix must be non-negative.");
+        conf.setInt(PREFIX_LENGTH, n);
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+
+        int n = conf.getInt(PREFIX_LENGTH, -1);
+        checkArgument(n >= 0, PREFIX_LENGTH + " must be set to a non-negative integer.");
+        this.prefixLength = n;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return this.conf;
+    }
+
+    @Override
+    public int getPartition(MarshalWritable key, V value, int numPartitions) {
+        long hash = this.hash(key.get());
+        return (int)((hash & Long.MAX_VALUE) % numPartitions);
+    }
+
+    /**
+     * Returns the hash of the first k entries of the given marshal.
+     */
+    long hash(Marshal marshal) {
+        this.buffer.reset();
+        try {
+            marshal.writePrefix(this.buffer, Math.min(this.prefixLength, marshal.size()));
+        }
+        catch(IOException e) {
+            throw new IllegalArgumentException("Could not serialize key for partitioning.", e);
+        }
+
+        return ByteHash.hash64(this.buffer.getData(), 0, this.buffer.getLength(), 0);
+    }
+}
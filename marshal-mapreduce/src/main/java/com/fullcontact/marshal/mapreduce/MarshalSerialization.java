@@ -0,0 +1,156 @@
+package com.fullcontact.marshal.mapreduce;
+
+import com.fullcontact.marshal.Marshal;
+import com.fullcontact.marshal.mapreduce.MarshalInstrumentation.Counter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.Serialization;
+import org.apache.hadoop.io.serializer.Serializer;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hadoop serialization for {@link Marshal}, allowing marshals to be used directly as map output
+ * keys and values without a {@link MarshalWritable} wrapper. Marshals are written in the writable
+ * format, so the serialized bytes are identical to those of {@link MarshalWritable}.
+ *
+ * Register the serialization and a raw sort comparator before using marshals as keys; Hadoop
+ * cannot derive a comparator for a class that is not a WritableComparable:
+ *
+ * <pre>
+ * MarshalSerialization.register(job.getConfiguration());
+ * job.setMapOutputKeyClass(Marshal.class);
+ * job.setSortComparatorClass(MarshalSortComparator.class);
+ * </pre>
+ */
+public class MarshalSerialization extends Configured implements Serialization<Marshal> {
+    /**
+     * Configuration key for the list of serializations known to Hadoop.
+     */
+    static final String SERIALIZATIONS_KEY = "io.serializations";
+
+    /**
+     * Adds this serialization to the serializations in the configuration, if not already present.
+     */
+    public static void register(Configuration conf) {
+        String name = MarshalSerialization.class.getName();
+
+        List<String> serializations = new ArrayList<String>(
+                Arrays.asList(conf.getStrings(SERIALIZATIONS_KEY, new String[0])));
+        if(!serializations.contains(name)) {
+            serializations.add(name);
+            conf.setStrings(SERIALIZATIONS_KEY, serializations.toArray(new String[serializations.size()]));
+        }
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        super.setConf(conf);
+        MarshalInstrumentation.configure(conf);
+    }
+
+    @Override
+    public boolean accept(Class<?> c) {
+        return Marshal.class.isAssignableFrom(c);
+    }
+
+    @Override
+    public Serializer<Marshal> getSerializer(Class<Marshal> c) {
+        return new MarshalSerializer();
+    }
+
+    @Override
+    public Deserializer<Marshal> getDeserializer(Class<Marshal> c) {
+        return new MarshalDeserializer();
+    }
+
+    /**
+     * Serializer that encodes each marshal into a reused buffer and then copies it to the
+     * underlying stream with a single write.
+     */
+    static class MarshalSerializer implements Serializer<Marshal> {
+        private final DataOutputBuffer buffer = new DataOutputBuffer();
+        private OutputStream out;
+
+        @Override
+        public void open(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void serialize(Marshal marshal) throws IOException {
+            if(!MarshalInstrumentation.enabled) {
+                this.writeValue(marshal);
+                return;
+            }
+
+            MarshalInstrumentation.Counts counts = MarshalInstrumentation.counts();
+            long start = counts.start();
+
+            this.writeValue(marshal);
+
+            counts.stop(Counter.ENCODE_NANOS, start);
+            counts.add(Counter.ENCODE_CALLS, 1);
+            counts.add(Counter.ENCODED_BYTES, this.buffer.getLength());
+            counts.addEntries(marshal);
+        }
+
+        private void writeValue(Marshal marshal) throws IOException {
+            this.buffer.reset();
+            marshal.write(this.buffer);
+            this.out.write(this.buffer.getData(), 0, this.buffer.getLength());
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.close();
+        }
+    }
+
+    /**
+     * Deserializer for marshals. Since marshals are immutable, the object passed for reuse is
+     * ignored and a new marshal is always returned.
+     */
+    static class MarshalDeserializer implements Deserializer<Marshal> {
+        private DataInputStream in;
+
+        @Override
+        public void open(InputStream in) {
+            if(in instanceof DataInputStream)
+                this.in = (DataInputStream)in;
+            else
+                this.in = new DataInputStream(in);
+        }
+
+        @Override
+        public Marshal deserialize(Marshal marshal) throws IOException {
+            if(!MarshalInstrumentation.enabled)
+                return Marshal.read(this.in);
+
+            MarshalInstrumentation.Counts counts = MarshalInstrumentation.counts();
+            long position = MarshalInstrumentation.position(this.in);
+            long start = counts.start();
+
+            Marshal result = Marshal.read(this.in);
+
+            counts.stop(Counter.DECODE_NANOS, start);
+            counts.add(Counter.DECODE_CALLS, 1);
+            counts.add(Counter.DECODED_BYTES,
+                    MarshalInstrumentation.distance(position, MarshalInstrumentation.position(this.in)));
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+}
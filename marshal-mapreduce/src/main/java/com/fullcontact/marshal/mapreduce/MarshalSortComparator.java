@@ -0,0 +1,70 @@
+package com.fullcontact.marshal.mapreduce;
+
+import com.fullcontact.marshal.MarshalException;
+import com.fullcontact.marshal.WritableFormat;
+import com.fullcontact.marshal.mapreduce.MarshalInstrumentation.Counter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * Raw comparator for {@link MarshalWritable} keys that compares the serialized marshals entry by
+ * entry, stopping at the first entry that differs.
+ *
+ * Unlike {@link MarshalWritable.Comparator}, which compares the serialized bytes as a whole, all
+ * keys that share the same first k entries are contiguous under this ordering. This makes it the
+ * sort comparator to use together with {@link MarshalGroupingComparator} for secondary sort:
+ *
+ * <pre>
+ * job.setSortComparatorClass(MarshalSortComparator.class);
+ * job.setGroupingComparatorClass(MarshalGroupingComparator.class);
+ * MarshalGroupingComparator.setPrefixLength(job.getConfiguration(), 2);
+ * </pre>
+ *
+ * As with {@link MarshalWritable.Comparator}, the ordering is stable but otherwise undefined; it
+ * is not the lexicographic ordering of the marshals. Comparison of deserialized objects is not
+ * supported.
+ *
+ * @see WritableFormat#compare
+ */
+public class MarshalSortComparator extends WritableComparator {
+    public MarshalSortComparator() {
+        super(MarshalWritable.class);
+    }
+
+    /**
+     * Returns the maximum number of entries considered by this comparator.
+     */
+    protected int getPrefixLength() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        super.setConf(conf);
+        MarshalInstrumentation.configure(conf);
+    }
+
+    @Override
+    public int compare(byte[] bytes1, int startIndex1, int length1, byte[] bytes2, int startIndex2, int length2) {
+        if(!MarshalInstrumentation.enabled)
+            return this.compareEntries(bytes1, startIndex1, length1, bytes2, startIndex2, length2);
+
+        MarshalInstrumentation.Counts counts = MarshalInstrumentation.counts();
+        long start = counts.start();
+        int result = this.compareEntries(bytes1, startIndex1, length1, bytes2, startIndex2, length2);
+        counts.stop(Counter.COMPARE_NANOS, start);
+        counts.add(Counter.COMPARE_CALLS, 1);
+        return result;
+    }
+
+    private int compareEntries(byte[] bytes1, int startIndex1, int length1,
+            byte[] bytes2, int startIndex2, int length2) {
+        try {
+            return WritableFormat.compare(bytes1, startIndex1, length1,
+                    bytes2, startIndex2, length2, this.getPrefixLength());
+        }
+        catch(MarshalException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.fullcontact.marshal.mapreduce;
+
+import com.fullcontact.marshal.ByteArray;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Range partitioner for marshal keys in lexicographic marshal order (the order of {@link
+ * com.fullcontact.marshal.Marshal#compareTo}), so that partition i only receives keys that sort
+ * before every key of partition i+1. This is the ordering used by HBase row keys.
+ *
+ * The split points are read from a partition file, normally produced by {@link
+ * MarshalInputSampler#writePartitionFile}, and located with {@link #setPartitionFile}. Each key is
+ * located with a binary search of the split points against its lexicographic bytes. A job with n
+ * reduce tasks requires a partition file with n-1 split points.
+ *
+ * Keys may be {@link LexMarshalWritable}, {@link MarshalWritable} or {@link
+ * com.fullcontact.marshal.Marshal} instances. {@link LexMarshalWritable} keys are partitioned on
+ * their raw bytes without decoding, and their sort comparator also orders keys within each
+ * partition lexicographically, producing globally sorted output. For the other key types, this
+ * only orders keys across partitions; the order within each partition is determined by the job's
+ * sort comparator.
+ */
+public class MarshalTotalOrderPartitioner<K, V> extends Partitioner<K, V> implements Configurable {
+    /**
+     * Configuration key for the location of the partition file.
+     */
+    public static final String PARTITIONER_PATH = "marshal.totalorder.partitioner.path";
+
+    /**
+     * Name of the partition file used if no path has been configured, relative to the working
+     * directory of the job.
+     */
+    public static final String DEFAULT_PATH = "_marshal_partition.lst";
+
+    private Configuration conf;
+
+    // split points, in sorted order
+    private byte[][] splitPoints;
+
+    /**
+     * Sets the location of the partition file.
+     */
+    public static void setPartitionFile(Configuration conf, Path path) {
+        conf.set(PARTITIONER_PATH, path.toString());
+    }
+
+    /**
+     * Returns the location of the partition file.
+     */
+    public static Path getPartitionFile(Configuration conf) {
+        return new Path(conf.get(PARTITIONER_PATH, DEFAULT_PATH));
+    }
+
+    /**
+     * Writes the given split points, which must already be sorted, to a partition file.
+     */
+    static void writeSplitPoints(Configuration conf, Path path, List<ByteArray> splitPoints)
+            throws IOException {
+        SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+                SequenceFile.Writer.file(path),
+                SequenceFile.Writer.keyClass(BytesWritable.class),
+                SequenceFile.Writer.valueClass(NullWritable.class));
+        try {
+            BytesWritable key = new BytesWritable();
+            for(ByteArray splitPoint : splitPoints) {
+                key.set(splitPoint.backingArray(), splitPoint.beginIndex(), splitPoint.size());
+                writer.append(key, NullWritable.get());
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Reads the split points from a partition file.
+     */
+    static byte[][] readSplitPoints(Configuration conf, Path path) throws IOException {
+        SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(path));
+        try {
+            List<byte[]> splitPoints = new ArrayList<byte[]>();
+            BytesWritable key = new BytesWritable();
+            while(reader.next(key)) {
+                splitPoints.add(key.copyBytes());
+            }
+            return splitPoints.toArray(new byte[splitPoints.size()][]);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+
+        Path path = getPartitionFile(conf);
+        try {
+            this.splitPoints = readSplitPoints(conf, path);
+        }
+        catch(IOException e) {
+            throw new IllegalArgumentException("Could not read partition file " + path, e);
+        }
+
+        for(int i = 1; i < this.splitPoints.length; i++) {
+            byte[] previous = this.splitPoints[i - 1];
+            byte[] current = this.splitPoints[i];
+            if(ByteArray.compare(previous, 0, previous.length, current, 0, current.length) >= 0)
+                throw new IllegalArgumentException("Split points in " + path + " are not sorted.");
+        }
+    }
+
+    @Override
+    public Configuration getConf() {
+        return this.conf;
+    }
+
+    @Override
+    public int getPartition(K key, V value, int numPartitions) {
+        if(numPartitions != this.splitPoints.length + 1)
+            throw new IllegalStateException("Partition file has " + this.splitPoints.length +
+                    " split points, but there are " + numPartitions + " partitions.");
+
+        ByteArray bytes = LexicographicKeys.toByteArray(key);
+        return this.findPartition(bytes.backingArray(), bytes.beginIndex(), bytes.endIndex());
+    }
+
+    /**
+     * Returns the number of split points that are less than or equal to the given key, which is
+     * the partition of the key.
+     */
+    int findPartition(byte[] bytes, int beginIndex, int endIndex) {
+        int low = 0;
+        int high = this.splitPoints.length;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            byte[] splitPoint = this.splitPoints[mid];
+            if(ByteArray.compare(splitPoint, 0, splitPoint.length, bytes, beginIndex, endIndex) <= 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+}
@@ -1,6 +1,10 @@
 package com.fullcontact.marshal.mapreduce;
 
 import com.fullcontact.marshal.Marshal;
+import com.fullcontact.marshal.MarshalException;
+import com.fullcontact.marshal.MutableMarshal;
+import com.fullcontact.marshal.mapreduce.MarshalInstrumentation.Counter;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
 
@@ -16,11 +20,22 @@ import java.io.IOException;
  * zero when two marshals are equal, is guaranteed to return non-zero when two marshals are not
  * equal, and is stable. Otherwise, comparison is undefined.
  *
+ * Reading is done in place into a reused {@link MutableMarshal}, so reading many values into the
+ * same writable, as the framework does when iterating over the values of a reducer, does not
+ * allocate per entry. An immutable Marshal is only built when {@link #get} is called; use {@link
+ * #getMutable} to inspect the last read value without building one.
+ *
  * @author Brandon Vargo
  */
 public class MarshalWritable implements WritableComparable<MarshalWritable> {
     private Marshal marshal = null;
 
+    // reused decode target for readFields
+    private MutableMarshal mutable = null;
+
+    // whether the current value is the one held by mutable
+    private boolean mutableCurrent = false;
+
     static {
         WritableComparator.define(MarshalWritable.class, new Comparator());
     }
@@ -41,26 +56,94 @@ public class MarshalWritable implements WritableComparable<MarshalWritable> {
 
     @Override
     public void write(DataOutput dataOutput) throws IOException {
-        this.marshal.write(dataOutput);
+        if(!MarshalInstrumentation.enabled) {
+            this.writeValue(dataOutput);
+            return;
+        }
+
+        MarshalInstrumentation.Counts counts = MarshalInstrumentation.counts();
+        long position = MarshalInstrumentation.position(dataOutput);
+        long start = counts.start();
+
+        this.writeValue(dataOutput);
+
+        counts.stop(Counter.ENCODE_NANOS, start);
+        counts.add(Counter.ENCODE_CALLS, 1);
+        counts.add(Counter.ENCODED_BYTES,
+                MarshalInstrumentation.distance(position, MarshalInstrumentation.position(dataOutput)));
+        if(this.mutableCurrent && this.marshal == null)
+            counts.addEntries(this.mutable);
+        else
+            counts.addEntries(this.marshal);
+    }
+
+    private void writeValue(DataOutput dataOutput) throws IOException {
+        if(this.mutableCurrent && this.marshal == null)
+            this.mutable.write(dataOutput);
+        else
+            this.marshal.write(dataOutput);
     }
 
     @Override
     public void readFields(DataInput dataInput) throws IOException {
-        this.marshal = Marshal.read(dataInput);
+        if(this.mutable == null)
+            this.mutable = new MutableMarshal();
+
+        if(!MarshalInstrumentation.enabled) {
+            this.mutable.read(dataInput);
+        }
+        else {
+            MarshalInstrumentation.Counts counts = MarshalInstrumentation.counts();
+            long position = MarshalInstrumentation.position(dataInput);
+            long start = counts.start();
+
+            this.mutable.read(dataInput);
+
+            counts.stop(Counter.DECODE_NANOS, start);
+            counts.add(Counter.DECODE_CALLS, 1);
+            counts.add(Counter.DECODED_BYTES,
+                    MarshalInstrumentation.distance(position, MarshalInstrumentation.position(dataInput)));
+        }
+
+        this.mutableCurrent = true;
+        this.marshal = null;
     }
 
     /**
      * Returns the Marshal that this writable currently has loaded. Returns null if there is no current Marshal.
+     *
+     * If the current value was read with {@link #readFields}, the Marshal is built from the decoded
+     * value on the first call after each read.
+     *
+     * @throws IllegalStateException if the value that was read is invalid.
      */
     public Marshal get() {
+        if(this.mutableCurrent && this.marshal == null) {
+            try {
+                this.marshal = this.mutable.freeze();
+            }
+            catch(MarshalException e) {
+                throw new IllegalStateException("Could not decode marshal.", e);
+            }
+        }
         return marshal;
     }
 
+    /**
+     * Returns the reused MutableMarshal holding the value last read by {@link #readFields}, without
+     * building an immutable Marshal. The result is only valid until the next read. Returns null if
+     * the current value was not read with {@link #readFields}.
+     */
+    public MutableMarshal getMutable() {
+        return this.mutableCurrent ? this.mutable : null;
+    }
+
     /**
      * Sets the current Marshal for this writable.
      */
     public void set(Marshal marshal) {
         this.marshal = marshal;
+        this.mutableCurrent = false;
     }
 
     /**
@@ -87,12 +170,13 @@ public class MarshalWritable implements WritableComparable<MarshalWritable> {
 
     @Override
     public int hashCode() {
-        return (this.marshal != null ? this.marshal.hashCode() : 0);
+        Marshal marshal = this.get();
+        return (marshal != null ? marshal.hashCode() : 0);
     }
 
     @Override
     public String toString() {
-        return this.marshal.toString();
+        return this.get().toString();
     }
 
     public static class Comparator extends WritableComparator {
@@ -104,10 +188,25 @@ public class MarshalWritable implements WritableComparable<MarshalWritable> {
            super(cls);
         }
 
+        @Override
+        public void setConf(Configuration conf) {
+            super.setConf(conf);
+            MarshalInstrumentation.configure(conf);
+        }
+
         @Override
         public int compare(byte[] bytes1, int startIndex1, int length1, byte[] bytes2, int startIndex2, int length2) {
-            return WritableComparator.compareBytes(bytes1, startIndex1, length1,
+            if(!MarshalInstrumentation.enabled)
+                return WritableComparator.compareBytes(bytes1, startIndex1, length1,
+                        bytes2, startIndex2, length2);
+
+            MarshalInstrumentation.Counts counts = MarshalInstrumentation.counts();
+            long start = counts.start();
+            int result = WritableComparator.compareBytes(bytes1, startIndex1, length1,
                     bytes2, startIndex2, length2);
+            counts.stop(Counter.COMPARE_NANOS, start);
+            counts.add(Counter.COMPARE_CALLS, 1);
+            return result;
         }
     }
 }
@@ -0,0 +1,91 @@
+package com.fullcontact.marshal.mapreduce;
+
+import com.fullcontact.marshal.ByteArray;
+import com.fullcontact.marshal.Marshal;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for LexMarshalWritable.
+ */
+@RunWith(JUnit4.class)
+public class LexMarshalWritableTest {
+    private static byte[] write(Marshal m) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new LexMarshalWritable(m).write(new DataOutputStream(baos));
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void testSerializationDeserialization() throws IOException {
+        Marshal m1 = Marshal.builder().addString("string1").addInteger(3).addDouble(3.14).build();
+        Marshal m2 = Marshal.builder().addMarshal(m1).addLong(-1L).build();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        new LexMarshalWritable(m1).write(out);
+        new LexMarshalWritable(m2).write(out);
+        new LexMarshalWritable(Marshal.EMPTY).write(out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        LexMarshalWritable writable = new LexMarshalWritable();
+
+        writable.readFields(in);
+        assertEquals(m1.toByteArray(), writable.getBytes());
+        Marshal kept = writable.get();
+        assertEquals(m1, kept);
+
+        writable.readFields(in);
+        assertEquals(m2, writable.get());
+        assertEquals(new LexMarshalWritable(m2), writable);
+        assertEquals(new LexMarshalWritable(m2).hashCode(), writable.hashCode());
+
+        writable.readFields(in);
+        assertEquals(Marshal.EMPTY, writable.get());
+
+        // the decoded marshal does not share the reused buffer
+        assertEquals(m1, kept);
+    }
+
+    @Test
+    public void testCompare__lexicographicOrder() throws IOException {
+        Random r = new Random(0);
+        List<Marshal> marshals = new ArrayList<Marshal>();
+        for(int i = 0; i < 200; i++) {
+            byte[] bytes = new byte[r.nextInt(4)];
+            r.nextBytes(bytes);
+            marshals.add(Marshal.builder()
+                .addString(Integer.toString(r.nextInt(10)))
+                .addByteArray(new ByteArray(bytes))
+                .addLong(r.nextLong())
+                .build());
+        }
+
+        WritableComparator comparator = WritableComparator.get(LexMarshalWritable.class);
+        assertTrue(comparator instanceof LexMarshalWritable.Comparator);
+
+        for(int i = 1; i < marshals.size(); i++) {
+            Marshal m1 = marshals.get(i - 1);
+            Marshal m2 = marshals.get(i);
+            byte[] b1 = write(m1);
+            byte[] b2 = write(m2);
+
+            int expected = Integer.signum(m1.compareTo(m2));
+            assertEquals(expected, Integer.signum(comparator.compare(b1, 0, b1.length, b2, 0, b2.length)));
+            assertEquals(expected, Integer.signum(new LexMarshalWritable(m1).compareTo(new LexMarshalWritable(m2))));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.fullcontact.marshal.mapreduce;
+
+import com.fullcontact.marshal.Marshal;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MarshalGroupingComparator and MarshalSortComparator.
+ */
+@RunWith(JUnit4.class)
+public class MarshalGroupingComparatorTest {
+    private static byte[] write(Marshal m) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new MarshalWritable(m).write(new DataOutputStream(baos));
+        return baos.toByteArray();
+    }
+
+    private static int compare(RawComparator<?> comparator, Marshal m1, Marshal m2) throws IOException {
+        byte[] b1 = write(m1);
+        byte[] b2 = write(m2);
+        return comparator.compare(b1, 0, b1.length, b2, 0, b2.length);
+    }
+
+    @Test
+    public void testGrouping() throws IOException {
+        Configuration conf = new Configuration(false);
+        MarshalGroupingComparator.setPrefixLength(conf, 2);
+        MarshalGroupingComparator grouping =
+            ReflectionUtils.newInstance(MarshalGroupingComparator.class, conf);
+        MarshalSortComparator sort = new MarshalSortComparator();
+
+        Marshal m1 = Marshal.builder().addString("user").addLong(42L).addLong(3L).build();
+        Marshal m2 = Marshal.builder().addString("user").addLong(42L).addLong(1L).build();
+        Marshal m3 = Marshal.builder().addString("user").addLong(43L).addLong(1L).build();
+
+        assertEquals(0, compare(grouping, m1, m2));
+        assertTrue(compare(sort, m1, m2) != 0);
+        assertTrue(compare(grouping, m1, m3) != 0);
+        assertEquals(Integer.signum(compare(sort, m1, m3)), Integer.signum(compare(grouping, m1, m3)));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testGrouping__unconfigured() {
+        ReflectionUtils.newInstance(MarshalGroupingComparator.class, new Configuration(false));
+    }
+}
@@ -0,0 +1,218 @@
+package com.fullcontact.marshal.mapreduce;
+
+import com.fullcontact.marshal.Marshal;
+import com.fullcontact.marshal.mapreduce.MarshalInstrumentation.Counter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.output.NullOutputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MarshalInstrumentation.
+ */
+@RunWith(JUnit4.class)
+public class MarshalInstrumentationTest {
+    @Before
+    public void setUp() {
+        Configuration conf = new Configuration();
+        conf.setBoolean(MarshalInstrumentation.ENABLED, true);
+        conf.setInt(MarshalInstrumentation.SAMPLE_INTERVAL, 1);
+        MarshalInstrumentation.configure(conf);
+
+        // discard anything recorded by other tests
+        MarshalInstrumentation.collect();
+    }
+
+    @After
+    public void tearDown() {
+        MarshalInstrumentation.configure(disabled());
+        MarshalInstrumentation.collect();
+    }
+
+    private static Configuration disabled() {
+        Configuration conf = new Configuration();
+        conf.setBoolean(MarshalInstrumentation.ENABLED, false);
+        return conf;
+    }
+
+    @Test
+    public void testConfigure() {
+        assertTrue(MarshalInstrumentation.isEnabled());
+        MarshalInstrumentation.configure(disabled());
+        assertFalse(MarshalInstrumentation.isEnabled());
+    }
+
+    @Test
+    public void testConfigure__absent() {
+        // a class configured without the setting does not disable the instrumentation
+        MarshalInstrumentation.configure(new Configuration());
+        assertTrue(MarshalInstrumentation.isEnabled());
+    }
+
+    @Test
+    public void testDisabled() throws IOException {
+        MarshalInstrumentation.configure(disabled());
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        new MarshalWritable(Marshal.builder().addString("a").build()).write(out);
+
+        assertFalse(MarshalInstrumentation.collect().iterator().hasNext());
+    }
+
+    @Test
+    public void testMarshalWritable() throws IOException {
+        Marshal marshal = Marshal.builder().addString("a").addLong(1L).addLong(2L).build();
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        new MarshalWritable(marshal).write(out);
+        new MarshalWritable(marshal).write(out);
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        MarshalWritable writable = new MarshalWritable();
+        writable.readFields(in);
+
+        int length = out.getLength() / 2;
+        new MarshalWritable.Comparator().compare(out.getData(), 0, length,
+                out.getData(), length, length);
+
+        Counters counters = MarshalInstrumentation.collect();
+        assertEquals(2, counters.findCounter(Counter.ENCODE_CALLS).getValue());
+        assertEquals(out.getLength(), counters.findCounter(Counter.ENCODED_BYTES).getValue());
+        assertEquals(1, counters.findCounter(Counter.DECODE_CALLS).getValue());
+        assertEquals(length, counters.findCounter(Counter.DECODED_BYTES).getValue());
+        assertEquals(1, counters.findCounter(Counter.COMPARE_CALLS).getValue());
+        assertEquals(2, counters.findCounter(MarshalInstrumentation.ENTRY_GROUP, "STRING").getValue());
+        assertEquals(4, counters.findCounter(MarshalInstrumentation.ENTRY_GROUP, "LONG").getValue());
+
+        // counts are reset once collected
+        assertFalse(MarshalInstrumentation.collect().iterator().hasNext());
+    }
+
+    @Test
+    public void testLexMarshalWritable() throws IOException {
+        Marshal marshal = Marshal.builder().addByte((byte)0xFE).addInteger(1).build();
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        new LexMarshalWritable(marshal).write(out);
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        new LexMarshalWritable().readFields(in);
+
+        Counters counters = MarshalInstrumentation.collect();
+        assertEquals(1, counters.findCounter(Counter.ENCODE_CALLS).getValue());
+        assertEquals(out.getLength(), counters.findCounter(Counter.ENCODED_BYTES).getValue());
+        assertEquals(out.getLength(), counters.findCounter(Counter.DECODED_BYTES).getValue());
+        assertEquals(1, counters.findCounter(Counter.ESCAPE_BYTES).getValue());
+        assertEquals(1, counters.findCounter(MarshalInstrumentation.ENTRY_GROUP, "BYTE").getValue());
+        assertEquals(1, counters.findCounter(MarshalInstrumentation.ENTRY_GROUP, "INTEGER").getValue());
+    }
+
+    @Test
+    public void testSampledTime() throws IOException {
+        Configuration conf = new Configuration();
+        conf.setBoolean(MarshalInstrumentation.ENABLED, true);
+        conf.setInt(MarshalInstrumentation.SAMPLE_INTERVAL, 3);
+        MarshalInstrumentation.configure(conf);
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        Marshal marshal = Marshal.builder().addString("a").build();
+        for(int i = 0; i < 100; i++)
+            new MarshalWritable(marshal).write(out);
+
+        Counters counters = MarshalInstrumentation.collect();
+        assertEquals(100, counters.findCounter(Counter.ENCODE_CALLS).getValue());
+        // the interval is rounded up to 4, and each sampled time is scaled by it
+        assertEquals(0, counters.findCounter(Counter.ENCODE_NANOS).getValue() % 4);
+    }
+
+    @Test
+    public void testOtherThreads() throws Exception {
+        final Marshal marshal = Marshal.builder().addString("a").build();
+        int before = MarshalInstrumentation.threadCount();
+
+        for(int i = 0; i < 3; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        new MarshalWritable(marshal).write(new DataOutputBuffer());
+                    }
+                    catch(IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            thread.start();
+            thread.join();
+        }
+
+        // the counts of threads that have ended are published once, and the threads forgotten
+        Counters counters = MarshalInstrumentation.collect();
+        assertEquals(3, counters.findCounter(Counter.ENCODE_CALLS).getValue());
+        assertTrue(MarshalInstrumentation.threadCount() <= before);
+        assertFalse(MarshalInstrumentation.collect().iterator().hasNext());
+    }
+
+    @Test
+    public void testOutputFormat() throws Exception {
+        Configuration conf = new Configuration();
+        conf.setClass(InstrumentedOutputFormat.OUTPUT_FORMAT, NullOutputFormat.class, OutputFormat.class);
+        final Counters taskCounters = new Counters();
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID(), new StatusReporter() {
+            @Override
+            public org.apache.hadoop.mapreduce.Counter getCounter(Enum<?> name) {
+                return taskCounters.findCounter(name);
+            }
+
+            @Override
+            public org.apache.hadoop.mapreduce.Counter getCounter(String group, String name) {
+                return taskCounters.findCounter(group, name);
+            }
+
+            @Override
+            public void progress() {}
+
+            @Override
+            public float getProgress() {
+                return 0;
+            }
+
+            @Override
+            public void setStatus(String status) {}
+        });
+        OutputCommitter committer = new InstrumentedOutputFormat<Object, Object>().getOutputCommitter(context);
+
+        // as if written by the final spill, after the task's cleanup
+        new MarshalWritable(Marshal.builder().addString("a").build()).write(new DataOutputBuffer());
+
+        // the committer of the wrapped format does not need a commit
+        assertFalse(committer.needsTaskCommit(context));
+        assertEquals(1, taskCounters.findCounter(Counter.ENCODE_CALLS).getValue());
+        assertFalse(MarshalInstrumentation.collect().iterator().hasNext());
+    }
+
+    @Test
+    public void testEscapeBytes() {
+        byte[] bytes = new byte[] { 0x00, (byte)0xFE, (byte)0xFE, (byte)0xFE, (byte)0xFE, (byte)0xFE };
+        assertEquals(2, MarshalInstrumentation.escapeBytes(bytes, 0, bytes.length));
+        assertEquals(0, MarshalInstrumentation.escapeBytes(bytes, 0, 2));
+    }
+}
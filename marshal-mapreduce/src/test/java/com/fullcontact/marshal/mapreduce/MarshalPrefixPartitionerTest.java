@@ -0,0 +1,61 @@
+package com.fullcontact.marshal.mapreduce;
+
+import com.fullcontact.marshal.Marshal;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MarshalPrefixPartitioner.
+ */
+@RunWith(JUnit4.class)
+public class MarshalPrefixPartitionerTest {
+    @SuppressWarnings("unchecked")
+    private static MarshalPrefixPartitioner<NullWritable> partitioner(int n) {
+        Configuration conf = new Configuration(false);
+        MarshalPrefixPartitioner.setPrefixLength(conf, n);
+        return ReflectionUtils.newInstance(MarshalPrefixPartitioner.class, conf);
+    }
+
+    @Test
+    public void testSamePrefixSamePartition() {
+        MarshalPrefixPartitioner<NullWritable> partitioner = partitioner(2);
+
+        for(long i = 0; i < 100; i++) {
+            Marshal m1 = Marshal.builder().addString("user").addLong(i).addLong(1L).build();
+            Marshal m2 = Marshal.builder().addString("user").addLong(i).addString("other").build();
+            Marshal m3 = Marshal.builder().addString("user").addLong(i).build();
+
+            int p = partitioner.getPartition(new MarshalWritable(m1), NullWritable.get(), 13);
+            assertTrue(p >= 0 && p < 13);
+            assertEquals(p, partitioner.getPartition(new MarshalWritable(m2), NullWritable.get(), 13));
+            assertEquals(p, partitioner.getPartition(new MarshalWritable(m3), NullWritable.get(), 13));
+        }
+    }
+
+    @Test
+    public void testSpread() {
+        MarshalPrefixPartitioner<NullWritable> partitioner = partitioner(1);
+
+        int[] counts = new int[8];
+        for(int i = 0; i < 8000; i++) {
+            Marshal m = Marshal.builder().addInteger(i).addString("ignored").build();
+            counts[partitioner.getPartition(new MarshalWritable(m), NullWritable.get(), 8)]++;
+        }
+
+        for(int count : counts)
+            assertTrue(count > 800 && count < 1200);
+    }
+
+    @Test
+    public void testStable() {
+        // the hash is persisted implicitly by partitioned output; it must not change between JVMs
+        Marshal m = Marshal.builder().addString("stable").addLong(42L).build();
+        assertEquals(0x1D28958F9CDD00B4L, partitioner(2).hash(m));
+    }
+}
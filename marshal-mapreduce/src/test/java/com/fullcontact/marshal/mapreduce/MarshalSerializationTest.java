@@ -0,0 +1,70 @@
+package com.fullcontact.marshal.mapreduce;
+
+import com.fullcontact.marshal.Marshal;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MarshalSerialization.
+ */
+@RunWith(JUnit4.class)
+public class MarshalSerializationTest {
+    @Test
+    public void testRegister() {
+        Configuration conf = new Configuration();
+        MarshalSerialization.register(conf);
+        MarshalSerialization.register(conf);
+
+        String[] serializations = conf.getStrings("io.serializations");
+        assertEquals(MarshalSerialization.class.getName(), serializations[serializations.length - 1]);
+        assertEquals(1, Collections.frequency(Arrays.asList(serializations),
+                    MarshalSerialization.class.getName()));
+    }
+
+    @Test
+    public void testSerializeDeserialize() throws IOException {
+        Configuration conf = new Configuration();
+        MarshalSerialization.register(conf);
+        SerializationFactory factory = new SerializationFactory(conf);
+
+        Marshal m1 = Marshal.builder().addString("one").addLong(1L).build();
+        Marshal m2 = Marshal.builder().addMarshal(m1).addDouble(2.0).build();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Serializer<Marshal> serializer = factory.getSerializer(Marshal.class);
+        serializer.open(baos);
+        serializer.serialize(m1);
+        serializer.serialize(m2);
+        serializer.serialize(Marshal.EMPTY);
+        serializer.close();
+
+        // identical to the bytes written by MarshalWritable
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        DataOutputStream expectedOut = new DataOutputStream(expected);
+        new MarshalWritable(m1).write(expectedOut);
+        new MarshalWritable(m2).write(expectedOut);
+        new MarshalWritable(Marshal.EMPTY).write(expectedOut);
+        assertArrayEquals(expected.toByteArray(), baos.toByteArray());
+
+        Deserializer<Marshal> deserializer = factory.getDeserializer(Marshal.class);
+        deserializer.open(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(m1, deserializer.deserialize(null));
+        assertEquals(m2, deserializer.deserialize(m1));
+        assertEquals(Marshal.EMPTY, deserializer.deserialize(null));
+        deserializer.close();
+    }
+}
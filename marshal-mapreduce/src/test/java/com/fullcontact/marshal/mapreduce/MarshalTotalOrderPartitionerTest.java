@@ -0,0 +1,141 @@
+package com.fullcontact.marshal.mapreduce;
+
+import com.fullcontact.marshal.ByteArray;
+import com.fullcontact.marshal.Marshal;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.InputSampler;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MarshalTotalOrderPartitioner and MarshalInputSampler.
+ */
+@RunWith(JUnit4.class)
+public class MarshalTotalOrderPartitionerTest {
+    private File directory;
+    private Configuration conf;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = File.createTempFile("marshal-totalorder", "");
+        this.directory.delete();
+        this.directory.mkdirs();
+
+        this.conf = new Configuration();
+        this.conf.set("fs.defaultFS", "file:///");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileSystem.getLocal(this.conf).delete(new Path(this.directory.getPath()), true);
+    }
+
+    private static Marshal key(int i) {
+        // negative numbers sort after positive numbers in the lexicographic order
+        return Marshal.builder().addString("k").addInteger(i).build();
+    }
+
+    @Test
+    public void testComputeSplitPoints() {
+        List<ByteArray> sample = new ArrayList<ByteArray>();
+        for(int i = 99; i >= 0; i--)
+            sample.add(key(i).toByteArray());
+
+        List<ByteArray> splitPoints = MarshalInputSampler.computeSplitPoints(sample, 4);
+        assertEquals(Arrays.asList(key(25).toByteArray(), key(50).toByteArray(), key(75).toByteArray()),
+                splitPoints);
+    }
+
+    @Test
+    public void testComputeSplitPoints__duplicates() {
+        List<ByteArray> sample = new ArrayList<ByteArray>();
+        for(int i = 0; i < 10; i++)
+            sample.add(key(0).toByteArray());
+        sample.add(key(1).toByteArray());
+        sample.add(key(2).toByteArray());
+
+        List<ByteArray> splitPoints = MarshalInputSampler.computeSplitPoints(sample, 3);
+        assertEquals(Arrays.asList(key(1).toByteArray(), key(2).toByteArray()), splitPoints);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testComputeSplitPoints__tooFewDistinct() {
+        List<ByteArray> sample = new ArrayList<ByteArray>();
+        for(int i = 0; i < 10; i++)
+            sample.add(key(0).toByteArray());
+
+        MarshalInputSampler.computeSplitPoints(sample, 2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSampleAndPartition() throws Exception {
+        // write shuffled input
+        Path input = new Path(this.directory.getPath(), "input.seq");
+        List<Integer> values = new ArrayList<Integer>();
+        for(int i = 0; i < 1000; i++)
+            values.add(i);
+        Collections.shuffle(values, new Random(0));
+
+        SequenceFile.Writer writer = SequenceFile.createWriter(this.conf,
+                SequenceFile.Writer.file(input),
+                SequenceFile.Writer.keyClass(MarshalWritable.class),
+                SequenceFile.Writer.valueClass(NullWritable.class));
+        try {
+            for(int i : values)
+                writer.append(new MarshalWritable(key(i)), NullWritable.get());
+        }
+        finally {
+            writer.close();
+        }
+
+        Job job = Job.getInstance(this.conf);
+        job.setInputFormatClass(SequenceFileInputFormat.class);
+        FileInputFormat.addInputPath(job, input);
+        job.setNumReduceTasks(4);
+        MarshalTotalOrderPartitioner.setPartitionFile(job.getConfiguration(),
+                new Path(this.directory.getPath(), "partitions"));
+
+        MarshalInputSampler.writePartitionFile(job,
+                new InputSampler.SplitSampler<MarshalWritable, NullWritable>(1000));
+
+        MarshalTotalOrderPartitioner<MarshalWritable, NullWritable> partitioner =
+            ReflectionUtils.newInstance(MarshalTotalOrderPartitioner.class, job.getConfiguration());
+
+        // partitions must be ordered and balanced
+        int[] counts = new int[4];
+        int lastPartition = 0;
+        List<Marshal> sorted = new ArrayList<Marshal>();
+        for(int i = 0; i < 1000; i++)
+            sorted.add(key(i));
+        Collections.sort(sorted);
+        for(Marshal m : sorted) {
+            int partition = partitioner.getPartition(new MarshalWritable(m), NullWritable.get(), 4);
+            assertTrue(partition >= lastPartition);
+            lastPartition = partition;
+            counts[partition]++;
+        }
+        for(int count : counts)
+            assertEquals(250, count);
+    }
+}
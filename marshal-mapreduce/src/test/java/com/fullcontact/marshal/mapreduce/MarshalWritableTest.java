@@ -44,6 +44,41 @@ public class MarshalWritableTest {
         assertEquals(input, output);
     }
 
+    @Test
+    public void testReadFields__reuse() throws IOException {
+        Marshal marshal1 = Marshal.builder().addString("one").addLong(1L).build();
+        Marshal marshal2 = Marshal.builder().addString("two").addInteger(2).addDouble(2.0).build();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(8192);
+        DataOutputStream out = new DataOutputStream(baos);
+        new MarshalWritable(marshal1).write(out);
+        new MarshalWritable(marshal2).write(out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        MarshalWritable writable = new MarshalWritable();
+
+        writable.readFields(in);
+        assertEquals("one", writable.getMutable().getStringAt(0));
+        Marshal kept = writable.get();
+        assertEquals(marshal1, kept);
+
+        writable.readFields(in);
+        assertEquals(2, writable.getMutable().getIntegerAt(1));
+        assertEquals(marshal2, writable.get());
+        assertEquals(marshal1, kept);
+
+        // writing a value that was read reproduces the original bytes
+        ByteArrayOutputStream rewritten = new ByteArrayOutputStream(8192);
+        writable.write(new DataOutputStream(rewritten));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream(8192);
+        marshal2.write(new DataOutputStream(expected));
+        assertArrayEquals(expected.toByteArray(), rewritten.toByteArray());
+
+        writable.set(marshal1);
+        assertNull(writable.getMutable());
+        assertEquals(marshal1, writable.get());
+    }
+
     @Test
     public void testCompare__comparator() throws IOException {
         String string1 = "string1";
@@ -0,0 +1,544 @@
+package com.fullcontact.marshal.processor;
+
+import com.fullcontact.marshal.EntryType;
+import com.fullcontact.marshal.MarshalCodeGenerator;
+import com.fullcontact.marshal.MarshalField;
+import com.fullcontact.marshal.MarshalSchema;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Annotation processor that generates a mapper for every class with {@link MarshalField} fields.
+ *
+ * For a class Foo, the mapper FooMarshalMapper and the {@link com.fullcontact.marshal.MarshalRecord}
+ * FooMarshalRecord of its schema are generated in the same package (for a nested class Outer.Foo,
+ * Outer_FooMarshalMapper and Outer_FooMarshalRecord). The mapper has static methods:
+ *
+ * <ul>
+ * <li>SCHEMA, the {@link com.fullcontact.marshal.MarshalSchema} of the class.</li>
+ * <li>write, writer and toBytes, which set each field on a {@link
+ * com.fullcontact.marshal.MarshalWriter}.</li>
+ * <li>read and fromBytes, which create an instance from the getters of a {@link
+ * com.fullcontact.marshal.MarshalCursor}.</li>
+ * <li>toRecord and fromRecord, which copy the fields to and from the record.</li>
+ * <li>toLexicographicBytes and fromLexicographicBytes, which encode and decode the lexicographic
+ * format of {@link com.fullcontact.marshal.Marshal#toBytes} field by field through the record.</li>
+ * <li>toMarshal and fromMarshal, which convert to and from the generic form.</li>
+ * </ul>
+ *
+ * The generated code accesses the fields directly, so no reflection happens at runtime. Fields
+ * whose type is another class with annotated fields become nested marshals, mapped by the mapper
+ * of that class; the record holds them as generic marshals. A class cannot be nested in itself,
+ * directly or through other classes. Invalid fields are reported as compilation errors.
+ *
+ * The processor is registered as a service, so it runs whenever this module is on the compile
+ * class path.
+ */
+@SupportedAnnotationTypes("com.fullcontact.marshal.MarshalField")
+public class MarshalMapperProcessor extends AbstractProcessor {
+    private static final String MARSHAL_PACKAGE = "com.fullcontact.marshal.";
+
+    // the supported kinds of fields, named as in the marshal builder and getters
+    private enum FieldKind {
+        BYTE("Byte", "BYTE"),
+        INTEGER("Integer", "INTEGER"),
+        LONG("Long", "LONG"),
+        DOUBLE("Double", "DOUBLE"),
+        STRING("String", "STRING"),
+        BYTE_ARRAY("ByteArray", "BYTE_ARRAY"),
+        NESTED("Marshal", "MARSHAL");
+
+        private final String typeName;
+        private final String entryType;
+
+        private FieldKind(String typeName, String entryType) {
+            this.typeName = typeName;
+            this.entryType = entryType;
+        }
+    }
+
+    // orders the fields of a class by their marshal field order
+    private static final Comparator<VariableElement> ORDER = new Comparator<VariableElement>() {
+        @Override
+        public int compare(VariableElement a, VariableElement b) {
+            return order(a) < order(b) ? -1 : (order(a) == order(b) ? 0 : 1);
+        }
+    };
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        // group the annotated fields by class, in source order
+        Map<TypeElement, List<VariableElement>> classes = new LinkedHashMap<TypeElement, List<VariableElement>>();
+        for(Element element : round.getElementsAnnotatedWith(MarshalField.class)) {
+            if(element.getKind() != ElementKind.FIELD)
+                continue;
+
+            TypeElement type = (TypeElement)element.getEnclosingElement();
+            List<VariableElement> fields = classes.get(type);
+            if(fields == null) {
+                fields = new ArrayList<VariableElement>();
+                classes.put(type, fields);
+            }
+            fields.add((VariableElement)element);
+        }
+
+        for(Map.Entry<TypeElement, List<VariableElement>> entry : classes.entrySet()) {
+            List<VariableElement> fields = entry.getValue();
+            Collections.sort(fields, ORDER);
+
+            if(this.validate(entry.getKey(), fields))
+                this.generate(entry.getKey(), fields);
+        }
+
+        return true;
+    }
+
+    private boolean validate(TypeElement type, List<VariableElement> fields) {
+        boolean valid = true;
+
+        if(type.getModifiers().contains(Modifier.PRIVATE)
+                || type.getModifiers().contains(Modifier.ABSTRACT)
+                || (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC))
+                || (type.getNestingKind() != NestingKind.TOP_LEVEL && type.getNestingKind() != NestingKind.MEMBER)) {
+            this.error(type, "Classes with marshal fields must be top-level or static member classes that are not private or abstract.");
+            valid = false;
+        }
+
+        boolean constructor = false;
+        for(ExecutableElement method : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if(method.getParameters().isEmpty() && !method.getModifiers().contains(Modifier.PRIVATE))
+                constructor = true;
+        }
+        if(!constructor) {
+            this.error(type, "Classes with marshal fields need a constructor without arguments that is not private.");
+            valid = false;
+        }
+
+        for(int i = 0; i < fields.size(); i++) {
+            VariableElement field = fields.get(i);
+            Set<Modifier> modifiers = field.getModifiers();
+            if(modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+                this.error(field, "Marshal fields must not be private, static or final.");
+                valid = false;
+            }
+            if(this.kind(field.asType()) == null) {
+                this.error(field, "Marshal fields must be byte, int, long, double, String, ByteArray or a class with marshal fields, not " + field.asType() + ".");
+                valid = false;
+            }
+            else if(this.kind(field.asType()) == FieldKind.NESTED
+                    && this.nests(nestedType(field), type, new HashSet<TypeElement>())) {
+                // the schema of the class would contain itself
+                this.error(field, "Marshal fields must not nest " + type.getQualifiedName() + " in itself.");
+                valid = false;
+            }
+            if(field.getSimpleName().contentEquals("SCHEMA")) {
+                this.error(field, "Marshal fields must not be named SCHEMA.");
+                valid = false;
+            }
+            if(i > 0 && order(fields.get(i - 1)) == order(field)) {
+                this.error(field, "Marshal field order " + order(field) + " is used more than once.");
+                valid = false;
+            }
+        }
+
+        return valid;
+    }
+
+    // whether the class or the classes of its nested fields are the target
+    private boolean nests(TypeElement type, TypeElement target, Set<TypeElement> visited) {
+        if(type.equals(target))
+            return true;
+        if(!visited.add(type))
+            return false;
+        for(VariableElement field : annotatedFields(type)) {
+            if(this.kind(field.asType()) == FieldKind.NESTED && this.nests(nestedType(field), target, visited))
+                return true;
+        }
+        return false;
+    }
+
+    private void generate(TypeElement type, List<VariableElement> fields) {
+        // classes nesting an invalid class are reported by the validation of that class
+        MarshalSchema recordSchema = this.schema(type, new HashSet<TypeElement>());
+        if(recordSchema == null)
+            return;
+
+        String className = type.getQualifiedName().toString();
+        String mapperName = generatedName(type, "MarshalMapper");
+        String recordName = generatedName(type, "MarshalRecord");
+        String packageName = this.packageName(type);
+        String qualifiedRecordName = packageName.isEmpty() ? recordName : packageName + "." + recordName;
+
+        String[] fieldNames = new String[fields.size()];
+        for(int i = 0; i < fields.size(); i++)
+            fieldNames[i] = fields.get(i).getSimpleName().toString();
+        this.write(type, qualifiedRecordName, MarshalCodeGenerator.generate(recordSchema, qualifiedRecordName, fieldNames));
+
+        Source source = new Source();
+        if(!packageName.isEmpty())
+            source.line("package %s;", packageName).line();
+        source.line("/**")
+            .line(" * Maps {@link %s} to and from marshals. Generated by MarshalMapperProcessor.", className)
+            .line(" */")
+            .open("public final class %s {", mapperName);
+
+        // schema
+        StringBuilder schema = new StringBuilder(MARSHAL_PACKAGE + "MarshalSchema.builder()");
+        for(VariableElement field : fields) {
+            FieldKind kind = this.kind(field.asType());
+            if(kind == FieldKind.NESTED)
+                schema.append(".addMarshal(").append(this.mapper(field)).append(".SCHEMA)");
+            else
+                schema.append(".add(" + MARSHAL_PACKAGE + "EntryType.").append(kind.entryType).append(")");
+        }
+        source.line("public static final %sMarshalSchema SCHEMA = %s.build();", MARSHAL_PACKAGE, schema)
+            .line()
+            .line("// static utility class")
+            .line("private %s() {}", mapperName)
+            .line();
+
+        // schema format
+        source.line("/**")
+            .line(" * Sets the fields of the given writer of {@link #SCHEMA} to the fields of the value.")
+            .line(" */")
+            .open("public static void write(%s value, %sMarshalWriter writer) {", className, MARSHAL_PACKAGE);
+        for(int i = 0; i < fields.size(); i++) {
+            VariableElement field = fields.get(i);
+            FieldKind kind = this.kind(field.asType());
+            if(kind == FieldKind.NESTED)
+                source.line("writer.setMarshal(%d, %s.writer(value.%s));", i, this.mapper(field), field.getSimpleName());
+            else
+                source.line("writer.set%s(%d, value.%s);", kind.typeName, i, field.getSimpleName());
+        }
+        source.close("}").line();
+
+        source.line("/**")
+            .line(" * Returns a writer of {@link #SCHEMA} with the fields of the value.")
+            .line(" */")
+            .open("public static %sMarshalWriter writer(%s value) {", MARSHAL_PACKAGE, className)
+            .line("%sMarshalWriter writer = new %sMarshalWriter(SCHEMA);", MARSHAL_PACKAGE, MARSHAL_PACKAGE)
+            .line("write(value, writer);")
+            .line("return writer;")
+            .close("}")
+            .line();
+
+        source.line("/**")
+            .line(" * Returns the value in the schema format of {@link #SCHEMA}.")
+            .line(" */")
+            .open("public static byte[] toBytes(%s value) {", className)
+            .line("return writer(value).toBytes();")
+            .close("}")
+            .line();
+
+        source.line("/**")
+            .line(" * Creates a value from the marshal the given cursor of {@link #SCHEMA} is on.")
+            .line(" */")
+            .open("public static %s read(%sMarshalCursor cursor) throws %sMarshalException {",
+                    className, MARSHAL_PACKAGE, MARSHAL_PACKAGE)
+            .line("%s value = new %s();", className, className);
+        for(int i = 0; i < fields.size(); i++) {
+            VariableElement field = fields.get(i);
+            FieldKind kind = this.kind(field.asType());
+            if(kind == FieldKind.NESTED)
+                source.line("value.%s = %s.fromBytes(cursor.getEncodedMarshal(%d));", field.getSimpleName(), this.mapper(field), i);
+            else
+                source.line("value.%s = cursor.get%s(%d);", field.getSimpleName(), kind.typeName, i);
+        }
+        source.line("return value;").close("}").line();
+
+        source.line("/**")
+            .line(" * Creates a value from a marshal in the schema format of {@link #SCHEMA}.")
+            .line(" */")
+            .open("public static %s fromBytes(%sByteArray bytes) throws %sMarshalException {",
+                    className, MARSHAL_PACKAGE, MARSHAL_PACKAGE)
+            .line("return read(new %sMarshalCursor(SCHEMA).wrap(bytes));", MARSHAL_PACKAGE)
+            .close("}")
+            .line();
+
+        source.line("/**")
+            .line(" * Creates a value from a marshal in the schema format of {@link #SCHEMA}.")
+            .line(" */")
+            .open("public static %s fromBytes(byte[] bytes) throws %sMarshalException {", className, MARSHAL_PACKAGE)
+            .line("return fromBytes(new %sByteArray(bytes));", MARSHAL_PACKAGE)
+            .close("}")
+            .line();
+
+        // lexicographic format
+        source.line("/**")
+            .line(" * Returns a record of {@link #SCHEMA} with the fields of the value.")
+            .line(" */")
+            .open("public static %s toRecord(%s value) {", qualifiedRecordName, className)
+            .line("%s record = new %s();", qualifiedRecordName, qualifiedRecordName);
+        for(VariableElement field : fields) {
+            if(this.kind(field.asType()) == FieldKind.NESTED)
+                source.line("record.%s = %s.toMarshal(value.%s);", field.getSimpleName(), this.mapper(field), field.getSimpleName());
+            else
+                source.line("record.%s = value.%s;", field.getSimpleName(), field.getSimpleName());
+        }
+        source.line("return record;").close("}").line();
+
+        source.line("/**")
+            .line(" * Creates a value from a record of {@link #SCHEMA}.")
+            .line(" *")
+            .line(" * @throws %sMarshalException if a nested marshal does not match its schema.", MARSHAL_PACKAGE)
+            .line(" */")
+            .open("public static %s fromRecord(%s record) throws %sMarshalException {",
+                    className, qualifiedRecordName, MARSHAL_PACKAGE)
+            .line("%s value = new %s();", className, className);
+        for(VariableElement field : fields) {
+            if(this.kind(field.asType()) == FieldKind.NESTED)
+                source.line("value.%s = %s.fromMarshal(record.%s);", field.getSimpleName(), this.mapper(field), field.getSimpleName());
+            else
+                source.line("value.%s = record.%s;", field.getSimpleName(), field.getSimpleName());
+        }
+        source.line("return value;").close("}").line();
+
+        source.line("/**")
+            .line(" * Returns the value in the lexicographic format, the same as {@code toMarshal(value).toBytes()}.")
+            .line(" */")
+            .open("public static byte[] toLexicographicBytes(%s value) {", className)
+            .line("return toRecord(value).toBytes();")
+            .close("}")
+            .line();
+
+        source.line("/**")
+            .line(" * Creates a value from a marshal in the lexicographic format.")
+            .line(" *")
+            .line(" * @throws %sMarshalException if the bytes are not a marshal of {@link #SCHEMA}.", MARSHAL_PACKAGE)
+            .line(" */")
+            .open("public static %s fromLexicographicBytes(%sByteArray bytes) throws %sMarshalException {",
+                    className, MARSHAL_PACKAGE, MARSHAL_PACKAGE)
+            .line("%s record = new %s();", qualifiedRecordName, qualifiedRecordName)
+            .line("record.readBytes(bytes);")
+            .line("return fromRecord(record);")
+            .close("}")
+            .line();
+
+        source.line("/**")
+            .line(" * Creates a value from a marshal in the lexicographic format.")
+            .line(" *")
+            .line(" * @throws %sMarshalException if the bytes are not a marshal of {@link #SCHEMA}.", MARSHAL_PACKAGE)
+            .line(" */")
+            .open("public static %s fromLexicographicBytes(byte[] bytes) throws %sMarshalException {",
+                    className, MARSHAL_PACKAGE)
+            .line("return fromLexicographicBytes(new %sByteArray(bytes));", MARSHAL_PACKAGE)
+            .close("}")
+            .line();
+
+        // generic form
+        source.line("/**")
+            .line(" * Returns the value as a generic marshal.")
+            .line(" */")
+            .open("public static %sMarshal toMarshal(%s value) {", MARSHAL_PACKAGE, className)
+            .line("return %sMarshal.builder()", MARSHAL_PACKAGE);
+        for(VariableElement field : fields) {
+            FieldKind kind = this.kind(field.asType());
+            if(kind == FieldKind.NESTED)
+                source.line("    .addMarshal(%s.toMarshal(value.%s))", this.mapper(field), field.getSimpleName());
+            else
+                source.line("    .add%s(value.%s)", kind.typeName, field.getSimpleName());
+        }
+        source.line("    .build();").close("}").line();
+
+        source.line("/**")
+            .line(" * Creates a value from a generic marshal.")
+            .line(" *")
+            .line(" * @throws %sMarshalException if the marshal does not match {@link #SCHEMA}.", MARSHAL_PACKAGE)
+            .line(" */")
+            .open("public static %s fromMarshal(%sMarshal marshal) throws %sMarshalException {",
+                    className, MARSHAL_PACKAGE, MARSHAL_PACKAGE)
+            .line("if(!SCHEMA.matches(marshal))")
+            .line("    throw new %sMarshalException(\"Expected a marshal of \" + SCHEMA + \".\");", MARSHAL_PACKAGE)
+            .line("%s value = new %s();", className, className);
+        for(int i = 0; i < fields.size(); i++) {
+            VariableElement field = fields.get(i);
+            FieldKind kind = this.kind(field.asType());
+            if(kind == FieldKind.NESTED)
+                source.line("value.%s = %s.fromMarshal(marshal.getMarshalAt(%d));", field.getSimpleName(), this.mapper(field), i);
+            else
+                source.line("value.%s = marshal.get%sAt(%d);", field.getSimpleName(), kind.typeName, i);
+        }
+        source.line("return value;").close("}");
+
+        source.close("}");
+
+        this.write(type, packageName.isEmpty() ? mapperName : packageName + "." + mapperName, source.toString());
+    }
+
+    // the schema of the class, or null if a field or a nested class is invalid
+    private MarshalSchema schema(TypeElement type, Set<TypeElement> enclosing) {
+        if(!enclosing.add(type))
+            return null;
+
+        MarshalSchema.Builder builder = MarshalSchema.builder();
+        for(VariableElement field : annotatedFields(type)) {
+            FieldKind kind = this.kind(field.asType());
+            if(kind == null)
+                return null;
+            if(kind == FieldKind.NESTED) {
+                MarshalSchema schema = this.schema(nestedType(field), enclosing);
+                if(schema == null)
+                    return null;
+                builder.addMarshal(schema);
+            }
+            else {
+                builder.add(EntryType.valueOf(kind.entryType));
+            }
+        }
+
+        enclosing.remove(type);
+        return builder.build();
+    }
+
+    private void write(TypeElement type, String qualifiedName, String source) {
+        try {
+            Writer writer = this.processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter();
+            try {
+                writer.write(source);
+            }
+            finally {
+                writer.close();
+            }
+        }
+        catch(IOException e) {
+            this.error(type, "Could not write " + qualifiedName + ": " + e.getMessage());
+        }
+    }
+
+    private FieldKind kind(TypeMirror type) {
+        switch(type.getKind()) {
+            case BYTE:
+                return FieldKind.BYTE;
+            case INT:
+                return FieldKind.INTEGER;
+            case LONG:
+                return FieldKind.LONG;
+            case DOUBLE:
+                return FieldKind.DOUBLE;
+            case DECLARED:
+                TypeElement element = (TypeElement)((DeclaredType)type).asElement();
+                String name = element.getQualifiedName().toString();
+                if(name.equals("java.lang.String"))
+                    return FieldKind.STRING;
+                if(name.equals(MARSHAL_PACKAGE + "ByteArray"))
+                    return FieldKind.BYTE_ARRAY;
+                for(VariableElement field : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+                    if(field.getAnnotation(MarshalField.class) != null)
+                        return FieldKind.NESTED;
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    // the qualified name of the mapper of a nested field
+    private String mapper(VariableElement field) {
+        TypeElement type = nestedType(field);
+        String packageName = this.packageName(type);
+        String mapperName = generatedName(type, "MarshalMapper");
+        return packageName.isEmpty() ? mapperName : packageName + "." + mapperName;
+    }
+
+    private static TypeElement nestedType(VariableElement field) {
+        return (TypeElement)((DeclaredType)field.asType()).asElement();
+    }
+
+    // the annotated fields of a class, in order
+    private static List<VariableElement> annotatedFields(TypeElement type) {
+        List<VariableElement> fields = new ArrayList<VariableElement>();
+        for(VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if(field.getAnnotation(MarshalField.class) != null)
+                fields.add(field);
+        }
+        Collections.sort(fields, ORDER);
+        return fields;
+    }
+
+    private String packageName(TypeElement type) {
+        PackageElement element = this.processingEnv.getElementUtils().getPackageOf(type);
+        return element.isUnnamed() ? "" : element.getQualifiedName().toString();
+    }
+
+    private static String generatedName(TypeElement type, String suffix) {
+        // Outer.Inner becomes Outer_Inner
+        String name = type.getSimpleName().toString();
+        for(Element enclosing = type.getEnclosingElement(); enclosing instanceof TypeElement;
+                enclosing = enclosing.getEnclosingElement()) {
+            name = enclosing.getSimpleName() + "_" + name;
+        }
+        return name + suffix;
+    }
+
+    private static int order(VariableElement field) {
+        return field.getAnnotation(MarshalField.class).order();
+    }
+
+    private void error(Element element, String message) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    // indented source code
+    private static final class Source {
+        private final StringBuilder source = new StringBuilder();
+        private int indent = 0;
+
+        Source line() {
+            this.source.append('\n');
+            return this;
+        }
+
+        Source line(String format, Object... args) {
+            for(int i = 0; i < this.indent; i++)
+                this.source.append("    ");
+            this.source.append(String.format(format, args)).append('\n');
+            return this;
+        }
+
+        Source open(String format, Object... args) {
+            this.line(format, args);
+            this.indent++;
+            return this;
+        }
+
+        Source close(String line) {
+            this.indent--;
+            return this.line(line);
+        }
+
+        @Override
+        public String toString() {
+            return this.source.toString();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.fullcontact.marshal.processor;
+
+import com.fullcontact.marshal.ByteArray;
+import com.fullcontact.marshal.Marshal;
+import com.fullcontact.marshal.MarshalRecord;
+import com.fullcontact.marshal.MarshalSchema;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MarshalMapperProcessor.
+ */
+@RunWith(JUnit4.class)
+public class MarshalMapperProcessorTest {
+    private static final String KEY =
+        "package test;\n" +
+        "import com.fullcontact.marshal.ByteArray;\n" +
+        "import com.fullcontact.marshal.MarshalField;\n" +
+        "public class Key {\n" +
+        "    @MarshalField(order = 2) public long timestamp;\n" +
+        "    @MarshalField(order = 0) public String id;\n" +
+        "    @MarshalField(order = 5) public Location location;\n" +
+        "    @MarshalField(order = 3) public ByteArray data;\n" +
+        "    public String ignored;\n" +
+        "    public static class Location {\n" +
+        "        @MarshalField(order = 0) public double latitude;\n" +
+        "        @MarshalField(order = 1) public double longitude;\n" +
+        "        @MarshalField(order = 2) int zoom;\n" +
+        "        @MarshalField(order = 3) byte flags;\n" +
+        "    }\n" +
+        "}\n";
+
+    private JavaCompiler compiler;
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        // compiling requires a JDK
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(this.compiler);
+
+        this.directory = File.createTempFile("processor", "");
+        assertTrue(this.directory.delete() && this.directory.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        if(this.directory != null)
+            delete(this.directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if(children != null) {
+            for(File child : children)
+                delete(child);
+        }
+        file.delete();
+    }
+
+    // compiles the source with the processor, returning the errors
+    private List<String> compile(String className, String source) throws IOException {
+        File file = new File(this.directory, className.replace('.', '/') + ".java");
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(source);
+        }
+        finally {
+            writer.close();
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = this.compiler.getStandardFileManager(null, null, null);
+        try {
+            JavaCompiler.CompilationTask task = this.compiler.getTask(null, fileManager, diagnostics,
+                    Arrays.asList("-d", this.directory.getPath(), "-s", this.directory.getPath(),
+                        "-classpath", System.getProperty("java.class.path")),
+                    null, fileManager.getJavaFileObjects(file));
+            task.setProcessors(Collections.singletonList(new MarshalMapperProcessor()));
+            task.call();
+        }
+        finally {
+            fileManager.close();
+        }
+
+        List<String> errors = new ArrayList<String>();
+        for(Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if(diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                errors.add(diagnostic.getMessage(null));
+        }
+        return errors;
+    }
+
+    private ClassLoader loader() throws IOException {
+        return new URLClassLoader(new URL[] { this.directory.toURI().toURL() }, this.getClass().getClassLoader());
+    }
+
+    @Test
+    public void testMapper() throws Exception {
+        assertEquals(Collections.<String>emptyList(), this.compile("test.Key", KEY));
+
+        ClassLoader loader = this.loader();
+        Class<?> keyClass = loader.loadClass("test.Key");
+        Class<?> locationClass = loader.loadClass("test.Key$Location");
+        Class<?> mapper = loader.loadClass("test.KeyMarshalMapper");
+        assertNotNull(loader.loadClass("test.Key_LocationMarshalMapper"));
+
+        MarshalSchema schema = (MarshalSchema)mapper.getField("SCHEMA").get(null);
+        assertEquals("(STRING, LONG, BYTE_ARRAY, (DOUBLE, DOUBLE, INTEGER, BYTE))", schema.toString());
+
+        Object location = locationClass.newInstance();
+        set(location, "latitude", 39.75);
+        set(location, "longitude", -105.0);
+        set(location, "zoom", 12);
+        set(location, "flags", (byte)3);
+        Object key = keyClass.newInstance();
+        set(key, "id", "abc");
+        set(key, "timestamp", 1234L);
+        set(key, "data", new ByteArray(new byte[] { 1, 2 }));
+        set(key, "location", location);
+
+        // generic form
+        Marshal marshal = (Marshal)mapper.getMethod("toMarshal", keyClass).invoke(null, key);
+        assertEquals(Marshal.builder()
+                .addString("abc")
+                .addLong(1234L)
+                .addByteArray(new ByteArray(new byte[] { 1, 2 }))
+                .addMarshal(Marshal.builder().addDouble(39.75).addDouble(-105.0).addInteger(12).addByte((byte)3).build())
+                .build(),
+            marshal);
+
+        // schema format
+        byte[] bytes = (byte[])mapper.getMethod("toBytes", keyClass).invoke(null, key);
+        assertArrayEquals(schema.encode(marshal), bytes);
+
+        Object copy = mapper.getMethod("fromBytes", byte[].class).invoke(null, (Object)bytes);
+        assertEquals("abc", get(copy, "id"));
+        assertEquals(1234L, get(copy, "timestamp"));
+        assertEquals(12, get(get(copy, "location"), "zoom"));
+
+        Object fromMarshal = mapper.getMethod("fromMarshal", Marshal.class).invoke(null, marshal);
+        assertEquals(-105.0, get(get(fromMarshal, "location"), "longitude"));
+        assertNull(get(fromMarshal, "ignored"));
+
+        // lexicographic format
+        byte[] lexicographic = (byte[])mapper.getMethod("toLexicographicBytes", keyClass).invoke(null, key);
+        assertArrayEquals(marshal.toBytes(), lexicographic);
+        assertEquals(marshal, ((MarshalRecord)mapper.getMethod("toRecord", keyClass).invoke(null, key)).toMarshal());
+
+        Object fromLexicographic = mapper.getMethod("fromLexicographicBytes", byte[].class).invoke(null, (Object)lexicographic);
+        assertEquals("abc", get(fromLexicographic, "id"));
+        assertEquals(new ByteArray(new byte[] { 1, 2 }), get(fromLexicographic, "data"));
+        assertEquals((byte)3, get(get(fromLexicographic, "location"), "flags"));
+    }
+
+    @Test
+    public void testCyclicFields() throws Exception {
+        List<String> errors = this.compile("test.Cyclic",
+            "package test;\n" +
+            "import com.fullcontact.marshal.MarshalField;\n" +
+            "public class Cyclic {\n" +
+            "    @MarshalField(order = 0) public Cyclic self;\n" +
+            "    @MarshalField(order = 1) public A a;\n" +
+            "    public static class A {\n" +
+            "        @MarshalField(order = 0) public B b;\n" +
+            "    }\n" +
+            "    public static class B {\n" +
+            "        @MarshalField(order = 0) public A a;\n" +
+            "    }\n" +
+            "}\n");
+
+        assertEquals(errors.toString(), 3, errors.size());
+        for(String error : errors)
+            assertTrue(error, error.contains("in itself"));
+    }
+
+    @Test
+    public void testInvalidFields() throws Exception {
+        List<String> errors = this.compile("test.Invalid",
+            "package test;\n" +
+            "import com.fullcontact.marshal.MarshalField;\n" +
+            "public class Invalid {\n" +
+            "    @MarshalField(order = 0) private long a;\n" +
+            "    @MarshalField(order = 0) public long b;\n" +
+            "    @MarshalField(order = 1) public Object c;\n" +
+            "    @MarshalField(order = 2) public long SCHEMA;\n" +
+            "}\n");
+
+        assertEquals(4, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains("must not be private"));
+        assertTrue(errors.get(1), errors.get(1).contains("order 0 is used more than once"));
+        assertTrue(errors.get(2), errors.get(2).contains("not java.lang.Object"));
+        assertTrue(errors.get(3), errors.get(3).contains("named SCHEMA"));
+    }
+
+    @Test
+    public void testNoConstructor() throws Exception {
+        List<String> errors = this.compile("test.NoConstructor",
+            "package test;\n" +
+            "import com.fullcontact.marshal.MarshalField;\n" +
+            "public class NoConstructor {\n" +
+            "    @MarshalField(order = 0) public long a;\n" +
+            "    public NoConstructor(long a) { this.a = a; }\n" +
+            "}\n");
+
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains("constructor without arguments"));
+    }
+
+    private static Field field(Object object, String name) throws NoSuchFieldException {
+        Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    private static void set(Object object, String name, Object value) throws Exception {
+        field(object, name).set(object, value);
+    }
+
+    private static Object get(Object object, String name) throws Exception {
+        return field(object, name).get(object);
+    }
+}
@@ -0,0 +1,127 @@
+package com.fullcontact.marshal.benchmark;
+
+import com.fullcontact.marshal.EntryType;
+import com.fullcontact.marshal.Marshal;
+import com.fullcontact.marshal.MarshalCodeGenerator;
+import com.fullcontact.marshal.MarshalException;
+import com.fullcontact.marshal.MarshalRecord;
+import com.fullcontact.marshal.MarshalSchema;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding benchmarks for a fixed-shape key, comparing the generic Marshal with a
+ * record generated by MarshalCodeGenerator.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MarshalRecordBenchmark {
+    private static final MarshalSchema SCHEMA =
+        MarshalSchema.of(EntryType.STRING, EntryType.LONG, EntryType.INTEGER, EntryType.DOUBLE);
+
+    private final String s = "com.fullcontact.identity";
+    private final long l = 123456789012345678L;
+    private final int i = 22;
+    private final double d = -3.14d;
+
+    MarshalRecord record;
+    byte[] lexicographic;
+    byte[] writable;
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup() throws Exception {
+        this.record = MarshalCodeGenerator.compile(SCHEMA, "com.fullcontact.marshal.benchmark.BenchmarkKey")
+            .newInstance();
+
+        Marshal marshal = this.genericMarshal();
+        this.lexicographic = marshal.toBytes();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        marshal.write(new DataOutputStream(bytes));
+        this.writable = bytes.toByteArray();
+    }
+
+    private Marshal genericMarshal() {
+        return Marshal.builder().addString(this.s).addLong(this.l).addInteger(this.i).addDouble(this.d).build();
+    }
+
+    @Benchmark
+    public byte[] encodeLexicographic_generic() {
+        return this.genericMarshal().toBytes();
+    }
+
+    @Benchmark
+    public byte[] encodeLexicographic_record() {
+        this.record.setString(0, this.s);
+        this.record.setLong(1, this.l);
+        this.record.setInteger(2, this.i);
+        this.record.setDouble(3, this.d);
+        return this.record.toBytes();
+    }
+
+    @Benchmark
+    public void decodeLexicographic_generic(Blackhole blackhole) throws MarshalException {
+        Marshal marshal = Marshal.fromBytes(this.lexicographic);
+        blackhole.consume(marshal.getStringAt(0));
+        blackhole.consume(marshal.getLongAt(1));
+        blackhole.consume(marshal.getIntegerAt(2));
+        blackhole.consume(marshal.getDoubleAt(3));
+    }
+
+    @Benchmark
+    public void decodeLexicographic_record(Blackhole blackhole) throws MarshalException {
+        this.record.readBytes(this.lexicographic, 0, this.lexicographic.length);
+        blackhole.consume(this.record.getString(0));
+        blackhole.consume(this.record.getLong(1));
+        blackhole.consume(this.record.getInteger(2));
+        blackhole.consume(this.record.getDouble(3));
+    }
+
+    @Benchmark
+    public int encodeWritable_generic() throws IOException {
+        this.output.reset();
+        this.genericMarshal().write(new DataOutputStream(this.output));
+        return this.output.size();
+    }
+
+    @Benchmark
+    public int encodeWritable_record() throws IOException {
+        this.output.reset();
+        this.record.setString(0, this.s);
+        this.record.setLong(1, this.l);
+        this.record.setInteger(2, this.i);
+        this.record.setDouble(3, this.d);
+        this.record.write(new DataOutputStream(this.output));
+        return this.output.size();
+    }
+
+    @Benchmark
+    public void decodeWritable_generic(Blackhole blackhole) throws IOException {
+        Marshal marshal = Marshal.read(new DataInputStream(new ByteArrayInputStream(this.writable)));
+        blackhole.consume(marshal.getStringAt(0));
+        blackhole.consume(marshal.getLongAt(1));
+        blackhole.consume(marshal.getIntegerAt(2));
+        blackhole.consume(marshal.getDoubleAt(3));
+    }
+
+    @Benchmark
+    public void decodeWritable_record(Blackhole blackhole) throws IOException {
+        this.record.readFields(new DataInputStream(new ByteArrayInputStream(this.writable)));
+        blackhole.consume(this.record.getString(0));
+        blackhole.consume(this.record.getLong(1));
+        blackhole.consume(this.record.getInteger(2));
+        blackhole.consume(this.record.getDouble(3));
+    }
+}
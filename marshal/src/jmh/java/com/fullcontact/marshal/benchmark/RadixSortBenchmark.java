@@ -0,0 +1,92 @@
+package com.fullcontact.marshal.benchmark;
+
+import com.fullcontact.marshal.ByteArray;
+import com.fullcontact.marshal.Marshal;
+import com.fullcontact.marshal.RadixSort;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting benchmarks for lexicographic marshal keys with long shared prefixes, comparing
+ * RadixSort against Arrays.sort with ByteArray.compareTo.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RadixSortBenchmark {
+    @Param({"100000"})
+    int count;
+
+    ByteArray[] keys;
+    byte[] arena;
+    long[] records;
+
+    ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(17);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        this.keys = new ByteArray[this.count];
+        this.records = new long[this.count];
+        for(int i = 0; i < this.count; i++) {
+            Marshal marshal = Marshal.builder()
+                .addString("com.fullcontact.identity")
+                .addInteger(random.nextInt(16))
+                .addLong(random.nextLong())
+                .build();
+            byte[] bytes = marshal.toBytes();
+
+            this.keys[i] = new ByteArray(bytes);
+            this.records[i] = RadixSort.record(out.size(), bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        this.arena = out.toByteArray();
+
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.executor.shutdown();
+    }
+
+    @Benchmark
+    @Measurement(iterations = 5, time = 5, timeUnit = TimeUnit.SECONDS)
+    public void benchmarkArraysSort(Blackhole bh) {
+        ByteArray[] copy = Arrays.copyOf(this.keys, this.keys.length);
+        Arrays.sort(copy);
+        bh.consume(copy);
+    }
+
+    @Benchmark
+    @Measurement(iterations = 5, time = 5, timeUnit = TimeUnit.SECONDS)
+    public void benchmarkRadixSort(Blackhole bh) {
+        long[] copy = Arrays.copyOf(this.records, this.records.length);
+        RadixSort.sort(this.arena, copy);
+        bh.consume(copy);
+    }
+
+    @Benchmark
+    @Measurement(iterations = 5, time = 5, timeUnit = TimeUnit.SECONDS)
+    public void benchmarkRadixSort_parallel(Blackhole bh) throws InterruptedException {
+        long[] copy = Arrays.copyOf(this.records, this.records.length);
+        RadixSort.sort(this.arena, copy, this.executor);
+        bh.consume(copy);
+    }
+}
@@ -30,4 +30,15 @@ abstract class AbstractType<T> {
      * Read the current value to the data input.
      */
     public abstract T read(DataInput dataInput) throws IOException;
+
+    /**
+     * Skips a value written by {@link #write} that begins at the given offset, without reading
+     * the value. Returns the position one past the end of the value. The returned position may
+     * be past the given end if the value is truncated; callers are responsible for checking.
+     *
+     * @param bytes The array containing the written value.
+     * @param offset The position of the first byte of the value.
+     * @param end The position one past the last readable byte of the array.
+     */
+    public abstract int skip(byte[] bytes, int offset, int end) throws MarshalException;
 }
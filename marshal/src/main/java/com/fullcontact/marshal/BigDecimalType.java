@@ -0,0 +1,175 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Type for BigDecimal, whose lexicographic form sorts in numeric order.
+ *
+ * A non-zero value is written as 0.d1d2...dn * 100^e, where the base-100 digits d1 and dn are
+ * not zero. The lexicographic form is a header byte, followed for non-zero values by the
+ * exponent and the digits:
+ *
+ * <ul>
+ * <li>Zero is the header byte 0x80 alone.</li>
+ * <li>Positive values are the header byte 0x81, the exponent in the form of {@link VarLongType},
+ * and each digit as the byte 2d + 1, except the last, which is the byte 2d.</li>
+ * <li>Negative values are the header byte 0x7F, the negated exponent, and each digit as 200
+ * minus the byte of the positive value, so that larger magnitudes sort first.</li>
+ * </ul>
+ *
+ * The last digit is the only even byte, so no value is a prefix of another, and a value with
+ * more digits sorts after a value whose digits it extends. No byte is ever the separator, so
+ * entries of this type are never escaped.
+ *
+ * Equal values have the same form regardless of their scale, so values are read back without
+ * trailing zeros, as by {@link BigDecimal#stripTrailingZeros}. The writable form is the scale,
+ * as a variable-length long, followed by the two's complement bytes of the unscaled value.
+ */
+final class BigDecimalType extends AbstractType<BigDecimal> {
+    public static final BigDecimalType INSTANCE = new BigDecimalType();
+
+    private static final int NEGATIVE = 0x7F;
+    private static final int ZERO = 0x80;
+    private static final int POSITIVE = 0x81;
+
+    // singleton
+    private BigDecimalType() {}
+
+    /**
+     * Returns the value without trailing zeros, which is how it is read back from the
+     * lexicographic form.
+     */
+    static BigDecimal normalize(BigDecimal d) {
+        // stripTrailingZeros does not strip zero before Java 8
+        return d.signum() == 0 ? BigDecimal.ZERO : d.stripTrailingZeros();
+    }
+
+    /**
+     * Returns the lexicographic form of the value.
+     */
+    static byte[] encode(BigDecimal d) {
+        int signum = d.signum();
+        if(signum == 0)
+            return new byte[] { (byte)ZERO };
+
+        BigDecimal stripped = d.stripTrailingZeros();
+        String digits = stripped.unscaledValue().abs().toString();
+
+        // the value is 0.digits * 10^exponent; make the exponent even, and pad the digits to
+        // whole base-100 digits
+        long exponent = (long)digits.length() - stripped.scale();
+        if((exponent & 1) != 0) {
+            digits = "0" + digits;
+            exponent++;
+        }
+        if((digits.length() & 1) != 0)
+            digits = digits + "0";
+
+        int count = digits.length() / 2;
+        long e = signum < 0 ? -(exponent / 2) : exponent / 2;
+        byte[] bytes = new byte[1 + VarLongType.size(e) + count];
+        bytes[0] = (byte)(signum < 0 ? NEGATIVE : POSITIVE);
+        int position = VarLongType.put(e, bytes, 1);
+        for(int i = 0; i < count; i++) {
+            int digit = (digits.charAt(2 * i) - '0') * 10 + (digits.charAt(2 * i + 1) - '0');
+            int b = 2 * digit + (i < count - 1 ? 1 : 0);
+            bytes[position++] = (byte)(signum < 0 ? 200 - b : b);
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads the value from the lexicographic form in the given range.
+     *
+     * @throws MarshalException if the range is not the lexicographic form of a value.
+     */
+    static BigDecimal decode(byte[] bytes, int begin, int end) throws MarshalException {
+        if(begin >= end)
+            throw new MarshalException("Missing decimal.");
+
+        int header = bytes[begin] & 0xFF;
+        if(header == ZERO) {
+            if(end - begin != 1)
+                throw new MarshalException("Invalid zero decimal of " + (end - begin) + " bytes.");
+            return BigDecimal.ZERO;
+        }
+        if(header != POSITIVE && header != NEGATIVE)
+            throw new MarshalException("Invalid decimal header " + header + ".");
+        boolean negative = header == NEGATIVE;
+
+        // the exponent must be followed by at least one digit
+        if(end - begin < 3)
+            throw new MarshalException("Invalid decimal of " + (end - begin) + " bytes.");
+        int digitsBegin = begin + 1 + VarLongType.length(bytes[begin + 1]);
+        if(digitsBegin >= end)
+            throw new MarshalException("Invalid decimal of " + (end - begin) + " bytes.");
+        long exponent = VarLongType.get(bytes, begin + 1, digitsBegin);
+        if(negative)
+            exponent = -exponent;
+
+        int count = end - digitsBegin;
+        char[] digits = new char[2 * count];
+        for(int i = 0; i < count; i++) {
+            int b = bytes[digitsBegin + i] & 0xFF;
+            if(negative)
+                b = 200 - b;
+            boolean last = i == count - 1;
+            int digit = b >> 1;
+            if(b < 0 || digit > 99 || (b & 1) != (last ? 0 : 1) || (digit == 0 && (last || i == 0)))
+                throw new MarshalException("Invalid decimal digit at byte " + (digitsBegin + i - begin) + ".");
+            digits[2 * i] = (char)('0' + digit / 10);
+            digits[2 * i + 1] = (char)('0' + digit % 10);
+        }
+
+        long scale = 2L * (count - exponent);
+        if(scale < Integer.MIN_VALUE || scale > Integer.MAX_VALUE)
+            throw new MarshalException("Decimal scale " + scale + " is out of range.");
+        BigInteger unscaled = new BigInteger(new String(digits));
+        return new BigDecimal(negative ? unscaled.negate() : unscaled, (int)scale).stripTrailingZeros();
+    }
+
+    @Override
+    public ByteArray marshal(BigDecimal d) {
+        return new ByteArray(encode(d));
+    }
+
+    @Override
+    public BigDecimal demarshal(ByteArray data) throws MarshalException {
+        return decode(data.backingArray(), data.beginIndex(), data.endIndex());
+    }
+
+    @Override
+    public void write(BigDecimal d, DataOutput dataOutput) throws IOException {
+        IOUtil.writeVarLong(d.scale(), dataOutput);
+        byte[] bytes = d.unscaledValue().toByteArray();
+        IOUtil.writeVarInt(bytes.length, dataOutput);
+        dataOutput.write(bytes);
+    }
+
+    @Override
+    public BigDecimal read(DataInput dataInput) throws IOException {
+        long scale = IOUtil.readVarLong(dataInput);
+        if(scale < Integer.MIN_VALUE || scale > Integer.MAX_VALUE)
+            throw new MarshalException("Decimal scale " + scale + " is out of range.");
+        int length = IOUtil.readVarInt(dataInput);
+        byte[] bytes = new byte[length];
+        dataInput.readFully(bytes);
+        return new BigDecimal(new BigInteger(bytes), (int)scale);
+    }
+
+    @Override
+    public int skip(byte[] bytes, int offset, int end) throws MarshalException {
+        int position = VarLongType.INSTANCE.skip(bytes, offset, end);
+        int length = IOUtil.readVarInt(bytes, position, end);
+        return position + IOUtil.varIntSize(length) + length;
+    }
+
+    @Override
+    public String toString() {
+        return "BigDecimalType";
+    }
+}
@@ -0,0 +1,59 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Type for BigInteger, whose lexicographic form sorts in numeric order.
+ *
+ * The lexicographic form is that of {@link BigDecimalType} for the same value. The writable form
+ * is the length of the two's complement bytes of the value, followed by the bytes.
+ */
+final class BigIntegerType extends AbstractType<BigInteger> {
+    public static final BigIntegerType INSTANCE = new BigIntegerType();
+
+    // singleton
+    private BigIntegerType() {}
+
+    @Override
+    public ByteArray marshal(BigInteger i) {
+        return new ByteArray(BigDecimalType.encode(new BigDecimal(i)));
+    }
+
+    @Override
+    public BigInteger demarshal(ByteArray data) throws MarshalException {
+        BigDecimal d = BigDecimalType.decode(data.backingArray(), data.beginIndex(), data.endIndex());
+        if(d.scale() > 0)
+            throw new MarshalException("Value " + d + " is not an integer.");
+        return d.toBigInteger();
+    }
+
+    @Override
+    public void write(BigInteger i, DataOutput dataOutput) throws IOException {
+        byte[] bytes = i.toByteArray();
+        IOUtil.writeVarInt(bytes.length, dataOutput);
+        dataOutput.write(bytes);
+    }
+
+    @Override
+    public BigInteger read(DataInput dataInput) throws IOException {
+        int length = IOUtil.readVarInt(dataInput);
+        byte[] bytes = new byte[length];
+        dataInput.readFully(bytes);
+        return new BigInteger(bytes);
+    }
+
+    @Override
+    public int skip(byte[] bytes, int offset, int end) throws MarshalException {
+        int length = IOUtil.readVarInt(bytes, offset, end);
+        return offset + IOUtil.varIntSize(length) + length;
+    }
+
+    @Override
+    public String toString() {
+        return "BigIntegerType";
+    }
+}
@@ -0,0 +1,50 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Type for Boolean. False is 0x00 and true is 0x01, so false sorts first.
+ */
+final class BooleanType extends AbstractType<Boolean> {
+    public static final BooleanType INSTANCE = new BooleanType();
+
+    private static final ByteArray FALSE = new ByteArray(new byte[] { 0x00 });
+    private static final ByteArray TRUE = new ByteArray(new byte[] { 0x01 });
+
+    // singleton
+    private BooleanType() {}
+
+    @Override
+    public ByteArray marshal(Boolean b) {
+        return b ? TRUE : FALSE;
+    }
+
+    @Override
+    public Boolean demarshal(ByteArray data) throws MarshalException {
+        if(data.size() != 1 || (data.getAt(0) & 0xFE) != 0)
+            throw new MarshalException("Invalid boolean data.");
+        return data.getAt(0) != 0;
+    }
+
+    @Override
+    public void write(Boolean b, DataOutput dataOutput) throws IOException {
+        dataOutput.writeBoolean(b);
+    }
+
+    @Override
+    public Boolean read(DataInput dataInput) throws IOException {
+        return dataInput.readBoolean();
+    }
+
+    @Override
+    public int skip(byte[] bytes, int offset, int end) {
+        return offset + 1;
+    }
+
+    @Override
+    public String toString() {
+        return "BooleanType";
+    }
+}
@@ -244,41 +244,66 @@ public class ByteArray implements Comparable<ByteArray> {
             return LEXICOGRAPHICAL_COMPARATOR.compare(this.bytes, other.bytes);
         }
         else {
-            // current index
-            int index1 = this.beginIndex;
-            int index2 = other.beginIndex;
-
-            while(index1 < this.endIndex && index2 < other.endIndex) {
-                // get as ints, so we compare bytes in an unsigned manner, not individually signed
-                // bytes
-                int one = this.bytes[index1] & 0xFF;
-                int two = other.bytes[index2] & 0xFF;
-                if(one < two) {
-                    return -1;
-                }
-                else if(one > two) {
-                    return 1;
-                }
-                else {
-                    index1++;
-                    index2++;
-                }
-            }
+            return compare(this.bytes, this.beginIndex, this.endIndex,
+                    other.bytes, other.beginIndex, other.endIndex);
+        }
+    }
 
-            // got to the end of at least one array, and did not find the difference
-            if(index1 == this.endIndex && index2 == other.endIndex)
-                return 0;
-            else if(index1 == this.endIndex && index2 != other.endIndex)
+    /**
+     * Compares two regions of byte arrays in unsigned lexicographical order. This is the same
+     * ordering as {@link #compareTo}, but operates directly on the given ranges.
+     *
+     * @param bytes1 The first array.
+     * @param beginIndex1 Index into the first array where the region begins, inclusive.
+     * @param endIndex1 Index into the first array where the region ends, exclusive.
+     * @param bytes2 The second array.
+     * @param beginIndex2 Index into the second array where the region begins, inclusive.
+     * @param endIndex2 Index into the second array where the region ends, exclusive.
+     */
+    public static int compare(byte[] bytes1, int beginIndex1, int endIndex1,
+            byte[] bytes2, int beginIndex2, int endIndex2) {
+        // current index
+        int index1 = beginIndex1;
+        int index2 = beginIndex2;
+
+        while(index1 < endIndex1 && index2 < endIndex2) {
+            // get as ints, so we compare bytes in an unsigned manner, not individually signed
+            // bytes
+            int one = bytes1[index1] & 0xFF;
+            int two = bytes2[index2] & 0xFF;
+            if(one < two) {
                 return -1;
-            else
+            }
+            else if(one > two) {
                 return 1;
+            }
+            else {
+                index1++;
+                index2++;
+            }
         }
+
+        // got to the end of at least one array, and did not find the difference
+        if(index1 == endIndex1 && index2 == endIndex2)
+            return 0;
+        else if(index1 == endIndex1 && index2 != endIndex2)
+            return -1;
+        else
+            return 1;
     }
 
     @Override
     public boolean equals(Object o) {
         if(o instanceof ByteArray) {
-            return Arrays.equals(this.toArray(), ((ByteArray)o).toArray());
+            // compare the visible regions in place, without copying slices
+            ByteArray other = (ByteArray)o;
+            if(this.size() != other.size())
+                return false;
+            for(int i = 0; i < this.size(); i++) {
+                if(this.bytes[this.beginIndex + i] != other.bytes[other.beginIndex + i])
+                    return false;
+            }
+            return true;
         }
         else
             return false;
@@ -286,7 +311,11 @@ public class ByteArray implements Comparable<ByteArray> {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(this.toArray());
+        // same as Arrays.hashCode of the visible region
+        int result = 1;
+        for(int i = this.beginIndex; i < this.endIndex; i++)
+            result = 31 * result + this.bytes[i];
+        return result;
     }
 
     @Override
@@ -40,6 +40,12 @@ final class ByteArrayType extends AbstractType<ByteArray> {
         return new ByteArray(bytes);
     }
 
+    @Override
+    public int skip(byte[] bytes, int offset, int end) throws MarshalException {
+        int length = IOUtil.readVarInt(bytes, offset, end);
+        return offset + IOUtil.varIntSize(length) + length;
+    }
+
     @Override
     public String toString() {
         return "ByteArrayType";
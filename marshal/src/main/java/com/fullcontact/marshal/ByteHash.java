@@ -0,0 +1,124 @@
+package com.fullcontact.marshal;
+
+/**
+ * Fast, stable 64-bit hashing of byte arrays.
+ *
+ * This is an implementation of the XXH64 algorithm. The result depends only on the bytes and the
+ * seed, so hashes are consistent across JVMs and may be persisted.
+ */
+public final class ByteHash {
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    // static utility class
+    private ByteHash() {}
+
+    /**
+     * Hashes the given byte array with a seed of zero.
+     */
+    public static long hash64(ByteArray bytes) {
+        return hash64(bytes.backingArray(), bytes.beginIndex(), bytes.size(), 0);
+    }
+
+    /**
+     * Hashes the given region of a byte array.
+     *
+     * @param bytes The array to hash.
+     * @param offset Index into the array where the region begins.
+     * @param length The length of the region.
+     * @param seed The seed for the hash.
+     */
+    public static long hash64(byte[] bytes, int offset, int length, long seed) {
+        int end = offset + length;
+        int position = offset;
+        long hash;
+
+        if(length >= 32) {
+            long v1 = seed + PRIME64_1 + PRIME64_2;
+            long v2 = seed + PRIME64_2;
+            long v3 = seed;
+            long v4 = seed - PRIME64_1;
+
+            int limit = end - 32;
+            do {
+                v1 = round(v1, readLong(bytes, position));
+                v2 = round(v2, readLong(bytes, position + 8));
+                v3 = round(v3, readLong(bytes, position + 16));
+                v4 = round(v4, readLong(bytes, position + 24));
+                position += 32;
+            } while(position <= limit);
+
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) +
+                Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        }
+        else {
+            hash = seed + PRIME64_5;
+        }
+
+        hash += length;
+
+        while(position + 8 <= end) {
+            hash ^= round(0, readLong(bytes, position));
+            hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+            position += 8;
+        }
+
+        if(position + 4 <= end) {
+            hash ^= (readInt(bytes, position) & 0xFFFFFFFFL) * PRIME64_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+            position += 4;
+        }
+
+        while(position < end) {
+            hash ^= (bytes[position] & 0xFF) * PRIME64_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+            position++;
+        }
+
+        // final avalanche
+        hash ^= hash >>> 33;
+        hash *= PRIME64_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME64_3;
+        hash ^= hash >>> 32;
+
+        return hash;
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME64_2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME64_1;
+    }
+
+    private static long mergeRound(long accumulator, long value) {
+        accumulator ^= round(0, value);
+        return accumulator * PRIME64_1 + PRIME64_4;
+    }
+
+    // little-endian reads, as specified by the algorithm
+    private static long readLong(byte[] bytes, int position) {
+        return (bytes[position] & 0xFFL) |
+            ((bytes[position + 1] & 0xFFL) << 8) |
+            ((bytes[position + 2] & 0xFFL) << 16) |
+            ((bytes[position + 3] & 0xFFL) << 24) |
+            ((bytes[position + 4] & 0xFFL) << 32) |
+            ((bytes[position + 5] & 0xFFL) << 40) |
+            ((bytes[position + 6] & 0xFFL) << 48) |
+            ((bytes[position + 7] & 0xFFL) << 56);
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return (bytes[position] & 0xFF) |
+            ((bytes[position + 1] & 0xFF) << 8) |
+            ((bytes[position + 2] & 0xFF) << 16) |
+            ((bytes[position + 3] & 0xFF) << 24);
+    }
+}
@@ -36,6 +36,11 @@ final class ByteType extends AbstractType<Byte> {
         return dataInput.readByte();
     }
 
+    @Override
+    public int skip(byte[] bytes, int offset, int end) {
+        return offset + 1;
+    }
+
     @Override
     public String toString() {
         return "ByteType";
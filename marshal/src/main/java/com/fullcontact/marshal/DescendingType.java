@@ -0,0 +1,124 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Type whose lexicographic form sorts in the reverse order of that of another type.
+ *
+ * The data of the other type is inverted byte by byte. For types where no value is a prefix of
+ * another, such as fixed-width types, this reverses the order. For other types, the inverted
+ * separator must also be reflected: in the ascending form, a value ends with the 0xFE separator,
+ * which sorts above the data bytes up to 0xFD and below 0xFF. The inverted data is thus
+ * terminated by a 0x01 byte, and the inverted bytes 0x00 and 0x01 are escaped as 0x00 0x01 and
+ * 0x00 0x02 so that they sort below the terminator, and every other byte above it.
+ *
+ * The writable form is the same as that of the other type.
+ */
+final class DescendingType<T> extends AbstractType<T> {
+    private static final byte ESCAPE = 0x00;
+    private static final byte TERMINATOR = 0x01;
+
+    private final AbstractType<T> type;
+    private final boolean prefixFree;
+
+    /**
+     * Creates a descending type for the given type. The type is prefix-free if the marshaled
+     * form of a value is never a prefix of that of another value.
+     */
+    DescendingType(AbstractType<T> type, boolean prefixFree) {
+        this.type = type;
+        this.prefixFree = prefixFree;
+    }
+
+    @Override
+    public ByteArray marshal(T object) {
+        ByteArray data = this.type.marshal(object);
+        byte[] bytes = data.backingArray();
+        int begin = data.beginIndex();
+        int end = data.endIndex();
+
+        if(this.prefixFree) {
+            byte[] inverted = new byte[end - begin];
+            for(int i = begin; i < end; i++)
+                inverted[i - begin] = (byte)~bytes[i];
+            return new ByteArray(inverted);
+        }
+
+        // count the escaped bytes
+        int length = end - begin + 1;
+        for(int i = begin; i < end; i++) {
+            if((bytes[i] & 0xFF) >= 0xFE)
+                length++;
+        }
+
+        byte[] inverted = new byte[length];
+        int position = 0;
+        for(int i = begin; i < end; i++) {
+            byte b = (byte)~bytes[i];
+            if(b == ESCAPE || b == TERMINATOR) {
+                inverted[position++] = ESCAPE;
+                inverted[position++] = (byte)(b + 1);
+            }
+            else {
+                inverted[position++] = b;
+            }
+        }
+        inverted[position] = TERMINATOR;
+        return new ByteArray(inverted);
+    }
+
+    @Override
+    public T demarshal(ByteArray data) throws MarshalException {
+        byte[] bytes = data.backingArray();
+        int begin = data.beginIndex();
+        int end = data.endIndex();
+
+        if(this.prefixFree) {
+            byte[] original = new byte[end - begin];
+            for(int i = begin; i < end; i++)
+                original[i - begin] = (byte)~bytes[i];
+            return this.type.demarshal(new ByteArray(original));
+        }
+
+        if(end == begin || bytes[end - 1] != TERMINATOR)
+            throw new MarshalException("Descending data is not terminated.");
+
+        byte[] original = new byte[end - begin - 1];
+        int length = 0;
+        for(int i = begin; i < end - 1; i++) {
+            byte b = bytes[i];
+            if(b == ESCAPE) {
+                if(i + 1 == end - 1 || (bytes[i + 1] != 0x01 && bytes[i + 1] != 0x02))
+                    throw new MarshalException("Invalid escape in descending data.");
+                b = (byte)(bytes[++i] - 1);
+            }
+            else if(b == TERMINATOR) {
+                throw new MarshalException("Unexpected terminator in descending data.");
+            }
+            original[length++] = (byte)~b;
+        }
+        return this.type.demarshal(new ByteArray(original, 0, length));
+    }
+
+    @Override
+    public void write(T object, DataOutput dataOutput) throws IOException {
+        this.type.write(object, dataOutput);
+    }
+
+    @Override
+    public T read(DataInput dataInput) throws IOException {
+        return this.type.read(dataInput);
+    }
+
+    @Override
+    public int skip(byte[] bytes, int offset, int end) throws MarshalException {
+        return this.type.skip(bytes, offset, end);
+    }
+
+    @Override
+    public String toString() {
+        return "DescendingType(" + this.type + ")";
+    }
+}
@@ -38,6 +38,11 @@ final class DoubleType extends AbstractType<Double> {
         return dataInput.readDouble();
     }
 
+    @Override
+    public int skip(byte[] bytes, int offset, int end) {
+        return offset + 8;
+    }
+
     @Override
     public String toString() {
         return "DoubleType";
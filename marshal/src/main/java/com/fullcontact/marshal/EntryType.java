@@ -2,22 +2,59 @@ package com.fullcontact.marshal;
 
 import com.google.common.collect.ImmutableMap;
 
+import static com.google.common.base.Preconditions.checkState;
+
 /**
  * Known types allowed to be added to a marshal.
  *
  * Note that these values *cannot* be changed without breaking binary compatibility.
  */
 public enum EntryType {
-    BYTE              ((byte)0x00, ByteType.INSTANCE),
-    BYTE_ARRAY        ((byte)0x01, ByteArrayType.INSTANCE),
-    DOUBLE            ((byte)0x02, DoubleType.INSTANCE),
-    INTEGER           ((byte)0x03, IntegerType.INSTANCE),
-    LONG              ((byte)0x04, LongType.INSTANCE),
-    STRING            ((byte)0x05, StringType.INSTANCE),
-    MARSHAL           ((byte)0x06, MarshalType.INSTANCE),
+    BYTE                        ((byte)0x00, ByteType.INSTANCE),
+    BYTE_ARRAY                  ((byte)0x01, ByteArrayType.INSTANCE),
+    DOUBLE                      ((byte)0x02, DoubleType.INSTANCE),
+    INTEGER                     ((byte)0x03, IntegerType.INSTANCE),
+    LONG                        ((byte)0x04, LongType.INSTANCE),
+    STRING                      ((byte)0x05, StringType.INSTANCE),
+    MARSHAL                     ((byte)0x06, MarshalType.INSTANCE),
+    SORTABLE_INTEGER            ((byte)0x07, SortableIntegerType.INSTANCE),
+    SORTABLE_LONG               ((byte)0x08, SortableLongType.INSTANCE),
+    SORTABLE_DOUBLE             ((byte)0x09, SortableDoubleType.INSTANCE),
+    VAR_LONG                    ((byte)0x0A, VarLongType.INSTANCE),
+    BOOLEAN                     ((byte)0x0B, BooleanType.INSTANCE),
+    SHORT                       ((byte)0x0C, ShortType.INSTANCE),
+    FLOAT                       ((byte)0x0D, FloatType.INSTANCE),
+    UUID                        ((byte)0x0E, UuidType.INSTANCE),
+    TIMESTAMP                   ((byte)0x0F, TimestampType.INSTANCE),
+    BIG_INTEGER                 ((byte)0x10, BigIntegerType.INSTANCE),
+    BIG_DECIMAL                 ((byte)0x11, BigDecimalType.INSTANCE),
+    // an absent value, which sorts after the values of the ascending types and before those of
+    // the descending types, for descending fields with nulls first
+    NULL_FIRST                  ((byte)0x7F, NullType.INSTANCE),
+    // descending variants, with the high bit of the ascending type code set
+    DESCENDING_BYTE             ((byte)0x80, new DescendingType<Byte>(ByteType.INSTANCE, true)),
+    DESCENDING_BYTE_ARRAY       ((byte)0x81, new DescendingType<ByteArray>(ByteArrayType.INSTANCE, false)),
+    DESCENDING_DOUBLE           ((byte)0x82, new DescendingType<Double>(DoubleType.INSTANCE, true)),
+    DESCENDING_INTEGER          ((byte)0x83, new DescendingType<Integer>(IntegerType.INSTANCE, true)),
+    DESCENDING_LONG             ((byte)0x84, new DescendingType<Long>(LongType.INSTANCE, true)),
+    DESCENDING_STRING           ((byte)0x85, new DescendingType<String>(StringType.INSTANCE, false)),
+    DESCENDING_MARSHAL          ((byte)0x86, new DescendingType<Marshal>(MarshalType.INSTANCE, false)),
+    DESCENDING_SORTABLE_INTEGER ((byte)0x87, new DescendingType<Integer>(SortableIntegerType.INSTANCE, true)),
+    DESCENDING_SORTABLE_LONG    ((byte)0x88, new DescendingType<Long>(SortableLongType.INSTANCE, true)),
+    DESCENDING_SORTABLE_DOUBLE  ((byte)0x89, new DescendingType<Double>(SortableDoubleType.INSTANCE, true)),
+    DESCENDING_VAR_LONG         ((byte)0x8A, new DescendingType<Long>(VarLongType.INSTANCE, true)),
+    DESCENDING_BOOLEAN          ((byte)0x8B, new DescendingType<Boolean>(BooleanType.INSTANCE, true)),
+    DESCENDING_SHORT            ((byte)0x8C, new DescendingType<Short>(ShortType.INSTANCE, true)),
+    DESCENDING_FLOAT            ((byte)0x8D, new DescendingType<Float>(FloatType.INSTANCE, true)),
+    DESCENDING_UUID             ((byte)0x8E, new DescendingType<java.util.UUID>(UuidType.INSTANCE, true)),
+    DESCENDING_TIMESTAMP        ((byte)0x8F, new DescendingType<Long>(TimestampType.INSTANCE, true)),
+    DESCENDING_BIG_INTEGER      ((byte)0x90, new DescendingType<java.math.BigInteger>(BigIntegerType.INSTANCE, true)),
+    DESCENDING_BIG_DECIMAL      ((byte)0x91, new DescendingType<java.math.BigDecimal>(BigDecimalType.INSTANCE, true)),
+    // an absent value, which sorts after the values of every other type
+    NULL                        ((byte)0xFC, NullType.INSTANCE),
     // SEPARATOR (0xFE) is reserved and cannot be used
     // formally the empty Marshal indicator; now left for compatibility
-    LEGACY_EMPTY      ((byte)0xFF, null);
+    LEGACY_EMPTY                ((byte)0xFF, null);
 
     private static final ImmutableMap<Byte, EntryType> ENTRY_TYPE_CODES;
     static {
@@ -26,11 +63,18 @@ public enum EntryType {
             builder.put(type.getTypeCode(), type);
         }
         ENTRY_TYPE_CODES = builder.build();
+
+        for(EntryType type : EntryType.values()) {
+            type.ascending = type.isDescending() ? forCode((byte)(type.typeCode & 0x7F)) : type;
+        }
     }
 
     private final byte typeCode;
     private final AbstractType<?> type;
 
+    // set once all types exist
+    private EntryType ascending;
+
     private EntryType(byte typeCode, AbstractType<?> type) {
         this.typeCode = typeCode;
         this.type = type;
@@ -50,4 +94,38 @@ public enum EntryType {
     AbstractType<?> getType() {
         return this.type;
     }
+
+    /**
+     * Whether entries of this type are absent values, of type NULL or NULL_FIRST.
+     */
+    public boolean isNull() {
+        return this.type == NullType.INSTANCE;
+    }
+
+    /**
+     * Whether entries of this type sort in the reverse order of the ascending type.
+     */
+    public boolean isDescending() {
+        return this.type instanceof DescendingType;
+    }
+
+    /**
+     * Returns the ascending type of a descending type, or this type if it is not descending.
+     */
+    public EntryType ascending() {
+        return this.ascending;
+    }
+
+    /**
+     * Returns the descending variant of this type, or this type if it is already descending.
+     *
+     * @throws IllegalStateException if the type has no descending variant.
+     */
+    public EntryType descending() {
+        if(this.isDescending())
+            return this;
+        EntryType descending = forCode((byte)(this.typeCode | 0x80));
+        checkState(descending != null && descending.isDescending(), "Type " + this + " has no descending variant.");
+        return descending;
+    }
 }
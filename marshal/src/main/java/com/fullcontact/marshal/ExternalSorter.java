@@ -0,0 +1,609 @@
+package com.fullcontact.marshal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Sorts byte arrays, such as the lexicographic bytes of marshals, that may not fit in memory,
+ * using the unsigned byte order of {@link ByteArray#compareTo}.
+ *
+ * Records are copied into a packed buffer until the run's share of the memory limit is used. The
+ * run is then sorted and spilled to a temporary file, optionally on a background thread while the
+ * next run is filled. Runs are sorted by their leading four bytes as primitive longs, which keeps
+ * the sort within a small array of keys, and runs of records with equal leading bytes are sorted
+ * by their next four bytes in turn. The sorted runs, and the final run still in memory, are then
+ * merged with a loser tree.
+ *
+ * <pre>
+ * ExternalSorter sorter = ExternalSorter.builder().memoryLimit(256 &lt;&lt; 20).parallelism(4).build();
+ * try {
+ *     for(Marshal marshal : marshals)
+ *         sorter.add(marshal.toByteArray());
+ *     Iterator&lt;ByteArray&gt; sorted = sorter.sort();
+ *     ...
+ * }
+ * finally {
+ *     sorter.close();
+ * }
+ * </pre>
+ *
+ * An ExternalSorter is used once and is not thread-safe. Closing it deletes the temporary files.
+ */
+public final class ExternalSorter implements Closeable {
+    /**
+     * Default memory limit, in bytes.
+     */
+    public static final long DEFAULT_MEMORY_LIMIT = 64L << 20;
+
+    // memory used by the bookkeeping of each buffered record: offset, length and sort key
+    private static final int RECORD_OVERHEAD = 4 + 4 + 8;
+
+    /**
+     * Builder for an ExternalSorter.
+     */
+    public static final class Builder {
+        private long memoryLimit = DEFAULT_MEMORY_LIMIT;
+        private int parallelism = 1;
+        private File tempDirectory = null;
+
+        private Builder() {}
+
+        /**
+         * Sets the number of bytes used for buffering records, shared by all runs in memory.
+         */
+        public Builder memoryLimit(long memoryLimit) {
+            checkArgument(memoryLimit > 0, "The memory limit must be positive.");
+            this.memoryLimit = memoryLimit;
+            return this;
+        }
+
+        /**
+         * Sets the number of runs sorted at once. With a parallelism of one, runs are sorted on
+         * the calling thread; otherwise they are sorted and spilled by a pool of this many
+         * threads while the next run is filled.
+         */
+        public Builder parallelism(int parallelism) {
+            checkArgument(parallelism > 0, "The parallelism must be positive.");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the directory for the temporary files. Defaults to the system temporary directory.
+         */
+        public Builder tempDirectory(File tempDirectory) {
+            this.tempDirectory = tempDirectory;
+            return this;
+        }
+
+        public ExternalSorter build() {
+            return new ExternalSorter(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final int runSize;
+    private final int parallelism;
+    private final File tempDirectory;
+    private final ExecutorService executor;
+
+    // the run being filled
+    private Run run;
+
+    // runs being sorted and spilled in the background, oldest first
+    private final LinkedList<Future<File>> pending = new LinkedList<Future<File>>();
+
+    // spilled runs, in the order they were completed
+    private final List<File> runFiles = new ArrayList<File>();
+
+    // all temporary files, deleted on close
+    private final List<File> tempFiles = new ArrayList<File>();
+
+    // sources of the merge, closed with the sorter
+    private final List<Source> sources = new ArrayList<Source>();
+
+    private boolean sorted = false;
+
+    private ExternalSorter(Builder builder) {
+        this.parallelism = builder.parallelism;
+        this.tempDirectory = builder.tempDirectory;
+
+        // the run being filled, plus the runs being sorted in the background
+        int buffers = (this.parallelism == 1) ? 1 : this.parallelism + 1;
+        this.runSize = (int)Math.min(builder.memoryLimit / buffers, Integer.MAX_VALUE - 8);
+        this.executor = (this.parallelism == 1) ? null : Executors.newFixedThreadPool(this.parallelism);
+        this.run = new Run(this.runSize);
+    }
+
+    /**
+     * Adds a copy of the given record.
+     */
+    public void add(byte[] record) throws IOException {
+        this.add(record, 0, record.length);
+    }
+
+    /**
+     * Adds a copy of the given record.
+     */
+    public void add(ByteArray record) throws IOException {
+        this.add(record.backingArray(), record.beginIndex(), record.size());
+    }
+
+    private void add(byte[] bytes, int offset, int length) throws IOException {
+        checkState(!this.sorted, "Records cannot be added after sorting.");
+
+        if(!this.run.fits(length)) {
+            this.spill(this.run);
+            this.run = new Run(this.runSize);
+        }
+        this.run.add(bytes, offset, length);
+    }
+
+    /**
+     * Returns an iterator over all added records in sorted order. May only be called once.
+     *
+     * The iterator throws an IllegalStateException if a temporary file cannot be read.
+     */
+    public Iterator<ByteArray> sort() throws IOException {
+        checkState(!this.sorted, "The records have already been sorted.");
+        this.sorted = true;
+
+        while(!this.pending.isEmpty())
+            this.runFiles.add(await(this.pending.removeFirst()));
+        if(this.executor != null)
+            this.executor.shutdown();
+
+        this.run.sort();
+        if(this.runFiles.isEmpty())
+            return this.run.iterator();
+
+        for(File file : this.runFiles)
+            this.sources.add(new FileSource(file));
+        this.sources.add(new RunSource(this.run));
+        return new MergeIterator(this.sources);
+    }
+
+    /**
+     * Closes the temporary files and deletes them.
+     */
+    @Override
+    public void close() throws IOException {
+        if(this.executor != null)
+            this.executor.shutdownNow();
+
+        IOException failure = null;
+        for(Source source : this.sources) {
+            try {
+                source.close();
+            }
+            catch(IOException e) {
+                failure = e;
+            }
+        }
+        for(Future<File> future : this.pending) {
+            try {
+                await(future);
+            }
+            catch(IOException e) {
+                failure = e;
+            }
+        }
+        this.pending.clear();
+
+        for(File file : this.tempFiles)
+            file.delete();
+        this.tempFiles.clear();
+        this.runFiles.clear();
+
+        if(failure != null)
+            throw failure;
+    }
+
+    /**
+     * Returns the number of runs spilled to disk so far.
+     */
+    public int getSpillCount() {
+        return this.tempFiles.size();
+    }
+
+    private void spill(final Run run) throws IOException {
+        final File file = File.createTempFile("marshal-sort", ".run", this.tempDirectory);
+        this.tempFiles.add(file);
+
+        if(this.executor == null) {
+            this.runFiles.add(file);
+            run.sort();
+            run.write(file);
+            return;
+        }
+
+        // bound the number of runs held in memory
+        if(this.pending.size() >= this.parallelism)
+            this.runFiles.add(await(this.pending.removeFirst()));
+
+        this.pending.add(this.executor.submit(new Callable<File>() {
+            @Override
+            public File call() throws IOException {
+                run.sort();
+                run.write(file);
+                return file;
+            }
+        }));
+    }
+
+    private static File await(Future<File> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sorting.", e);
+        }
+        catch(ExecutionException e) {
+            if(e.getCause() instanceof IOException)
+                throw (IOException)e.getCause();
+            throw new IOException("Could not sort run.", e.getCause());
+        }
+    }
+
+    /**
+     * A run of records packed into a single buffer.
+     */
+    private static final class Run {
+        private final int capacity;
+
+        // record data, and the offset and length of each record
+        private byte[] data;
+        private int used = 0;
+        private int[] offsets = new int[1024];
+        private int[] lengths = new int[1024];
+        private int count = 0;
+
+        // sort keys; the low 32 bits of each is the index of a record
+        private long[] keys;
+
+        Run(int capacity) {
+            this.capacity = capacity;
+            this.data = new byte[Math.min(capacity, 1 << 16)];
+        }
+
+        /**
+         * Whether a record of the given length fits in the run. The first record always fits.
+         */
+        boolean fits(int length) {
+            return this.count == 0 ||
+                (long)this.used + length + (long)(this.count + 1) * RECORD_OVERHEAD <= this.capacity;
+        }
+
+        void add(byte[] bytes, int offset, int length) {
+            if(this.count == this.offsets.length) {
+                this.offsets = Arrays.copyOf(this.offsets, this.count * 2);
+                this.lengths = Arrays.copyOf(this.lengths, this.count * 2);
+            }
+            if(this.used + length > this.data.length) {
+                long grown = Math.max((long)this.used + length, Math.min(this.data.length * 2L, this.capacity));
+                this.data = Arrays.copyOf(this.data, (int)Math.min(grown, Integer.MAX_VALUE - 8));
+            }
+
+            System.arraycopy(bytes, offset, this.data, this.used, length);
+            this.offsets[this.count] = this.used;
+            this.lengths[this.count] = length;
+            this.used += length;
+            this.count++;
+        }
+
+        void sort() {
+            this.keys = new long[this.count];
+            for(int i = 0; i < this.count; i++)
+                this.keys[i] = this.chunkKey(i, 0);
+            this.sortRange(0, this.count, 0);
+        }
+
+        /**
+         * Sorts keys of records that are equal before the given depth by the four bytes at that
+         * depth, then resolves ties at the next depth.
+         */
+        private void sortRange(int from, int to, int depth) {
+            while(true) {
+                Arrays.sort(this.keys, from, to);
+
+                // resolve the ties of all but the largest group of equal chunks recursively, and
+                // continue with that one, so the stack depth does not grow with the length of a
+                // common prefix
+                int largestFrom = from;
+                int largestTo = from;
+                int start = from;
+                for(int i = from + 1; i <= to; i++) {
+                    if(i == to || (this.keys[i] >>> 32) != (this.keys[start] >>> 32)) {
+                        if(i - start > largestTo - largestFrom) {
+                            if(largestTo - largestFrom > 1)
+                                this.resolveTies(largestFrom, largestTo, depth + 4);
+                            largestFrom = start;
+                            largestTo = i;
+                        }
+                        else if(i - start > 1) {
+                            this.resolveTies(start, i, depth + 4);
+                        }
+                        start = i;
+                    }
+                }
+
+                if(largestTo - largestFrom <= 1)
+                    return;
+                depth += 4;
+                from = this.splitEnded(largestFrom, largestTo, depth);
+                to = largestTo;
+                if(to - from <= 1)
+                    return;
+            }
+        }
+
+        /**
+         * Sorts records that are equal before the given depth, where zero padding may hide
+         * differences in length.
+         */
+        private void resolveTies(int from, int to, int depth) {
+            int split = this.splitEnded(from, to, depth);
+            if(to - split > 1)
+                this.sortRange(split, to, depth);
+        }
+
+        /**
+         * Moves the records that end by the given depth, which are prefixes of the others, to the
+         * front of the range and sorts them, shorter before longer. Keys the remaining records by
+         * the four bytes at the given depth, and returns the position of the first of them.
+         */
+        private int splitEnded(int from, int to, int depth) {
+            int split = from;
+            for(int i = from; i < to; i++) {
+                int index = (int)this.keys[i];
+                if(this.lengths[index] <= depth) {
+                    this.keys[i] = this.keys[split];
+                    this.keys[split] = ((long)this.lengths[index] << 32) | index;
+                    split++;
+                }
+            }
+            Arrays.sort(this.keys, from, split);
+
+            if(to - split > 1) {
+                for(int i = split; i < to; i++)
+                    this.keys[i] = this.chunkKey((int)this.keys[i], depth);
+            }
+            return split;
+        }
+
+        /**
+         * Returns the sort key of a record for the four bytes at the given depth, padded with
+         * zeros. The sign bit is flipped so that signed order is unsigned byte order.
+         */
+        private long chunkKey(int index, int depth) {
+            int offset = this.offsets[index] + depth;
+            int remaining = this.lengths[index] - depth;
+
+            int chunk = 0;
+            for(int i = 0; i < 4; i++) {
+                chunk <<= 8;
+                if(i < remaining)
+                    chunk |= this.data[offset + i] & 0xFF;
+            }
+            return (((long)chunk << 32) | index) ^ Long.MIN_VALUE;
+        }
+
+        ByteArray get(int position) {
+            int index = (int)this.keys[position];
+            return new ByteArray(this.data, this.offsets[index], this.offsets[index] + this.lengths[index]);
+        }
+
+        void write(File file) throws IOException {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            try {
+                out.writeInt(this.count);
+                for(int i = 0; i < this.count; i++) {
+                    int index = (int)this.keys[i];
+                    IOUtil.writeVarInt(this.lengths[index], out);
+                    out.write(this.data, this.offsets[index], this.lengths[index]);
+                }
+            }
+            finally {
+                out.close();
+            }
+
+            // release the buffer while the run waits to be merged
+            this.data = null;
+            this.keys = null;
+        }
+
+        Iterator<ByteArray> iterator() {
+            return new Iterator<ByteArray>() {
+                private int position = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return this.position < count;
+                }
+
+                @Override
+                public ByteArray next() {
+                    if(!this.hasNext())
+                        throw new NoSuchElementException();
+                    return get(this.position++);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    /**
+     * A sorted sequence of records to merge.
+     */
+    private interface Source extends Closeable {
+        /**
+         * Returns the next record, or null if there are no more.
+         */
+        ByteArray next() throws IOException;
+    }
+
+    private static final class RunSource implements Source {
+        private final Run run;
+        private int position = 0;
+
+        RunSource(Run run) {
+            this.run = run;
+        }
+
+        @Override
+        public ByteArray next() {
+            return this.position < this.run.count ? this.run.get(this.position++) : null;
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    private static final class FileSource implements Source {
+        private final DataInputStream in;
+        private int remaining;
+
+        FileSource(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            this.remaining = this.in.readInt();
+        }
+
+        @Override
+        public ByteArray next() throws IOException {
+            if(this.remaining == 0)
+                return null;
+            this.remaining--;
+
+            byte[] record = new byte[IOUtil.readVarInt(this.in)];
+            this.in.readFully(record);
+            return new ByteArray(record);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    /**
+     * K-way merge of sorted sources using a loser tree.
+     *
+     * The tree is stored as an implicit binary tree with the sources as leaves k..2k-1 and
+     * internal nodes 1..k-1, each holding the source that lost the match played at that node.
+     * Node 0 holds the overall winner. Replacing the winner's record replays only the matches on
+     * the path from its leaf to the root, so each record costs log(k) comparisons.
+     */
+    private static final class MergeIterator implements Iterator<ByteArray> {
+        private final List<Source> sources;
+        private final ByteArray[] heads;
+        private final int[] tree;
+
+        MergeIterator(List<Source> sources) throws IOException {
+            int k = sources.size();
+            this.sources = sources;
+            this.heads = new ByteArray[k];
+            this.tree = new int[Math.max(k, 1)];
+
+            for(int i = 0; i < k; i++)
+                this.heads[i] = sources.get(i).next();
+
+            // play the initial matches bottom up
+            int[] winners = new int[2 * k];
+            for(int i = 0; i < k; i++)
+                winners[k + i] = i;
+            for(int node = k - 1; node >= 1; node--) {
+                int a = winners[2 * node];
+                int b = winners[2 * node + 1];
+                if(this.beats(a, b)) {
+                    winners[node] = a;
+                    this.tree[node] = b;
+                }
+                else {
+                    winners[node] = b;
+                    this.tree[node] = a;
+                }
+            }
+            this.tree[0] = (k > 1) ? winners[1] : 0;
+        }
+
+        /**
+         * Whether source a's record sorts before source b's. Exhausted sources lose, and ties go
+         * to the earlier source.
+         */
+        private boolean beats(int a, int b) {
+            if(this.heads[b] == null)
+                return true;
+            if(this.heads[a] == null)
+                return false;
+
+            int result = this.heads[a].compareTo(this.heads[b]);
+            return result < 0 || (result == 0 && a < b);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.heads.length > 0 && this.heads[this.tree[0]] != null;
+        }
+
+        @Override
+        public ByteArray next() {
+            if(!this.hasNext())
+                throw new NoSuchElementException();
+
+            int winner = this.tree[0];
+            ByteArray result = this.heads[winner];
+            try {
+                this.heads[winner] = this.sources.get(winner).next();
+            }
+            catch(IOException e) {
+                throw new IllegalStateException("Could not read sorted run.", e);
+            }
+
+            // replay the matches from the winner's leaf to the root
+            for(int node = (winner + this.heads.length) >>> 1; node >= 1; node >>>= 1) {
+                if(this.beats(this.tree[node], winner)) {
+                    int loser = winner;
+                    winner = this.tree[node];
+                    this.tree[node] = loser;
+                }
+            }
+            this.tree[0] = winner;
+
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
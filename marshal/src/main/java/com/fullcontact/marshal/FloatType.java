@@ -0,0 +1,67 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Type for Float.
+ *
+ * The bits of the value are transformed as for {@link SortableDoubleType}, so that the
+ * lexicographic form sorts in the order of {@link Float#compare}. NaNs are collapsed to the
+ * canonical NaN.
+ */
+final class FloatType extends AbstractType<Float> {
+    public static final FloatType INSTANCE = new FloatType();
+
+    // singleton
+    private FloatType() {}
+
+    /**
+     * Returns the unsigned sortable bits of the value.
+     */
+    static int toSortable(float f) {
+        int bits = Float.floatToIntBits(f);
+        return bits ^ ((bits >> 31) | Integer.MIN_VALUE);
+    }
+
+    /**
+     * Returns the value of the given unsigned sortable bits.
+     */
+    static float fromSortable(int sortable) {
+        return Float.intBitsToFloat(sortable ^ ((~sortable >> 31) | Integer.MIN_VALUE));
+    }
+
+    @Override
+    public ByteArray marshal(Float f) {
+        byte[] bytes = new byte[4];
+        ByteBuffer.wrap(bytes).putInt(toSortable(f));
+        return new ByteArray(bytes);
+    }
+
+    @Override
+    public Float demarshal(ByteArray data) {
+        return fromSortable(ByteBuffer.wrap(data.toArray()).getInt());
+    }
+
+    @Override
+    public void write(Float f, DataOutput dataOutput) throws IOException {
+        dataOutput.writeFloat(f);
+    }
+
+    @Override
+    public Float read(DataInput dataInput) throws IOException {
+        return dataInput.readFloat();
+    }
+
+    @Override
+    public int skip(byte[] bytes, int offset, int end) {
+        return offset + 4;
+    }
+
+    @Override
+    public String toString() {
+        return "FloatType";
+    }
+}
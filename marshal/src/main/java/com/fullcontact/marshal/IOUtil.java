@@ -91,6 +91,67 @@ final class IOUtil {
         return Optional.of(decoded);
     }
 
+    /**
+     * Decodes a non-negative integer encoded as a variable-length byte array, reading directly
+     * from the given array starting at the given offset.
+     *
+     * @param bytes The array to read from.
+     * @param offset The position of the first byte of the encoded integer.
+     * @param end The position one past the last readable byte of the array.
+     * @throws MarshalException if the integer is invalid or extends past the end.
+     */
+    public static int readVarInt(byte[] bytes, int offset, int end) throws MarshalException {
+        int decoded = 0;
+
+        for(int i = 0; ; i++) {
+            if(offset + i >= end)
+                throw new MarshalException("Truncated variable-encoded integer.");
+
+            byte b = bytes[offset + i];
+            decoded |= ((b & 127) << (i * 7));
+
+            // too big to be a signed integer; see decodeVarInt
+            if(i == 4 && (b >= 8 || b < 0))
+                throw new MarshalException("Invalid variable-encoded integer.");
+
+            // if no more bytes, stop reading
+            if(b >= 0)
+                return decoded;
+        }
+    }
+
+    /**
+     * Encodes a non-negative integer as {@link #encodeVarInt} does, directly into the given array
+     * starting at the given offset. Returns the position one past the encoded integer.
+     */
+    public static int putVarInt(int v, byte[] bytes, int offset) {
+        checkArgument(v >= 0, "Integer to encode must be non-negative.");
+
+        while(v >= (1<<7)) {
+            bytes[offset++] = (byte)(v | 128);
+            v >>>= 7;
+        }
+        bytes[offset++] = (byte)v;
+        return offset;
+    }
+
+    /**
+     * Returns the number of bytes used by {@link #encodeVarInt} to encode the given non-negative
+     * integer.
+     */
+    public static int varIntSize(int v) {
+        if(v < (1<<7))
+            return 1;
+        else if(v < (1<<14))
+            return 2;
+        else if(v < (1<<21))
+            return 3;
+        else if(v < (1<<28))
+            return 4;
+        else
+            return 5;
+    }
+
     /**
      * Writes a variable-size integer to the output.
      *
@@ -131,6 +192,41 @@ final class IOUtil {
         return decoded;
     }
 
+    /**
+     * Writes a variable-size long to the output, using the zigzag encoding so that values close
+     * to zero, negative or positive, take few bytes.
+     */
+    public static void writeVarLong(long l, DataOutput output) throws IOException {
+        long v = (l << 1) ^ (l >> 63);
+        while((v & ~127L) != 0) {
+            output.write((int)(v | 128));
+            v >>>= 7;
+        }
+        output.write((int)v);
+    }
+
+    /**
+     * Reads a variable-size long written by {@link #writeVarLong} from the input.
+     *
+     * @throws IOException if the long is invalid or there was an error reading the input.
+     */
+    public static long readVarLong(DataInput input) throws IOException {
+        long decoded = 0;
+        for(int i = 0; ; i++) {
+            byte b = input.readByte();
+            decoded |= (long)(b & 127) << (i * 7);
+
+            // too big to be a long
+            if(i == 9 && (b & 0xFF) > 1)
+                throw new IOException("Invalid variable-encoded long.");
+
+            // if no more bytes, stop reading
+            if(b >= 0)
+                break;
+        }
+        return (decoded >>> 1) ^ -(decoded & 1);
+    }
+
     /**
      * Writes the string to the data output.
      *
@@ -246,6 +342,19 @@ final class IOUtil {
         // decode to characters
         // utflen is the upper bound - actual characters may be less
         char[] chars = new char[utflen];
+        int chars_count = decodeUtf(bytes, utflen, chars);
+
+        return new String(chars, 0, chars_count);
+    }
+
+    /**
+     * Decodes bytes in the "modified UTF-8" format written by {@link #writeUtf} (without the
+     * length) into the given character array, which must be at least utflen characters long.
+     * Returns the number of characters decoded.
+     *
+     * @throws UTFDataFormatException if the input is not valid "modified UTF-8"
+     */
+    public static int decodeUtf(byte[] bytes, int utflen, char[] chars) throws UTFDataFormatException {
         int chars_count = 0;
         {
             int count = 0;
@@ -299,6 +408,6 @@ final class IOUtil {
             }
         }
 
-        return new String(chars, 0, chars_count);
+        return chars_count;
     }
 }
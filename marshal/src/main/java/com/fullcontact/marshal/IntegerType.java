@@ -38,6 +38,11 @@ final class IntegerType extends AbstractType<Integer> {
         return dataInput.readInt();
     }
 
+    @Override
+    public int skip(byte[] bytes, int offset, int end) {
+        return offset + 4;
+    }
+
     @Override
     public String toString() {
         return "IntegerType";
@@ -0,0 +1,69 @@
+package com.fullcontact.marshal;
+
+/**
+ * Utilities for working with marshals serialized in the lexicographic format (see {@link
+ * Marshal#toBytes}) without deserializing them.
+ *
+ * Each entry of the lexicographic format is a type code, the entry data with every separator
+ * byte escaped by doubling it, and a separator byte. Since type codes are never the separator, an
+ * entry ends at the first separator byte that is not followed by another separator byte.
+ */
+public final class LexicographicFormat {
+    // static utility class
+    private LexicographicFormat() {}
+
+    /**
+     * Returns the position one past the separator of the nth entry of the serialized marshal in
+     * the given range, or the end of the range if the marshal has fewer than n entries. The bytes
+     * from the offset to the result are the same as {@link Marshal#prefixTerminated} of the first
+     * n entries, or the whole serialized marshal if it is shorter.
+     *
+     * @throws MarshalException if an entry is not terminated before the end of the range, as in
+     * the legacy format without a final separator.
+     */
+    public static int prefixEnd(byte[] bytes, int offset, int end, int n) throws MarshalException {
+        // the empty marshal is a single separator byte
+        if(offset < end && bytes[offset] == Marshal.SEPARATOR)
+            return (n == 0) ? offset : end;
+
+        int position = offset;
+        for(int entry = 0; entry < n && position < end; entry++)
+            position = entryEnd(bytes, position, end);
+        return position;
+    }
+
+    /**
+     * Returns the position one past the separator of the entry beginning at the given position.
+     *
+     * @throws MarshalException if the entry is not terminated before the end of the range.
+     */
+    public static int entryEnd(byte[] bytes, int position, int end) throws MarshalException {
+        // skip the type code, then find the unescaped separator
+        position++;
+        while(true) {
+            if(position >= end)
+                throw new MarshalException("Unterminated marshal entry.");
+
+            if(bytes[position] == Marshal.SEPARATOR) {
+                if(position + 1 < end && bytes[position + 1] == Marshal.SEPARATOR)
+                    position += 2;
+                else
+                    return position + 1;
+            }
+            else {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Returns the terminated prefix of the first n entries of the given serialized marshal, as a
+     * view of the same bytes.
+     *
+     * @see #prefixEnd
+     */
+    public static ByteArray prefix(ByteArray bytes, int n) throws MarshalException {
+        int end = prefixEnd(bytes.backingArray(), bytes.beginIndex(), bytes.endIndex(), n);
+        return new ByteArray(bytes.backingArray(), bytes.beginIndex(), end);
+    }
+}
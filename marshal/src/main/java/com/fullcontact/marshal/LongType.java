@@ -38,6 +38,11 @@ final class LongType extends AbstractType<Long> {
         return dataInput.readLong();
     }
 
+    @Override
+    public int skip(byte[] bytes, int offset, int end) {
+        return offset + 8;
+    }
+
     @Override
     public String toString() {
         return "LongType";
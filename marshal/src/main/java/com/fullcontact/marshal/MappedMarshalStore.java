@@ -0,0 +1,417 @@
+package com.fullcontact.marshal;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A read-only store of marshal keys and values, sorted by the lexicographic bytes of the keys,
+ * that is served from a memory-mapped file.
+ *
+ * Lookups binary search a sparse index of record offsets and then scan forward, comparing the
+ * target directly against the mapped bytes, so nothing is copied or decoded until a match is
+ * found. The file looks like the following:
+ *  [key length][key][value length][value] ... [record offset] ... [index offset][index count][magic]
+ * where the keys and values are the lexicographic bytes of marshals (see {@link Marshal#toBytes}),
+ * lengths are variable-length integers, and the index holds the offset of every Nth record as a
+ * four byte integer. Since a single mapping is used, the file may be at most 2GB.
+ *
+ * The store only uses absolute reads of the mapped buffer and holds no other mutable state, so it
+ * is safe for use by many threads at once. The mapping is released when the store is garbage
+ * collected.
+ */
+public final class MappedMarshalStore {
+    /**
+     * Default number of records between entries of the sparse index.
+     */
+    public static final int DEFAULT_INDEX_INTERVAL = 16;
+
+    // identifies the file format; "MMS1"
+    private static final int MAGIC = 0x4D4D5331;
+
+    // index offset, index count and magic
+    private static final int FOOTER_SIZE = 4 + 4 + 4;
+
+    private final ByteBuffer buffer;
+
+    // end of the records, where the index begins
+    private final int recordsEnd;
+    private final int indexCount;
+
+    /**
+     * Maps the given file.
+     *
+     * @throws MarshalException if the file is not a mapped marshal store.
+     */
+    public MappedMarshalStore(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            long length = randomAccessFile.length();
+            if(length < FOOTER_SIZE || length > Integer.MAX_VALUE)
+                throw new MarshalException("Not a mapped marshal store: " + file);
+
+            this.buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        finally {
+            // the mapping remains valid after the channel is closed
+            randomAccessFile.close();
+        }
+
+        int footer = this.buffer.capacity() - FOOTER_SIZE;
+        this.recordsEnd = this.buffer.getInt(footer);
+        this.indexCount = this.buffer.getInt(footer + 4);
+        if(this.buffer.getInt(footer + 8) != MAGIC || this.recordsEnd < 0 || this.indexCount < 0 ||
+                (long)this.recordsEnd + 4L * this.indexCount != footer)
+            throw new MarshalException("Not a mapped marshal store: " + file);
+    }
+
+    /**
+     * Returns the value for the given key, or null if the key is not present.
+     */
+    public Marshal get(Marshal key) throws MarshalException {
+        ByteArray value = this.get(key.toByteArray());
+        return value != null ? Marshal.fromBytes(value) : null;
+    }
+
+    /**
+     * Returns a copy of the value bytes for the given key bytes, or null if the key is not
+     * present.
+     */
+    public ByteArray get(ByteArray key) throws MarshalException {
+        int record = this.seek(key);
+        if(record >= this.recordsEnd || this.compareKey(record, key) != 0)
+            return null;
+
+        int valueOffset = this.valueOffset(record);
+        int valueLength = this.readVarInt(valueOffset);
+        return this.copy(this.dataOffset(valueOffset, valueLength), valueLength);
+    }
+
+    /**
+     * Returns an iterator, in key order, over the records whose key bytes begin with the given
+     * prefix, such as one returned by {@link Marshal#prefixUnterminated}.
+     *
+     * The iterator throws an IllegalStateException if a record cannot be decoded.
+     */
+    public Iterator<Map.Entry<Marshal, Marshal>> scanPrefix(final ByteArray prefix) throws MarshalException {
+        return new RecordIterator(this.seek(prefix)) {
+            @Override
+            boolean accept(int record) throws MarshalException {
+                return startsWith(record, prefix);
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator, in key order, over the records whose key bytes are greater than or
+     * equal to from and less than to.
+     *
+     * The iterator throws an IllegalStateException if a record cannot be decoded.
+     */
+    public Iterator<Map.Entry<Marshal, Marshal>> scanRange(ByteArray from, final ByteArray to) throws MarshalException {
+        return new RecordIterator(this.seek(from)) {
+            @Override
+            boolean accept(int record) throws MarshalException {
+                return compareKey(record, to) < 0;
+            }
+        };
+    }
+
+    /**
+     * Returns the offset of the first record whose key is greater than or equal to the given
+     * key, or the end of the records if there is none.
+     */
+    private int seek(ByteArray key) throws MarshalException {
+        // last indexed record whose key is less than the target
+        int low = 0;
+        int high = this.indexCount - 1;
+        int start = 0;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            int record = this.indexEntry(middle);
+            if(this.compareKey(record, key) < 0) {
+                start = record;
+                low = middle + 1;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+
+        int record = start;
+        while(record < this.recordsEnd && this.compareKey(record, key) < 0)
+            record = this.nextRecord(record);
+        return record;
+    }
+
+    private int indexEntry(int index) throws MarshalException {
+        int record = this.buffer.getInt(this.recordsEnd + 4 * index);
+        if(record < 0 || record >= this.recordsEnd)
+            throw new MarshalException("Invalid mapped marshal store index.");
+        return record;
+    }
+
+    /**
+     * Compares the key of the record at the given offset to the given key, using the unsigned
+     * byte order of {@link ByteArray#compareTo}.
+     */
+    private int compareKey(int record, ByteArray key) throws MarshalException {
+        int length = this.readVarInt(record);
+        int offset = this.dataOffset(record, length);
+
+        byte[] bytes = key.backingArray();
+        int begin = key.beginIndex();
+        int common = Math.min(length, key.size());
+        for(int i = 0; i < common; i++) {
+            int a = this.buffer.get(offset + i) & 0xFF;
+            int b = bytes[begin + i] & 0xFF;
+            if(a != b)
+                return a - b;
+        }
+        return length - key.size();
+    }
+
+    private boolean startsWith(int record, ByteArray prefix) throws MarshalException {
+        int length = this.readVarInt(record);
+        int offset = this.dataOffset(record, length);
+        if(length < prefix.size())
+            return false;
+
+        byte[] bytes = prefix.backingArray();
+        int begin = prefix.beginIndex();
+        for(int i = 0; i < prefix.size(); i++) {
+            if(this.buffer.get(offset + i) != bytes[begin + i])
+                return false;
+        }
+        return true;
+    }
+
+    private int valueOffset(int record) throws MarshalException {
+        int keyLength = this.readVarInt(record);
+        return this.dataOffset(record, keyLength) + keyLength;
+    }
+
+    private int nextRecord(int record) throws MarshalException {
+        int valueOffset = this.valueOffset(record);
+        int valueLength = this.readVarInt(valueOffset);
+        return this.dataOffset(valueOffset, valueLength) + valueLength;
+    }
+
+    /**
+     * Returns the offset of the data that follows the length at the given offset, after checking
+     * that the data ends within the records.
+     */
+    private int dataOffset(int offset, int length) throws MarshalException {
+        if(length < 0)
+            throw new MarshalException("Invalid mapped marshal store record length " + length + ".");
+        int data = offset + IOUtil.varIntSize(length);
+        if((long)data + length > this.recordsEnd)
+            throw new MarshalException("Truncated mapped marshal store record.");
+        return data;
+    }
+
+    /**
+     * Copies the given range of the records, which must have been checked with {@link
+     * #dataOffset}.
+     */
+    private ByteArray copy(int offset, int length) {
+        // a duplicate has its own position, so the shared buffer is never modified
+        ByteBuffer duplicate = this.buffer.duplicate();
+        duplicate.position(offset);
+        byte[] bytes = new byte[length];
+        duplicate.get(bytes);
+        return new ByteArray(bytes);
+    }
+
+    /**
+     * Reads a variable-length integer in the format of {@link IOUtil#encodeVarInt} from the
+     * mapped bytes.
+     */
+    private int readVarInt(int offset) throws MarshalException {
+        int decoded = 0;
+        for(int i = 0; i < 5; i++) {
+            if(offset + i >= this.recordsEnd)
+                throw new MarshalException("Truncated variable-encoded integer.");
+
+            byte b = this.buffer.get(offset + i);
+            decoded |= ((b & 127) << (i * 7));
+            if(b >= 0)
+                return decoded;
+        }
+        throw new MarshalException("Invalid variable-encoded integer.");
+    }
+
+    /**
+     * Iterator over consecutive records, starting at a given record and ending at the first
+     * record that is not accepted.
+     */
+    private abstract class RecordIterator implements Iterator<Map.Entry<Marshal, Marshal>> {
+        private int record;
+        private Boolean accepted = null;
+
+        RecordIterator(int record) {
+            this.record = record;
+        }
+
+        abstract boolean accept(int record) throws MarshalException;
+
+        @Override
+        public boolean hasNext() {
+            if(this.accepted == null) {
+                try {
+                    this.accepted = this.record < recordsEnd && this.accept(this.record);
+                }
+                catch(MarshalException e) {
+                    throw new IllegalStateException("Could not read mapped marshal store.", e);
+                }
+            }
+            return this.accepted;
+        }
+
+        @Override
+        public Map.Entry<Marshal, Marshal> next() {
+            if(!this.hasNext())
+                throw new NoSuchElementException();
+
+            try {
+                int keyLength = readVarInt(this.record);
+                ByteArray key = copy(dataOffset(this.record, keyLength), keyLength);
+                int valueOffset = valueOffset(this.record);
+                int valueLength = readVarInt(valueOffset);
+                int valueData = dataOffset(valueOffset, valueLength);
+                ByteArray value = copy(valueData, valueLength);
+
+                this.record = valueData + valueLength;
+                this.accepted = null;
+                return new AbstractMap.SimpleImmutableEntry<Marshal, Marshal>(
+                        Marshal.fromBytes(key), Marshal.fromBytes(value));
+            }
+            catch(MarshalException e) {
+                throw new IllegalStateException("Could not read mapped marshal store.", e);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Writes records, in ascending order of the lexicographic bytes of their keys, to a file for
+     * use by a {@link MappedMarshalStore}.
+     *
+     * A Writer is not thread-safe.
+     */
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final int indexInterval;
+
+        // offsets of the indexed records
+        private final List<Integer> index = new ArrayList<Integer>();
+
+        // the previous key
+        private ByteArray lastKey = null;
+
+        private long position = 0;
+        private int count = 0;
+        private boolean closed = false;
+
+        /**
+         * Creates a writer for the given file with the default index interval.
+         */
+        public Writer(File file) throws IOException {
+            this(file, DEFAULT_INDEX_INTERVAL);
+        }
+
+        /**
+         * Creates a writer for the given file.
+         *
+         * @param indexInterval The number of records between entries of the sparse index. A
+         * lookup scans at most this many records after its binary search.
+         */
+        public Writer(File file, int indexInterval) throws IOException {
+            checkArgument(indexInterval > 0, "The index interval must be positive.");
+
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            this.indexInterval = indexInterval;
+        }
+
+        /**
+         * Appends a record to the file.
+         *
+         * @throws IllegalArgumentException if the key does not sort after the previous key.
+         */
+        public void append(Marshal key, Marshal value) throws IOException {
+            this.append(key.toByteArray(), value.toByteArray());
+        }
+
+        /**
+         * Appends a record, given the lexicographic bytes of its key and value, to the file.
+         *
+         * @throws IllegalArgumentException if the key does not sort after the previous key.
+         * @throws MarshalException if the file would exceed 2GB.
+         */
+        public void append(ByteArray key, ByteArray value) throws IOException {
+            checkState(!this.closed, "The writer is closed.");
+            checkArgument(this.lastKey == null || this.lastKey.compareTo(key) < 0,
+                    "Keys must be appended in strictly ascending order.");
+
+            if(this.count % this.indexInterval == 0)
+                this.index.add((int)this.position);
+
+            byte[] keyLength = IOUtil.encodeVarInt(key.size());
+            byte[] valueLength = IOUtil.encodeVarInt(value.size());
+            this.position += keyLength.length + key.size() + valueLength.length + value.size();
+            if(this.position + 4L * this.index.size() + FOOTER_SIZE > Integer.MAX_VALUE)
+                throw new MarshalException("Mapped marshal stores are limited to 2GB.");
+
+            this.out.write(keyLength);
+            this.out.write(key.backingArray(), key.beginIndex(), key.size());
+            this.out.write(valueLength);
+            this.out.write(value.backingArray(), value.beginIndex(), value.size());
+
+            // the key may be a view of a buffer that the caller reuses
+            this.lastKey = new ByteArray(Arrays.copyOfRange(key.backingArray(), key.beginIndex(), key.endIndex()));
+            this.count++;
+        }
+
+        /**
+         * Writes the index and the footer, and closes the file.
+         */
+        @Override
+        public void close() throws IOException {
+            if(this.closed)
+                return;
+            this.closed = true;
+
+            try {
+                for(int offset : this.index)
+                    this.out.writeInt(offset);
+
+                this.out.writeInt((int)this.position);
+                this.out.writeInt(this.index.size());
+                this.out.writeInt(MAGIC);
+            }
+            finally {
+                this.out.close();
+            }
+        }
+    }
+}
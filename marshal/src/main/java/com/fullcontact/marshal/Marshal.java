@@ -8,8 +8,11 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
@@ -79,7 +82,8 @@ public final class Marshal implements Comparable<Marshal> {
          * Creates an entry from the given entry type and byte array.
          */
         public static Entry fromBytes(EntryType entryType, ByteArray data) throws MarshalException {
-            if(data.size() == 0)
+            // null entries are the only entries without data
+            if(data.size() == 0 && !entryType.isNull())
                 throw new MarshalException("Data type must provide non-empty data for the "  +
                         "serialization.");
 
@@ -236,6 +240,135 @@ public final class Marshal implements Comparable<Marshal> {
             return this;
         }
 
+        /**
+         * Adds an integer whose serialized form sorts in numeric order, unlike that of {@link
+         * #addInteger}. It is read back with {@link Marshal#getIntegerAt}.
+         */
+        public Builder addSortableInteger(int i) {
+            EntryType type = EntryType.SORTABLE_INTEGER;
+            this.contents.add(new Entry<Integer>(type, i));
+            return this;
+        }
+
+        /**
+         * Adds a long whose serialized form sorts in numeric order, unlike that of {@link
+         * #addLong}. It is read back with {@link Marshal#getLongAt}.
+         */
+        public Builder addSortableLong(long l) {
+            EntryType type = EntryType.SORTABLE_LONG;
+            this.contents.add(new Entry<Long>(type, l));
+            return this;
+        }
+
+        /**
+         * Adds a double whose serialized form sorts in the order of {@link Double#compare},
+         * unlike that of {@link #addDouble}. It is read back with {@link Marshal#getDoubleAt}.
+         */
+        public Builder addSortableDouble(double d) {
+            EntryType type = EntryType.SORTABLE_DOUBLE;
+            this.contents.add(new Entry<Double>(type, d));
+            return this;
+        }
+
+        /**
+         * Adds a long whose serialized form sorts in numeric order, as {@link #addSortableLong},
+         * but takes from 1 byte for values from -64 to 63 up to 10 bytes, and is never escaped.
+         * It is read back with {@link Marshal#getLongAt}.
+         */
+        public Builder addVarLong(long l) {
+            EntryType type = EntryType.VAR_LONG;
+            this.contents.add(new Entry<Long>(type, l));
+            return this;
+        }
+
+        public Builder addBoolean(boolean b) {
+            EntryType type = EntryType.BOOLEAN;
+            this.contents.add(new Entry<Boolean>(type, b));
+            return this;
+        }
+
+        public Builder addShort(short s) {
+            EntryType type = EntryType.SHORT;
+            this.contents.add(new Entry<Short>(type, s));
+            return this;
+        }
+
+        public Builder addFloat(float f) {
+            EntryType type = EntryType.FLOAT;
+            this.contents.add(new Entry<Float>(type, f));
+            return this;
+        }
+
+        /**
+         * Adds a UUID as its 16 bytes, which sort in the same order as the string form of the
+         * UUID.
+         */
+        public Builder addUuid(UUID uuid) {
+            if(uuid == null)
+                throw new NullPointerException("Null UUID cannot be added to a marshal.");
+            EntryType type = EntryType.UUID;
+            this.contents.add(new Entry<UUID>(type, uuid));
+            return this;
+        }
+
+        /**
+         * Adds a timestamp in microseconds since the epoch. Timestamps in milliseconds can be
+         * converted with {@link java.util.concurrent.TimeUnit#MILLISECONDS}.
+         */
+        public Builder addTimestamp(long micros) {
+            EntryType type = EntryType.TIMESTAMP;
+            this.contents.add(new Entry<Long>(type, micros));
+            return this;
+        }
+
+        /**
+         * Adds an integer of any size, whose serialized form sorts in numeric order. It is read
+         * back with {@link Marshal#getBigIntegerAt}.
+         */
+        public Builder addBigInteger(BigInteger i) {
+            if(i == null)
+                throw new NullPointerException("Null integer cannot be added to a marshal.");
+            EntryType type = EntryType.BIG_INTEGER;
+            this.contents.add(new Entry<BigInteger>(type, i));
+            return this;
+        }
+
+        /**
+         * Adds a decimal whose serialized form sorts in numeric order. The scale is not kept:
+         * equal values have the same serialized form, and are read back with {@link
+         * Marshal#getBigDecimalAt} without trailing zeros, as by {@link
+         * BigDecimal#stripTrailingZeros}.
+         */
+        public Builder addBigDecimal(BigDecimal d) {
+            if(d == null)
+                throw new NullPointerException("Null decimal cannot be added to a marshal.");
+            EntryType type = EntryType.BIG_DECIMAL;
+            this.contents.add(new Entry<BigDecimal>(type, BigDecimalType.normalize(d)));
+            return this;
+        }
+
+        /**
+         * Adds an absent value, which has no data and sorts after the values of every other
+         * type. Checked with {@link Marshal#isNullAt}.
+         */
+        public Builder addNull() {
+            EntryType type = EntryType.NULL;
+            this.contents.add(new Entry<Object>(type, NullType.NULL));
+            return this;
+        }
+
+        /**
+         * Adds an absent value that sorts before the values of every descending type, for
+         * descending fields with nulls first. In ascending fields it sorts after every value, as
+         * no type code below those of the ascending types is free. Checked with {@link
+         * Marshal#isNullAt}.
+         */
+        public Builder addNullFirst() {
+            EntryType type = EntryType.NULL_FIRST;
+            this.contents.add(new Entry<Object>(type, NullType.NULL));
+            return this;
+        }
+
         public Builder addString(String s) {
             if(s == null)
                 throw new NullPointerException("Null string cannot be added to a marshal.");
@@ -252,6 +385,128 @@ public final class Marshal implements Comparable<Marshal> {
             return this;
         }
 
+        // Descending entries sort in the reverse order of the entries added by the corresponding
+        // ascending adders, for scans that return the largest values first. Their values are read
+        // back with the getters of the ascending types.
+
+        public Builder addDescendingByte(byte b) {
+            EntryType type = EntryType.DESCENDING_BYTE;
+            this.contents.add(new Entry<Byte>(type, b));
+            return this;
+        }
+
+        public Builder addDescendingByteArray(ByteArray byteArray) {
+            EntryType type = EntryType.DESCENDING_BYTE_ARRAY;
+            this.contents.add(new Entry<ByteArray>(type, byteArray));
+            return this;
+        }
+
+        public Builder addDescendingDouble(double d) {
+            EntryType type = EntryType.DESCENDING_DOUBLE;
+            this.contents.add(new Entry<Double>(type, d));
+            return this;
+        }
+
+        public Builder addDescendingInteger(int i) {
+            EntryType type = EntryType.DESCENDING_INTEGER;
+            this.contents.add(new Entry<Integer>(type, i));
+            return this;
+        }
+
+        public Builder addDescendingLong(long l) {
+            EntryType type = EntryType.DESCENDING_LONG;
+            this.contents.add(new Entry<Long>(type, l));
+            return this;
+        }
+
+        public Builder addDescendingString(String s) {
+            if(s == null)
+                throw new NullPointerException("Null string cannot be added to a marshal.");
+            EntryType type = EntryType.DESCENDING_STRING;
+            this.contents.add(new Entry<String>(type, s));
+            return this;
+        }
+
+        public Builder addDescendingMarshal(Marshal m) {
+            if(m == null)
+                throw new NullPointerException("Null marshal cannot be added to a marshal.");
+            EntryType type = EntryType.DESCENDING_MARSHAL;
+            this.contents.add(new Entry<Marshal>(type, m));
+            return this;
+        }
+
+        public Builder addDescendingSortableInteger(int i) {
+            EntryType type = EntryType.DESCENDING_SORTABLE_INTEGER;
+            this.contents.add(new Entry<Integer>(type, i));
+            return this;
+        }
+
+        public Builder addDescendingSortableLong(long l) {
+            EntryType type = EntryType.DESCENDING_SORTABLE_LONG;
+            this.contents.add(new Entry<Long>(type, l));
+            return this;
+        }
+
+        public Builder addDescendingSortableDouble(double d) {
+            EntryType type = EntryType.DESCENDING_SORTABLE_DOUBLE;
+            this.contents.add(new Entry<Double>(type, d));
+            return this;
+        }
+
+        public Builder addDescendingVarLong(long l) {
+            EntryType type = EntryType.DESCENDING_VAR_LONG;
+            this.contents.add(new Entry<Long>(type, l));
+            return this;
+        }
+
+        public Builder addDescendingBoolean(boolean b) {
+            EntryType type = EntryType.DESCENDING_BOOLEAN;
+            this.contents.add(new Entry<Boolean>(type, b));
+            return this;
+        }
+
+        public Builder addDescendingShort(short s) {
+            EntryType type = EntryType.DESCENDING_SHORT;
+            this.contents.add(new Entry<Short>(type, s));
+            return this;
+        }
+
+        public Builder addDescendingFloat(float f) {
+            EntryType type = EntryType.DESCENDING_FLOAT;
+            this.contents.add(new Entry<Float>(type, f));
+            return this;
+        }
+
+        public Builder addDescendingUuid(UUID uuid) {
+            if(uuid == null)
+                throw new NullPointerException("Null UUID cannot be added to a marshal.");
+            EntryType type = EntryType.DESCENDING_UUID;
+            this.contents.add(new Entry<UUID>(type, uuid));
+            return this;
+        }
+
+        public Builder addDescendingTimestamp(long micros) {
+            EntryType type = EntryType.DESCENDING_TIMESTAMP;
+            this.contents.add(new Entry<Long>(type, micros));
+            return this;
+        }
+
+        public Builder addDescendingBigInteger(BigInteger i) {
+            if(i == null)
+                throw new NullPointerException("Null integer cannot be added to a marshal.");
+            EntryType type = EntryType.DESCENDING_BIG_INTEGER;
+            this.contents.add(new Entry<BigInteger>(type, i));
+            return this;
+        }
+
+        public Builder addDescendingBigDecimal(BigDecimal d) {
+            if(d == null)
+                throw new NullPointerException("Null decimal cannot be added to a marshal.");
+            EntryType type = EntryType.DESCENDING_BIG_DECIMAL;
+            this.contents.add(new Entry<BigDecimal>(type, BigDecimalType.normalize(d)));
+            return this;
+        }
+
         /**
          * Appends the given marshal to the marshal under construction. This equivalent to calling
          * add for every entry in the provided marshal. This differs from {@link #addMarshal} in
@@ -263,6 +518,19 @@ public final class Marshal implements Comparable<Marshal> {
             return this;
         }
 
+        /**
+         * Adds an entry of the given type for the given field object. The caller must ensure that
+         * the field object is of the class used by the entry type.
+         */
+        // unchecked for field object conversion
+        @SuppressWarnings("unchecked")
+        Builder add(EntryType type, Object fieldObject) {
+            if(fieldObject == null)
+                throw new NullPointerException("Null object cannot be added to a marshal.");
+            this.contents.add(new Entry(type, fieldObject));
+            return this;
+        }
+
         public Marshal build() {
             ImmutableList<Entry> contents = this.contents.build();
             if(contents.isEmpty())
@@ -525,10 +793,26 @@ public final class Marshal implements Comparable<Marshal> {
      * Write the current marshal to the data output.
      */
     public void write(DataOutput dataOutput) throws IOException {
+        this.writePrefix(dataOutput, this.contents.size());
+    }
+
+    /**
+     * Write the first n entries of the current marshal to the data output. The result is the same
+     * as writing a marshal containing only those entries.
+     *
+     * @param n The number of entries to write. That is, entries [0,n) will be written.
+     */
+    public void writePrefix(DataOutput dataOutput, int n) throws IOException {
+        checkArgument(n >= 0, "The number of parts in the prefix must be non-negative.");
+        checkArgument(n <= this.contents.size(),
+                "The number of parts in the prefix must be <= the number of parts.");
+
         // length
-        dataOutput.writeInt(this.contents.size());
+        dataOutput.writeInt(n);
+
+        for(int i = 0; i < n; i++) {
+            Entry e = this.contents.get(i);
 
-        for(Entry e : this.contents) {
             // type byte
             dataOutput.write(e.getEntryType().getTypeCode());
 
@@ -547,11 +831,27 @@ public final class Marshal implements Comparable<Marshal> {
     }
 
     /**
-     * Returns the object at the given index, regardless of type.
+     * Returns the object at the given index, regardless of type, or null for a null entry.
      */
     public Object getAt(int index) throws MarshalException {
-        Entry entry = this.contents.get(index);
-        return entry.getFieldObject();
+        Object object = this.contents.get(index).getFieldObject();
+        return object == NullType.NULL ? null : object;
+    }
+
+    /**
+     * Returns the unescaped lexicographic data of the entry at the given index.
+     */
+    ByteArray getDataAt(int index) {
+        return this.contents.get(index).getData();
+    }
+
+    /**
+     * Whether the entry at the given index is null. Only the type of the entry is checked.
+     *
+     * @throws IndexOutOfBoundsException
+     */
+    public boolean isNullAt(int index) {
+        return this.contents.get(index).getEntryType().isNull();
     }
 
     public byte getByteAt(int index) throws MarshalException {
@@ -621,6 +921,74 @@ public final class Marshal implements Comparable<Marshal> {
                     getTypeAt(index) + ", not Marshal.");
     }
 
+    public boolean getBooleanAt(int index) throws MarshalException {
+        Object o = this.getAt(index);
+        if(o instanceof Boolean)
+            return (Boolean)o;
+        else
+            throw new MarshalException("Type at position " + index + " is " +
+                    getTypeAt(index) + ", not Boolean.");
+    }
+
+    public short getShortAt(int index) throws MarshalException {
+        Object o = this.getAt(index);
+        if(o instanceof Short)
+            return (Short)o;
+        else
+            throw new MarshalException("Type at position " + index + " is " +
+                    getTypeAt(index) + ", not Short.");
+    }
+
+    public float getFloatAt(int index) throws MarshalException {
+        Object o = this.getAt(index);
+        if(o instanceof Float)
+            return (Float)o;
+        else
+            throw new MarshalException("Type at position " + index + " is " +
+                    getTypeAt(index) + ", not Float.");
+    }
+
+    public UUID getUuidAt(int index) throws MarshalException {
+        Object o = this.getAt(index);
+        if(o instanceof UUID)
+            return (UUID)o;
+        else
+            throw new MarshalException("Type at position " + index + " is " +
+                    getTypeAt(index) + ", not UUID.");
+    }
+
+    public BigInteger getBigIntegerAt(int index) throws MarshalException {
+        Object o = this.getAt(index);
+        if(o instanceof BigInteger)
+            return (BigInteger)o;
+        else
+            throw new MarshalException("Type at position " + index + " is " +
+                    getTypeAt(index) + ", not BigInteger.");
+    }
+
+    /**
+     * Returns the decimal at the given index, without trailing zeros.
+     */
+    public BigDecimal getBigDecimalAt(int index) throws MarshalException {
+        Object o = this.getAt(index);
+        if(o instanceof BigDecimal)
+            return (BigDecimal)o;
+        else
+            throw new MarshalException("Type at position " + index + " is " +
+                    getTypeAt(index) + ", not BigDecimal.");
+    }
+
+    /**
+     * Returns the timestamp at the given index, in microseconds since the epoch.
+     */
+    public long getTimestampAt(int index) throws MarshalException {
+        if(getTypeAt(index).ascending() == EntryType.TIMESTAMP)
+            return (Long)this.getAt(index);
+        else
+            throw new MarshalException("Type at position " + index + " is " +
+                    getTypeAt(index) + ", not Timestamp.");
+    }
+
     /**
      * A subrange of the current Marshal.
      *
@@ -0,0 +1,561 @@
+package com.fullcontact.marshal;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * A batch of serialized marshals of the same shape, in the lexicographic format, decoded into one
+ * primitive array per field.
+ *
+ * The batch is created with the expected type of each field. Loading a batch first finds the
+ * entry boundaries of every row, and then decodes the fields one column at a time, so that no
+ * object is created per row and loops over a column run over plain arrays:
+ *
+ * <ul>
+ * <li>BYTE fields are decoded into a byte[], INTEGER fields into an int[], LONG fields into a
+ * long[] and DOUBLE fields into a double[], indexed by row. The sortable numeric types, and the
+ * descending variants of all of these types, are decoded into the same arrays as the plain
+ * types. VAR_LONG and TIMESTAMP fields are also decoded into a long[], and BOOLEAN, SHORT and
+ * FLOAT fields into a boolean[], a short[] and a float[].</li>
+ * <li>STRING, BYTE_ARRAY and MARSHAL fields are copied, unescaped, into a single byte[] per
+ * column; the data of row i is between offsets i and i + 1 of the column. Strings are UTF-8 and
+ * nested marshals are in the lexicographic format. BIG_INTEGER and BIG_DECIMAL fields are copied
+ * in the same way, as their lexicographic data, which compares as bytes in numeric order.</li>
+ * </ul>
+ *
+ * A field is null in a row if the row has too few entries or if the entry has a different type,
+ * such as a NULL entry.
+ * Null fields are marked in a bitmap per column, with row i in bit (i % 64) of word (i / 64), and
+ * have a zero value or empty data. Entries past the last field are ignored.
+ *
+ * <pre>
+ * MarshalBatch batch = new MarshalBatch(1024, EntryType.STRING, EntryType.LONG);
+ * while(batch.load(rows) &gt; 0) {
+ *     long[] counts = batch.getLongs(1);
+ *     for(int i = 0; i &lt; batch.size(); i++)
+ *         total += counts[i];
+ * }
+ * </pre>
+ *
+ * The column arrays are reused by the next load, and may be longer than the batch. A MarshalBatch
+ * is not thread-safe.
+ */
+public final class MarshalBatch {
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final EntryType[] types;
+
+    // number of rows in the batch, and the number of rows the arrays can hold
+    private int size = 0;
+    private int capacity;
+
+    // rows being decoded, and for each row the beginning of the row followed by the end of each
+    // entry, or -1 for missing entries
+    private ByteArray[] rows;
+    private int[] bounds;
+
+    // per column: the values, the offsets of variable-length data, and the null bits
+    private final Object[] values;
+    private final int[][] offsets;
+    private final long[][] nulls;
+
+    // unescaped fixed-width values that contained separator bytes; escaped data is at most twice
+    // as long
+    private final byte[] scratch = new byte[16];
+
+    /**
+     * Creates a batch holding up to the given number of rows of the given field types.
+     *
+     * @throws IllegalArgumentException if a type cannot be decoded into a column.
+     */
+    public MarshalBatch(int capacity, EntryType... types) {
+        checkArgument(capacity > 0, "The capacity must be positive.");
+        for(EntryType type : types) {
+            checkArgument(type != EntryType.LEGACY_EMPTY && !type.isNull()
+                    && (!type.isDescending() || isFixed(type)), "Cannot decode columns of type " + type + ".");
+        }
+
+        this.types = types.clone();
+        this.capacity = capacity;
+        this.rows = new ByteArray[capacity];
+        this.bounds = new int[capacity * (types.length + 1)];
+        this.values = new Object[types.length];
+        this.offsets = new int[types.length][];
+        this.nulls = new long[types.length][];
+        this.allocate(capacity);
+    }
+
+    /**
+     * Loads up to the capacity of the batch from the given rows, replacing the current batch.
+     * Returns the number of rows loaded, which is zero once the rows are exhausted.
+     *
+     * @throws MarshalException if a row is not a serialized marshal.
+     */
+    public int load(Iterator<? extends ByteArray> rows) throws MarshalException {
+        int count = 0;
+        while(count < this.capacity && rows.hasNext())
+            this.rows[count++] = rows.next();
+        this.decode(count);
+        return count;
+    }
+
+    /**
+     * Loads all of the given rows, replacing the current batch and growing it if needed.
+     *
+     * @throws MarshalException if a row is not a serialized marshal.
+     */
+    public void load(List<? extends ByteArray> rows) throws MarshalException {
+        if(rows.size() > this.capacity) {
+            this.capacity = rows.size();
+            this.rows = new ByteArray[this.capacity];
+            this.bounds = new int[this.capacity * (this.types.length + 1)];
+            this.allocate(this.capacity);
+        }
+
+        int count = 0;
+        for(ByteArray row : rows)
+            this.rows[count++] = row;
+        this.decode(count);
+    }
+
+    /**
+     * Returns the number of rows in the batch.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of fields in each row.
+     */
+    public int getFieldCount() {
+        return this.types.length;
+    }
+
+    /**
+     * Returns the type of the given field.
+     */
+    public EntryType getType(int field) {
+        return this.types[field];
+    }
+
+    /**
+     * Returns the values of a BYTE field, indexed by row.
+     */
+    public byte[] getBytes(int field) {
+        return (byte[])this.column(field, EntryType.BYTE);
+    }
+
+    /**
+     * Returns the values of a BOOLEAN field, indexed by row.
+     */
+    public boolean[] getBooleans(int field) {
+        return (boolean[])this.column(field, EntryType.BOOLEAN);
+    }
+
+    /**
+     * Returns the values of a SHORT field, indexed by row.
+     */
+    public short[] getShorts(int field) {
+        return (short[])this.column(field, EntryType.SHORT);
+    }
+
+    /**
+     * Returns the values of an INTEGER or SORTABLE_INTEGER field, indexed by row.
+     */
+    public int[] getIntegers(int field) {
+        return (int[])this.column(field, EntryType.INTEGER, EntryType.SORTABLE_INTEGER);
+    }
+
+    /**
+     * Returns the values of a LONG, SORTABLE_LONG, VAR_LONG or TIMESTAMP field, indexed by row.
+     */
+    public long[] getLongs(int field) {
+        return (long[])this.column(field, EntryType.LONG, EntryType.SORTABLE_LONG, EntryType.VAR_LONG,
+                EntryType.TIMESTAMP);
+    }
+
+    /**
+     * Returns the values of a FLOAT field, indexed by row.
+     */
+    public float[] getFloats(int field) {
+        return (float[])this.column(field, EntryType.FLOAT);
+    }
+
+    /**
+     * Returns the values of a DOUBLE or SORTABLE_DOUBLE field, indexed by row.
+     */
+    public double[] getDoubles(int field) {
+        return (double[])this.column(field, EntryType.DOUBLE, EntryType.SORTABLE_DOUBLE);
+    }
+
+    /**
+     * Returns the data of a STRING, BYTE_ARRAY or MARSHAL field, for all rows.
+     *
+     * @see #getOffsets
+     */
+    public byte[] getData(int field) {
+        checkArgument(this.offsets[field] != null, "Field " + field + " is not variable-length.");
+        return (byte[])this.values[field];
+    }
+
+    /**
+     * Returns the offsets into the data of a STRING, BYTE_ARRAY or MARSHAL field. The data of row
+     * i is between offsets i and i + 1.
+     *
+     * @see #getData
+     */
+    public int[] getOffsets(int field) {
+        checkArgument(this.offsets[field] != null, "Field " + field + " is not variable-length.");
+        return this.offsets[field];
+    }
+
+    /**
+     * Returns the value of a STRING field in the given row, or null if the field is null.
+     */
+    public String getString(int field, int row) {
+        this.column(field, EntryType.STRING);
+        checkElementIndex(row, this.size);
+        if(this.isNull(field, row))
+            return null;
+
+        int[] offsets = this.offsets[field];
+        return new String(this.getData(field), offsets[row], offsets[row + 1] - offsets[row], CHARSET);
+    }
+
+    /**
+     * Returns the value of a BYTE_ARRAY or MARSHAL field in the given row, as a view of the
+     * column data, or null if the field is null.
+     */
+    public ByteArray getByteArray(int field, int row) {
+        checkArgument(this.types[field] == EntryType.BYTE_ARRAY || this.types[field] == EntryType.MARSHAL,
+                "Field " + field + " is of type " + this.types[field] + ".");
+        checkElementIndex(row, this.size);
+        if(this.isNull(field, row))
+            return null;
+
+        int[] offsets = this.offsets[field];
+        return new ByteArray(this.getData(field), offsets[row], offsets[row + 1]);
+    }
+
+    /**
+     * Returns the null bits of the given field, with row i in bit (i % 64) of word (i / 64).
+     */
+    public long[] getNulls(int field) {
+        return this.nulls[field];
+    }
+
+    /**
+     * Whether the given field is null in the given row.
+     */
+    public boolean isNull(int field, int row) {
+        checkElementIndex(row, this.size);
+        return (this.nulls[field][row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Returns the number of rows in which the given field is null.
+     */
+    public int getNullCount(int field) {
+        long[] nulls = this.nulls[field];
+        int count = 0;
+        for(int word = 0; word < (this.size + 63) >>> 6; word++)
+            count += Long.bitCount(nulls[word]);
+        return count;
+    }
+
+    private Object column(int field, EntryType... types) {
+        checkArgument(Arrays.asList(types).contains(this.types[field].ascending()),
+                "Field " + field + " is of type " + this.types[field] + ".");
+        return this.values[field];
+    }
+
+    private void allocate(int capacity) {
+        for(int field = 0; field < this.types.length; field++) {
+            switch(this.types[field].ascending()) {
+                case BYTE:
+                    this.values[field] = new byte[capacity];
+                    break;
+                case BOOLEAN:
+                    this.values[field] = new boolean[capacity];
+                    break;
+                case SHORT:
+                    this.values[field] = new short[capacity];
+                    break;
+                case FLOAT:
+                    this.values[field] = new float[capacity];
+                    break;
+                case INTEGER:
+                case SORTABLE_INTEGER:
+                    this.values[field] = new int[capacity];
+                    break;
+                case LONG:
+                case SORTABLE_LONG:
+                case VAR_LONG:
+                case TIMESTAMP:
+                    this.values[field] = new long[capacity];
+                    break;
+                case DOUBLE:
+                case SORTABLE_DOUBLE:
+                    this.values[field] = new double[capacity];
+                    break;
+                default:
+                    // data is sized when decoded
+                    if(this.values[field] == null)
+                        this.values[field] = new byte[0];
+                    this.offsets[field] = new int[capacity + 1];
+                    break;
+            }
+            this.nulls[field] = new long[(capacity + 63) >>> 6];
+        }
+    }
+
+    private void decode(int count) throws MarshalException {
+        this.size = 0;
+        try {
+            this.findBounds(count);
+            for(int field = 0; field < this.types.length; field++) {
+                Arrays.fill(this.nulls[field], 0L);
+                if(isFixed(this.types[field]))
+                    this.decodeFixed(field, count);
+                else if(this.types[field] == EntryType.VAR_LONG)
+                    this.decodeVarLong(field, count);
+                else
+                    this.decodeVariable(field, count);
+            }
+            this.size = count;
+        }
+        finally {
+            // do not hold on to the rows
+            Arrays.fill(this.rows, 0, count, null);
+        }
+    }
+
+    private void findBounds(int count) throws MarshalException {
+        int fields = this.types.length;
+        int stride = fields + 1;
+        for(int row = 0; row < count; row++) {
+            byte[] bytes = this.rows[row].backingArray();
+            int position = this.rows[row].beginIndex();
+            int end = this.rows[row].endIndex();
+            int base = row * stride;
+
+            this.bounds[base] = position;
+            // the empty marshal is a single separator byte
+            if(position < end && bytes[position] == Marshal.SEPARATOR)
+                position = end;
+            for(int field = 0; field < fields; field++) {
+                if(position < end) {
+                    position = LexicographicFormat.entryEnd(bytes, position, end);
+                    this.bounds[base + field + 1] = position;
+                }
+                else {
+                    this.bounds[base + field + 1] = -1;
+                }
+            }
+        }
+    }
+
+    private void decodeFixed(int field, int count) throws MarshalException {
+        EntryType type = this.types[field];
+        byte typeCode = type.getTypeCode();
+        int width = width(type);
+        int stride = this.types.length + 1;
+        long[] nulls = this.nulls[field];
+        // the bits of descending values are inverted
+        long invert = type.isDescending() ? -1L : 0L;
+
+        for(int row = 0; row < count; row++) {
+            byte[] bytes = this.rows[row].backingArray();
+            int begin = this.bounds[row * stride + field];
+            int end = this.bounds[row * stride + field + 1];
+
+            int position;
+            if(end < 0 || bytes[begin] != typeCode) {
+                nulls[row >>> 6] |= 1L << row;
+                bytes = null;
+                position = 0;
+            }
+            else if(end - begin - 2 == width) {
+                position = begin + 1;
+            }
+            else {
+                // the data contains escaped separator bytes
+                if(end - begin - 2 > 2 * width || unescape(bytes, begin + 1, end - 1, this.scratch, 0) != width)
+                    throw new MarshalException("Invalid " + type + " entry of " + (end - begin - 2) + " bytes.");
+                bytes = this.scratch;
+                position = 0;
+            }
+
+            switch(type.ascending()) {
+                case BYTE:
+                    ((byte[])this.values[field])[row] = (bytes == null) ? 0 : (byte)(bytes[position] ^ invert);
+                    break;
+                case INTEGER:
+                    ((int[])this.values[field])[row] = (bytes == null) ? 0 : readInt(bytes, position) ^ (int)invert;
+                    break;
+                case LONG:
+                    ((long[])this.values[field])[row] = (bytes == null) ? 0L : readLong(bytes, position) ^ invert;
+                    break;
+                case SORTABLE_INTEGER:
+                    ((int[])this.values[field])[row] =
+                        (bytes == null) ? 0 : SortableIntegerType.flip(readInt(bytes, position) ^ (int)invert);
+                    break;
+                case SORTABLE_LONG:
+                case TIMESTAMP:
+                    ((long[])this.values[field])[row] =
+                        (bytes == null) ? 0L : SortableLongType.flip(readLong(bytes, position) ^ invert);
+                    break;
+                case BOOLEAN:
+                    ((boolean[])this.values[field])[row] = (bytes != null) && ((bytes[position] ^ invert) & 1) != 0;
+                    break;
+                case SHORT:
+                    ((short[])this.values[field])[row] =
+                        (bytes == null) ? 0 : (short)(readShort(bytes, position) ^ invert ^ 0x8000);
+                    break;
+                case FLOAT:
+                    ((float[])this.values[field])[row] =
+                        (bytes == null) ? 0.0f : FloatType.fromSortable(readInt(bytes, position) ^ (int)invert);
+                    break;
+                case SORTABLE_DOUBLE:
+                    ((double[])this.values[field])[row] =
+                        (bytes == null) ? 0.0 : SortableDoubleType.fromSortable(readLong(bytes, position) ^ invert);
+                    break;
+                default:
+                    ((double[])this.values[field])[row] =
+                        (bytes == null) ? 0.0 : Double.longBitsToDouble(readLong(bytes, position) ^ invert);
+                    break;
+            }
+        }
+    }
+
+    private void decodeVarLong(int field, int count) throws MarshalException {
+        byte typeCode = EntryType.VAR_LONG.getTypeCode();
+        int stride = this.types.length + 1;
+        long[] nulls = this.nulls[field];
+        long[] values = (long[])this.values[field];
+
+        for(int row = 0; row < count; row++) {
+            byte[] bytes = this.rows[row].backingArray();
+            int begin = this.bounds[row * stride + field];
+            int end = this.bounds[row * stride + field + 1];
+
+            if(end < 0 || bytes[begin] != typeCode) {
+                nulls[row >>> 6] |= 1L << row;
+                values[row] = 0L;
+            }
+            else {
+                // never escaped
+                values[row] = VarLongType.get(bytes, begin + 1, end - 1);
+            }
+        }
+    }
+
+    private void decodeVariable(int field, int count) {
+        EntryType type = this.types[field];
+        byte typeCode = type.getTypeCode();
+        int stride = this.types.length + 1;
+        long[] nulls = this.nulls[field];
+        int[] offsets = this.offsets[field];
+
+        // the escaped lengths bound the unescaped lengths
+        long length = 0;
+        for(int row = 0; row < count; row++) {
+            int begin = this.bounds[row * stride + field];
+            int end = this.bounds[row * stride + field + 1];
+            if(end < 0 || this.rows[row].backingArray()[begin] != typeCode)
+                nulls[row >>> 6] |= 1L << row;
+            else
+                length += end - begin - 2;
+        }
+        checkArgument(length <= Integer.MAX_VALUE, "The data of field " + field + " is too large.");
+        if(((byte[])this.values[field]).length < length)
+            this.values[field] = new byte[(int)length];
+        byte[] data = (byte[])this.values[field];
+
+        int position = 0;
+        for(int row = 0; row < count; row++) {
+            offsets[row] = position;
+            if((nulls[row >>> 6] & (1L << row)) != 0)
+                continue;
+
+            byte[] bytes = this.rows[row].backingArray();
+            int begin = this.bounds[row * stride + field] + 1;
+            int end = this.bounds[row * stride + field + 1] - 1;
+            // special case to decode the empty string
+            if(type == EntryType.STRING && end - begin == 1 && bytes[begin] == 0x00)
+                continue;
+            position = unescape(bytes, begin, end, data, position);
+        }
+        offsets[count] = position;
+    }
+
+    // copies the escaped bytes to the target, returning the end of the unescaped bytes
+    private static int unescape(byte[] bytes, int begin, int end, byte[] target, int position) {
+        for(int i = begin; i < end; i++) {
+            byte b = bytes[i];
+            target[position++] = b;
+            if(b == Marshal.SEPARATOR)
+                i++;
+        }
+        return position;
+    }
+
+    /**
+     * Whether values of the type are decoded into a primitive array.
+     */
+    private static boolean isFixed(EntryType type) {
+        switch(type.ascending()) {
+            case BYTE:
+            case INTEGER:
+            case LONG:
+            case DOUBLE:
+            case SORTABLE_INTEGER:
+            case SORTABLE_LONG:
+            case SORTABLE_DOUBLE:
+            case BOOLEAN:
+            case SHORT:
+            case FLOAT:
+            case TIMESTAMP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int width(EntryType type) {
+        switch(type.ascending()) {
+            case BYTE:
+            case BOOLEAN:
+                return 1;
+            case SHORT:
+                return 2;
+            case INTEGER:
+            case SORTABLE_INTEGER:
+            case FLOAT:
+                return 4;
+            default:
+                return 8;
+        }
+    }
+
+    private static int readShort(byte[] bytes, int position) {
+        return ((bytes[position] & 0xFF) << 8) | (bytes[position + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return ((bytes[position] & 0xFF) << 24)
+            | ((bytes[position + 1] & 0xFF) << 16)
+            | ((bytes[position + 2] & 0xFF) << 8)
+            | (bytes[position + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] bytes, int position) {
+        return ((long)readInt(bytes, position) << 32) | (readInt(bytes, position + 4) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,266 @@
+package com.fullcontact.marshal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A Bloom filter of serialized marshals in the lexicographic format, and of their prefixes of
+ * configured lengths.
+ *
+ * Adding a key inserts the whole key, and the terminated prefix of each configured number of
+ * leading entries (see {@link Marshal#prefixTerminated}), in a single pass over the entry
+ * boundaries. Queries hash the given bytes directly, so neither keys nor prefixes are ever
+ * decoded. A negative answer is always correct; a positive answer is wrong with about the
+ * configured probability. Positions are derived from a single 64-bit {@link ByteHash} of the bytes
+ * by double hashing.
+ *
+ * The filter is serialized by {@link #write}, as the number of hash functions, the prefix lengths
+ * and the bits, and can be read back with {@link #read}.
+ *
+ * A MarshalBloomFilter is not thread-safe while keys are being added.
+ */
+public final class MarshalBloomFilter {
+    // identifies the serialized form
+    private static final byte VERSION = 1;
+
+    // which prefix lengths are inserted, indexed by number of entries
+    private final boolean[] prefixes;
+    private final int[] prefixLengths;
+
+    private final int hashCount;
+    private final long[] bits;
+    private final long bitCount;
+
+    private MarshalBloomFilter(int[] prefixLengths, int hashCount, long[] bits) {
+        this.prefixLengths = prefixLengths.clone();
+        Arrays.sort(this.prefixLengths);
+
+        int max = 0;
+        for(int length : this.prefixLengths) {
+            checkArgument(length > 0, "Prefix lengths must be positive.");
+            max = Math.max(max, length);
+        }
+        this.prefixes = new boolean[max + 1];
+        for(int length : this.prefixLengths)
+            this.prefixes[length] = true;
+
+        this.hashCount = hashCount;
+        this.bits = bits;
+        this.bitCount = (long)bits.length * 64;
+    }
+
+    /**
+     * Creates an empty filter sized for the given number of keys.
+     *
+     * @param expectedKeys The number of keys that will be added.
+     * @param falsePositiveRate The desired probability of a false positive, for keys and for each
+     * prefix length.
+     * @param prefixLengths The numbers of leading entries whose prefixes are added with each key.
+     */
+    public static MarshalBloomFilter create(long expectedKeys, double falsePositiveRate, int... prefixLengths) {
+        checkArgument(expectedKeys > 0, "The expected number of keys must be positive.");
+        checkArgument(falsePositiveRate > 0 && falsePositiveRate < 1,
+                "The false positive rate must be between 0 and 1.");
+
+        // each key inserts itself and one value per prefix length
+        double insertions = (double)expectedKeys * (prefixLengths.length + 1);
+        double optimalBits = -insertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long words = Math.max(1, (long)Math.ceil(optimalBits / 64));
+        // positions are 31-bit
+        checkArgument(words <= (1L << 31) / 64, "The filter would be too large.");
+
+        int hashCount = Math.max(1, (int)Math.round(words * 64 / insertions * Math.log(2)));
+        return new MarshalBloomFilter(prefixLengths, hashCount, new long[(int)words]);
+    }
+
+    /**
+     * Adds the given marshal and its configured prefixes.
+     */
+    public void put(Marshal key) throws MarshalException {
+        this.put(key.toByteArray());
+    }
+
+    /**
+     * Adds the given serialized marshal and its configured prefixes.
+     *
+     * @throws MarshalException if the bytes are not a serialized marshal.
+     */
+    public void put(ByteArray key) throws MarshalException {
+        byte[] bytes = key.backingArray();
+        int begin = key.beginIndex();
+        int end = key.endIndex();
+
+        // the empty marshal has no entries
+        if(begin < end && bytes[begin] != Marshal.SEPARATOR) {
+            int position = begin;
+            for(int entries = 1; entries < this.prefixes.length && position < end; entries++) {
+                position = LexicographicFormat.entryEnd(bytes, position, end);
+                if(this.prefixes[entries] && position < end)
+                    this.add(bytes, begin, position);
+            }
+        }
+
+        this.add(bytes, begin, end);
+    }
+
+    /**
+     * Whether the given marshal might have been added. A false result is always correct.
+     */
+    public boolean mightContain(Marshal key) {
+        return this.mightContain(key.toByteArray());
+    }
+
+    /**
+     * Whether the given serialized marshal might have been added. A false result is always
+     * correct.
+     */
+    public boolean mightContain(ByteArray key) {
+        return this.contains(key.backingArray(), key.beginIndex(), key.endIndex());
+    }
+
+    /**
+     * Whether a marshal beginning with the given terminated prefix might have been added. The
+     * prefix, such as one returned by {@link Marshal#prefixTerminated}, must have one of the
+     * configured lengths. A false result is always correct.
+     *
+     * @throws IllegalArgumentException if the prefix does not have a configured length.
+     * @throws MarshalException if the bytes are not a terminated prefix.
+     */
+    public boolean mightContainPrefix(ByteArray prefix) throws MarshalException {
+        byte[] bytes = prefix.backingArray();
+        int begin = prefix.beginIndex();
+        int end = prefix.endIndex();
+
+        int entries = 0;
+        for(int position = begin; position < end; entries++)
+            position = LexicographicFormat.entryEnd(bytes, position, end);
+        checkArgument(entries < this.prefixes.length && this.prefixes[entries],
+                "Prefixes of " + entries + " entries are not in the filter.");
+
+        return this.contains(bytes, begin, end);
+    }
+
+    /**
+     * Returns the configured prefix lengths, in ascending order.
+     */
+    public int[] getPrefixLengths() {
+        return this.prefixLengths.clone();
+    }
+
+    /**
+     * Returns the number of bits in the filter.
+     */
+    public long getBitCount() {
+        return this.bitCount;
+    }
+
+    /**
+     * Returns the number of hash functions.
+     */
+    public int getHashCount() {
+        return this.hashCount;
+    }
+
+    /**
+     * Writes the filter to the data output.
+     */
+    public void write(DataOutput dataOutput) throws IOException {
+        dataOutput.write(VERSION);
+        IOUtil.writeVarInt(this.hashCount, dataOutput);
+        IOUtil.writeVarInt(this.prefixLengths.length, dataOutput);
+        for(int length : this.prefixLengths)
+            IOUtil.writeVarInt(length, dataOutput);
+        IOUtil.writeVarInt(this.bits.length, dataOutput);
+        for(long word : this.bits)
+            dataOutput.writeLong(word);
+    }
+
+    /**
+     * Reads a filter written by {@link #write}.
+     */
+    public static MarshalBloomFilter read(DataInput dataInput) throws IOException {
+        byte version = dataInput.readByte();
+        if(version != VERSION)
+            throw new MarshalException("Unknown Bloom filter version: " + version);
+
+        int hashCount = IOUtil.readVarInt(dataInput);
+        int[] prefixLengths = new int[IOUtil.readVarInt(dataInput)];
+        for(int i = 0; i < prefixLengths.length; i++) {
+            prefixLengths[i] = IOUtil.readVarInt(dataInput);
+            if(prefixLengths[i] <= 0)
+                throw new MarshalException("Invalid Bloom filter prefix length.");
+        }
+        long[] bits = new long[IOUtil.readVarInt(dataInput)];
+        if(hashCount <= 0 || bits.length == 0)
+            throw new MarshalException("Invalid Bloom filter.");
+        for(int i = 0; i < bits.length; i++)
+            bits[i] = dataInput.readLong();
+
+        return new MarshalBloomFilter(prefixLengths, hashCount, bits);
+    }
+
+    /**
+     * Returns the serialized form of the filter.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            this.write(new DataOutputStream(bytes));
+        }
+        catch(IOException e) {
+            // impossible
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a filter from its serialized form.
+     */
+    public static MarshalBloomFilter fromBytes(byte[] bytes) throws MarshalException {
+        try {
+            return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        }
+        catch(MarshalException e) {
+            throw e;
+        }
+        catch(IOException e) {
+            throw new MarshalException("Truncated Bloom filter.", e);
+        }
+    }
+
+    private void add(byte[] bytes, int begin, int end) {
+        long hash = ByteHash.hash64(bytes, begin, end - begin, 0);
+        int hash1 = (int)hash;
+        int hash2 = (int)(hash >>> 32);
+        for(int i = 1; i <= this.hashCount; i++) {
+            long bit = this.position(hash1 + i * hash2);
+            this.bits[(int)(bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private boolean contains(byte[] bytes, int begin, int end) {
+        long hash = ByteHash.hash64(bytes, begin, end - begin, 0);
+        int hash1 = (int)hash;
+        int hash2 = (int)(hash >>> 32);
+        for(int i = 1; i <= this.hashCount; i++) {
+            long bit = this.position(hash1 + i * hash2);
+            if((this.bits[(int)(bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    private long position(int combined) {
+        // flip negative values to keep the full range of positions
+        return (combined < 0 ? ~combined : combined) % this.bitCount;
+    }
+}
@@ -0,0 +1,453 @@
+package com.fullcontact.marshal;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Generates a {@link MarshalRecord} class specialized to a {@link MarshalSchema}.
+ *
+ * The generated class holds each entry in a public field of the matching primitive type, and
+ * encodes and decodes the lexicographic and writable formats with straight-line code per field,
+ * instead of dispatching on the type of every entry and boxing its value as the generic Marshal
+ * does. Nested marshal fields are held as generic marshals.
+ *
+ * The source can be generated at build time, from the command line:
+ *
+ * <pre>
+ * java com.fullcontact.marshal.MarshalCodeGenerator com.example.UserKey STRING:id LONG:timestamp
+ * </pre>
+ *
+ * or generated and compiled in memory at runtime with {@link #compile}, which requires a JDK.
+ */
+public final class MarshalCodeGenerator {
+    // static utility class
+    private MarshalCodeGenerator() {}
+
+    /**
+     * Generates the source of a record class with the given fully qualified name for the given
+     * schema. Fields are named after the given names, or field0, field1, ... if no names are
+     * given.
+     *
+     * @throws IllegalArgumentException if the names are not valid Java identifiers or do not
+     * match the schema.
+     */
+    public static String generate(MarshalSchema schema, String className, String... fieldNames) {
+        String[] names = fieldNames(schema, fieldNames);
+        int dot = className.lastIndexOf('.');
+        String packageName = dot < 0 ? null : className.substring(0, dot);
+        String simpleName = className.substring(dot + 1);
+        checkArgument(isIdentifier(simpleName), "Invalid class name: " + className);
+
+        Source source = new Source();
+        if(packageName != null)
+            source.line("package %s;", packageName).line();
+        source.line("import com.fullcontact.marshal.ByteArray;")
+            .line("import com.fullcontact.marshal.EntryType;")
+            .line("import com.fullcontact.marshal.Marshal;")
+            .line("import com.fullcontact.marshal.MarshalException;")
+            .line("import com.fullcontact.marshal.MarshalRecord;")
+            .line("import com.fullcontact.marshal.MarshalSchema;")
+            .line()
+            .line("import java.io.DataInput;")
+            .line("import java.io.DataOutput;")
+            .line("import java.io.IOException;")
+            .line()
+            .line("/**")
+            .line(" * Generated by MarshalCodeGenerator for the schema %s.", schema)
+            .line(" */")
+            .open("public final class %s extends MarshalRecord {", simpleName);
+
+        source.line("public static final MarshalSchema SCHEMA = %s;", schemaExpression(schema)).line();
+        for(int field = 0; field < schema.size(); field++) {
+            EntryType type = schema.getTypeAt(field);
+            String initial = initialValue(type);
+            if(initial == null)
+                source.line("public %s %s;", javaType(type), names[field]);
+            else
+                source.line("public %s %s = %s;", javaType(type), names[field], initial);
+        }
+        source.line();
+
+        source.line("@Override")
+            .open("public MarshalSchema getSchema() {")
+            .line("return SCHEMA;")
+            .close("}")
+            .line();
+
+        // lexicographic format
+        source.line("@Override").open("public byte[] toBytes() {").line("this.startBytes();");
+        for(int field = 0; field < schema.size(); field++) {
+            EntryType type = schema.getTypeAt(field);
+            source.line("this.put%s(%s, this.%s);", typeName(type), typeCode(type), names[field]);
+        }
+        source.line("return this.finishBytes();").close("}").line();
+
+        source.line("@Override")
+            .open("public void readBytes(byte[] bytes, int begin, int end) throws MarshalException {")
+            .line("int position = firstEntry(bytes, begin, end);");
+        if(schema.size() > 0)
+            source.line("int next;");
+        for(int field = 0; field < schema.size(); field++) {
+            EntryType type = schema.getTypeAt(field);
+            source.line("next = entryEnd(bytes, position, end, %s);", typeCode(type))
+                .line("this.%s = read%s(bytes, position, next);", names[field], typeName(type))
+                .line("position = next;");
+        }
+        source.line("checkEnd(position, end);").close("}").line();
+
+        // writable format
+        source.line("@Override")
+            .open("public void write(DataOutput dataOutput) throws IOException {")
+            .line("dataOutput.writeInt(%d);", schema.size());
+        for(int field = 0; field < schema.size(); field++) {
+            EntryType type = schema.getTypeAt(field);
+            source.line("dataOutput.writeByte(%s);", typeCode(type));
+            switch(type) {
+                case BYTE:
+                    source.line("dataOutput.writeByte(this.%s);", names[field]);
+                    break;
+                case INTEGER:
+                    source.line("dataOutput.writeInt(this.%s);", names[field]);
+                    break;
+                case LONG:
+                    source.line("dataOutput.writeLong(this.%s);", names[field]);
+                    break;
+                case DOUBLE:
+                    source.line("dataOutput.writeDouble(this.%s);", names[field]);
+                    break;
+                case MARSHAL:
+                    source.line("this.%s.write(dataOutput);", names[field]);
+                    break;
+                default:
+                    source.line("write%s(this.%s, dataOutput);", typeName(type), names[field]);
+                    break;
+            }
+        }
+        source.close("}").line();
+
+        source.line("@Override")
+            .open("public void readFields(DataInput dataInput) throws IOException {")
+            .line("checkSize(dataInput.readInt(), %d);", schema.size());
+        for(int field = 0; field < schema.size(); field++) {
+            EntryType type = schema.getTypeAt(field);
+            source.line("checkType(dataInput.readByte(), %s);", typeCode(type));
+            switch(type) {
+                case BYTE:
+                    source.line("this.%s = dataInput.readByte();", names[field]);
+                    break;
+                case INTEGER:
+                    source.line("this.%s = dataInput.readInt();", names[field]);
+                    break;
+                case LONG:
+                    source.line("this.%s = dataInput.readLong();", names[field]);
+                    break;
+                case DOUBLE:
+                    source.line("this.%s = dataInput.readDouble();", names[field]);
+                    break;
+                case MARSHAL:
+                    source.line("this.%s = Marshal.read(dataInput);", names[field]);
+                    break;
+                default:
+                    source.line("this.%s = read%s(dataInput);", names[field], typeName(type));
+                    break;
+            }
+        }
+        source.close("}").line();
+
+        // generic form
+        source.line("@Override").open("public Marshal toMarshal() {").line("return Marshal.builder()");
+        for(int field = 0; field < schema.size(); field++) {
+            EntryType type = schema.getTypeAt(field);
+            source.line("    .add%s(this.%s)", typeName(type), names[field]);
+        }
+        source.line("    .build();").close("}");
+
+        // access by index
+        for(EntryType type : EntryType.values()) {
+            if(type == EntryType.LEGACY_EMPTY || !contains(schema, type))
+                continue;
+
+            source.line()
+                .line("@Override")
+                .open("public %s get%s(int field) {", javaType(type), typeName(type))
+                .open("switch(field) {");
+            for(int field = 0; field < schema.size(); field++) {
+                if(schema.getTypeAt(field) == type)
+                    source.line("case %d: return this.%s;", field, names[field]);
+            }
+            source.line("default: return super.get%s(field);", typeName(type))
+                .close("}")
+                .close("}");
+
+            source.line()
+                .line("@Override")
+                .open("public void set%s(int field, %s value) {", typeName(type), javaType(type))
+                .open("switch(field) {");
+            for(int field = 0; field < schema.size(); field++) {
+                if(schema.getTypeAt(field) == type)
+                    source.line("case %d: this.%s = value; break;", field, names[field]);
+            }
+            source.line("default: super.set%s(field, value);", typeName(type))
+                .close("}")
+                .close("}");
+        }
+
+        source.close("}");
+        return source.toString();
+    }
+
+    /**
+     * Generates and compiles a record class for the given schema in memory, and loads it in a new
+     * class loader whose parent is the class loader of this library.
+     *
+     * @throws IllegalStateException if no Java compiler is available, as on a JRE, or the
+     * generated class does not compile.
+     * @see #generate
+     */
+    public static Class<? extends MarshalRecord> compile(MarshalSchema schema, String className, String... fieldNames) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        checkState(compiler != null, "Compiling records requires the Java compiler of a JDK.");
+
+        final String source = generate(schema, className, fieldNames);
+        JavaFileObject sourceFile = new SimpleJavaFileObject(
+                URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        // collect the class files in memory
+        final Map<String, ByteArrayOutputStream> classFiles = new HashMap<String, ByteArrayOutputStream>();
+        JavaFileManager fileManager =
+            new ForwardingJavaFileManager<JavaFileManager>(compiler.getStandardFileManager(null, null, null)) {
+                @Override
+                public JavaFileObject getJavaFileForOutput(Location location, final String name,
+                        JavaFileObject.Kind kind, FileObject sibling) {
+                    return new SimpleJavaFileObject(
+                            URI.create("memory:///" + name.replace('.', '/') + kind.extension), kind) {
+                        @Override
+                        public OutputStream openOutputStream() {
+                            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                            classFiles.put(name, bytes);
+                            return bytes;
+                        }
+                    };
+                }
+            };
+
+        StringWriter errors = new StringWriter();
+        boolean compiled = compiler.getTask(errors, fileManager, null,
+                Arrays.asList("-proc:none", "-classpath", classPath()), null, Collections.singletonList(sourceFile)).call();
+        checkState(compiled, "Could not compile the record for %s: %s", schema, errors);
+
+        ClassLoader loader = new ClassLoader(MarshalRecord.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                ByteArrayOutputStream classFile = classFiles.get(name);
+                if(classFile == null)
+                    throw new ClassNotFoundException(name);
+                byte[] bytes = classFile.toByteArray();
+                return this.defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+        try {
+            return loader.loadClass(className).asSubclass(MarshalRecord.class);
+        }
+        catch(ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Prints the source of a record class. The arguments are the fully qualified class name,
+     * followed by a TYPE or TYPE:name argument per field. Nested marshals cannot be described on
+     * the command line.
+     */
+    public static void main(String[] args) {
+        if(args.length < 1) {
+            System.err.println("Usage: MarshalCodeGenerator <class name> [<TYPE>[:<field name>] ...]");
+            System.exit(1);
+        }
+
+        MarshalSchema.Builder schema = MarshalSchema.builder();
+        String[] names = new String[args.length - 1];
+        for(int i = 1; i < args.length; i++) {
+            String[] parts = args[i].split(":", 2);
+            schema.add(EntryType.valueOf(parts[0].toUpperCase(Locale.ENGLISH)));
+            names[i - 1] = parts.length > 1 ? parts[1] : "field" + (i - 1);
+        }
+        System.out.print(generate(schema.build(), args[0], names));
+    }
+
+    private static String[] fieldNames(MarshalSchema schema, String[] fieldNames) {
+        checkArgument(fieldNames.length == 0 || fieldNames.length == schema.size(),
+                "Expected %s field names, not %s.", schema.size(), fieldNames.length);
+
+        String[] names = new String[schema.size()];
+        Set<String> unique = new HashSet<String>();
+        for(int field = 0; field < names.length; field++) {
+            names[field] = fieldNames.length == 0 ? "field" + field : fieldNames[field];
+            checkArgument(isIdentifier(names[field]) && !names[field].equals("SCHEMA"),
+                    "Invalid field name: " + names[field]);
+            checkArgument(unique.add(names[field]), "Duplicate field name: " + names[field]);
+            checkArgument(schema.getTypeAt(field) != EntryType.LEGACY_EMPTY, "Invalid field type.");
+        }
+        return names;
+    }
+
+    private static boolean isIdentifier(String name) {
+        if(name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0)))
+            return false;
+        for(int i = 1; i < name.length(); i++) {
+            if(!Character.isJavaIdentifierPart(name.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean contains(MarshalSchema schema, EntryType type) {
+        for(int field = 0; field < schema.size(); field++) {
+            if(schema.getTypeAt(field) == type)
+                return true;
+        }
+        return false;
+    }
+
+    private static String schemaExpression(MarshalSchema schema) {
+        StringBuilder expression = new StringBuilder("MarshalSchema.builder()");
+        for(int field = 0; field < schema.size(); field++) {
+            if(schema.getSchemaAt(field) != null)
+                expression.append(".addMarshal(").append(schemaExpression(schema.getSchemaAt(field))).append(")");
+            else
+                expression.append(".add(EntryType.").append(schema.getTypeAt(field).name()).append(")");
+        }
+        return expression.append(".build()").toString();
+    }
+
+    private static String typeCode(EntryType type) {
+        return String.format("(byte)0x%02X", type.getTypeCode() & 0xFF);
+    }
+
+    // the name used by the builder and getters of a marshal
+    private static String typeName(EntryType type) {
+        switch(type) {
+            case BYTE:
+                return "Byte";
+            case BYTE_ARRAY:
+                return "ByteArray";
+            case DOUBLE:
+                return "Double";
+            case INTEGER:
+                return "Integer";
+            case LONG:
+                return "Long";
+            case STRING:
+                return "String";
+            case MARSHAL:
+                return "Marshal";
+            default:
+                throw new IllegalArgumentException("Cannot generate fields of type " + type + ".");
+        }
+    }
+
+    private static String javaType(EntryType type) {
+        switch(type) {
+            case BYTE:
+                return "byte";
+            case DOUBLE:
+                return "double";
+            case INTEGER:
+                return "int";
+            case LONG:
+                return "long";
+            default:
+                return typeName(type);
+        }
+    }
+
+    private static String initialValue(EntryType type) {
+        switch(type) {
+            case BYTE_ARRAY:
+                return "new ByteArray(new byte[0])";
+            case STRING:
+                return "\"\"";
+            case MARSHAL:
+                return "Marshal.EMPTY";
+            default:
+                return null;
+        }
+    }
+
+    // the classes needed to compile a record: the application and this library
+    private static String classPath() {
+        StringBuilder classPath = new StringBuilder(System.getProperty("java.class.path"));
+        CodeSource codeSource = MarshalRecord.class.getProtectionDomain().getCodeSource();
+        if(codeSource != null && codeSource.getLocation() != null) {
+            try {
+                classPath.append(File.pathSeparator).append(new File(codeSource.getLocation().toURI()).getPath());
+            }
+            catch(URISyntaxException e) {
+                // the class path of the application has to do
+            }
+        }
+        return classPath.toString();
+    }
+
+    // indented source code
+    private static final class Source {
+        private final StringBuilder source = new StringBuilder();
+        private int indent = 0;
+
+        Source line() {
+            this.source.append('\n');
+            return this;
+        }
+
+        Source line(String format, Object... args) {
+            for(int i = 0; i < this.indent; i++)
+                this.source.append("    ");
+            this.source.append(String.format(format, args)).append('\n');
+            return this;
+        }
+
+        Source open(String format, Object... args) {
+            this.line(format, args);
+            this.indent++;
+            return this;
+        }
+
+        Source close(String line) {
+            this.indent--;
+            return this.line(line);
+        }
+
+        @Override
+        public String toString() {
+            return this.source.toString();
+        }
+    }
+}
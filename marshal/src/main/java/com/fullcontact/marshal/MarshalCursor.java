@@ -0,0 +1,187 @@
+package com.fullcontact.marshal;
+
+import java.nio.charset.Charset;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Reads marshals in the schema format of a {@link MarshalSchema} in place, without creating a
+ * Marshal.
+ *
+ * Wrapping a marshal checks its length and finds its variable-length fields once; afterwards,
+ * fixed-width fields are read at the offsets computed by the schema and no getter needs to scan
+ * the bytes. The cursor can be reused for the next marshal by wrapping it.
+ *
+ * A MarshalCursor is not thread-safe.
+ */
+public final class MarshalCursor {
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final MarshalSchema schema;
+
+    // the wrapped marshal, and the bounds of its variable-length fields
+    private byte[] bytes = null;
+    private int begin;
+    private final int[] variableBegins;
+    private final int[] variableEnds;
+
+    /**
+     * Creates a cursor for the given schema.
+     *
+     * @throws IllegalArgumentException if the schema has no schema format.
+     */
+    public MarshalCursor(MarshalSchema schema) {
+        checkArgument(schema.hasSchemaFormat(), "The schema %s has no schema format.", schema);
+        this.schema = schema;
+        this.variableBegins = new int[schema.getVariableCount()];
+        this.variableEnds = new int[schema.getVariableCount()];
+    }
+
+    /**
+     * Returns the schema of the read marshals.
+     */
+    public MarshalSchema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * Positions the cursor on the given serialized marshal. The bytes are not copied, and must not
+     * change while the cursor is on them.
+     *
+     * @throws MarshalException if the bytes are not a marshal of the schema.
+     */
+    public MarshalCursor wrap(ByteArray bytes) throws MarshalException {
+        return this.wrap(bytes.backingArray(), bytes.beginIndex(), bytes.endIndex());
+    }
+
+    /**
+     * Positions the cursor on the serialized marshal in the given range of the array.
+     *
+     * @throws MarshalException if the bytes are not a marshal of the schema.
+     */
+    public MarshalCursor wrap(byte[] bytes, int begin, int end) throws MarshalException {
+        this.bytes = null;
+
+        int position = begin + this.schema.getFixedWidth();
+        for(int i = 0; i < this.variableBegins.length; i++) {
+            int length = IOUtil.readVarInt(bytes, position, end);
+            this.variableBegins[i] = position + IOUtil.varIntSize(length);
+            this.variableEnds[i] = this.variableBegins[i] + length;
+            position = this.variableEnds[i];
+        }
+        if(position != end)
+            throw new MarshalException("Expected a marshal of " + (position - begin) + " bytes, not " + (end - begin) + ".");
+
+        this.bytes = bytes;
+        this.begin = begin;
+        return this;
+    }
+
+    public byte getByte(int field) {
+        return this.bytes[this.offset(field, EntryType.BYTE)];
+    }
+
+    public int getInteger(int field) {
+        return readInt(this.bytes, this.offset(field, EntryType.INTEGER));
+    }
+
+    public long getLong(int field) {
+        return readLong(this.bytes, this.offset(field, EntryType.LONG));
+    }
+
+    public double getDouble(int field) {
+        return Double.longBitsToDouble(readLong(this.bytes, this.offset(field, EntryType.DOUBLE)));
+    }
+
+    public String getString(int field) {
+        int variable = this.offset(field, EntryType.STRING);
+        int begin = this.variableBegins[variable];
+        return new String(this.bytes, begin, this.variableEnds[variable] - begin, CHARSET);
+    }
+
+    /**
+     * Returns a BYTE_ARRAY field, as a view of the wrapped bytes.
+     */
+    public ByteArray getByteArray(int field) {
+        int variable = this.offset(field, EntryType.BYTE_ARRAY);
+        return new ByteArray(this.bytes, this.variableBegins[variable], this.variableEnds[variable]);
+    }
+
+    /**
+     * Returns a nested marshal field in the schema format of its schema, as a view of the wrapped
+     * bytes, for reading with another cursor.
+     */
+    public ByteArray getEncodedMarshal(int field) {
+        int variable = this.offset(field, EntryType.MARSHAL);
+        return new ByteArray(this.bytes, this.variableBegins[variable], this.variableEnds[variable]);
+    }
+
+    /**
+     * Returns a nested marshal field in the generic form.
+     *
+     * @throws MarshalException if the nested marshal is invalid.
+     */
+    public Marshal getMarshal(int field) throws MarshalException {
+        return this.schema.getSchemaAt(field).decode(this.getEncodedMarshal(field));
+    }
+
+    /**
+     * Returns the wrapped marshal in the generic form.
+     *
+     * @throws MarshalException if a nested marshal is invalid.
+     */
+    public Marshal toMarshal() throws MarshalException {
+        checkState(this.bytes != null, "The cursor is not on a marshal.");
+
+        Marshal.Builder builder = Marshal.builder();
+        for(int field = 0; field < this.schema.size(); field++) {
+            switch(this.schema.getTypeAt(field)) {
+                case BYTE:
+                    builder.addByte(this.getByte(field));
+                    break;
+                case BYTE_ARRAY:
+                    builder.addByteArray(this.getByteArray(field));
+                    break;
+                case DOUBLE:
+                    builder.addDouble(this.getDouble(field));
+                    break;
+                case INTEGER:
+                    builder.addInteger(this.getInteger(field));
+                    break;
+                case LONG:
+                    builder.addLong(this.getLong(field));
+                    break;
+                case STRING:
+                    builder.addString(this.getString(field));
+                    break;
+                case MARSHAL:
+                    builder.addMarshal(this.getMarshal(field));
+                    break;
+                default:
+                    throw new MarshalException("Cannot decode entries of type " + this.schema.getTypeAt(field) + ".");
+            }
+        }
+        return builder.build();
+    }
+
+    private int offset(int field, EntryType type) {
+        checkState(this.bytes != null, "The cursor is not on a marshal.");
+        checkArgument(this.schema.getTypeAt(field) == type,
+                "Field " + field + " is of type " + this.schema.getTypeAt(field) + ".");
+
+        int position = this.schema.getPosition(field);
+        return this.schema.isFixedWidth(field) ? this.begin + position : position;
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return ((bytes[position] & 0xFF) << 24)
+            | ((bytes[position + 1] & 0xFF) << 16)
+            | ((bytes[position + 2] & 0xFF) << 8)
+            | (bytes[position + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] bytes, int position) {
+        return ((long)readInt(bytes, position) << 32) | (readInt(bytes, position + 4) & 0xFFFFFFFFL);
+    }
+}
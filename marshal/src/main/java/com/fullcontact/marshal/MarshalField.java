@@ -0,0 +1,41 @@
+package com.fullcontact.marshal;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field of a class as an entry of the marshal the class is mapped to.
+ *
+ * The annotation processor of the marshal-processor module generates a mapper for every class
+ * with annotated fields, named after the class with a MarshalMapper suffix and placed in the same
+ * package. The mapper converts instances to and from the schema format of a {@link
+ * MarshalSchema}, through a {@link MarshalWriter} and a {@link MarshalCursor}, and to and from the
+ * generic Marshal form, without reflection.
+ *
+ * <pre>
+ * public class UserKey {
+ *     &#64;MarshalField(order = 0) String id;
+ *     &#64;MarshalField(order = 1) long timestamp;
+ * }
+ *
+ * byte[] bytes = UserKeyMarshalMapper.toBytes(key);
+ * UserKey copy = UserKeyMarshalMapper.fromBytes(bytes);
+ * </pre>
+ *
+ * Fields are ordered by their order values, which must be distinct, and must be byte, int, long,
+ * double, String, ByteArray, or another class with annotated fields for a nested marshal. Fields
+ * must not be private, static or final, must not be null when written, and the class must have a
+ * constructor without arguments that is not private.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface MarshalField {
+    /**
+     * The position of the field among the fields of the class, in ascending order.
+     */
+    int order();
+}
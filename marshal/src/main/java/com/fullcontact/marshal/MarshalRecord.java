@@ -0,0 +1,390 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Base class of the records generated by {@link MarshalCodeGenerator}, which hold the entries of
+ * a marshal of a fixed schema in primitive fields and encode them directly in the lexicographic
+ * and writable formats.
+ *
+ * A generated record produces exactly the same bytes as the equivalent Marshal, and reads any
+ * bytes produced by one, but it never creates entries, boxes values or dispatches on the entry
+ * type: each field is encoded and decoded by straight-line code, using the final helpers of this
+ * class. Fields can be accessed directly on the generated class, or by index through the getters
+ * and setters of this class when the class is only known at runtime.
+ *
+ * Records are mutable and reusable, and are not thread-safe.
+ */
+public abstract class MarshalRecord {
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final byte[] EMPTY_STRING = { 0x00 };
+
+    // the lexicographic form being written
+    private byte[] buffer = new byte[64];
+    private int position = 0;
+
+    /**
+     * Returns the schema of the record.
+     */
+    public abstract MarshalSchema getSchema();
+
+    /**
+     * Returns the record in the lexicographic format, the same as {@link Marshal#toBytes}.
+     */
+    public abstract byte[] toBytes();
+
+    /**
+     * Reads the record from the marshal in the lexicographic format in the given range.
+     *
+     * @throws MarshalException if the bytes are not a marshal of the schema of the record.
+     */
+    public abstract void readBytes(byte[] bytes, int begin, int end) throws MarshalException;
+
+    /**
+     * Writes the record in the writable format, the same as {@link Marshal#write}.
+     */
+    public abstract void write(DataOutput dataOutput) throws IOException;
+
+    /**
+     * Reads the record from a marshal in the writable format.
+     *
+     * @throws MarshalException if the marshal does not have the schema of the record.
+     */
+    public abstract void readFields(DataInput dataInput) throws IOException;
+
+    /**
+     * Returns the record as a generic marshal.
+     */
+    public abstract Marshal toMarshal();
+
+    /**
+     * Reads the record from the given serialized marshal.
+     *
+     * @throws MarshalException if the bytes are not a marshal of the schema of the record.
+     */
+    public void readBytes(ByteArray bytes) throws MarshalException {
+        this.readBytes(bytes.backingArray(), bytes.beginIndex(), bytes.endIndex());
+    }
+
+    /**
+     * Reads the record from the given generic marshal.
+     *
+     * @throws MarshalException if the marshal does not have the schema of the record.
+     */
+    public void readMarshal(Marshal marshal) throws MarshalException {
+        this.readBytes(marshal.toByteArray());
+    }
+
+    public byte getByte(int field) {
+        throw this.wrongType(field);
+    }
+
+    public int getInteger(int field) {
+        throw this.wrongType(field);
+    }
+
+    public long getLong(int field) {
+        throw this.wrongType(field);
+    }
+
+    public double getDouble(int field) {
+        throw this.wrongType(field);
+    }
+
+    public String getString(int field) {
+        throw this.wrongType(field);
+    }
+
+    public ByteArray getByteArray(int field) {
+        throw this.wrongType(field);
+    }
+
+    public Marshal getMarshal(int field) {
+        throw this.wrongType(field);
+    }
+
+    public void setByte(int field, byte b) {
+        throw this.wrongType(field);
+    }
+
+    public void setInteger(int field, int i) {
+        throw this.wrongType(field);
+    }
+
+    public void setLong(int field, long l) {
+        throw this.wrongType(field);
+    }
+
+    public void setDouble(int field, double d) {
+        throw this.wrongType(field);
+    }
+
+    public void setString(int field, String s) {
+        throw this.wrongType(field);
+    }
+
+    public void setByteArray(int field, ByteArray byteArray) {
+        throw this.wrongType(field);
+    }
+
+    public void setMarshal(int field, Marshal marshal) {
+        throw this.wrongType(field);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o)
+            return true;
+        if(o == null || this.getClass() != o.getClass())
+            return false;
+        return Arrays.equals(this.toBytes(), ((MarshalRecord)o).toBytes());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.toBytes());
+    }
+
+    @Override
+    public String toString() {
+        return this.toMarshal().toString();
+    }
+
+    private IllegalArgumentException wrongType(int field) {
+        if(field < 0 || field >= this.getSchema().size())
+            return new IllegalArgumentException("Field " + field + " does not exist.");
+        return new IllegalArgumentException("Field " + field + " is of type " + this.getSchema().getTypeAt(field) + ".");
+    }
+
+    //
+    // lexicographic encoding
+    //
+
+    /**
+     * Starts writing the lexicographic form.
+     */
+    protected final void startBytes() {
+        this.position = 0;
+    }
+
+    /**
+     * Returns the written lexicographic form.
+     */
+    protected final byte[] finishBytes() {
+        // the empty marshal is a single separator byte
+        if(this.position == 0)
+            this.append(Marshal.SEPARATOR);
+        return Arrays.copyOf(this.buffer, this.position);
+    }
+
+    protected final void putByte(byte typeCode, byte b) {
+        this.ensure(4);
+        this.buffer[this.position++] = typeCode;
+        this.putEscaped(b);
+        this.buffer[this.position++] = Marshal.SEPARATOR;
+    }
+
+    protected final void putInteger(byte typeCode, int i) {
+        this.ensure(10);
+        this.buffer[this.position++] = typeCode;
+        this.putEscaped((byte)(i >>> 24));
+        this.putEscaped((byte)(i >>> 16));
+        this.putEscaped((byte)(i >>> 8));
+        this.putEscaped((byte)i);
+        this.buffer[this.position++] = Marshal.SEPARATOR;
+    }
+
+    protected final void putLong(byte typeCode, long l) {
+        this.ensure(18);
+        this.buffer[this.position++] = typeCode;
+        for(int shift = 56; shift >= 0; shift -= 8)
+            this.putEscaped((byte)(l >>> shift));
+        this.buffer[this.position++] = Marshal.SEPARATOR;
+    }
+
+    protected final void putDouble(byte typeCode, double d) {
+        this.putLong(typeCode, Double.doubleToRawLongBits(d));
+    }
+
+    protected final void putString(byte typeCode, String s) {
+        // special case to encode the empty string
+        byte[] bytes = s.isEmpty() ? EMPTY_STRING : s.getBytes(CHARSET);
+        this.putBytes(typeCode, bytes, 0, bytes.length);
+    }
+
+    protected final void putByteArray(byte typeCode, ByteArray byteArray) {
+        this.putBytes(typeCode, byteArray.backingArray(), byteArray.beginIndex(), byteArray.endIndex());
+    }
+
+    protected final void putMarshal(byte typeCode, Marshal marshal) {
+        this.putByteArray(typeCode, marshal.toByteArray());
+    }
+
+    private void putBytes(byte typeCode, byte[] bytes, int begin, int end) {
+        this.ensure(2 * (end - begin) + 2);
+        this.buffer[this.position++] = typeCode;
+        for(int i = begin; i < end; i++)
+            this.putEscaped(bytes[i]);
+        this.buffer[this.position++] = Marshal.SEPARATOR;
+    }
+
+    private void putEscaped(byte b) {
+        if(b == Marshal.SEPARATOR)
+            this.buffer[this.position++] = Marshal.SEPARATOR;
+        this.buffer[this.position++] = b;
+    }
+
+    private void append(byte b) {
+        this.ensure(1);
+        this.buffer[this.position++] = b;
+    }
+
+    private void ensure(int length) {
+        if(this.position + length > this.buffer.length)
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.position + length));
+    }
+
+    //
+    // lexicographic decoding
+    //
+
+    /**
+     * Returns the first entry of the range, which is empty for the empty marshal.
+     */
+    protected static int firstEntry(byte[] bytes, int begin, int end) {
+        // the empty marshal is a single separator byte
+        if(end - begin == 1 && bytes[begin] == Marshal.SEPARATOR)
+            return end;
+        return begin;
+    }
+
+    /**
+     * Checks that an entry of the given type begins at the position, and returns the position
+     * one past its separator.
+     */
+    protected static int entryEnd(byte[] bytes, int position, int end, byte typeCode) throws MarshalException {
+        if(position >= end)
+            throw new MarshalException("Missing entry of type code " + typeCode + ".");
+        if(bytes[position] != typeCode)
+            throw new MarshalException("Expected type code " + typeCode + ", not " + bytes[position] + ".");
+        return LexicographicFormat.entryEnd(bytes, position, end);
+    }
+
+    /**
+     * Checks that the whole range was read.
+     */
+    protected static void checkEnd(int position, int end) throws MarshalException {
+        if(position != end)
+            throw new MarshalException("Unexpected entries after the last field.");
+    }
+
+    protected static byte readByte(byte[] bytes, int position, int next) throws MarshalException {
+        if(next - position == 3)
+            return bytes[position + 1];
+        return fixed(bytes, position, next, 1)[0];
+    }
+
+    protected static int readInteger(byte[] bytes, int position, int next) throws MarshalException {
+        if(next - position == 6)
+            return readInt(bytes, position + 1);
+        return readInt(fixed(bytes, position, next, 4), 0);
+    }
+
+    protected static long readLong(byte[] bytes, int position, int next) throws MarshalException {
+        if(next - position == 10)
+            return readLong(bytes, position + 1);
+        return readLong(fixed(bytes, position, next, 8), 0);
+    }
+
+    protected static double readDouble(byte[] bytes, int position, int next) throws MarshalException {
+        return Double.longBitsToDouble(readLong(bytes, position, next));
+    }
+
+    protected static String readString(byte[] bytes, int position, int next) {
+        // special case to decode the empty string
+        if(next - position == 3 && bytes[position + 1] == 0x00)
+            return "";
+        return new String(unescape(bytes, position, next), CHARSET);
+    }
+
+    protected static ByteArray readByteArray(byte[] bytes, int position, int next) {
+        return new ByteArray(unescape(bytes, position, next));
+    }
+
+    protected static Marshal readMarshal(byte[] bytes, int position, int next) throws MarshalException {
+        return Marshal.fromBytes(unescape(bytes, position, next));
+    }
+
+    // the unescaped data of the entry from the position to the next entry
+    private static byte[] unescape(byte[] bytes, int position, int next) {
+        byte[] data = new byte[next - position - 2];
+        int length = 0;
+        for(int i = position + 1; i < next - 1; i++) {
+            data[length++] = bytes[i];
+            if(bytes[i] == Marshal.SEPARATOR)
+                i++;
+        }
+        return length == data.length ? data : Arrays.copyOf(data, length);
+    }
+
+    private static byte[] fixed(byte[] bytes, int position, int next, int width) throws MarshalException {
+        byte[] data = unescape(bytes, position, next);
+        if(data.length != width)
+            throw new MarshalException("Expected " + width + " bytes of data, not " + data.length + ".");
+        return data;
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return ((bytes[position] & 0xFF) << 24)
+            | ((bytes[position + 1] & 0xFF) << 16)
+            | ((bytes[position + 2] & 0xFF) << 8)
+            | (bytes[position + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] bytes, int position) {
+        return ((long)readInt(bytes, position) << 32) | (readInt(bytes, position + 4) & 0xFFFFFFFFL);
+    }
+
+    //
+    // writable format
+    //
+
+    protected static void writeString(String s, DataOutput dataOutput) throws IOException {
+        IOUtil.writeUtf(s, dataOutput);
+    }
+
+    protected static String readString(DataInput dataInput) throws IOException {
+        return IOUtil.readUtf(dataInput);
+    }
+
+    protected static void writeByteArray(ByteArray byteArray, DataOutput dataOutput) throws IOException {
+        IOUtil.writeVarInt(byteArray.size(), dataOutput);
+        dataOutput.write(byteArray.backingArray(), byteArray.beginIndex(), byteArray.size());
+    }
+
+    protected static ByteArray readByteArray(DataInput dataInput) throws IOException {
+        byte[] bytes = new byte[IOUtil.readVarInt(dataInput)];
+        dataInput.readFully(bytes);
+        return new ByteArray(bytes);
+    }
+
+    /**
+     * Checks the entry count of a marshal in the writable format.
+     */
+    protected static void checkSize(int size, int expected) throws MarshalException {
+        if(size != expected)
+            throw new MarshalException("Expected " + expected + " entries, not " + size + ".");
+    }
+
+    /**
+     * Checks the type code of an entry in the writable format.
+     */
+    protected static void checkType(byte typeCode, byte expected) throws MarshalException {
+        if(typeCode != expected)
+            throw new MarshalException("Expected type code " + expected + ", not " + typeCode + ".");
+    }
+}
@@ -0,0 +1,536 @@
+package com.fullcontact.marshal;
+
+import com.google.common.base.Joiner;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The ordered entry types of marshals with a fixed shape, used to encode them without type codes.
+ *
+ * Neither of the two encodings carries type codes or the number of entries, so they are only
+ * readable with the schema they were written with.
+ *
+ * The typeless lexicographic format, written by {@link #encodeLexicographic}, is ordered, for
+ * row keys and range scans. Each field is the lexicographic data of its entry, and nested
+ * marshals are encoded in the typeless lexicographic format of their own schema. Without type
+ * codes, a separator could no longer be told apart from escaped data that begins the next field,
+ * so fields are delimited as follows: the data of STRING and BYTE_ARRAY fields has each 0x00 byte
+ * escaped as 0x00 0xFF and is terminated by 0x00 0x01, which sorts below any longer data; their
+ * descending variants are the bitwise inverse of that encoding; the data of every other type is
+ * never a prefix of that of another value of the type, so it is written as is.
+ *
+ * Encoded marshals thus sort by their fields in order. Strings and byte arrays sort in unsigned
+ * byte order with a value before the longer values it is a prefix of, unlike in the format of
+ * {@link Marshal#toBytes}, where it sorts after them, and DESCENDING_MARSHAL fields sort in the
+ * reverse order of the format of {@link Marshal#toBytes}. The encoding of the leading fields of a
+ * marshal, from {@link #encodeLexicographicPrefix}, is a prefix of the encoding of the marshal.
+ *
+ * In the schema format, which is not ordered, the fixed-width fields (BYTE, INTEGER, LONG and
+ * DOUBLE) come first, each at an offset computed once per schema, followed by each
+ * variable-length field in order as a variable-length integer length and the data. Strings are
+ * UTF-8, and nested marshals are encoded in the schema format of their own schema. Only schemas of
+ * the types BYTE, INTEGER, LONG, DOUBLE, STRING, BYTE_ARRAY and nested marshals have a schema
+ * format (see {@link #hasSchemaFormat}).
+ *
+ * Encoded marshals are written field by field with a {@link MarshalWriter} and read in place with
+ * a {@link MarshalCursor}, neither of which ever creates a Marshal. The schema can also convert
+ * between the schema format and the generic Marshal form with {@link #encode} and {@link #decode},
+ * for tools and pretty printing.
+ *
+ * <pre>
+ * MarshalSchema schema = MarshalSchema.of(EntryType.STRING, EntryType.LONG);
+ * byte[] bytes = new MarshalWriter(schema).setString(0, "id").setLong(1, 7L).toBytes();
+ * long l = new MarshalCursor(schema).wrap(new ByteArray(bytes)).getLong(1);
+ * </pre>
+ *
+ * A MarshalSchema is immutable.
+ */
+public final class MarshalSchema {
+    // escape and terminator of STRING and BYTE_ARRAY data in the typeless lexicographic format
+    private static final byte ESCAPE = 0x00;
+    private static final byte ESCAPED = (byte)0xFF;
+    private static final byte TERMINATOR = 0x01;
+
+    /**
+     * Builder for a MarshalSchema.
+     */
+    public static final class Builder {
+        private final List<EntryType> types = new ArrayList<EntryType>();
+        private final List<MarshalSchema> schemas = new ArrayList<MarshalSchema>();
+
+        private Builder() {}
+
+        /**
+         * Adds a field of the given type. Nested marshals are added with {@link #addMarshal}.
+         * NULL and NULL_FIRST fields are not supported, since without type codes they could not
+         * be told apart from values.
+         */
+        public Builder add(EntryType type) {
+            checkArgument(type != EntryType.MARSHAL, "Nested marshals are added with their schema.");
+            checkArgument(!checkNotNull(type).isNull() && type != EntryType.LEGACY_EMPTY,
+                    "Cannot add fields of type " + type + ".");
+            this.types.add(checkNotNull(type));
+            this.schemas.add(null);
+            return this;
+        }
+
+        /**
+         * Adds a nested marshal field with the given schema.
+         */
+        public Builder addMarshal(MarshalSchema schema) {
+            this.types.add(EntryType.MARSHAL);
+            this.schemas.add(checkNotNull(schema));
+            return this;
+        }
+
+        public MarshalSchema build() {
+            return new MarshalSchema(this.types.toArray(new EntryType[this.types.size()]),
+                    this.schemas.toArray(new MarshalSchema[this.schemas.size()]));
+        }
+    }
+
+    private final EntryType[] types;
+    private final MarshalSchema[] schemas;
+
+    // for fixed-width fields the offset in the fixed section, otherwise the index among the
+    // variable-length fields
+    private final int[] positions;
+    private final boolean[] fixed;
+    private final int fixedWidth;
+    private final int variableCount;
+    private final boolean schemaFormat;
+
+    private MarshalSchema(EntryType[] types, MarshalSchema[] schemas) {
+        this.types = types;
+        this.schemas = schemas;
+        this.positions = new int[types.length];
+        this.fixed = new boolean[types.length];
+
+        int fixedWidth = 0;
+        int variableCount = 0;
+        boolean schemaFormat = true;
+        for(int field = 0; field < types.length; field++) {
+            if(schemas[field] != null)
+                schemaFormat &= schemas[field].hasSchemaFormat();
+            else
+                schemaFormat &= width(types[field]) >= 0 || types[field] == EntryType.STRING ||
+                        types[field] == EntryType.BYTE_ARRAY;
+
+            int width = width(types[field]);
+            if(width >= 0) {
+                this.fixed[field] = true;
+                this.positions[field] = fixedWidth;
+                fixedWidth += width;
+            }
+            else {
+                this.positions[field] = variableCount++;
+            }
+        }
+        this.fixedWidth = fixedWidth;
+        this.variableCount = variableCount;
+        this.schemaFormat = schemaFormat;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a schema of the given types, without nested marshals.
+     */
+    public static MarshalSchema of(EntryType... types) {
+        Builder builder = builder();
+        for(EntryType type : types)
+            builder.add(type);
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of fields.
+     */
+    public int size() {
+        return this.types.length;
+    }
+
+    /**
+     * Returns the type of the given field.
+     */
+    public EntryType getTypeAt(int field) {
+        return this.types[field];
+    }
+
+    /**
+     * Returns the schema of the given nested marshal field, or null if the field is not a nested
+     * marshal.
+     */
+    public MarshalSchema getSchemaAt(int field) {
+        return this.schemas[field];
+    }
+
+    /**
+     * Whether the given field is stored at a fixed offset.
+     */
+    public boolean isFixedWidth(int field) {
+        return this.fixed[field];
+    }
+
+    /**
+     * Whether marshals of this schema can be encoded in the schema format, with {@link #encode},
+     * a {@link MarshalWriter} and a {@link MarshalCursor}. Every schema has a typeless
+     * lexicographic format.
+     */
+    public boolean hasSchemaFormat() {
+        return this.schemaFormat;
+    }
+
+    /**
+     * Returns the number of bytes of the fixed-width fields, which begin every encoded marshal.
+     */
+    public int getFixedWidth() {
+        return this.fixedWidth;
+    }
+
+    /**
+     * Whether the given marshal has this shape, including its nested marshals.
+     */
+    public boolean matches(Marshal marshal) throws MarshalException {
+        if(marshal.size() != this.types.length)
+            return false;
+
+        for(int field = 0; field < this.types.length; field++) {
+            if(marshal.getTypeAt(field) != this.types[field])
+                return false;
+            if(this.schemas[field] != null && !this.schemas[field].matches(marshal.getMarshalAt(field)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Encodes the given marshal in the typeless lexicographic format.
+     *
+     * @throws MarshalException if the marshal does not have this shape.
+     */
+    public byte[] encodeLexicographic(Marshal marshal) throws MarshalException {
+        if(marshal.size() != this.types.length)
+            throw new MarshalException("Expected " + this.types.length + " entries, not " + marshal.size() + ".");
+        return this.encodeLexicographicPrefix(marshal);
+    }
+
+    /**
+     * Encodes the given marshal, whose entries are the leading fields of this schema, in the
+     * typeless lexicographic format. The result is a prefix of the encoding of every marshal of
+     * this schema that begins with the same entries.
+     *
+     * @throws MarshalException if the marshal does not have the shape of the leading fields.
+     */
+    public byte[] encodeLexicographicPrefix(Marshal marshal) throws MarshalException {
+        if(marshal.size() > this.types.length)
+            throw new MarshalException("Expected at most " + this.types.length + " entries, not " + marshal.size() + ".");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.encodeLexicographic(marshal, out);
+        return out.toByteArray();
+    }
+
+    private void encodeLexicographic(Marshal marshal, ByteArrayOutputStream out) throws MarshalException {
+        for(int field = 0; field < marshal.size(); field++) {
+            if(marshal.getTypeAt(field) != this.types[field])
+                throw new MarshalException("Expected " + this.types[field] + " at " + field + ", not " + marshal.getTypeAt(field) + ".");
+
+            if(this.schemas[field] != null) {
+                Marshal nested = marshal.getMarshalAt(field);
+                if(nested.size() != this.schemas[field].size())
+                    throw new MarshalException("Expected " + this.schemas[field].size() + " entries, not " + nested.size() + ".");
+                this.schemas[field].encodeLexicographic(nested, out);
+                continue;
+            }
+
+            EntryType type = this.types[field];
+            if(isTerminated(type)) {
+                // descending fields invert the encoding of the ascending data
+                int invert = type.isDescending() ? 0xFF : 0;
+                ByteArray data = type.isDescending()
+                        ? ascendingData(type, marshal.getAt(field))
+                        : marshal.getDataAt(field);
+                byte[] bytes = data.backingArray();
+                for(int i = data.beginIndex(); i < data.endIndex(); i++) {
+                    out.write(bytes[i] ^ invert);
+                    if(bytes[i] == ESCAPE)
+                        out.write(ESCAPED ^ invert);
+                }
+                out.write(ESCAPE ^ invert);
+                out.write(TERMINATOR ^ invert);
+            }
+            else {
+                ByteArray data = marshal.getDataAt(field);
+                out.write(data.backingArray(), data.beginIndex(), data.size());
+            }
+        }
+    }
+
+    /**
+     * Decodes a marshal in the typeless lexicographic format into the generic form.
+     *
+     * @throws MarshalException if the bytes are not a marshal of this schema.
+     */
+    public Marshal decodeLexicographic(ByteArray bytes) throws MarshalException {
+        Marshal.Builder builder = Marshal.builder();
+        int position = this.decodeLexicographic(bytes.backingArray(), bytes.beginIndex(), bytes.endIndex(), builder);
+        if(position != bytes.endIndex())
+            throw new MarshalException((bytes.endIndex() - position) + " bytes follow the last field.");
+        return builder.build();
+    }
+
+    /**
+     * Decodes a marshal in the typeless lexicographic format into the generic form.
+     *
+     * @throws MarshalException if the bytes are not a marshal of this schema.
+     */
+    public Marshal decodeLexicographic(byte[] bytes) throws MarshalException {
+        return this.decodeLexicographic(new ByteArray(bytes));
+    }
+
+    /**
+     * Decodes the fields starting at the given position into the builder, and returns the
+     * position past the last field.
+     */
+    private int decodeLexicographic(byte[] bytes, int position, int end, Marshal.Builder builder) throws MarshalException {
+        for(int field = 0; field < this.types.length; field++) {
+            EntryType type = this.types[field];
+            if(this.schemas[field] != null) {
+                Marshal.Builder nested = Marshal.builder();
+                position = this.schemas[field].decodeLexicographic(bytes, position, end, nested);
+                builder.add(type, nested.build());
+            }
+            else if(isTerminated(type)) {
+                byte invert = type.isDescending() ? (byte)0xFF : 0;
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                while(true) {
+                    if(position + 1 >= end)
+                        throw new MarshalException("Unterminated " + type + " at " + field + ".");
+                    byte b = (byte)(bytes[position++] ^ invert);
+                    byte next = (byte)(bytes[position] ^ invert);
+                    if(b != ESCAPE) {
+                        data.write(b);
+                    }
+                    else if(next == ESCAPED) {
+                        data.write(b);
+                        position++;
+                    }
+                    else if(next == TERMINATOR) {
+                        position++;
+                        break;
+                    }
+                    else {
+                        throw new MarshalException("Invalid escape in " + type + " at " + field + ".");
+                    }
+                }
+                if(data.size() == 0)
+                    throw new MarshalException("Empty " + type + " at " + field + ".");
+                builder.add(type, type.ascending().getType().demarshal(new ByteArray(data.toByteArray())));
+            }
+            else {
+                int dataEnd = dataEnd(type, bytes, position, end);
+                builder.add(type, type.getType().demarshal(new ByteArray(bytes, position, dataEnd)));
+                position = dataEnd;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Encodes the given marshal in the schema format.
+     *
+     * @throws MarshalException if the marshal does not have this shape.
+     */
+    public byte[] encode(Marshal marshal) throws MarshalException {
+        if(marshal.size() != this.types.length)
+            throw new MarshalException("Expected " + this.types.length + " entries, not " + marshal.size() + ".");
+
+        MarshalWriter writer = new MarshalWriter(this);
+        for(int field = 0; field < this.types.length; field++) {
+            if(marshal.getTypeAt(field) != this.types[field])
+                throw new MarshalException("Expected " + this.types[field] + " at " + field + ", not " + marshal.getTypeAt(field) + ".");
+
+            switch(this.types[field]) {
+                case BYTE:
+                    writer.setByte(field, marshal.getByteAt(field));
+                    break;
+                case BYTE_ARRAY:
+                    writer.setByteArray(field, marshal.getByteArrayAt(field));
+                    break;
+                case DOUBLE:
+                    writer.setDouble(field, marshal.getDoubleAt(field));
+                    break;
+                case INTEGER:
+                    writer.setInteger(field, marshal.getIntegerAt(field));
+                    break;
+                case LONG:
+                    writer.setLong(field, marshal.getLongAt(field));
+                    break;
+                case STRING:
+                    writer.setString(field, marshal.getStringAt(field));
+                    break;
+                case MARSHAL:
+                    writer.setMarshal(field, marshal.getMarshalAt(field));
+                    break;
+                default:
+                    throw new MarshalException("Cannot encode entries of type " + this.types[field] + ".");
+            }
+        }
+        return writer.toBytes();
+    }
+
+    /**
+     * Decodes a marshal in the schema format into the generic form.
+     *
+     * @throws MarshalException if the bytes are not a marshal of this schema.
+     */
+    public Marshal decode(ByteArray bytes) throws MarshalException {
+        return new MarshalCursor(this).wrap(bytes).toMarshal();
+    }
+
+    /**
+     * Decodes a marshal in the schema format into the generic form.
+     *
+     * @throws MarshalException if the bytes are not a marshal of this schema.
+     */
+    public Marshal decode(byte[] bytes) throws MarshalException {
+        return this.decode(new ByteArray(bytes));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o)
+            return true;
+        if(o == null || this.getClass() != o.getClass())
+            return false;
+
+        MarshalSchema other = (MarshalSchema)o;
+        return Arrays.equals(this.types, other.types) && Arrays.equals(this.schemas, other.schemas);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(this.types) + Arrays.hashCode(this.schemas);
+    }
+
+    @Override
+    public String toString() {
+        List<String> fields = new ArrayList<String>();
+        for(int field = 0; field < this.types.length; field++) {
+            if(this.schemas[field] != null)
+                fields.add(this.schemas[field].toString());
+            else
+                fields.add(this.types[field].toString());
+        }
+        return "(" + Joiner.on(", ").join(fields) + ")";
+    }
+
+    int getPosition(int field) {
+        return this.positions[field];
+    }
+
+    int getVariableCount() {
+        return this.variableCount;
+    }
+
+    // whether fields of the type are escaped and terminated in the typeless lexicographic format
+    private static boolean isTerminated(EntryType type) {
+        return type.ascending() == EntryType.STRING || type.ascending() == EntryType.BYTE_ARRAY;
+    }
+
+    // the lexicographic data of the value in the ascending variant of the type
+    @SuppressWarnings("unchecked")
+    private static ByteArray ascendingData(EntryType type, Object value) {
+        return ((AbstractType<Object>)type.ascending().getType()).marshal(value);
+    }
+
+    /**
+     * Returns the end of the lexicographic data of a type whose data is never a prefix of that of
+     * another value, starting at the given position.
+     *
+     * @throws MarshalException if the data extends past the end.
+     */
+    private static int dataEnd(EntryType type, byte[] bytes, int position, int end) throws MarshalException {
+        // descending data is the inverted data of the ascending type, except for marshals,
+        // which are terminated by 0x01 with 0x00 as the escape
+        int invert = type.isDescending() ? 0xFF : 0;
+        int dataEnd;
+        switch(type.ascending()) {
+            case BYTE:
+            case BOOLEAN:
+                dataEnd = position + 1;
+                break;
+            case SHORT:
+                dataEnd = position + 2;
+                break;
+            case INTEGER:
+            case SORTABLE_INTEGER:
+            case FLOAT:
+                dataEnd = position + 4;
+                break;
+            case LONG:
+            case DOUBLE:
+            case SORTABLE_LONG:
+            case SORTABLE_DOUBLE:
+            case TIMESTAMP:
+                dataEnd = position + 8;
+                break;
+            case UUID:
+                dataEnd = position + 16;
+                break;
+            case VAR_LONG:
+                dataEnd = position + (position < end ? VarLongType.length((byte)(bytes[position] ^ invert)) : 1);
+                break;
+            case BIG_INTEGER:
+            case BIG_DECIMAL:
+                // a zero header, or a header, an exponent, and digits up to the only even one
+                if(position >= end || ((bytes[position] ^ invert) & 0xFF) == 0x80) {
+                    dataEnd = position + 1;
+                    break;
+                }
+                dataEnd = position + 1;
+                if(dataEnd < end)
+                    dataEnd += VarLongType.length((byte)(bytes[dataEnd] ^ invert));
+                while(dataEnd < end && ((bytes[dataEnd] ^ invert) & 1) != 0)
+                    dataEnd++;
+                dataEnd++;
+                break;
+            default:
+                // DESCENDING_MARSHAL
+                dataEnd = position;
+                while(dataEnd < end && bytes[dataEnd] != 0x01)
+                    dataEnd += bytes[dataEnd] == 0x00 ? 2 : 1;
+                dataEnd++;
+                break;
+        }
+        if(dataEnd > end)
+            throw new MarshalException("Truncated " + type + " data.");
+        return dataEnd;
+    }
+
+    /**
+     * Returns the number of bytes of a fixed-width type, or -1 for variable-length types.
+     */
+    static int width(EntryType type) {
+        switch(type) {
+            case BYTE:
+                return 1;
+            case INTEGER:
+                return 4;
+            case LONG:
+            case DOUBLE:
+                return 8;
+            default:
+                return -1;
+        }
+    }
+}
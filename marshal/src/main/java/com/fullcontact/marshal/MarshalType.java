@@ -35,6 +35,11 @@ final class MarshalType extends AbstractType<Marshal> {
         return Marshal.read(dataInput);
     }
 
+    @Override
+    public int skip(byte[] bytes, int offset, int end) throws MarshalException {
+        return WritableFormat.skipMarshal(bytes, offset, end);
+    }
+
     @Override
     public String toString() {
         return "MarshalType";
@@ -0,0 +1,198 @@
+package com.fullcontact.marshal;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Writes marshals in the schema format of a {@link MarshalSchema}, one field at a time, without
+ * creating a Marshal.
+ *
+ * Fixed-width fields are written directly at their offsets; variable-length fields are kept until
+ * the marshal is serialized. Fields may be set in any order, but all of them must be set before
+ * serializing. The writer can be reused for the next marshal after a {@link #reset}.
+ *
+ * A MarshalWriter is not thread-safe.
+ */
+public final class MarshalWriter {
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final MarshalSchema schema;
+
+    private final byte[] fixed;
+    private final ByteArray[] variable;
+    private final boolean[] set;
+    private int unset;
+
+    /**
+     * Creates a writer for the given schema.
+     *
+     * @throws IllegalArgumentException if the schema has no schema format.
+     */
+    public MarshalWriter(MarshalSchema schema) {
+        checkArgument(schema.hasSchemaFormat(), "The schema %s has no schema format.", schema);
+        this.schema = schema;
+        this.fixed = new byte[schema.getFixedWidth()];
+        this.variable = new ByteArray[schema.getVariableCount()];
+        this.set = new boolean[schema.size()];
+        this.unset = schema.size();
+    }
+
+    /**
+     * Returns the schema of the written marshals.
+     */
+    public MarshalSchema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * Clears all fields, to write the next marshal.
+     */
+    public MarshalWriter reset() {
+        Arrays.fill(this.variable, null);
+        Arrays.fill(this.set, false);
+        this.unset = this.schema.size();
+        return this;
+    }
+
+    public MarshalWriter setByte(int field, byte b) {
+        this.fixed[this.offset(field, EntryType.BYTE)] = b;
+        return this;
+    }
+
+    public MarshalWriter setInteger(int field, int i) {
+        putInt(this.fixed, this.offset(field, EntryType.INTEGER), i);
+        return this;
+    }
+
+    public MarshalWriter setLong(int field, long l) {
+        putLong(this.fixed, this.offset(field, EntryType.LONG), l);
+        return this;
+    }
+
+    public MarshalWriter setDouble(int field, double d) {
+        putLong(this.fixed, this.offset(field, EntryType.DOUBLE), Double.doubleToLongBits(d));
+        return this;
+    }
+
+    public MarshalWriter setString(int field, String s) {
+        this.variable[this.offset(field, EntryType.STRING)] = new ByteArray(s.getBytes(CHARSET));
+        return this;
+    }
+
+    /**
+     * Sets a BYTE_ARRAY field. The bytes are not copied, and must not change until the marshal is
+     * serialized.
+     */
+    public MarshalWriter setByteArray(int field, ByteArray byteArray) {
+        this.variable[this.offset(field, EntryType.BYTE_ARRAY)] = checkNotNull(byteArray);
+        return this;
+    }
+
+    /**
+     * Sets a nested marshal field, encoding the marshal with the schema of the field.
+     *
+     * @throws MarshalException if the marshal does not have the schema of the field.
+     */
+    public MarshalWriter setMarshal(int field, Marshal marshal) throws MarshalException {
+        byte[] encoded = this.schema.getSchemaAt(this.check(field, EntryType.MARSHAL)).encode(marshal);
+        this.variable[this.offset(field, EntryType.MARSHAL)] = new ByteArray(encoded);
+        return this;
+    }
+
+    /**
+     * Sets a nested marshal field to the marshal written by the given writer, which must use the
+     * schema of the field.
+     */
+    public MarshalWriter setMarshal(int field, MarshalWriter writer) {
+        checkArgument(writer.getSchema().equals(this.schema.getSchemaAt(this.check(field, EntryType.MARSHAL))),
+                "Field " + field + " has schema " + this.schema.getSchemaAt(field) + ".");
+        this.variable[this.offset(field, EntryType.MARSHAL)] = new ByteArray(writer.toBytes());
+        return this;
+    }
+
+    /**
+     * Returns the number of bytes of the serialized marshal.
+     *
+     * @throws IllegalStateException if a field has not been set.
+     */
+    public int getSerializedSize() {
+        checkState(this.unset == 0, "Not all fields have been set.");
+
+        int size = this.fixed.length;
+        for(ByteArray data : this.variable)
+            size += IOUtil.varIntSize(data.size()) + data.size();
+        return size;
+    }
+
+    /**
+     * Serializes the marshal into the given array at the given offset, returning the position one
+     * past the end of the marshal.
+     *
+     * @throws IllegalStateException if a field has not been set.
+     */
+    public int writeTo(byte[] bytes, int offset) {
+        checkState(this.unset == 0, "Not all fields have been set.");
+
+        System.arraycopy(this.fixed, 0, bytes, offset, this.fixed.length);
+        int position = offset + this.fixed.length;
+        for(ByteArray data : this.variable) {
+            position = IOUtil.putVarInt(data.size(), bytes, position);
+            System.arraycopy(data.backingArray(), data.beginIndex(), bytes, position, data.size());
+            position += data.size();
+        }
+        return position;
+    }
+
+    /**
+     * Returns the serialized marshal.
+     *
+     * @throws IllegalStateException if a field has not been set.
+     */
+    public byte[] toBytes() {
+        byte[] bytes = new byte[this.getSerializedSize()];
+        this.writeTo(bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Writes the serialized marshal to the data output.
+     *
+     * @throws IllegalStateException if a field has not been set.
+     */
+    public void write(DataOutput dataOutput) throws IOException {
+        dataOutput.write(this.toBytes());
+    }
+
+    private int check(int field, EntryType type) {
+        checkArgument(this.schema.getTypeAt(field) == type,
+                "Field " + field + " is of type " + this.schema.getTypeAt(field) + ".");
+        return field;
+    }
+
+    private int offset(int field, EntryType type) {
+        this.check(field, type);
+        if(!this.set[field]) {
+            this.set[field] = true;
+            this.unset--;
+        }
+        return this.schema.getPosition(field);
+    }
+
+    private static void putInt(byte[] bytes, int position, int i) {
+        bytes[position] = (byte)(i >>> 24);
+        bytes[position + 1] = (byte)(i >>> 16);
+        bytes[position + 2] = (byte)(i >>> 8);
+        bytes[position + 3] = (byte)i;
+    }
+
+    private static void putLong(byte[] bytes, int position, long l) {
+        putInt(bytes, position, (int)(l >>> 32));
+        putInt(bytes, position + 4, (int)l);
+    }
+}
@@ -0,0 +1,472 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A mutable marshal that is decoded in place from the writable format (see {@link Marshal#read})
+ * and can be reused for many reads.
+ *
+ * Each read reuses the storage of the previous contents: primitive entries are stored unboxed,
+ * strings and byte arrays are read into per-entry buffers that only grow, and nested marshals are
+ * decoded into nested mutable marshals. Strings are only converted to String objects when
+ * requested. This makes repeated reads, such as iterating over the values of a reducer, free of
+ * per-entry allocation.
+ *
+ * Values that are views of the internal storage, namely {@link #getByteArrayAt} and {@link
+ * #getMutableMarshalAt}, are only valid until the next call to {@link #read}. Use {@link #freeze}
+ * to obtain an immutable Marshal when the value must be kept.
+ *
+ * A MutableMarshal is not thread-safe.
+ */
+public final class MutableMarshal {
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Reusable storage for a string or byte array entry.
+     */
+    private static final class Buffer {
+        // data of a byte array, or the modified UTF-8 encoding of a string
+        private byte[] bytes = new byte[32];
+        private int length;
+
+        // scratch space for decoding a string
+        private char[] chars;
+
+        // the decoded string, if it has been requested since the last read
+        private String string;
+
+        void read(DataInput dataInput) throws IOException {
+            int length = IOUtil.readVarInt(dataInput);
+            if(this.bytes.length < length)
+                this.bytes = new byte[Math.max(length, this.bytes.length * 2)];
+            dataInput.readFully(this.bytes, 0, length);
+
+            this.length = length;
+            this.string = null;
+        }
+
+        void write(DataOutput dataOutput) throws IOException {
+            IOUtil.writeVarInt(this.length, dataOutput);
+            dataOutput.write(this.bytes, 0, this.length);
+        }
+
+        String getString() throws MarshalException {
+            if(this.string == null) {
+                if(this.chars == null || this.chars.length < this.length)
+                    this.chars = new char[Math.max(this.length, 32)];
+                int count;
+                try {
+                    count = IOUtil.decodeUtf(this.bytes, this.length, this.chars);
+                }
+                catch(IOException e) {
+                    throw new MarshalException("Invalid string data.", e);
+                }
+                this.string = new String(this.chars, 0, count);
+            }
+            return this.string;
+        }
+
+        ByteArray getByteArray() {
+            return new ByteArray(this.bytes, 0, this.length);
+        }
+    }
+
+    // type of each entry
+    private EntryType[] types = new EntryType[INITIAL_CAPACITY];
+
+    // bits of each fixed-width primitive entry
+    private long[] values = new long[INITIAL_CAPACITY];
+
+    // storage for each other entry: a Buffer, a MutableMarshal, or the object read by the type
+    private Object[] objects = new Object[INITIAL_CAPACITY];
+
+    // number of entries currently held
+    private int size = 0;
+
+    /**
+     * Creates an empty mutable marshal.
+     */
+    public MutableMarshal() {}
+
+    /**
+     * Reads a marshal in the writable format, replacing the current contents.
+     */
+    public void read(DataInput dataInput) throws IOException {
+        // number of elements to read
+        int length = dataInput.readInt();
+
+        this.size = 0;
+        for(int i = 0; i < length; i++) {
+            // type byte
+            byte typeCode = dataInput.readByte();
+
+            // type
+            EntryType type = EntryType.forCode(typeCode);
+            if(type == null || type.getType() == null)
+                throw new MarshalException("Type code " + typeCode + " is invalid.");
+
+            this.ensureCapacity(i + 1);
+            this.types[i] = type;
+
+            // data, which is written the same way for ascending and descending types
+            switch(type.ascending()) {
+                case BYTE:
+                    this.values[i] = dataInput.readByte();
+                    break;
+                case BOOLEAN:
+                    this.values[i] = dataInput.readBoolean() ? 1L : 0L;
+                    break;
+                case SHORT:
+                    this.values[i] = dataInput.readShort();
+                    break;
+                case FLOAT:
+                    // floats are kept as their raw bits
+                    this.values[i] = dataInput.readInt();
+                    break;
+                case INTEGER:
+                case SORTABLE_INTEGER:
+                    this.values[i] = dataInput.readInt();
+                    break;
+                case LONG:
+                case DOUBLE:
+                case SORTABLE_LONG:
+                case SORTABLE_DOUBLE:
+                case TIMESTAMP:
+                    // doubles are kept as their raw bits
+                    this.values[i] = dataInput.readLong();
+                    break;
+                case VAR_LONG:
+                    this.values[i] = IOUtil.readVarLong(dataInput);
+                    break;
+                case STRING:
+                case BYTE_ARRAY:
+                    this.buffer(i).read(dataInput);
+                    break;
+                case MARSHAL:
+                    this.nested(i).read(dataInput);
+                    break;
+                default:
+                    this.objects[i] = type.getType().read(dataInput);
+                    break;
+            }
+
+            this.size = i + 1;
+        }
+    }
+
+    /**
+     * Writes the current contents to the data output in the writable format. The output is the
+     * same as that of {@link Marshal#write} for the frozen marshal.
+     */
+    public void write(DataOutput dataOutput) throws IOException {
+        // length
+        dataOutput.writeInt(this.size);
+
+        for(int i = 0; i < this.size; i++) {
+            EntryType type = this.types[i];
+
+            // type byte
+            dataOutput.write(type.getTypeCode());
+
+            // data, which is written the same way for ascending and descending types
+            switch(type.ascending()) {
+                case BYTE:
+                case BOOLEAN:
+                    dataOutput.write((int)this.values[i]);
+                    break;
+                case SHORT:
+                    dataOutput.writeShort((int)this.values[i]);
+                    break;
+                case INTEGER:
+                case SORTABLE_INTEGER:
+                case FLOAT:
+                    dataOutput.writeInt((int)this.values[i]);
+                    break;
+                case LONG:
+                case DOUBLE:
+                case SORTABLE_LONG:
+                case SORTABLE_DOUBLE:
+                case TIMESTAMP:
+                    dataOutput.writeLong(this.values[i]);
+                    break;
+                case VAR_LONG:
+                    IOUtil.writeVarLong(this.values[i], dataOutput);
+                    break;
+                case STRING:
+                case BYTE_ARRAY:
+                    ((Buffer)this.objects[i]).write(dataOutput);
+                    break;
+                case MARSHAL:
+                    ((MutableMarshal)this.objects[i]).write(dataOutput);
+                    break;
+                default:
+                    this.write(type.getType(), this.objects[i], dataOutput);
+                    break;
+            }
+        }
+    }
+
+    // unchecked conversion of the field object; the type always matches the object it read
+    @SuppressWarnings("unchecked")
+    private <T> void write(AbstractType<T> type, Object object, DataOutput dataOutput) throws IOException {
+        type.write((T)object, dataOutput);
+    }
+
+    /**
+     * Returns an immutable marshal with the current contents. The result does not share any
+     * storage with this object.
+     */
+    public Marshal freeze() throws MarshalException {
+        if(this.size == 0)
+            return Marshal.EMPTY;
+
+        Marshal.Builder builder = Marshal.builder();
+        for(int i = 0; i < this.size; i++) {
+            if(this.types[i].isNull()) {
+                builder.add(this.types[i], NullType.NULL);
+            }
+            else if(this.types[i].ascending() == EntryType.BYTE_ARRAY) {
+                Buffer buffer = (Buffer)this.objects[i];
+                builder.add(this.types[i], new ByteArray(Arrays.copyOf(buffer.bytes, buffer.length)));
+            }
+            else {
+                builder.add(this.types[i], this.getAt(i));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of entries.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Whether the marshal is empty.
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Returns the type of the field at the given index.
+     *
+     * @throws IndexOutOfBoundsException
+     */
+    public EntryType getTypeAt(int index) {
+        if(index < 0 || index >= this.size)
+            throw new IndexOutOfBoundsException("Invalid position: " + index);
+        return this.types[index];
+    }
+
+    /**
+     * Returns the object at the given index, regardless of type. Primitives are boxed, byte arrays
+     * are views of the internal storage, nested marshals are frozen, and null entries are null.
+     */
+    public Object getAt(int index) throws MarshalException {
+        EntryType type = this.getTypeAt(index);
+        switch(type.ascending()) {
+            case BYTE:
+                return (byte)this.values[index];
+            case INTEGER:
+            case SORTABLE_INTEGER:
+                return (int)this.values[index];
+            case LONG:
+            case SORTABLE_LONG:
+            case VAR_LONG:
+            case TIMESTAMP:
+                return this.values[index];
+            case DOUBLE:
+            case SORTABLE_DOUBLE:
+                return Double.longBitsToDouble(this.values[index]);
+            case BOOLEAN:
+                return this.values[index] != 0;
+            case SHORT:
+                return (short)this.values[index];
+            case FLOAT:
+                return Float.intBitsToFloat((int)this.values[index]);
+            case STRING:
+                return ((Buffer)this.objects[index]).getString();
+            case BYTE_ARRAY:
+                return ((Buffer)this.objects[index]).getByteArray();
+            case MARSHAL:
+                return ((MutableMarshal)this.objects[index]).freeze();
+            case NULL:
+            case NULL_FIRST:
+                return null;
+            default:
+                return this.objects[index];
+        }
+    }
+
+    /**
+     * Whether the entry at the given index is null.
+     *
+     * @throws IndexOutOfBoundsException
+     */
+    public boolean isNullAt(int index) {
+        return this.getTypeAt(index).isNull();
+    }
+
+    public byte getByteAt(int index) throws MarshalException {
+        this.checkType(index, EntryType.BYTE, "byte");
+        return (byte)this.values[index];
+    }
+
+    /**
+     * Returns a view of the byte array at the given index, which is only valid until the next
+     * read.
+     */
+    public ByteArray getByteArrayAt(int index) throws MarshalException {
+        this.checkType(index, EntryType.BYTE_ARRAY, "ByteArray");
+        return ((Buffer)this.objects[index]).getByteArray();
+    }
+
+    public double getDoubleAt(int index) throws MarshalException {
+        switch(this.getTypeAt(index).ascending()) {
+            case DOUBLE:
+            case SORTABLE_DOUBLE:
+                return Double.longBitsToDouble(this.values[index]);
+            default:
+                throw this.wrongType(index, "Double");
+        }
+    }
+
+    public int getIntegerAt(int index) throws MarshalException {
+        switch(this.getTypeAt(index).ascending()) {
+            case INTEGER:
+            case SORTABLE_INTEGER:
+                return (int)this.values[index];
+            default:
+                throw this.wrongType(index, "Integer");
+        }
+    }
+
+    public long getLongAt(int index) throws MarshalException {
+        switch(this.getTypeAt(index).ascending()) {
+            case LONG:
+            case SORTABLE_LONG:
+            case VAR_LONG:
+            case TIMESTAMP:
+                return this.values[index];
+            default:
+                throw this.wrongType(index, "Long");
+        }
+    }
+
+    public boolean getBooleanAt(int index) throws MarshalException {
+        this.checkType(index, EntryType.BOOLEAN, "Boolean");
+        return this.values[index] != 0;
+    }
+
+    public short getShortAt(int index) throws MarshalException {
+        this.checkType(index, EntryType.SHORT, "Short");
+        return (short)this.values[index];
+    }
+
+    public float getFloatAt(int index) throws MarshalException {
+        this.checkType(index, EntryType.FLOAT, "Float");
+        return Float.intBitsToFloat((int)this.values[index]);
+    }
+
+    public UUID getUuidAt(int index) throws MarshalException {
+        this.checkType(index, EntryType.UUID, "UUID");
+        return (UUID)this.objects[index];
+    }
+
+    public BigInteger getBigIntegerAt(int index) throws MarshalException {
+        this.checkType(index, EntryType.BIG_INTEGER, "BigInteger");
+        return (BigInteger)this.objects[index];
+    }
+
+    public BigDecimal getBigDecimalAt(int index) throws MarshalException {
+        this.checkType(index, EntryType.BIG_DECIMAL, "BigDecimal");
+        return (BigDecimal)this.objects[index];
+    }
+
+    /**
+     * Returns the timestamp at the given index, in microseconds since the epoch.
+     */
+    public long getTimestampAt(int index) throws MarshalException {
+        this.checkType(index, EntryType.TIMESTAMP, "Timestamp");
+        return this.values[index];
+    }
+
+    public String getStringAt(int index) throws MarshalException {
+        this.checkType(index, EntryType.STRING, "String");
+        return ((Buffer)this.objects[index]).getString();
+    }
+
+    /**
+     * Returns the nested marshal at the given index as an immutable marshal.
+     */
+    public Marshal getMarshalAt(int index) throws MarshalException {
+        return this.getMutableMarshalAt(index).freeze();
+    }
+
+    /**
+     * Returns the nested marshal at the given index without copying it. The result is only valid
+     * until the next read.
+     */
+    public MutableMarshal getMutableMarshalAt(int index) throws MarshalException {
+        this.checkType(index, EntryType.MARSHAL, "Marshal");
+        return (MutableMarshal)this.objects[index];
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return this.freeze().toString();
+        }
+        catch(MarshalException e) {
+            return "[ INVALID ]";
+        }
+    }
+
+    // descending types are read the same way as their ascending types
+    private void checkType(int index, EntryType expected, String name) throws MarshalException {
+        if(this.getTypeAt(index).ascending() != expected)
+            throw this.wrongType(index, name);
+    }
+
+    private MarshalException wrongType(int index, String name) {
+        return new MarshalException("Type at position " + index + " is " + this.types[index] + ", not " +
+                name + ".");
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity > this.types.length) {
+            int newCapacity = Math.max(capacity, this.types.length * 2);
+            this.types = Arrays.copyOf(this.types, newCapacity);
+            this.values = Arrays.copyOf(this.values, newCapacity);
+            this.objects = Arrays.copyOf(this.objects, newCapacity);
+        }
+    }
+
+    /**
+     * Returns the reusable buffer for the entry at the given index, creating it if needed.
+     */
+    private Buffer buffer(int index) {
+        if(!(this.objects[index] instanceof Buffer))
+            this.objects[index] = new Buffer();
+        return (Buffer)this.objects[index];
+    }
+
+    /**
+     * Returns the reusable nested marshal for the entry at the given index, creating it if
+     * needed.
+     */
+    private MutableMarshal nested(int index) {
+        if(!(this.objects[index] instanceof MutableMarshal))
+            this.objects[index] = new MutableMarshal();
+        return (MutableMarshal)this.objects[index];
+    }
+}
@@ -0,0 +1,65 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+
+/**
+ * Type for an absent value, which has no data in either form.
+ *
+ * Entries of this type hold the {@link #NULL} placeholder, since entries cannot hold null.
+ */
+final class NullType extends AbstractType<Object> {
+    public static final NullType INSTANCE = new NullType();
+
+    /**
+     * The field object of null entries, with a hash code that is stable across JVMs.
+     */
+    static final Object NULL = new Object() {
+        @Override
+        public int hashCode() {
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "null";
+        }
+    };
+
+    private static final ByteArray EMPTY = new ByteArray(new byte[0]);
+
+    // singleton
+    private NullType() {}
+
+    @Override
+    public ByteArray marshal(Object object) {
+        return EMPTY;
+    }
+
+    @Override
+    public Object demarshal(ByteArray data) throws MarshalException {
+        if(data.size() != 0)
+            throw new MarshalException("Null entries cannot have data.");
+        return NULL;
+    }
+
+    @Override
+    public void write(Object object, DataOutput dataOutput) {
+        // no data
+    }
+
+    @Override
+    public Object read(DataInput dataInput) {
+        return NULL;
+    }
+
+    @Override
+    public int skip(byte[] bytes, int offset, int end) {
+        return offset;
+    }
+
+    @Override
+    public String toString() {
+        return "NullType";
+    }
+}
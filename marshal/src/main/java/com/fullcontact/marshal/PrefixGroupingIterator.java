@@ -0,0 +1,165 @@
+package com.fullcontact.marshal;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Groups a sorted stream of serialized marshals in the lexicographic format by their first k
+ * entries, without decoding them.
+ *
+ * The boundary of the first k entries of each row is found by scanning for separators (see {@link
+ * LexicographicFormat#prefixEnd}), and consecutive rows with the same prefix bytes form a group.
+ * Each group exposes its shared prefix as a view of the bytes of its first row, and iterates over
+ * its rows lazily from the underlying stream, as a reducer iterates over its values:
+ *
+ * <pre>
+ * PrefixGroupingIterator groups = new PrefixGroupingIterator(sortedRows, 2);
+ * while(groups.hasNext()) {
+ *     PrefixGroupingIterator.Group group = groups.next();
+ *     long count = 0;
+ *     for(ByteArray row : group)
+ *         count++;
+ *     emit(group.getPrefix(), count);
+ * }
+ * </pre>
+ *
+ * Rows with fewer than k entries are grouped by all of their entries. Advancing to the next group
+ * skips the remaining rows of the current one. The rows must be sorted, or at least grouped, by
+ * prefix. The iterators throw an IllegalStateException if a row is not a valid serialized
+ * marshal.
+ */
+public final class PrefixGroupingIterator implements Iterator<PrefixGroupingIterator.Group> {
+    private final Iterator<ByteArray> rows;
+    private final int n;
+
+    // the next row not yet returned, and the end of its prefix; null at the end of the rows
+    private ByteArray next = null;
+    private int nextPrefixEnd;
+
+    // the most recently returned group
+    private Group current = null;
+
+    /**
+     * Creates an iterator grouping the given rows by their first n entries.
+     */
+    public PrefixGroupingIterator(Iterator<ByteArray> rows, int n) {
+        checkArgument(n >= 0, "The number of entries in the prefix must be non-negative.");
+        this.rows = rows;
+        this.n = n;
+        this.advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(this.current != null) {
+            // skip the rest of the current group
+            while(this.current.hasNextRow())
+                this.advance();
+            this.current = null;
+        }
+        return this.next != null;
+    }
+
+    @Override
+    public Group next() {
+        if(!this.hasNext())
+            throw new NoSuchElementException();
+
+        ByteArray first = this.next;
+        this.current = new Group(new ByteArray(first.backingArray(), first.beginIndex(), this.nextPrefixEnd));
+        return this.current;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Reads the next row and finds the end of its prefix.
+     */
+    private void advance() {
+        if(!this.rows.hasNext()) {
+            this.next = null;
+            return;
+        }
+
+        this.next = this.rows.next();
+        try {
+            this.nextPrefixEnd = LexicographicFormat.prefixEnd(this.next.backingArray(),
+                    this.next.beginIndex(), this.next.endIndex(), this.n);
+        }
+        catch(MarshalException e) {
+            throw new IllegalStateException("Invalid serialized marshal.", e);
+        }
+    }
+
+    /**
+     * A run of consecutive rows sharing the same prefix. The rows may only be iterated once.
+     */
+    public final class Group implements Iterable<ByteArray> {
+        private final ByteArray prefix;
+        private boolean iterated = false;
+
+        private Group(ByteArray prefix) {
+            this.prefix = prefix;
+        }
+
+        /**
+         * Returns the terminated prefix shared by the rows of this group, as a view of the bytes
+         * of its first row.
+         */
+        public ByteArray getPrefix() {
+            return this.prefix;
+        }
+
+        /**
+         * Returns an iterator over the rows of this group. The rows are read from the underlying
+         * stream, so they must be consumed before advancing to the next group.
+         */
+        @Override
+        public Iterator<ByteArray> iterator() {
+            checkState(!this.iterated, "The rows of a group may only be iterated once.");
+            this.iterated = true;
+
+            return new Iterator<ByteArray>() {
+                @Override
+                public boolean hasNext() {
+                    return hasNextRow();
+                }
+
+                @Override
+                public ByteArray next() {
+                    if(!hasNextRow())
+                        throw new NoSuchElementException();
+
+                    ByteArray row = PrefixGroupingIterator.this.next;
+                    advance();
+                    return row;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        /**
+         * Whether the next row of the underlying stream belongs to this group.
+         */
+        private boolean hasNextRow() {
+            ByteArray row = PrefixGroupingIterator.this.next;
+            if(current != this || row == null)
+                return false;
+
+            int begin = row.beginIndex();
+            return nextPrefixEnd - begin == this.prefix.size() &&
+                ByteArray.compare(row.backingArray(), begin, nextPrefixEnd,
+                        this.prefix.backingArray(), this.prefix.beginIndex(), this.prefix.endIndex()) == 0;
+        }
+    }
+}
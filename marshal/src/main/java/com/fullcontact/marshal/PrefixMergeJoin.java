@@ -0,0 +1,207 @@
+package com.fullcontact.marshal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming merge join of two sorted streams of serialized marshals in the lexicographic format,
+ * on the first k entries of each row.
+ *
+ * Both sides are grouped by prefix with a {@link PrefixGroupingIterator}, so prefixes are compared
+ * as raw bytes and nothing is decoded. For each prefix present on both sides, every left row is
+ * joined with every right row; to do so, the right rows of the prefix are buffered while the left
+ * rows are streamed, so memory is bounded by the largest group of rows sharing a prefix on the
+ * right side. Put the side with the smaller groups on the right.
+ *
+ * <pre>
+ * PrefixMergeJoin join = new PrefixMergeJoin(users, events, 1, PrefixMergeJoin.JoinType.LEFT);
+ * while(join.hasNext()) {
+ *     PrefixMergeJoin.Row row = join.next();
+ *     ... row.getLeft(), row.getRight()
+ * }
+ * </pre>
+ *
+ * Both streams must be sorted in lexicographic order, and must not reuse the storage of rows that
+ * they have returned. The iterator throws an IllegalStateException if a row is not a valid
+ * serialized marshal.
+ */
+public final class PrefixMergeJoin implements Iterator<PrefixMergeJoin.Row> {
+    /**
+     * The kind of join, which determines what is emitted for rows without a match.
+     */
+    public enum JoinType {
+        /**
+         * Only rows with a match on the other side are joined.
+         */
+        INNER,
+
+        /**
+         * Left rows without a match are emitted with a null right row.
+         */
+        LEFT,
+
+        /**
+         * Rows without a match on either side are emitted with a null row for the other side.
+         */
+        FULL_OUTER
+    }
+
+    /**
+     * A joined pair of rows.
+     */
+    public static final class Row {
+        private final ByteArray prefix;
+        private final ByteArray left;
+        private final ByteArray right;
+
+        private Row(ByteArray prefix, ByteArray left, ByteArray right) {
+            this.prefix = prefix;
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * Returns the terminated prefix on which the rows were joined.
+         */
+        public ByteArray getPrefix() {
+            return this.prefix;
+        }
+
+        /**
+         * Returns the left row, or null if the right row has no match.
+         */
+        public ByteArray getLeft() {
+            return this.left;
+        }
+
+        /**
+         * Returns the right row, or null if the left row has no match.
+         */
+        public ByteArray getRight() {
+            return this.right;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + this.left + ", " + this.right + ")";
+        }
+    }
+
+    private final PrefixGroupingIterator leftGroups;
+    private final PrefixGroupingIterator rightGroups;
+    private final JoinType type;
+
+    // the next group of each side that has not been joined yet
+    private PrefixGroupingIterator.Group left = null;
+    private PrefixGroupingIterator.Group right = null;
+
+    // the prefix being emitted
+    private ByteArray prefix = null;
+
+    // left rows of a matched prefix, and the buffered right rows they are joined with
+    private Iterator<ByteArray> matchedLeft = null;
+    private final List<ByteArray> matchedRight = new ArrayList<ByteArray>();
+    private ByteArray leftRow = null;
+    private int rightIndex = 0;
+
+    // rows without a match on the other side
+    private Iterator<ByteArray> unmatchedLeft = null;
+    private Iterator<ByteArray> unmatchedRight = null;
+
+    // the next row to return, or null if not computed yet
+    private Row next = null;
+
+    /**
+     * Creates a join of the given sorted streams on their first n entries.
+     */
+    public PrefixMergeJoin(Iterator<ByteArray> left, Iterator<ByteArray> right, int n, JoinType type) {
+        this.leftGroups = new PrefixGroupingIterator(left, n);
+        this.rightGroups = new PrefixGroupingIterator(right, n);
+        this.type = type;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(this.next == null)
+            this.next = this.computeNext();
+        return this.next != null;
+    }
+
+    @Override
+    public Row next() {
+        if(!this.hasNext())
+            throw new NoSuchElementException();
+
+        Row row = this.next;
+        this.next = null;
+        return row;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private Row computeNext() {
+        while(true) {
+            // the cross product of a matched prefix
+            if(this.leftRow != null && this.rightIndex < this.matchedRight.size())
+                return new Row(this.prefix, this.leftRow, this.matchedRight.get(this.rightIndex++));
+            if(this.matchedLeft != null && this.matchedLeft.hasNext()) {
+                this.leftRow = this.matchedLeft.next();
+                this.rightIndex = 0;
+                continue;
+            }
+            this.leftRow = null;
+            this.matchedLeft = null;
+
+            if(this.unmatchedLeft != null && this.unmatchedLeft.hasNext())
+                return new Row(this.prefix, this.unmatchedLeft.next(), null);
+            this.unmatchedLeft = null;
+
+            if(this.unmatchedRight != null && this.unmatchedRight.hasNext())
+                return new Row(this.prefix, null, this.unmatchedRight.next());
+            this.unmatchedRight = null;
+
+            // the current groups are done, so the group iterators may advance
+            if(this.left == null && this.leftGroups.hasNext())
+                this.left = this.leftGroups.next();
+            if(this.right == null && this.rightGroups.hasNext())
+                this.right = this.rightGroups.next();
+            if(this.left == null && this.right == null)
+                return null;
+
+            int result;
+            if(this.left == null)
+                result = 1;
+            else if(this.right == null)
+                result = -1;
+            else
+                result = this.left.getPrefix().compareTo(this.right.getPrefix());
+
+            if(result < 0) {
+                this.prefix = this.left.getPrefix();
+                if(this.type != JoinType.INNER)
+                    this.unmatchedLeft = this.left.iterator();
+                this.left = null;
+            }
+            else if(result > 0) {
+                this.prefix = this.right.getPrefix();
+                if(this.type == JoinType.FULL_OUTER)
+                    this.unmatchedRight = this.right.iterator();
+                this.right = null;
+            }
+            else {
+                this.prefix = this.left.getPrefix();
+                this.matchedRight.clear();
+                for(ByteArray row : this.right)
+                    this.matchedRight.add(row);
+                this.matchedLeft = this.left.iterator();
+                this.left = null;
+                this.right = null;
+            }
+        }
+    }
+}
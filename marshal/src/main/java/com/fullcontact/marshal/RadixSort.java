@@ -0,0 +1,213 @@
+package com.fullcontact.marshal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Most-significant-digit radix sort of byte array records packed into a single arena, in the
+ * unsigned byte order of {@link ByteArray#compareTo}.
+ *
+ * Records are given as an array of longs, each holding the offset and length of a record in the
+ * arena (see {@link #record}), and the array is sorted in place. Unlike a comparison sort, which
+ * re-reads the prefix shared by two keys on every comparison, the radix sort reads each byte of a
+ * key once per level, which makes it much faster for keys with long common prefixes, such as
+ * marshals with repeated leading fields. Buckets with few records are finished with an insertion
+ * sort that starts comparing at the current depth.
+ */
+public final class RadixSort {
+    // buckets smaller than this are insertion sorted
+    private static final int CUTOFF = 32;
+
+    // bucket 0 holds records that end at the current depth; bucket b + 1 holds byte b
+    private static final int BUCKETS = 257;
+
+    // static utility class
+    private RadixSort() {}
+
+    /**
+     * Packs the offset and length of a record into a long.
+     */
+    public static long record(int offset, int length) {
+        checkArgument(offset >= 0 && length >= 0, "The offset and length must be non-negative.");
+        return ((long)offset << 32) | length;
+    }
+
+    /**
+     * Returns the offset of a packed record.
+     */
+    public static int offset(long record) {
+        return (int)(record >>> 32);
+    }
+
+    /**
+     * Returns the length of a packed record.
+     */
+    public static int length(long record) {
+        return (int)record;
+    }
+
+    /**
+     * Sorts the records in place.
+     *
+     * @param arena The bytes of the records.
+     * @param records The packed offset and length of each record in the arena.
+     */
+    public static void sort(byte[] arena, long[] records) {
+        sort(arena, records, 0, records.length);
+    }
+
+    /**
+     * Sorts the records in the range [from, to) in place.
+     */
+    public static void sort(byte[] arena, long[] records, int from, int to) {
+        long[] aux = new long[to];
+        sort(arena, records, aux, from, to, 0);
+    }
+
+    /**
+     * Sorts the records in place, sorting the buckets of the first byte at which the records
+     * differ in parallel on the given executor. Blocks until the sort is complete.
+     */
+    public static void sort(final byte[] arena, final long[] records, ExecutorService executor)
+            throws InterruptedException {
+        if(records.length < CUTOFF) {
+            insertionSort(arena, records, 0, records.length, 0);
+            return;
+        }
+
+        final long[] aux = new long[records.length];
+
+        // skip the prefix shared by all records, which would otherwise leave a single bucket
+        int depth = 0;
+        int[] starts;
+        while(true) {
+            starts = distribute(arena, records, aux, 0, records.length, depth);
+            if(starts[1] > 0 || countBuckets(starts) > 1)
+                break;
+            depth++;
+        }
+
+        final int next = depth + 1;
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for(int bucket = 1; bucket < BUCKETS; bucket++) {
+            final int from = starts[bucket];
+            final int to = starts[bucket + 1];
+            if(to - from > 1) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        sort(arena, records, aux, from, to, next);
+                        return null;
+                    }
+                }));
+            }
+        }
+
+        try {
+            for(Future<Void> future : futures)
+                future.get();
+        }
+        catch(ExecutionException e) {
+            throw new IllegalStateException("Could not sort records.", e.getCause());
+        }
+    }
+
+    private static int countBuckets(int[] starts) {
+        int count = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            if(starts[bucket + 1] > starts[bucket])
+                count++;
+        }
+        return count;
+    }
+
+    private static void sort(byte[] arena, long[] records, long[] aux, int from, int to, int depth) {
+        while(to - from >= CUTOFF) {
+            int[] starts = distribute(arena, records, aux, from, to, depth);
+
+            // recurse into all but the largest bucket, and continue with that one, so the stack
+            // depth stays bounded by the key length
+            int largest = 1;
+            for(int bucket = 1; bucket < BUCKETS; bucket++) {
+                if(starts[bucket + 1] - starts[bucket] > starts[largest + 1] - starts[largest])
+                    largest = bucket;
+            }
+            for(int bucket = 1; bucket < BUCKETS; bucket++) {
+                if(bucket != largest && starts[bucket + 1] - starts[bucket] > 1)
+                    sort(arena, records, aux, starts[bucket], starts[bucket + 1], depth + 1);
+            }
+
+            from = starts[largest];
+            to = starts[largest + 1];
+            depth++;
+        }
+
+        if(to - from > 1)
+            insertionSort(arena, records, from, to, depth);
+    }
+
+    /**
+     * Distributes the records of the range into buckets by their byte at the given depth, using
+     * the same range of aux as scratch space. Returns the start of each bucket, followed by the
+     * end of the range.
+     */
+    private static int[] distribute(byte[] arena, long[] records, long[] aux, int from, int to, int depth) {
+        int[] starts = new int[BUCKETS + 1];
+        for(int i = from; i < to; i++)
+            starts[bucket(arena, records[i], depth) + 1]++;
+
+        // all records share this byte; nothing to move
+        int size = to - from;
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            if(starts[bucket + 1] == size) {
+                for(int b = 0; b <= BUCKETS; b++)
+                    starts[b] = (b <= bucket) ? from : to;
+                return starts;
+            }
+        }
+
+        starts[0] = from;
+        for(int bucket = 0; bucket < BUCKETS; bucket++)
+            starts[bucket + 1] += starts[bucket];
+
+        int[] next = new int[BUCKETS];
+        System.arraycopy(starts, 0, next, 0, BUCKETS);
+        for(int i = from; i < to; i++)
+            aux[next[bucket(arena, records[i], depth)]++] = records[i];
+        System.arraycopy(aux, from, records, from, size);
+
+        return starts;
+    }
+
+    private static int bucket(byte[] arena, long record, int depth) {
+        return (depth < length(record)) ? (arena[offset(record) + depth] & 0xFF) + 1 : 0;
+    }
+
+    /**
+     * Insertion sort of records that are equal before the given depth.
+     */
+    private static void insertionSort(byte[] arena, long[] records, int from, int to, int depth) {
+        for(int i = from + 1; i < to; i++) {
+            long record = records[i];
+            int j = i;
+            while(j > from && compare(arena, records[j - 1], record, depth) > 0) {
+                records[j] = records[j - 1];
+                j--;
+            }
+            records[j] = record;
+        }
+    }
+
+    private static int compare(byte[] arena, long a, long b, int depth) {
+        int offsetA = offset(a);
+        int offsetB = offset(b);
+        return ByteArray.compare(arena, offsetA + Math.min(depth, length(a)), offsetA + length(a),
+                arena, offsetB + Math.min(depth, length(b)), offsetB + length(b));
+    }
+}
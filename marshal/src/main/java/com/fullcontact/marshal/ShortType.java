@@ -0,0 +1,51 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Type for Short.
+ *
+ * The value is written big-endian with the sign bit flipped, so that the lexicographic form
+ * sorts in numeric order.
+ */
+final class ShortType extends AbstractType<Short> {
+    public static final ShortType INSTANCE = new ShortType();
+
+    // singleton
+    private ShortType() {}
+
+    @Override
+    public ByteArray marshal(Short s) {
+        byte[] bytes = { (byte)((s >>> 8) ^ 0x80), (byte)(short)s };
+        return new ByteArray(bytes);
+    }
+
+    @Override
+    public Short demarshal(ByteArray data) throws MarshalException {
+        if(data.size() != 2)
+            throw new MarshalException("Invalid short data.");
+        return (short)(((data.getAt(0) ^ 0x80) << 8) | (data.getAt(1) & 0xFF));
+    }
+
+    @Override
+    public void write(Short s, DataOutput dataOutput) throws IOException {
+        dataOutput.writeShort(s);
+    }
+
+    @Override
+    public Short read(DataInput dataInput) throws IOException {
+        return dataInput.readShort();
+    }
+
+    @Override
+    public int skip(byte[] bytes, int offset, int end) {
+        return offset + 2;
+    }
+
+    @Override
+    public String toString() {
+        return "ShortType";
+    }
+}
@@ -0,0 +1,69 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Type for Double whose lexicographic form sorts in numeric order.
+ *
+ * The IEEE 754 bits of the value are written big-endian, with only the sign bit flipped for
+ * positive values and all bits flipped for negative values. The result is a total order:
+ * negative infinity, the negative values, -0.0, 0.0, the positive values, positive infinity and
+ * NaN, the same order as {@link Double#compare}. NaNs are collapsed to the canonical NaN. The
+ * writable form is the same as that of {@link DoubleType}.
+ */
+final class SortableDoubleType extends AbstractType<Double> {
+    public static final SortableDoubleType INSTANCE = new SortableDoubleType();
+
+    // singleton
+    private SortableDoubleType() {}
+
+    /**
+     * Returns the unsigned sortable bits of the value.
+     */
+    static long toSortable(double d) {
+        long bits = Double.doubleToLongBits(d);
+        return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+    }
+
+    /**
+     * Returns the value of the given unsigned sortable bits.
+     */
+    static double fromSortable(long sortable) {
+        return Double.longBitsToDouble(sortable ^ ((~sortable >> 63) | Long.MIN_VALUE));
+    }
+
+    @Override
+    public ByteArray marshal(Double d) {
+        byte[] bytes = new byte[8];
+        ByteBuffer.wrap(bytes).putLong(toSortable(d));
+        return new ByteArray(bytes);
+    }
+
+    @Override
+    public Double demarshal(ByteArray data) {
+        return fromSortable(ByteBuffer.wrap(data.toArray()).getLong());
+    }
+
+    @Override
+    public void write(Double d, DataOutput dataOutput) throws IOException {
+        dataOutput.writeDouble(d);
+    }
+
+    @Override
+    public Double read(DataInput dataInput) throws IOException {
+        return dataInput.readDouble();
+    }
+
+    @Override
+    public int skip(byte[] bytes, int offset, int end) {
+        return offset + 8;
+    }
+
+    @Override
+    public String toString() {
+        return "SortableDoubleType";
+    }
+}
@@ -0,0 +1,58 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Type for Integer whose lexicographic form sorts in numeric order.
+ *
+ * The value is written big-endian with the sign bit flipped, so that negative values sort before
+ * positive values. The writable form is the same as that of {@link IntegerType}.
+ */
+final class SortableIntegerType extends AbstractType<Integer> {
+    public static final SortableIntegerType INSTANCE = new SortableIntegerType();
+
+    // singleton
+    private SortableIntegerType() {}
+
+    /**
+     * Converts between a value and its unsigned sortable bits. The conversion is its own inverse.
+     */
+    static int flip(int i) {
+        return i ^ Integer.MIN_VALUE;
+    }
+
+    @Override
+    public ByteArray marshal(Integer i) {
+        byte[] bytes = new byte[4];
+        ByteBuffer.wrap(bytes).putInt(flip(i));
+        return new ByteArray(bytes);
+    }
+
+    @Override
+    public Integer demarshal(ByteArray data) {
+        return flip(ByteBuffer.wrap(data.toArray()).getInt());
+    }
+
+    @Override
+    public void write(Integer i, DataOutput dataOutput) throws IOException {
+        dataOutput.writeInt(i);
+    }
+
+    @Override
+    public Integer read(DataInput dataInput) throws IOException {
+        return dataInput.readInt();
+    }
+
+    @Override
+    public int skip(byte[] bytes, int offset, int end) {
+        return offset + 4;
+    }
+
+    @Override
+    public String toString() {
+        return "SortableIntegerType";
+    }
+}
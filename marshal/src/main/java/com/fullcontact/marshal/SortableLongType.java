@@ -0,0 +1,58 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Type for Long whose lexicographic form sorts in numeric order.
+ *
+ * The value is written big-endian with the sign bit flipped, so that negative values sort before
+ * positive values. The writable form is the same as that of {@link LongType}.
+ */
+final class SortableLongType extends AbstractType<Long> {
+    public static final SortableLongType INSTANCE = new SortableLongType();
+
+    // singleton
+    private SortableLongType() {}
+
+    /**
+     * Converts between a value and its unsigned sortable bits. The conversion is its own inverse.
+     */
+    static long flip(long l) {
+        return l ^ Long.MIN_VALUE;
+    }
+
+    @Override
+    public ByteArray marshal(Long l) {
+        byte[] bytes = new byte[8];
+        ByteBuffer.wrap(bytes).putLong(flip(l));
+        return new ByteArray(bytes);
+    }
+
+    @Override
+    public Long demarshal(ByteArray data) {
+        return flip(ByteBuffer.wrap(data.toArray()).getLong());
+    }
+
+    @Override
+    public void write(Long l, DataOutput dataOutput) throws IOException {
+        dataOutput.writeLong(l);
+    }
+
+    @Override
+    public Long read(DataInput dataInput) throws IOException {
+        return dataInput.readLong();
+    }
+
+    @Override
+    public int skip(byte[] bytes, int offset, int end) {
+        return offset + 8;
+    }
+
+    @Override
+    public String toString() {
+        return "SortableLongType";
+    }
+}
@@ -0,0 +1,547 @@
+package com.fullcontact.marshal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A file of marshals, stored in ascending lexicographic order (see {@link Marshal#toBytes}), that
+ * supports lookup by key or by key prefix.
+ *
+ * Keys are grouped into blocks of roughly a fixed number of bytes. Within a block, each key is
+ * stored as the number of leading bytes it shares with the previous key, followed by the rest of
+ * its bytes. Every N keys is a restart point, where the key is stored in full, so a block can be
+ * binary searched by its restart points and then scanned. The file looks like the following:
+ *  [block] ... [block][index][index offset][block count][magic]
+ * where the index holds the last key, offset and length of each block, and each block looks like:
+ *  [shared][unshared][key bytes] ... [restart offset] ... [restart count]
+ * with the shared and unshared lengths as variable-length integers and the restart offsets and
+ * count as four byte integers.
+ *
+ * The index is kept in memory by the {@link Reader}, so a lookup reads and decodes a single block.
+ */
+public final class SortedMarshalFile {
+    /**
+     * Default target size of a block, in bytes.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    /**
+     * Default number of keys between restart points.
+     */
+    public static final int DEFAULT_RESTART_INTERVAL = 16;
+
+    // identifies the file format; "MSF1"
+    private static final int MAGIC = 0x4D534631;
+
+    // index offset, block count and magic
+    private static final int FOOTER_SIZE = 8 + 4 + 4;
+
+    // static utility class
+    private SortedMarshalFile() {}
+
+    /**
+     * Writes marshals, in ascending lexicographic order, to a sorted marshal file.
+     *
+     * A Writer is not thread-safe.
+     */
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final int blockSize;
+        private final int restartInterval;
+
+        // the block being built; sizes are taken from blockBytes, which is reset for each block
+        private final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+        private final DataOutputStream block = new DataOutputStream(this.blockBytes);
+        private final List<Integer> restarts = new ArrayList<Integer>();
+        private int blockKeys = 0;
+
+        // the previous key
+        private byte[] lastKey = null;
+
+        // the last key, offset and length of each written block
+        private final List<byte[]> indexKeys = new ArrayList<byte[]>();
+        private final List<Long> indexOffsets = new ArrayList<Long>();
+        private final List<Integer> indexLengths = new ArrayList<Integer>();
+
+        // number of bytes written to the file so far
+        private long position = 0;
+
+        private boolean closed = false;
+
+        /**
+         * Creates a writer for the given file with the default block size and restart interval.
+         */
+        public Writer(File file) throws IOException {
+            this(file, DEFAULT_BLOCK_SIZE, DEFAULT_RESTART_INTERVAL);
+        }
+
+        /**
+         * Creates a writer for the given file.
+         *
+         * @param blockSize The target size of a block in bytes. A block ends with the first key
+         * that makes it at least this large.
+         * @param restartInterval The number of keys between restart points.
+         */
+        public Writer(File file, int blockSize, int restartInterval) throws IOException {
+            checkArgument(blockSize > 0, "The block size must be positive.");
+            checkArgument(restartInterval > 0, "The restart interval must be positive.");
+
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            this.blockSize = blockSize;
+            this.restartInterval = restartInterval;
+        }
+
+        /**
+         * Appends a marshal to the file.
+         *
+         * @throws IllegalArgumentException if the marshal does not sort after the previous one.
+         */
+        public void append(Marshal marshal) throws IOException {
+            this.append(marshal.toByteArray());
+        }
+
+        /**
+         * Appends the lexicographic bytes of a marshal to the file.
+         *
+         * @throws IllegalArgumentException if the bytes do not sort after the previous key.
+         */
+        public void append(ByteArray key) throws IOException {
+            checkState(!this.closed, "The writer is closed.");
+
+            byte[] bytes = key.backingArray();
+            int begin = key.beginIndex();
+            int end = key.endIndex();
+
+            checkArgument(this.lastKey == null ||
+                    ByteArray.compare(this.lastKey, 0, this.lastKey.length, bytes, begin, end) < 0,
+                    "Keys must be appended in strictly ascending order.");
+
+            int shared = 0;
+            if(this.blockKeys % this.restartInterval == 0) {
+                this.restarts.add(this.blockBytes.size());
+            }
+            else {
+                int limit = Math.min(this.lastKey.length, end - begin);
+                while(shared < limit && this.lastKey[shared] == bytes[begin + shared])
+                    shared++;
+            }
+
+            IOUtil.writeVarInt(shared, this.block);
+            IOUtil.writeVarInt(end - begin - shared, this.block);
+            this.block.write(bytes, begin + shared, end - begin - shared);
+
+            // the key may be a view of a buffer that the caller reuses
+            this.lastKey = Arrays.copyOfRange(bytes, begin, end);
+            this.blockKeys++;
+
+            if(this.blockBytes.size() >= this.blockSize)
+                this.finishBlock();
+        }
+
+        /**
+         * Writes the pending block, the index and the footer, and closes the file.
+         */
+        @Override
+        public void close() throws IOException {
+            if(this.closed)
+                return;
+            this.closed = true;
+
+            try {
+                if(this.blockKeys > 0)
+                    this.finishBlock();
+
+                long indexOffset = this.position;
+                for(int i = 0; i < this.indexKeys.size(); i++) {
+                    byte[] key = this.indexKeys.get(i);
+                    IOUtil.writeVarInt(key.length, this.out);
+                    this.out.write(key);
+                    this.out.writeLong(this.indexOffsets.get(i));
+                    this.out.writeInt(this.indexLengths.get(i));
+                }
+
+                this.out.writeLong(indexOffset);
+                this.out.writeInt(this.indexKeys.size());
+                this.out.writeInt(MAGIC);
+            }
+            finally {
+                this.out.close();
+            }
+        }
+
+        private void finishBlock() throws IOException {
+            for(int restart : this.restarts)
+                this.block.writeInt(restart);
+            this.block.writeInt(this.restarts.size());
+
+            this.indexKeys.add(this.lastKey);
+            this.indexOffsets.add(this.position);
+            this.indexLengths.add(this.blockBytes.size());
+
+            this.blockBytes.writeTo(this.out);
+            this.position += this.blockBytes.size();
+
+            this.blockBytes.reset();
+            this.restarts.clear();
+            this.blockKeys = 0;
+        }
+    }
+
+    /**
+     * Reads a sorted marshal file.
+     *
+     * The block index is read when the file is opened. Lookups read a single block from the
+     * file. A Reader is not thread-safe.
+     */
+    public static final class Reader implements Closeable, Iterable<Marshal> {
+        private final RandomAccessFile file;
+
+        // the last key, offset and length of each block
+        private final byte[][] indexKeys;
+        private final long[] indexOffsets;
+        private final int[] indexLengths;
+
+        /**
+         * Opens the given file.
+         *
+         * @throws MarshalException if the file is not a sorted marshal file.
+         */
+        public Reader(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+
+            boolean success = false;
+            try {
+                long length = this.file.length();
+                if(length < FOOTER_SIZE)
+                    throw new MarshalException("Not a sorted marshal file: " + file);
+
+                this.file.seek(length - FOOTER_SIZE);
+                long indexOffset = this.file.readLong();
+                int blockCount = this.file.readInt();
+                if(this.file.readInt() != MAGIC || indexOffset < 0 || indexOffset > length - FOOTER_SIZE ||
+                        blockCount < 0)
+                    throw new MarshalException("Not a sorted marshal file: " + file);
+
+                byte[] index = new byte[(int)(length - FOOTER_SIZE - indexOffset)];
+                this.file.seek(indexOffset);
+                this.file.readFully(index);
+
+                this.indexKeys = new byte[blockCount][];
+                this.indexOffsets = new long[blockCount];
+                this.indexLengths = new int[blockCount];
+
+                int position = 0;
+                for(int i = 0; i < blockCount; i++) {
+                    int keyLength = IOUtil.readVarInt(index, position, index.length);
+                    position += IOUtil.varIntSize(keyLength);
+                    if(position + keyLength + 12 > index.length)
+                        throw new MarshalException("Truncated sorted marshal file index.");
+
+                    this.indexKeys[i] = Arrays.copyOfRange(index, position, position + keyLength);
+                    position += keyLength;
+                    this.indexOffsets[i] = readLong(index, position);
+                    this.indexLengths[i] = readInt(index, position + 8);
+                    position += 12;
+                }
+
+                success = true;
+            }
+            finally {
+                if(!success)
+                    this.file.close();
+            }
+        }
+
+        /**
+         * Returns the number of blocks in the file.
+         */
+        public int getBlockCount() {
+            return this.indexKeys.length;
+        }
+
+        /**
+         * Whether the file contains the given marshal.
+         */
+        public boolean contains(Marshal marshal) throws IOException {
+            ByteArray key = marshal.toByteArray();
+            Block block = this.seek(key);
+            return block != null && block.compareKey(key) == 0;
+        }
+
+        /**
+         * Returns the first marshal whose lexicographic bytes begin with the given prefix, such as
+         * one returned by {@link Marshal#prefixTerminated}, or null if there is none.
+         */
+        public Marshal findFirst(ByteArray prefix) throws IOException {
+            Block block = this.seek(prefix);
+            if(block == null || !block.startsWith(prefix))
+                return null;
+            return block.getKey();
+        }
+
+        /**
+         * Returns an iterator over all marshals in the file, in order.
+         *
+         * The iterator throws an IllegalStateException if the file cannot be read.
+         */
+        @Override
+        public Iterator<Marshal> iterator() {
+            try {
+                return new BlockIterator(this.indexKeys.length > 0 ? this.readBlock(0) : null, 0);
+            }
+            catch(IOException e) {
+                throw new IllegalStateException("Could not read sorted marshal file.", e);
+            }
+        }
+
+        /**
+         * Returns an iterator over the marshals in the file, in order, starting with the first
+         * marshal whose lexicographic bytes are greater than or equal to the given key.
+         */
+        public Iterator<Marshal> iterator(ByteArray from) throws IOException {
+            Block block = this.seek(from);
+            return new BlockIterator(block, block != null ? block.index : this.indexKeys.length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.file.close();
+        }
+
+        /**
+         * Returns the block holding the first key greater than or equal to the given key,
+         * positioned at that key, or null if every key is smaller.
+         */
+        private Block seek(ByteArray key) throws IOException {
+            byte[] bytes = key.backingArray();
+            int begin = key.beginIndex();
+            int end = key.endIndex();
+
+            // first block whose last key is not less than the key
+            int low = 0;
+            int high = this.indexKeys.length;
+            while(low < high) {
+                int middle = (low + high) >>> 1;
+                byte[] last = this.indexKeys[middle];
+                if(ByteArray.compare(last, 0, last.length, bytes, begin, end) < 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            if(low == this.indexKeys.length)
+                return null;
+
+            Block block = this.readBlock(low);
+            block.seek(key);
+            return block;
+        }
+
+        private Block readBlock(int index) throws IOException {
+            byte[] bytes = new byte[this.indexLengths[index]];
+            this.file.seek(this.indexOffsets[index]);
+            this.file.readFully(bytes);
+            return new Block(index, bytes);
+        }
+
+        /**
+         * Iterator over the keys of a block and the blocks that follow it.
+         */
+        private final class BlockIterator implements Iterator<Marshal> {
+            private Block block;
+            private int blockIndex;
+
+            // whether the current key of the block has been returned
+            private boolean consumed;
+
+            BlockIterator(Block block, int blockIndex) {
+                this.block = block;
+                this.blockIndex = blockIndex;
+                this.consumed = false;
+            }
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    while(this.block != null) {
+                        if(!this.consumed && this.block.hasKey())
+                            return true;
+
+                        if(this.block.next()) {
+                            this.consumed = false;
+                            return true;
+                        }
+
+                        this.blockIndex++;
+                        this.block = this.blockIndex < indexKeys.length ? readBlock(this.blockIndex) : null;
+                        this.consumed = false;
+                    }
+                    return false;
+                }
+                catch(IOException e) {
+                    throw new IllegalStateException("Could not read sorted marshal file.", e);
+                }
+            }
+
+            @Override
+            public Marshal next() {
+                if(!this.hasNext())
+                    throw new NoSuchElementException();
+
+                this.consumed = true;
+                try {
+                    return this.block.getKey();
+                }
+                catch(MarshalException e) {
+                    throw new IllegalStateException("Could not decode marshal.", e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }
+    }
+
+    /**
+     * A decoded block, with a cursor over its keys.
+     */
+    private static final class Block {
+        private final int index;
+        private final byte[] bytes;
+
+        // end of the key data, where the restart offsets begin
+        private final int dataEnd;
+        private final int restartCount;
+
+        // position of the next key to decode
+        private int position = 0;
+
+        // the current key, or none if key is null
+        private byte[] key = null;
+        private int keyLength = 0;
+
+        Block(int index, byte[] bytes) throws MarshalException {
+            this.index = index;
+            this.bytes = bytes;
+
+            if(bytes.length < 4)
+                throw new MarshalException("Truncated sorted marshal file block.");
+            this.restartCount = readInt(bytes, bytes.length - 4);
+            this.dataEnd = bytes.length - 4 - 4 * this.restartCount;
+            if(this.restartCount < 1 || this.dataEnd < 0)
+                throw new MarshalException("Invalid sorted marshal file block.");
+        }
+
+        boolean hasKey() {
+            return this.key != null;
+        }
+
+        /**
+         * Decodes the next key. Returns false if there are no more keys in the block.
+         */
+        boolean next() throws MarshalException {
+            if(this.position >= this.dataEnd) {
+                this.key = null;
+                return false;
+            }
+
+            int shared = IOUtil.readVarInt(this.bytes, this.position, this.dataEnd);
+            this.position += IOUtil.varIntSize(shared);
+            int unshared = IOUtil.readVarInt(this.bytes, this.position, this.dataEnd);
+            this.position += IOUtil.varIntSize(unshared);
+
+            if(shared > this.keyLength || this.position + unshared > this.dataEnd)
+                throw new MarshalException("Invalid sorted marshal file block.");
+
+            int length = shared + unshared;
+            if(this.key == null || this.key.length < length) {
+                byte[] key = new byte[Math.max(length, 32)];
+                if(this.key != null)
+                    System.arraycopy(this.key, 0, key, 0, shared);
+                this.key = key;
+            }
+            System.arraycopy(this.bytes, this.position, this.key, shared, unshared);
+            this.position += unshared;
+            this.keyLength = length;
+            return true;
+        }
+
+        /**
+         * Positions the cursor at the first key greater than or equal to the given key, which
+         * the caller guarantees is in this block.
+         */
+        void seek(ByteArray target) throws MarshalException {
+            // last restart point whose key is less than the target
+            int low = 0;
+            int high = this.restartCount - 1;
+            while(low < high) {
+                int middle = (low + high + 1) >>> 1;
+                this.restart(middle);
+                if(this.compareKey(target) < 0)
+                    low = middle;
+                else
+                    high = middle - 1;
+            }
+
+            this.restart(low);
+            while(this.compareKey(target) < 0) {
+                if(!this.next())
+                    throw new MarshalException("Sorted marshal file index is out of order.");
+            }
+        }
+
+        /**
+         * Compares the current key to the given key.
+         */
+        int compareKey(ByteArray other) {
+            return ByteArray.compare(this.key, 0, this.keyLength,
+                    other.backingArray(), other.beginIndex(), other.endIndex());
+        }
+
+        boolean startsWith(ByteArray prefix) {
+            return prefix.size() <= this.keyLength &&
+                ByteArray.compare(this.key, 0, prefix.size(),
+                        prefix.backingArray(), prefix.beginIndex(), prefix.endIndex()) == 0;
+        }
+
+        Marshal getKey() throws MarshalException {
+            return Marshal.fromBytes(Arrays.copyOf(this.key, this.keyLength));
+        }
+
+        private void restart(int restart) throws MarshalException {
+            int offset = readInt(this.bytes, this.dataEnd + 4 * restart);
+            if(offset < 0 || offset >= this.dataEnd)
+                throw new MarshalException("Invalid sorted marshal file block.");
+
+            this.position = offset;
+            this.keyLength = 0;
+            this.next();
+        }
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) |
+            ((bytes[offset + 1] & 0xFF) << 16) |
+            ((bytes[offset + 2] & 0xFF) << 8) |
+            (bytes[offset + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        return ((long)readInt(bytes, offset) << 32) | (readInt(bytes, offset + 4) & 0xFFFFFFFFL);
+    }
+}
@@ -51,6 +51,12 @@ final class StringType extends AbstractType<String> {
         return IOUtil.readUtf(dataInput);
     }
 
+    @Override
+    public int skip(byte[] bytes, int offset, int end) throws MarshalException {
+        int length = IOUtil.readVarInt(bytes, offset, end);
+        return offset + IOUtil.varIntSize(length) + length;
+    }
+
     @Override
     public String toString() {
         return "StringType";
@@ -0,0 +1,51 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Type for a timestamp, as a Long of microseconds since the epoch.
+ *
+ * The lexicographic form is that of {@link SortableLongType}, so that timestamps before the epoch
+ * sort first. The writable form is the same as that of {@link LongType}.
+ */
+final class TimestampType extends AbstractType<Long> {
+    public static final TimestampType INSTANCE = new TimestampType();
+
+    // singleton
+    private TimestampType() {}
+
+    @Override
+    public ByteArray marshal(Long micros) {
+        byte[] bytes = new byte[8];
+        ByteBuffer.wrap(bytes).putLong(SortableLongType.flip(micros));
+        return new ByteArray(bytes);
+    }
+
+    @Override
+    public Long demarshal(ByteArray data) {
+        return SortableLongType.flip(ByteBuffer.wrap(data.toArray()).getLong());
+    }
+
+    @Override
+    public void write(Long micros, DataOutput dataOutput) throws IOException {
+        dataOutput.writeLong(micros);
+    }
+
+    @Override
+    public Long read(DataInput dataInput) throws IOException {
+        return dataInput.readLong();
+    }
+
+    @Override
+    public int skip(byte[] bytes, int offset, int end) {
+        return offset + 8;
+    }
+
+    @Override
+    public String toString() {
+        return "TimestampType";
+    }
+}
@@ -0,0 +1,57 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Type for UUID.
+ *
+ * The 128 bits of the UUID are written big-endian as 16 raw bytes, so that the lexicographic form
+ * sorts in the same order as the string form of the UUID. Note that this is not the order of
+ * {@link UUID#compareTo}, which compares the halves as signed longs.
+ */
+final class UuidType extends AbstractType<UUID> {
+    public static final UuidType INSTANCE = new UuidType();
+
+    // singleton
+    private UuidType() {}
+
+    @Override
+    public ByteArray marshal(UUID uuid) {
+        byte[] bytes = new byte[16];
+        ByteBuffer.wrap(bytes).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+        return new ByteArray(bytes);
+    }
+
+    @Override
+    public UUID demarshal(ByteArray data) throws MarshalException {
+        if(data.size() != 16)
+            throw new MarshalException("Invalid UUID data.");
+        ByteBuffer buffer = ByteBuffer.wrap(data.backingArray(), data.beginIndex(), 16);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    @Override
+    public void write(UUID uuid, DataOutput dataOutput) throws IOException {
+        dataOutput.writeLong(uuid.getMostSignificantBits());
+        dataOutput.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    @Override
+    public UUID read(DataInput dataInput) throws IOException {
+        return new UUID(dataInput.readLong(), dataInput.readLong());
+    }
+
+    @Override
+    public int skip(byte[] bytes, int offset, int end) {
+        return offset + 16;
+    }
+
+    @Override
+    public String toString() {
+        return "UuidType";
+    }
+}
@@ -0,0 +1,152 @@
+package com.fullcontact.marshal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Type for Long, using fewer bytes for values closer to zero, whose lexicographic form sorts in
+ * numeric order.
+ *
+ * The lexicographic form is a header byte, possibly followed by the value in 7-bit groups:
+ *
+ * <ul>
+ * <li>Values from -64 to 63 are the header byte alone, 0x80 plus the value.</li>
+ * <li>Larger values are the header byte 0xC0 plus the number of groups, followed by the groups
+ * of the value, most significant first.</li>
+ * <li>Smaller values are the header byte 0x40 minus the number of groups, followed by the
+ * inverted groups of the complement of the value, most significant first.</li>
+ * </ul>
+ *
+ * The header byte orders values of different lengths, and the groups order values of the same
+ * length. A long takes at most 10 bytes. No byte is ever the separator, so entries of this type
+ * are never escaped.
+ *
+ * The writable form is the zigzag encoding of the value as a variable-length integer.
+ */
+final class VarLongType extends AbstractType<Long> {
+    public static final VarLongType INSTANCE = new VarLongType();
+
+    private static final int SMALL = 0x80;
+    private static final int POSITIVE = 0xC0;
+    private static final int NEGATIVE = 0x40;
+
+    // singleton
+    private VarLongType() {}
+
+    /**
+     * Returns the number of bytes of the lexicographic form of the value.
+     */
+    static int size(long l) {
+        if(l >= -64 && l < 64)
+            return 1;
+        return 1 + groups(l < 0 ? ~l : l);
+    }
+
+    /**
+     * Writes the lexicographic form of the value to the array at the given offset, and returns
+     * the position one past its end.
+     */
+    static int put(long l, byte[] bytes, int offset) {
+        if(l >= -64 && l < 64) {
+            bytes[offset] = (byte)(SMALL + l);
+            return offset + 1;
+        }
+
+        long magnitude = l < 0 ? ~l : l;
+        int groups = groups(magnitude);
+        bytes[offset] = (byte)(l < 0 ? NEGATIVE - groups : POSITIVE + groups);
+        // the groups of negative values are inverted
+        int invert = l < 0 ? 0x7F : 0;
+        for(int group = 0; group < groups; group++) {
+            int shift = 7 * (groups - 1 - group);
+            bytes[offset + 1 + group] = (byte)(((int)(magnitude >>> shift) & 0x7F) ^ invert);
+        }
+        return offset + 1 + groups;
+    }
+
+    /**
+     * Returns the number of bytes of the lexicographic form that starts with the given header
+     * byte. The result is not validated.
+     */
+    static int length(byte header) {
+        int h = header & 0xFF;
+        if(h >= NEGATIVE && h < POSITIVE)
+            return 1;
+        return 1 + (h < NEGATIVE ? NEGATIVE - h : h - POSITIVE);
+    }
+
+    /**
+     * Reads the value from the lexicographic form in the given range.
+     *
+     * @throws MarshalException if the range is not the lexicographic form of a value.
+     */
+    static long get(byte[] bytes, int begin, int end) throws MarshalException {
+        if(begin >= end)
+            throw new MarshalException("Missing variable-length long.");
+
+        int header = bytes[begin] & 0xFF;
+        if(header >= NEGATIVE && header < POSITIVE) {
+            if(end - begin != 1)
+                throw new MarshalException("Invalid variable-length long of " + (end - begin) + " bytes.");
+            return header - SMALL;
+        }
+
+        boolean negative = header < NEGATIVE;
+        int groups = negative ? NEGATIVE - header : header - POSITIVE;
+        if(groups < 1 || groups > 9 || end - begin != 1 + groups)
+            throw new MarshalException("Invalid variable-length long of " + (end - begin) + " bytes.");
+
+        int invert = negative ? 0x7F : 0;
+        long magnitude = 0;
+        for(int i = begin + 1; i < end; i++) {
+            int group = bytes[i] & 0xFF;
+            if(group > 0x7F)
+                throw new MarshalException("Invalid variable-length long.");
+            magnitude = (magnitude << 7) | (group ^ invert);
+        }
+        return negative ? ~magnitude : magnitude;
+    }
+
+    // the number of 7-bit groups of a non-negative value of at least 64
+    private static int groups(long magnitude) {
+        return (64 - Long.numberOfLeadingZeros(magnitude) + 6) / 7;
+    }
+
+    @Override
+    public ByteArray marshal(Long l) {
+        byte[] bytes = new byte[size(l)];
+        put(l, bytes, 0);
+        return new ByteArray(bytes);
+    }
+
+    @Override
+    public Long demarshal(ByteArray data) throws MarshalException {
+        return get(data.backingArray(), data.beginIndex(), data.endIndex());
+    }
+
+    @Override
+    public void write(Long l, DataOutput dataOutput) throws IOException {
+        IOUtil.writeVarLong(l, dataOutput);
+    }
+
+    @Override
+    public Long read(DataInput dataInput) throws IOException {
+        return IOUtil.readVarLong(dataInput);
+    }
+
+    @Override
+    public int skip(byte[] bytes, int offset, int end) throws MarshalException {
+        // the last byte of a variable-length integer has the upper bit clear
+        for(int position = offset; position < end; position++) {
+            if(bytes[position] >= 0)
+                return position + 1;
+        }
+        return end + 1;
+    }
+
+    @Override
+    public String toString() {
+        return "VarLongType";
+    }
+}
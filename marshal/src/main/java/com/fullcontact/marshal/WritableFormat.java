@@ -0,0 +1,121 @@
+package com.fullcontact.marshal;
+
+/**
+ * Utilities for working with marshals serialized in the writable format (see {@link
+ * Marshal#write}) without deserializing them.
+ *
+ * The writable format of a marshal looks like the following:
+ *  [entry count][type code][entry data][type code][entry data] ...
+ * where the entry count is a four byte, big-endian integer, and the entry data is the data
+ * written by the type for that entry. Nested marshals are written recursively using the same
+ * format.
+ */
+public final class WritableFormat {
+    // number of bytes used by the entry count
+    private static final int COUNT_SIZE = 4;
+
+    // static utility class
+    private WritableFormat() {}
+
+    /**
+     * Returns the number of entries in the serialized marshal beginning at the given offset.
+     *
+     * @throws MarshalException if the count is truncated or negative.
+     */
+    public static int readSize(byte[] bytes, int offset, int end) throws MarshalException {
+        if(offset + COUNT_SIZE > end)
+            throw new MarshalException("Truncated marshal entry count.");
+
+        int size = ((bytes[offset] & 0xFF) << 24) |
+            ((bytes[offset + 1] & 0xFF) << 16) |
+            ((bytes[offset + 2] & 0xFF) << 8) |
+            (bytes[offset + 3] & 0xFF);
+
+        if(size < 0)
+            throw new MarshalException("Invalid marshal entry count: " + size);
+
+        return size;
+    }
+
+    /**
+     * Skips the entry, including its type code, beginning at the given offset. Returns the
+     * position one past the end of the entry.
+     *
+     * @throws MarshalException if the type code is invalid or the entry is truncated.
+     */
+    public static int skipEntry(byte[] bytes, int offset, int end) throws MarshalException {
+        if(offset >= end)
+            throw new MarshalException("Truncated marshal entry.");
+
+        byte typeCode = bytes[offset];
+        EntryType type = EntryType.forCode(typeCode);
+        if(type == null || type.getType() == null)
+            throw new MarshalException("Type code " + typeCode + " is invalid.");
+
+        int position = type.getType().skip(bytes, offset + 1, end);
+        if(position < offset || position > end)
+            throw new MarshalException("Truncated marshal entry.");
+
+        return position;
+    }
+
+    /**
+     * Skips the entire serialized marshal beginning at the given offset. Returns the position one
+     * past the end of the marshal.
+     *
+     * @throws MarshalException if the marshal is invalid or truncated.
+     */
+    public static int skipMarshal(byte[] bytes, int offset, int end) throws MarshalException {
+        int size = readSize(bytes, offset, end);
+
+        int position = offset + COUNT_SIZE;
+        for(int i = 0; i < size; i++) {
+            position = skipEntry(bytes, position, end);
+        }
+
+        return position;
+    }
+
+    /**
+     * Compares two serialized marshals entry by entry, considering at most the first n entries of
+     * each.
+     *
+     * Each entry is compared as a unit using the unsigned order of its serialized bytes, and
+     * comparison stops at the first entry that differs. If all of the considered entries are
+     * equal, the marshal with fewer entries (capped at n) sorts first. The ordering is not the
+     * same as the lexicographic ordering of the marshals, but it is stable and two marshals that
+     * share the same first n entries always compare equal. In addition, all marshals that share
+     * the same first k entries are contiguous in the ordering for any n >= k, which makes the
+     * ordering suitable for grouping by prefix.
+     *
+     * @param n The maximum number of entries to compare. Use {@link Integer#MAX_VALUE} to
+     * compare all entries.
+     * @throws MarshalException if either marshal is invalid or truncated.
+     */
+    public static int compare(byte[] bytes1, int offset1, int length1,
+            byte[] bytes2, int offset2, int length2, int n) throws MarshalException {
+        int end1 = offset1 + length1;
+        int end2 = offset2 + length2;
+
+        int size1 = Math.min(readSize(bytes1, offset1, end1), n);
+        int size2 = Math.min(readSize(bytes2, offset2, end2), n);
+        int common = Math.min(size1, size2);
+
+        int position1 = offset1 + COUNT_SIZE;
+        int position2 = offset2 + COUNT_SIZE;
+        for(int i = 0; i < common; i++) {
+            int next1 = skipEntry(bytes1, position1, end1);
+            int next2 = skipEntry(bytes2, position2, end2);
+
+            // entries are self-delimiting, so one is never a proper prefix of another
+            int result = ByteArray.compare(bytes1, position1, next1, bytes2, position2, next2);
+            if(result != 0)
+                return result;
+
+            position1 = next1;
+            position2 = next2;
+        }
+
+        return size1 < size2 ? -1 : (size1 == size2 ? 0 : 1);
+    }
+}
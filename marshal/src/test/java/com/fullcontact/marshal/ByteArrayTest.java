@@ -87,6 +87,19 @@ public class ByteArrayTest {
         assertFalse(a == b);
     }
 
+    @Test
+    public void testEquals__slices() {
+        byte[] bytes = { 0, 1, 2, 3, 1, 2 };
+        ByteArray a = new ByteArray(bytes, 1, 3);
+        ByteArray b = new ByteArray(bytes, 4, 6);
+        ByteArray c = new ByteArray(new byte[] { 1, 2 });
+        assertTrue(a.equals(b));
+        assertTrue(a.equals(c));
+        assertTrue(c.equals(b));
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals(Arrays.hashCode(new byte[] { 1, 2 }), a.hashCode());
+    }
+
     @Test
     public void testEquals__differentTypes() {
         byte[] bytes = { 0, 1, 2, 3 };
@@ -0,0 +1,43 @@
+package com.fullcontact.marshal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ByteHash.
+ */
+@RunWith(JUnit4.class)
+public class ByteHashTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static long hash(String s) {
+        return ByteHash.hash64(new ByteArray(s.getBytes(UTF8)));
+    }
+
+    @Test
+    public void testKnownValues() {
+        // reference values for XXH64 with a seed of zero
+        assertEquals(0xEF46DB3751D8E999L, hash(""));
+        assertEquals(0xD24EC4F1A98C6E5BL, hash("a"));
+        assertEquals(0x44BC2CF5AD770999L, hash("abc"));
+        assertEquals(0xFBCEA83C8A378BF1L, hash("Nobody inspects the spammish repetition"));
+    }
+
+    @Test
+    public void testSlice() {
+        byte[] bytes = "xxabcxx".getBytes(UTF8);
+        assertEquals(hash("abc"), ByteHash.hash64(new ByteArray(bytes, 2, 5)));
+        assertEquals(hash("abc"), ByteHash.hash64(bytes, 2, 3, 0));
+    }
+
+    @Test
+    public void testSeed() {
+        byte[] bytes = "abc".getBytes(UTF8);
+        assertTrue(ByteHash.hash64(bytes, 0, 3, 0) != ByteHash.hash64(bytes, 0, 3, 1));
+    }
+}
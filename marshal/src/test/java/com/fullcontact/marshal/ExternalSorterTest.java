@@ -0,0 +1,142 @@
+package com.fullcontact.marshal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ExternalSorter.
+ */
+@RunWith(JUnit4.class)
+public class ExternalSorterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<ByteArray> randomRecords(int count) {
+        Random random = new Random(7);
+        List<ByteArray> records = new ArrayList<ByteArray>();
+        for(int i = 0; i < count; i++) {
+            // few distinct bytes and short lengths, to exercise ties and zero padding
+            byte[] bytes = new byte[random.nextInt(12)];
+            for(int j = 0; j < bytes.length; j++)
+                bytes[j] = (byte)(random.nextInt(3) * 0x7F);
+            records.add(new ByteArray(bytes));
+        }
+        return records;
+    }
+
+    private List<ByteArray> sort(List<ByteArray> records, long memoryLimit, int parallelism,
+            int expectedSpills) throws IOException {
+        ExternalSorter sorter = ExternalSorter.builder()
+            .memoryLimit(memoryLimit)
+            .parallelism(parallelism)
+            .tempDirectory(this.folder.getRoot())
+            .build();
+        try {
+            for(ByteArray record : records)
+                sorter.add(record);
+
+            List<ByteArray> sorted = new ArrayList<ByteArray>();
+            Iterator<ByteArray> iterator = sorter.sort();
+            while(iterator.hasNext())
+                sorted.add(iterator.next());
+
+            if(expectedSpills >= 0)
+                assertEquals(expectedSpills, sorter.getSpillCount());
+            else
+                assertTrue(sorter.getSpillCount() > 1);
+            return sorted;
+        }
+        finally {
+            sorter.close();
+            assertEquals(0, this.folder.getRoot().list().length);
+        }
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        List<ByteArray> records = randomRecords(5000);
+        List<ByteArray> expected = new ArrayList<ByteArray>(records);
+        Collections.sort(expected);
+
+        assertEquals(expected, this.sort(records, ExternalSorter.DEFAULT_MEMORY_LIMIT, 1, 0));
+    }
+
+    @Test
+    public void testLongCommonPrefix() throws IOException {
+        // ties are resolved four bytes at a time, so a deep recursion would overflow the stack
+        Random random = new Random(7);
+        List<ByteArray> records = new ArrayList<ByteArray>();
+        for(int i = 0; i < 20; i++) {
+            byte[] bytes = new byte[1 << 20];
+            Arrays.fill(bytes, (byte)0x7F);
+            bytes[bytes.length - 1 - random.nextInt(4)] = (byte)random.nextInt(256);
+            records.add(new ByteArray(bytes));
+        }
+        List<ByteArray> expected = new ArrayList<ByteArray>(records);
+        Collections.sort(expected);
+
+        assertEquals(expected, this.sort(records, ExternalSorter.DEFAULT_MEMORY_LIMIT, 1, 0));
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        List<ByteArray> records = randomRecords(5000);
+        List<ByteArray> expected = new ArrayList<ByteArray>(records);
+        Collections.sort(expected);
+
+        assertEquals(expected, this.sort(records, 4096, 1, -1));
+    }
+
+    @Test
+    public void testParallelSpill() throws IOException {
+        List<ByteArray> records = randomRecords(5000);
+        List<ByteArray> expected = new ArrayList<ByteArray>(records);
+        Collections.sort(expected);
+
+        assertEquals(expected, this.sort(records, 4096, 3, -1));
+    }
+
+    @Test
+    public void testMarshals() throws IOException {
+        List<ByteArray> records = new ArrayList<ByteArray>();
+        for(int i = 0; i < 1000; i++) {
+            Marshal marshal = Marshal.builder().addString("user").addLong((i * 7919L) % 1000 - 500).build();
+            records.add(marshal.toByteArray());
+        }
+
+        List<ByteArray> sorted = this.sort(records, 2048, 2, -1);
+        assertEquals(1000, sorted.size());
+        for(int i = 1; i < sorted.size(); i++)
+            assertTrue(Marshal.fromBytes(sorted.get(i - 1)).compareTo(Marshal.fromBytes(sorted.get(i))) < 0);
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        assertTrue(this.sort(new ArrayList<ByteArray>(), 4096, 1, 0).isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddAfterSort() throws IOException {
+        ExternalSorter sorter = ExternalSorter.builder().build();
+        try {
+            sorter.sort();
+            sorter.add(new byte[1]);
+        }
+        finally {
+            sorter.close();
+        }
+    }
+}
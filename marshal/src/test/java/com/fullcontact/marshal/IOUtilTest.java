@@ -53,6 +53,22 @@ public class IOUtilTest {
         }
     }
 
+    @Test
+    public void testVarIntPut() throws MarshalException {
+        Random r = new Random(0);
+        byte[] bytes = new byte[8];
+
+        for(int i = 0; i < 1000; i++) {
+            for(int l = 0; l < 32; l++) {
+                int n = Math.abs(r.nextInt()) % (1 << l);
+                int end = IOUtil.putVarInt(n, bytes, 2);
+                assertEquals(2 + IOUtil.varIntSize(n), end);
+                assertArrayEquals(IOUtil.encodeVarInt(n), new ByteArray(bytes, 2, end).toArray());
+                assertEquals(n, IOUtil.readVarInt(bytes, 2, end));
+            }
+        }
+    }
+
     @Test
     public void testVarInt__specialCases() {
         int[] ns = { Integer.MAX_VALUE, 0, 1 };
@@ -99,6 +115,27 @@ public class IOUtilTest {
         IOUtil.readVarInt(new DataInputStream(new ByteArrayInputStream(bytes)));
     }
 
+    @Test
+    public void testVarLong() throws IOException {
+        long[] values = { 0L, 1L, -1L, 63L, -64L, 64L, -65L, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE };
+        for(long l : values) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            IOUtil.writeVarLong(l, new DataOutputStream(baos));
+            assertEquals(l, IOUtil.readVarLong(new DataInputStream(new ByteArrayInputStream(baos.toByteArray()))));
+        }
+
+        // small values of either sign take one byte
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        IOUtil.writeVarLong(-63L, new DataOutputStream(baos));
+        assertEquals(1, baos.size());
+    }
+
+    @Test(expected=IOException.class)
+    public void testVarLong__tooLong() throws IOException {
+        byte[] bytes = { -1, -1, -1, -1, -1, -1, -1, -1, -1, 2 };
+        IOUtil.readVarLong(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
     @Test
     public void testUtf() throws IOException {
         String str = "aeiouáéíóúäëïöüabcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789" +
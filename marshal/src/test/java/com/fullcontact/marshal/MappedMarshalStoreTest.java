@@ -0,0 +1,185 @@
+package com.fullcontact.marshal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MappedMarshalStore.
+ */
+@RunWith(JUnit4.class)
+public class MappedMarshalStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Marshal key(int group, int item) {
+        return Marshal.builder().addString("group").addInteger(group).addLong(item).build();
+    }
+
+    private static Marshal value(int group, int item) {
+        return Marshal.builder().addLong(group * 1000L + item).build();
+    }
+
+    private MappedMarshalStore writeStore(int groups, int items) throws IOException {
+        File file = this.folder.newFile("store.mms");
+        MappedMarshalStore.Writer writer = new MappedMarshalStore.Writer(file, 4);
+        try {
+            for(int group = 0; group < groups; group++) {
+                for(int item = 0; item < items; item++)
+                    writer.append(key(group, item), value(group, item));
+            }
+        }
+        finally {
+            writer.close();
+        }
+        return new MappedMarshalStore(file);
+    }
+
+    private static List<Marshal> keys(Iterator<Map.Entry<Marshal, Marshal>> iterator) {
+        List<Marshal> keys = new ArrayList<Marshal>();
+        while(iterator.hasNext()) {
+            Map.Entry<Marshal, Marshal> entry = iterator.next();
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        MappedMarshalStore store = this.writeStore(10, 30);
+
+        for(int group = 0; group < 10; group++) {
+            for(int item = 0; item < 30; item++)
+                assertEquals(value(group, item), store.get(key(group, item)));
+        }
+        assertNull(store.get(key(3, 30)));
+        assertNull(store.get(key(10, 0)));
+        assertNull(store.get(Marshal.EMPTY));
+    }
+
+    @Test
+    public void testScanPrefix() throws IOException {
+        MappedMarshalStore store = this.writeStore(10, 30);
+
+        List<Marshal> keys = keys(store.scanPrefix(key(4, 0).prefixUnterminated(2)));
+        assertEquals(30, keys.size());
+        for(int item = 0; item < 30; item++)
+            assertEquals(key(4, item), keys.get(item));
+
+        assertEquals(300, keys(store.scanPrefix(new ByteArray(new byte[0]))).size());
+        assertTrue(keys(store.scanPrefix(key(10, 0).prefixUnterminated(2))).isEmpty());
+    }
+
+    @Test
+    public void testScanRange() throws IOException {
+        MappedMarshalStore store = this.writeStore(10, 30);
+
+        List<Marshal> keys = keys(store.scanRange(key(2, 25).toByteArray(), key(3, 5).toByteArray()));
+        assertEquals(10, keys.size());
+        assertEquals(key(2, 25), keys.get(0));
+        assertEquals(key(3, 4), keys.get(9));
+
+        assertTrue(keys(store.scanRange(key(3, 5).toByteArray(), key(3, 5).toByteArray())).isEmpty());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        MappedMarshalStore store = this.writeStore(0, 0);
+
+        assertNull(store.get(key(0, 0)));
+        assertFalse(store.scanPrefix(new ByteArray(new byte[0])).hasNext());
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        final MappedMarshalStore store = this.writeStore(10, 30);
+        final AtomicInteger failures = new AtomicInteger();
+
+        Thread[] threads = new Thread[8];
+        for(int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for(int i = 0; i < 3000; i++) {
+                            int group = (i + offset) % 10;
+                            int item = (i * 7 + offset) % 30;
+                            if(!value(group, item).equals(store.get(key(group, item))))
+                                failures.incrementAndGet();
+                        }
+                    }
+                    catch(MarshalException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for(Thread thread : threads)
+            thread.join();
+
+        assertEquals(0, failures.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutOfOrder() throws IOException {
+        MappedMarshalStore.Writer writer = new MappedMarshalStore.Writer(this.folder.newFile("store.mms"));
+        try {
+            writer.append(key(1, 0), Marshal.EMPTY);
+            writer.append(key(1, 0), Marshal.EMPTY);
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testCorruptKeyLength() throws IOException {
+        File file = this.folder.newFile("store.mms");
+        MappedMarshalStore.Writer writer = new MappedMarshalStore.Writer(file);
+        try {
+            writer.append(key(0, 0), value(0, 0));
+            writer.append(key(0, 1), value(0, 1));
+        }
+        finally {
+            writer.close();
+        }
+
+        // the length of the first key now extends past the records, into the index and footer
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.write(0x7F);
+        }
+        finally {
+            randomAccessFile.close();
+        }
+
+        MappedMarshalStore store = new MappedMarshalStore(file);
+        try {
+            store.get(key(0, 1));
+            fail();
+        }
+        catch(MarshalException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testInvalidFile() throws IOException {
+        new MappedMarshalStore(this.folder.newFile("empty.mms"));
+    }
+}
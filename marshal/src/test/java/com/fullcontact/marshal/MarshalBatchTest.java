@@ -0,0 +1,227 @@
+package com.fullcontact.marshal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MarshalBatch.
+ */
+@RunWith(JUnit4.class)
+public class MarshalBatchTest {
+    private static final EntryType[] TYPES = {
+        EntryType.STRING, EntryType.LONG, EntryType.DOUBLE, EntryType.INTEGER, EntryType.BYTE,
+        EntryType.BYTE_ARRAY, EntryType.MARSHAL
+    };
+
+    // values chosen so that some of the encodings contain separator bytes
+    private static Marshal row(int i) {
+        return Marshal.builder()
+            .addString(i % 5 == 0 ? "" : "s" + i + "\u00fe")
+            .addLong(0xFEFEFEFEL * i)
+            .addDouble(i / 3.0)
+            .addInteger(-i)
+            .addByte((byte)(0xFA + i % 6))
+            .addByteArray(new ByteArray(new byte[] { (byte)0xFE, (byte)i }))
+            .addMarshal(Marshal.builder().addLong((long)i).build())
+            .build();
+    }
+
+    private static List<ByteArray> rows(int count) {
+        List<ByteArray> rows = new ArrayList<ByteArray>();
+        for(int i = 0; i < count; i++)
+            rows.add(row(i).toByteArray());
+        return rows;
+    }
+
+    @Test
+    public void testColumns() throws MarshalException {
+        MarshalBatch batch = new MarshalBatch(16, TYPES);
+        batch.load(rows(100));
+        assertEquals(100, batch.size());
+
+        long[] longs = batch.getLongs(1);
+        double[] doubles = batch.getDoubles(2);
+        int[] integers = batch.getIntegers(3);
+        byte[] bytes = batch.getBytes(4);
+        for(int i = 0; i < 100; i++) {
+            Marshal row = row(i);
+            assertEquals(row.getStringAt(0), batch.getString(0, i));
+            assertEquals(row.getLongAt(1), longs[i]);
+            assertEquals(row.getDoubleAt(2), doubles[i], 0.0);
+            assertEquals(row.getIntegerAt(3), integers[i]);
+            assertEquals(row.getByteAt(4), bytes[i]);
+            assertEquals(row.getByteArrayAt(5), batch.getByteArray(5, i));
+            assertEquals(row.getMarshalAt(6), Marshal.fromBytes(batch.getByteArray(6, i)));
+        }
+
+        // the offsets delimit the data of each row
+        int[] offsets = batch.getOffsets(5);
+        assertEquals(0, offsets[0]);
+        assertEquals(200, offsets[100]);
+        assertEquals((byte)0xFE, batch.getData(5)[offsets[7]]);
+        assertEquals(0, batch.getNullCount(1));
+    }
+
+    @Test
+    public void testNulls() throws MarshalException {
+        List<ByteArray> rows = Arrays.asList(
+            Marshal.builder().addString("a").addLong(1L).build().toByteArray(),
+            Marshal.builder().addString("b").build().toByteArray(),
+            Marshal.builder().addString("c").addInteger(3).build().toByteArray(),
+            Marshal.EMPTY.toByteArray(),
+            Marshal.builder().addString("e").addLong(5L).addLong(6L).build().toByteArray(),
+            Marshal.builder().addString("f").addNull().build().toByteArray());
+
+        MarshalBatch batch = new MarshalBatch(8, EntryType.STRING, EntryType.LONG);
+        batch.load(rows);
+
+        assertEquals(6, batch.size());
+        assertEquals(1, batch.getNullCount(0));
+        assertEquals(4, batch.getNullCount(1));
+        assertEquals(0x2EL, batch.getNulls(1)[0]);
+        assertNull(batch.getString(0, 3));
+        assertTrue(batch.isNull(1, 2));
+        assertEquals(0L, batch.getLongs(1)[2]);
+        assertEquals(5L, batch.getLongs(1)[4]);
+
+        int[] offsets = batch.getOffsets(0);
+        assertEquals(offsets[3], offsets[4]);
+    }
+
+    @Test
+    public void testBatches() throws MarshalException {
+        Iterator<ByteArray> rows = rows(10).iterator();
+        MarshalBatch batch = new MarshalBatch(4, TYPES);
+
+        List<Integer> sizes = new ArrayList<Integer>();
+        long total = 0;
+        int count;
+        while((count = batch.load(rows)) > 0) {
+            sizes.add(count);
+            long[] longs = batch.getLongs(1);
+            for(int i = 0; i < batch.size(); i++)
+                total += longs[i] / 0xFEFEFEFEL;
+        }
+
+        assertEquals(Arrays.asList(4, 4, 2), sizes);
+        assertEquals(45, total);
+        assertEquals(0, batch.size());
+    }
+
+    @Test
+    public void testSortable() throws MarshalException {
+        List<ByteArray> rows = new ArrayList<ByteArray>();
+        for(int i = -50; i < 50; i++) {
+            rows.add(Marshal.builder()
+                .addSortableInteger(i)
+                .addSortableLong(0xFEFEFEFEL * i)
+                .addSortableDouble(i / 3.0)
+                .build().toByteArray());
+        }
+
+        MarshalBatch batch = new MarshalBatch(100, EntryType.SORTABLE_INTEGER, EntryType.SORTABLE_LONG,
+                EntryType.SORTABLE_DOUBLE);
+        batch.load(rows);
+
+        for(int row = 0; row < 100; row++) {
+            int i = row - 50;
+            assertEquals(i, batch.getIntegers(0)[row]);
+            assertEquals(0xFEFEFEFEL * i, batch.getLongs(1)[row]);
+            assertEquals(i / 3.0, batch.getDoubles(2)[row], 0.0);
+        }
+    }
+
+    @Test
+    public void testDescending() throws MarshalException {
+        List<ByteArray> rows = new ArrayList<ByteArray>();
+        for(int i = -50; i < 50; i++) {
+            rows.add(Marshal.builder()
+                .addDescendingByte((byte)i)
+                .addDescendingSortableLong(0xFEFEFEFEL * i)
+                .addDescendingDouble(i / 3.0)
+                .build().toByteArray());
+        }
+
+        MarshalBatch batch = new MarshalBatch(100, EntryType.DESCENDING_BYTE, EntryType.DESCENDING_SORTABLE_LONG,
+                EntryType.DESCENDING_DOUBLE);
+        batch.load(rows);
+
+        for(int row = 0; row < 100; row++) {
+            int i = row - 50;
+            assertEquals((byte)i, batch.getBytes(0)[row]);
+            assertEquals(0xFEFEFEFEL * i, batch.getLongs(1)[row]);
+            assertEquals(i / 3.0, batch.getDoubles(2)[row], 0.0);
+        }
+    }
+
+    @Test
+    public void testVarLong() throws MarshalException {
+        List<ByteArray> rows = new ArrayList<ByteArray>();
+        for(int i = -50; i < 50; i++)
+            rows.add(Marshal.builder().addVarLong(0xFEFEFEFEL * i).build().toByteArray());
+        rows.add(Marshal.builder().addLong(1L).build().toByteArray());
+
+        MarshalBatch batch = new MarshalBatch(128, EntryType.VAR_LONG);
+        batch.load(rows);
+
+        for(int row = 0; row < 100; row++)
+            assertEquals(0xFEFEFEFEL * (row - 50), batch.getLongs(0)[row]);
+        assertTrue(batch.isNull(0, 100));
+        assertEquals(0L, batch.getLongs(0)[100]);
+    }
+
+    @Test
+    public void testNewTypes() throws MarshalException {
+        List<ByteArray> rows = new ArrayList<ByteArray>();
+        for(int i = -50; i < 50; i++) {
+            rows.add(Marshal.builder()
+                .addBoolean(i % 3 == 0)
+                .addDescendingShort((short)(0xFE * i))
+                .addFloat(i / 3.0f)
+                .addTimestamp(0xFEFEFEFEL * i)
+                .addUuid(new UUID(i, i))
+                .build().toByteArray());
+        }
+
+        MarshalBatch batch = new MarshalBatch(100, EntryType.BOOLEAN, EntryType.DESCENDING_SHORT, EntryType.FLOAT,
+                EntryType.TIMESTAMP, EntryType.UUID);
+        batch.load(rows);
+
+        for(int row = 0; row < 100; row++) {
+            int i = row - 50;
+            assertEquals(i % 3 == 0, batch.getBooleans(0)[row]);
+            assertEquals((short)(0xFE * i), batch.getShorts(1)[row]);
+            assertEquals(i / 3.0f, batch.getFloats(2)[row], 0.0f);
+            assertEquals(0xFEFEFEFEL * i, batch.getLongs(3)[row]);
+            assertEquals(16, batch.getOffsets(4)[row + 1] - batch.getOffsets(4)[row]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDescending__variableLength() {
+        new MarshalBatch(4, EntryType.DESCENDING_STRING);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongType() throws MarshalException {
+        MarshalBatch batch = new MarshalBatch(4, TYPES);
+        batch.load(rows(4));
+        batch.getLongs(2);
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testInvalid() throws MarshalException {
+        // a long of the wrong length
+        byte[] bytes = { EntryType.LONG.getTypeCode(), 1, 2, 3, Marshal.SEPARATOR };
+        new MarshalBatch(4, EntryType.LONG).load(Arrays.asList(new ByteArray(bytes)));
+    }
+}
@@ -0,0 +1,87 @@
+package com.fullcontact.marshal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MarshalBloomFilter.
+ */
+@RunWith(JUnit4.class)
+public class MarshalBloomFilterTest {
+    private static Marshal key(int a, int b, int c) {
+        return Marshal.builder().addString("k" + a).addInteger(b).addLong(c).addString("tail").build();
+    }
+
+    private static MarshalBloomFilter filter() throws MarshalException {
+        MarshalBloomFilter filter = MarshalBloomFilter.create(1000, 0.01, 1, 2, 3);
+        for(int a = 0; a < 10; a++) {
+            for(int b = 0; b < 10; b++) {
+                for(int c = 0; c < 10; c++)
+                    filter.put(key(a, b, c));
+            }
+        }
+        return filter;
+    }
+
+    @Test
+    public void testNoFalseNegatives() throws MarshalException {
+        MarshalBloomFilter filter = filter();
+        for(int a = 0; a < 10; a++) {
+            for(int b = 0; b < 10; b++) {
+                for(int c = 0; c < 10; c++) {
+                    Marshal key = key(a, b, c);
+                    assertTrue(filter.mightContain(key));
+                    assertTrue(filter.mightContainPrefix(key.prefixTerminated(1)));
+                    assertTrue(filter.mightContainPrefix(key.prefixTerminated(2)));
+                    assertTrue(filter.mightContainPrefix(key.prefixTerminated(3)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() throws MarshalException {
+        MarshalBloomFilter filter = filter();
+
+        int positives = 0;
+        for(int i = 0; i < 10000; i++) {
+            Marshal absent = key(100 + i, 0, 0);
+            if(filter.mightContain(absent))
+                positives++;
+            if(filter.mightContainPrefix(absent.prefixTerminated(1)))
+                positives++;
+        }
+        assertTrue("False positives: " + positives, positives < 20000 * 0.03);
+    }
+
+    @Test
+    public void testSerialization() throws MarshalException {
+        MarshalBloomFilter filter = filter();
+        MarshalBloomFilter copy = MarshalBloomFilter.fromBytes(filter.toBytes());
+
+        assertArrayEquals(new int[] { 1, 2, 3 }, copy.getPrefixLengths());
+        assertEquals(filter.getHashCount(), copy.getHashCount());
+        assertEquals(filter.getBitCount(), copy.getBitCount());
+        for(int i = 0; i < 1000; i++) {
+            Marshal key = key(i % 20, i % 7, i);
+            assertEquals(filter.mightContain(key), copy.mightContain(key));
+        }
+
+        // the serialized form is little more than the bits
+        assertTrue(filter.toBytes().length < filter.getBitCount() / 8 + 16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnconfiguredPrefix() throws MarshalException {
+        MarshalBloomFilter filter = MarshalBloomFilter.create(10, 0.01, 1, 3);
+        filter.mightContainPrefix(key(0, 0, 0).prefixTerminated(2));
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testInvalidBytes() throws MarshalException {
+        MarshalBloomFilter.fromBytes(new byte[] { 1, 2 });
+    }
+}
@@ -0,0 +1,158 @@
+package com.fullcontact.marshal;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MarshalCodeGenerator and the generated records.
+ */
+@RunWith(JUnit4.class)
+public class MarshalCodeGeneratorTest {
+    private static final MarshalSchema SCHEMA = MarshalSchema.builder()
+        .add(EntryType.STRING)
+        .add(EntryType.LONG)
+        .add(EntryType.INTEGER)
+        .add(EntryType.DOUBLE)
+        .add(EntryType.BYTE)
+        .add(EntryType.BYTE_ARRAY)
+        .addMarshal(MarshalSchema.of(EntryType.STRING))
+        .add(EntryType.LONG)
+        .build();
+
+    private static final String[] NAMES = { "name", "id", "count", "score", "flag", "data", "nested", "timestamp" };
+
+    private Class<? extends MarshalRecord> recordClass;
+
+    @Before
+    public void setUp() {
+        // compiling requires a JDK
+        Assume.assumeNotNull(ToolProvider.getSystemJavaCompiler());
+        this.recordClass = MarshalCodeGenerator.compile(SCHEMA, "com.example.TestRecord", NAMES);
+    }
+
+    private static Marshal marshal(Random random) {
+        byte[] data = new byte[random.nextInt(4)];
+        random.nextBytes(data);
+        return Marshal.builder()
+            .addString(random.nextInt(4) == 0 ? "" : "n\u00fe" + random.nextInt())
+            .addLong(random.nextInt(4) == 0 ? 0xFEFEFEFEFEFEFEFEL : random.nextLong())
+            .addInteger(random.nextInt())
+            .addDouble(random.nextGaussian())
+            .addByte((byte)(0xFC + random.nextInt(4)))
+            .addByteArray(new ByteArray(data))
+            .addMarshal(random.nextInt(4) == 0 ? Marshal.EMPTY : Marshal.builder().addString("x").build())
+            .addLong(random.nextLong())
+            .build();
+    }
+
+    private MarshalRecord newRecord() throws Exception {
+        return this.recordClass.newInstance();
+    }
+
+    @Test
+    public void testLexicographicFormat() throws Exception {
+        Random random = new Random(0);
+        MarshalRecord record = this.newRecord();
+        MarshalRecord copy = this.newRecord();
+        for(int i = 0; i < 1000; i++) {
+            Marshal marshal = marshal(random);
+            record.readMarshal(marshal);
+            assertEquals(marshal, record.toMarshal());
+
+            byte[] bytes = record.toBytes();
+            assertArrayEquals(marshal.toBytes(), bytes);
+
+            copy.readBytes(bytes, 0, bytes.length);
+            assertEquals(record, copy);
+        }
+    }
+
+    @Test
+    public void testWritableFormat() throws Exception {
+        Random random = new Random(1);
+        MarshalRecord record = this.newRecord();
+        for(int i = 0; i < 1000; i++) {
+            Marshal marshal = marshal(random);
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            marshal.write(new DataOutputStream(expected));
+
+            record.readFields(new DataInputStream(new ByteArrayInputStream(expected.toByteArray())));
+            assertEquals(marshal, record.toMarshal());
+
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            record.write(new DataOutputStream(actual));
+            assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        }
+    }
+
+    @Test
+    public void testFields() throws Exception {
+        MarshalRecord record = this.newRecord();
+        assertEquals(SCHEMA, record.getSchema());
+
+        record.setLong(1, 42L);
+        record.setLong(7, 7L);
+        record.setString(0, "a");
+        assertEquals(42L, record.getLong(1));
+        assertEquals(7L, record.getLong(7));
+        assertEquals(42L, this.recordClass.getField("id").getLong(record));
+        assertEquals("a", record.toMarshal().getStringAt(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFields__wrongType() throws Exception {
+        this.newRecord().getLong(0);
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testReadBytes__wrongSchema() throws Exception {
+        this.newRecord().readMarshal(Marshal.builder().addString("a").addInteger(1).build());
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testReadBytes__extraEntries() throws Exception {
+        this.newRecord().readMarshal(Marshal.builder(marshal(new Random(2))).addLong(1L).build());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadFields__wrongSize() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Marshal.builder().addString("a").build().write(new DataOutputStream(bytes));
+        this.newRecord().readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void testEmptySchema() throws Exception {
+        MarshalRecord record = MarshalCodeGenerator.compile(MarshalSchema.of(), "EmptyRecord").newInstance();
+        assertArrayEquals(Marshal.EMPTY.toBytes(), record.toBytes());
+        record.readMarshal(Marshal.EMPTY);
+        assertEquals(Marshal.EMPTY, record.toMarshal());
+    }
+
+    @Test
+    public void testGenerate() {
+        String source = MarshalCodeGenerator.generate(MarshalSchema.of(EntryType.LONG), "a.b.Key", "id");
+        assertTrue(source.startsWith("package a.b;"));
+        assertTrue(source.contains("public final class Key extends MarshalRecord {"));
+        assertTrue(source.contains("public long id;"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGenerate__invalidName() {
+        MarshalCodeGenerator.generate(MarshalSchema.of(EntryType.LONG), "Key", "not valid");
+    }
+}
@@ -0,0 +1,87 @@
+package com.fullcontact.marshal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MarshalWriter and MarshalCursor.
+ */
+@RunWith(JUnit4.class)
+public class MarshalCursorTest {
+    private static final MarshalSchema NESTED = MarshalSchema.of(EntryType.LONG);
+    private static final MarshalSchema SCHEMA = MarshalSchema.builder()
+        .add(EntryType.STRING)
+        .add(EntryType.INTEGER)
+        .addMarshal(NESTED)
+        .add(EntryType.DOUBLE)
+        .build();
+
+    @Test
+    public void testWriteRead() throws MarshalException {
+        MarshalWriter writer = new MarshalWriter(SCHEMA);
+        MarshalCursor cursor = new MarshalCursor(SCHEMA);
+        MarshalCursor nested = new MarshalCursor(NESTED);
+
+        for(int i = 0; i < 100; i++) {
+            // fields may be set in any order
+            byte[] bytes = writer.reset()
+                .setDouble(3, i / 4.0)
+                .setInteger(1, -i)
+                .setString(0, "row" + i)
+                .setMarshal(2, new MarshalWriter(NESTED).setLong(0, i * 1000L))
+                .toBytes();
+            assertEquals(bytes.length, writer.getSerializedSize());
+
+            cursor.wrap(new ByteArray(bytes));
+            assertEquals("row" + i, cursor.getString(0));
+            assertEquals(-i, cursor.getInteger(1));
+            assertEquals(i / 4.0, cursor.getDouble(3), 0.0);
+            assertEquals(i * 1000L, nested.wrap(cursor.getEncodedMarshal(2)).getLong(0));
+
+            assertEquals(Marshal.builder()
+                    .addString("row" + i)
+                    .addInteger(-i)
+                    .addMarshal(Marshal.builder().addLong(i * 1000L).build())
+                    .addDouble(i / 4.0)
+                    .build(),
+                cursor.toMarshal());
+        }
+    }
+
+    @Test
+    public void testWriteTo() throws MarshalException {
+        MarshalWriter writer = new MarshalWriter(NESTED).setLong(0, 42L);
+        byte[] bytes = new byte[12];
+        assertEquals(10, writer.writeTo(bytes, 2));
+
+        assertEquals(42L, new MarshalCursor(NESTED).wrap(bytes, 2, 10).getLong(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnsetField() {
+        new MarshalWriter(SCHEMA).setString(0, "a").setInteger(1, 1).setDouble(3, 0.0).toBytes();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongType() {
+        new MarshalWriter(SCHEMA).setLong(1, 1L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongSchema() {
+        new MarshalWriter(SCHEMA).setMarshal(2, new MarshalWriter(MarshalSchema.of(EntryType.INTEGER)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNotWrapped() {
+        new MarshalCursor(SCHEMA).getInteger(1);
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testTrailingBytes() throws MarshalException {
+        new MarshalCursor(NESTED).wrap(new ByteArray(new byte[9]));
+    }
+}
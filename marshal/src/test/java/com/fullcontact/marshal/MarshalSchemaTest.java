@@ -0,0 +1,270 @@
+package com.fullcontact.marshal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MarshalSchema.
+ */
+@RunWith(JUnit4.class)
+public class MarshalSchemaTest {
+    private static final MarshalSchema NESTED = MarshalSchema.of(EntryType.INTEGER, EntryType.STRING);
+    private static final MarshalSchema SCHEMA = MarshalSchema.builder()
+        .add(EntryType.STRING)
+        .add(EntryType.LONG)
+        .add(EntryType.BYTE_ARRAY)
+        .add(EntryType.DOUBLE)
+        .addMarshal(NESTED)
+        .add(EntryType.BYTE)
+        .build();
+
+    private static final Marshal MARSHAL = Marshal.builder()
+        .addString("key")
+        .addLong(-5L)
+        .addByteArray(new ByteArray(new byte[] { (byte)0xFE, 0, 1 }))
+        .addDouble(2.5)
+        .addMarshal(Marshal.builder().addInteger(7).addString("").build())
+        .addByte((byte)3)
+        .build();
+
+    @Test
+    public void testLayout() {
+        assertEquals(6, SCHEMA.size());
+        assertEquals(17, SCHEMA.getFixedWidth());
+        assertTrue(SCHEMA.isFixedWidth(1));
+        assertFalse(SCHEMA.isFixedWidth(2));
+        assertEquals(NESTED, SCHEMA.getSchemaAt(4));
+        assertNull(SCHEMA.getSchemaAt(0));
+        assertEquals("(STRING, LONG, BYTE_ARRAY, DOUBLE, (INTEGER, STRING), BYTE)", SCHEMA.toString());
+    }
+
+    @Test
+    public void testRoundTrip() throws MarshalException {
+        assertTrue(SCHEMA.matches(MARSHAL));
+        byte[] bytes = SCHEMA.encode(MARSHAL);
+        assertEquals(MARSHAL, SCHEMA.decode(bytes));
+
+        // no type codes and no separators
+        assertTrue(bytes.length < MARSHAL.toBytes().length);
+        // fixed fields first, then length-prefixed variable fields
+        assertEquals(17 + 4 + 4 + 6, bytes.length);
+    }
+
+    @Test
+    public void testEmpty() throws MarshalException {
+        MarshalSchema schema = MarshalSchema.of();
+        assertEquals(0, schema.encode(Marshal.EMPTY).length);
+        assertEquals(Marshal.EMPTY, schema.decode(new byte[0]));
+    }
+
+    @Test
+    public void testMatches() throws MarshalException {
+        assertFalse(SCHEMA.matches(MARSHAL.to(5)));
+        assertFalse(NESTED.matches(Marshal.builder().addInteger(1).addLong(2L).build()));
+        assertFalse(SCHEMA.matches(Marshal.builder(MARSHAL.to(4))
+                    .addMarshal(Marshal.builder().addInteger(1).build())
+                    .addByte((byte)3)
+                    .build()));
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testEncode__wrongType() throws MarshalException {
+        NESTED.encode(Marshal.builder().addLong(1L).addString("").build());
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testDecode__truncated() throws MarshalException {
+        byte[] bytes = SCHEMA.encode(MARSHAL);
+        SCHEMA.decode(new ByteArray(bytes, 0, bytes.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilder__marshalWithoutSchema() {
+        MarshalSchema.of(EntryType.MARSHAL);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilder__sortable() {
+        MarshalSchema schema = MarshalSchema.of(EntryType.SORTABLE_LONG);
+        assertFalse(schema.hasSchemaFormat());
+        new MarshalWriter(schema);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilder__null() {
+        MarshalSchema.of(EntryType.NULL);
+    }
+
+    @Test
+    public void testLexicographic() throws MarshalException {
+        byte[] bytes = SCHEMA.encodeLexicographic(MARSHAL);
+        assertEquals(MARSHAL, SCHEMA.decodeLexicographic(bytes));
+        assertTrue(SCHEMA.hasSchemaFormat());
+
+        // no type codes, and only the strings and the byte array are terminated
+        assertTrue(bytes.length < MARSHAL.toBytes().length);
+    }
+
+    @Test
+    public void testLexicographic__allTypes() throws MarshalException {
+        MarshalSchema schema = MarshalSchema.builder()
+            .add(EntryType.SORTABLE_INTEGER)
+            .add(EntryType.VAR_LONG)
+            .add(EntryType.DESCENDING_VAR_LONG)
+            .add(EntryType.BOOLEAN)
+            .add(EntryType.SHORT)
+            .add(EntryType.FLOAT)
+            .add(EntryType.UUID)
+            .add(EntryType.TIMESTAMP)
+            .add(EntryType.BIG_INTEGER)
+            .add(EntryType.DESCENDING_BIG_DECIMAL)
+            .add(EntryType.DESCENDING_STRING)
+            .add(EntryType.DESCENDING_BYTE_ARRAY)
+            .add(EntryType.DESCENDING_MARSHAL)
+            .add(EntryType.BIG_DECIMAL)
+            .build();
+        Marshal marshal = Marshal.builder()
+            .addSortableInteger(-1)
+            .addVarLong(1L << 40)
+            .addDescendingVarLong(-100L)
+            .addBoolean(true)
+            .addShort((short)-2)
+            .addFloat(1.5f)
+            .addUuid(java.util.UUID.fromString("fefefefe-fefe-fefe-fefe-fefefefefefe"))
+            .addTimestamp(1500000000000000L)
+            .addBigInteger(BigInteger.TEN.pow(30).negate())
+            .addDescendingBigDecimal(new BigDecimal("-0.25"))
+            .addDescendingString("\u0001a")
+            .addDescendingByteArray(new ByteArray(new byte[] { (byte)0xFE, (byte)0xFF, 0x00 }))
+            .addDescendingMarshal(Marshal.builder().addString("nested").build())
+            .addBigDecimal(BigDecimal.ZERO)
+            .build();
+
+        assertFalse(schema.hasSchemaFormat());
+        byte[] bytes = schema.encodeLexicographic(marshal);
+        assertEquals(marshal, schema.decodeLexicographic(bytes));
+        assertTrue(bytes.length < marshal.toBytes().length);
+    }
+
+    @Test
+    public void testLexicographic__order() throws MarshalException {
+        MarshalSchema schema = MarshalSchema.of(EntryType.BYTE_ARRAY, EntryType.BYTE, EntryType.STRING,
+                EntryType.DESCENDING_BYTE_ARRAY, EntryType.DESCENDING_STRING, EntryType.SORTABLE_LONG);
+        byte[] alphabet = { 0x00, 0x01, 0x7F, (byte)0xFE, (byte)0xFF };
+        Random random = new Random(11);
+
+        // short values from a small alphabet, so that many are prefixes of others
+        List<Marshal> marshals = new ArrayList<Marshal>();
+        for(int i = 0; i < 500; i++) {
+            marshals.add(Marshal.builder()
+                .addByteArray(randomBytes(random, alphabet))
+                .addByte(alphabet[random.nextInt(alphabet.length)])
+                .addString(randomString(random))
+                .addDescendingByteArray(randomBytes(random, alphabet))
+                .addDescendingString(randomString(random))
+                .addSortableLong(random.nextInt(3) - 1)
+                .build());
+        }
+
+        for(Marshal m1 : marshals) {
+            for(Marshal m2 : marshals.subList(0, 50)) {
+                int expected = m1.getByteArrayAt(0).compareTo(m2.getByteArrayAt(0));
+                if(expected == 0)
+                    expected = (m1.getByteAt(1) & 0xFF) - (m2.getByteAt(1) & 0xFF);
+                if(expected == 0)
+                    expected = m1.getStringAt(2).compareTo(m2.getStringAt(2));
+                if(expected == 0)
+                    expected = -m1.getByteArrayAt(3).compareTo(m2.getByteArrayAt(3));
+                if(expected == 0)
+                    expected = -m1.getStringAt(4).compareTo(m2.getStringAt(4));
+                if(expected == 0)
+                    expected = Long.valueOf(m1.getLongAt(5)).compareTo(m2.getLongAt(5));
+
+                int actual = new ByteArray(schema.encodeLexicographic(m1)).compareTo(
+                        new ByteArray(schema.encodeLexicographic(m2)));
+                assertEquals(m1 + " " + m2, Integer.signum(expected), Integer.signum(actual));
+            }
+        }
+    }
+
+    @Test
+    public void testLexicographic__prefixOrder() throws MarshalException {
+        MarshalSchema ascending = MarshalSchema.of(EntryType.STRING, EntryType.BYTE_ARRAY);
+        MarshalSchema descending = MarshalSchema.of(EntryType.DESCENDING_STRING, EntryType.DESCENDING_BYTE_ARRAY);
+        ByteArray a = new ByteArray(new byte[] { 'a' });
+        ByteArray ab = new ByteArray(new byte[] { 'a', 'b' });
+
+        byte[] ascendingA = ascending.encodeLexicographic(Marshal.builder().addString("a").addByteArray(ab).build());
+        byte[] ascendingAb = ascending.encodeLexicographic(Marshal.builder().addString("ab").addByteArray(a).build());
+        assertTrue(new ByteArray(ascendingA).compareTo(new ByteArray(ascendingAb)) < 0);
+        ascendingA = ascending.encodeLexicographic(Marshal.builder().addString("a").addByteArray(a).build());
+        ascendingAb = ascending.encodeLexicographic(Marshal.builder().addString("a").addByteArray(ab).build());
+        assertTrue(new ByteArray(ascendingA).compareTo(new ByteArray(ascendingAb)) < 0);
+
+        byte[] descendingA = descending.encodeLexicographic(
+                Marshal.builder().addDescendingString("a").addDescendingByteArray(a).build());
+        byte[] descendingAb = descending.encodeLexicographic(
+                Marshal.builder().addDescendingString("ab").addDescendingByteArray(a).build());
+        assertTrue(new ByteArray(descendingA).compareTo(new ByteArray(descendingAb)) > 0);
+        descendingAb = descending.encodeLexicographic(
+                Marshal.builder().addDescendingString("a").addDescendingByteArray(ab).build());
+        assertTrue(new ByteArray(descendingA).compareTo(new ByteArray(descendingAb)) > 0);
+        assertEquals(Marshal.builder().addDescendingString("a").addDescendingByteArray(ab).build(),
+                descending.decodeLexicographic(descendingAb));
+    }
+
+    private static ByteArray randomBytes(Random random, byte[] alphabet) {
+        byte[] bytes = new byte[1 + random.nextInt(3)];
+        for(int i = 0; i < bytes.length; i++)
+            bytes[i] = alphabet[random.nextInt(alphabet.length)];
+        return new ByteArray(bytes);
+    }
+
+    private static String randomString(Random random) {
+        // code points whose UTF-8 order matches their UTF-16 order
+        String alphabet = "\u0000ab\u00ff";
+        StringBuilder s = new StringBuilder("a");
+        for(int i = random.nextInt(3); i > 0; i--)
+            s.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return s.toString();
+    }
+
+    @Test
+    public void testLexicographic__prefix() throws MarshalException {
+        byte[] prefix = SCHEMA.encodeLexicographicPrefix(MARSHAL.to(2));
+        byte[] bytes = SCHEMA.encodeLexicographic(MARSHAL);
+        assertArrayEquals(prefix, Arrays.copyOf(bytes, prefix.length));
+    }
+
+    @Test
+    public void testLexicographic__invalid() throws MarshalException {
+        byte[] bytes = SCHEMA.encodeLexicographic(MARSHAL);
+        byte[][] invalid = { Arrays.copyOf(bytes, bytes.length - 1), Arrays.copyOf(bytes, bytes.length + 1), { 0x00, 0x02 } };
+        for(byte[] data : invalid) {
+            try {
+                SCHEMA.decodeLexicographic(data);
+                fail(Arrays.toString(data));
+            }
+            catch(MarshalException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testEquals() {
+        assertEquals(MarshalSchema.of(EntryType.INTEGER, EntryType.STRING), NESTED);
+        assertEquals(NESTED.hashCode(), MarshalSchema.of(EntryType.INTEGER, EntryType.STRING).hashCode());
+        assertFalse(MarshalSchema.of(EntryType.STRING, EntryType.INTEGER).equals(NESTED));
+    }
+}
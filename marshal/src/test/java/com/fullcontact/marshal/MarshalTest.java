@@ -4,7 +4,15 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -1077,6 +1085,548 @@ public class MarshalTest {
         assertEquals(expected, output);
     }
 
+    @Test
+    public void testSortable__integer() throws Exception {
+        int[] values = { Integer.MIN_VALUE, -65536, -254, -2, -1, 0, 1, 254, 65536, Integer.MAX_VALUE };
+        for(int i = 0; i < values.length; i++) {
+            Marshal m = Marshal.fromBytes(Marshal.builder().addSortableInteger(values[i]).build().toBytes());
+            assertEquals(EntryType.SORTABLE_INTEGER, m.getTypeAt(0));
+            assertEquals(values[i], m.getIntegerAt(0));
+
+            for(int j = 0; j < values.length; j++) {
+                Marshal other = Marshal.builder().addSortableInteger(values[j]).build();
+                assertEquals(Integer.signum(Integer.valueOf(values[i]).compareTo(values[j])),
+                        Integer.signum(m.compareTo(other)));
+            }
+        }
+    }
+
+    @Test
+    public void testSortable__long() throws Exception {
+        long[] values = { Long.MIN_VALUE, -0xFEFEFEFEL, -2L, -1L, 0L, 1L, 0xFEFEFEFEL, Long.MAX_VALUE };
+        for(int i = 0; i < values.length; i++) {
+            Marshal m = Marshal.fromBytes(Marshal.builder().addSortableLong(values[i]).build().toBytes());
+            assertEquals(EntryType.SORTABLE_LONG, m.getTypeAt(0));
+            assertEquals(values[i], m.getLongAt(0));
+
+            for(int j = 0; j < values.length; j++) {
+                Marshal other = Marshal.builder().addSortableLong(values[j]).build();
+                assertEquals(Integer.signum(Long.valueOf(values[i]).compareTo(values[j])),
+                        Integer.signum(m.compareTo(other)));
+            }
+        }
+    }
+
+    @Test
+    public void testSortable__double() throws Exception {
+        double[] values = {
+            Double.NEGATIVE_INFINITY, -Double.MAX_VALUE, -3.14, -Double.MIN_VALUE, -0.0, 0.0,
+            Double.MIN_VALUE, 3.14, Double.MAX_VALUE, Double.POSITIVE_INFINITY, Double.NaN
+        };
+        for(int i = 0; i < values.length; i++) {
+            Marshal m = Marshal.fromBytes(Marshal.builder().addSortableDouble(values[i]).build().toBytes());
+            assertEquals(EntryType.SORTABLE_DOUBLE, m.getTypeAt(0));
+            assertEquals(Double.doubleToLongBits(values[i]), Double.doubleToLongBits(m.getDoubleAt(0)));
+
+            for(int j = 0; j < values.length; j++) {
+                Marshal other = Marshal.builder().addSortableDouble(values[j]).build();
+                assertEquals(Integer.signum(Double.compare(values[i], values[j])),
+                        Integer.signum(m.compareTo(other)));
+            }
+        }
+    }
+
+    @Test
+    public void testSortable__prefix() throws Exception {
+        Marshal low = Marshal.builder().addString("scores").addSortableLong(-5L).build();
+        Marshal mid = Marshal.builder().addString("scores").addSortableLong(3L).addString("a").build();
+        Marshal high = Marshal.builder().addString("scores").addSortableLong(7L).build();
+
+        ByteArray start = new ByteArray(low.prefixTerminatedBytes(2));
+        ByteArray stop = new ByteArray(high.prefixTerminatedBytes(2));
+        assertTrue(start.compareTo(mid.toByteArray()) < 0);
+        assertTrue(stop.compareTo(mid.toByteArray()) > 0);
+    }
+
+    @Test
+    public void testSortable__writable() throws Exception {
+        Marshal m = Marshal.builder()
+            .addSortableInteger(-22)
+            .addSortableLong(-123456789012345678L)
+            .addSortableDouble(-3.14)
+            .build();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        m.write(new DataOutputStream(baos));
+        Marshal read = Marshal.read(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+        assertEquals(m, read);
+        assertEquals(-3.14, read.getDoubleAt(2), 0.0);
+    }
+
+    @Test
+    public void testSortable__distinctFromPlain() throws Exception {
+        Marshal plain = Marshal.builder().addLong(1L).build();
+        Marshal sortable = Marshal.builder().addSortableLong(1L).build();
+        assertFalse(plain.equals(sortable));
+        assertEquals(plain.getLongAt(0), sortable.getLongAt(0));
+    }
+
+    @Test
+    public void testVarLong() throws Exception {
+        long[] values = {
+            Long.MIN_VALUE, -0xFEFEFEFEL, -8256L, -8255L, -193L, -192L, -65L, -64L, -1L, 0L, 1L, 63L, 64L, 127L,
+            128L, 0x7EL * 128 + 0x7EL, 8255L, 8256L, 0xFEFEFEFEL, Long.MAX_VALUE - 1, Long.MAX_VALUE
+        };
+        for(int i = 0; i < values.length; i++) {
+            Marshal m = Marshal.builder().addVarLong(values[i]).build();
+            byte[] bytes = m.toBytes();
+
+            // never escaped, so the only separator is the last byte
+            for(int b = 0; b < bytes.length - 1; b++)
+                assertFalse(bytes[b] == Marshal.SEPARATOR);
+            assertEquals(EntryType.VAR_LONG, Marshal.fromBytes(bytes).getTypeAt(0));
+            assertEquals(values[i], Marshal.fromBytes(bytes).getLongAt(0));
+
+            for(int j = 0; j < values.length; j++) {
+                Marshal other = Marshal.builder().addVarLong(values[j]).build();
+                assertEquals(Integer.signum(Long.valueOf(values[i]).compareTo(values[j])),
+                        Integer.signum(m.compareTo(other)));
+
+                Marshal descending = Marshal.builder().addDescendingVarLong(values[i]).build();
+                Marshal otherDescending = Marshal.builder().addDescendingVarLong(values[j]).build();
+                assertEquals(Integer.signum(Long.valueOf(values[j]).compareTo(values[i])),
+                        Integer.signum(descending.compareTo(otherDescending)));
+            }
+        }
+    }
+
+    @Test
+    public void testVarLong__size() throws Exception {
+        // type code, data and separator
+        assertEquals(3, Marshal.builder().addVarLong(-64L).build().toBytes().length);
+        assertEquals(3, Marshal.builder().addVarLong(63L).build().toBytes().length);
+        assertEquals(4, Marshal.builder().addVarLong(127L).build().toBytes().length);
+        assertEquals(5, Marshal.builder().addVarLong(1000L).build().toBytes().length);
+        assertEquals(12, Marshal.builder().addVarLong(Long.MIN_VALUE).build().toBytes().length);
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testVarLong__invalid() throws Exception {
+        // two groups announced, one present
+        byte[] bytes = { 0x0A, (byte)0xC2, 0x01, (byte)0xFE };
+        Marshal.fromBytes(bytes).getLongAt(0);
+    }
+
+    @Test
+    public void testShort() throws Exception {
+        short[] values = { Short.MIN_VALUE, -256, -255, -2, -1, 0, 1, 254, 255, Short.MAX_VALUE };
+        for(int i = 0; i < values.length; i++) {
+            Marshal m = Marshal.fromBytes(Marshal.builder().addShort(values[i]).build().toBytes());
+            assertEquals(EntryType.SHORT, m.getTypeAt(0));
+            assertEquals(values[i], m.getShortAt(0));
+
+            for(int j = 0; j < values.length; j++) {
+                Marshal other = Marshal.builder().addShort(values[j]).build();
+                assertEquals(Integer.signum(values[i] - values[j]), Integer.signum(m.compareTo(other)));
+            }
+        }
+    }
+
+    @Test
+    public void testFloat() throws Exception {
+        float[] values = {
+            Float.NEGATIVE_INFINITY, -Float.MAX_VALUE, -3.14f, -Float.MIN_VALUE, -0.0f, 0.0f,
+            Float.MIN_VALUE, 3.14f, Float.MAX_VALUE, Float.POSITIVE_INFINITY, Float.NaN
+        };
+        for(int i = 0; i < values.length; i++) {
+            Marshal m = Marshal.fromBytes(Marshal.builder().addFloat(values[i]).build().toBytes());
+            assertEquals(EntryType.FLOAT, m.getTypeAt(0));
+            assertEquals(Float.floatToIntBits(values[i]), Float.floatToIntBits(m.getFloatAt(0)));
+
+            for(int j = 0; j < values.length; j++) {
+                Marshal other = Marshal.builder().addFloat(values[j]).build();
+                assertEquals(Integer.signum(Float.compare(values[i], values[j])), Integer.signum(m.compareTo(other)));
+            }
+        }
+    }
+
+    @Test
+    public void testBoolean() throws Exception {
+        Marshal f = Marshal.builder().addBoolean(false).build();
+        Marshal t = Marshal.builder().addBoolean(true).build();
+        assertFalse(Marshal.fromBytes(f.toBytes()).getBooleanAt(0));
+        assertTrue(Marshal.fromBytes(t.toBytes()).getBooleanAt(0));
+        assertTrue(f.compareTo(t) < 0);
+        assertEquals(3, t.toBytes().length);
+
+        Marshal df = Marshal.builder().addDescendingBoolean(false).build();
+        Marshal dt = Marshal.builder().addDescendingBoolean(true).build();
+        assertTrue(dt.compareTo(df) < 0);
+        assertTrue(Marshal.fromBytes(dt.toBytes()).getBooleanAt(0));
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testBoolean__invalid() throws Exception {
+        byte[] bytes = { 0x0B, 0x02, (byte)0xFE };
+        Marshal.fromBytes(bytes).getBooleanAt(0);
+    }
+
+    @Test
+    public void testUuid() throws Exception {
+        String[] values = {
+            "00000000-0000-0000-0000-000000000000", "00000000-0000-0000-8000-000000000000",
+            "0fe00000-0000-0000-0000-0000000000fe", "7fffffff-ffff-ffff-ffff-ffffffffffff",
+            "80000000-0000-0000-0000-000000000000", "fefefefe-fefe-fefe-fefe-fefefefefefe",
+            "ffffffff-ffff-ffff-ffff-ffffffffffff"
+        };
+        for(int i = 0; i < values.length; i++) {
+            UUID uuid = UUID.fromString(values[i]);
+            Marshal m = Marshal.fromBytes(Marshal.builder().addUuid(uuid).build().toBytes());
+            assertEquals(EntryType.UUID, m.getTypeAt(0));
+            assertEquals(uuid, m.getUuidAt(0));
+
+            // sorts as the string form
+            for(int j = 0; j < values.length; j++) {
+                Marshal other = Marshal.builder().addUuid(UUID.fromString(values[j])).build();
+                assertEquals(Integer.signum(values[i].compareTo(values[j])), Integer.signum(m.compareTo(other)));
+            }
+        }
+    }
+
+    @Test
+    public void testTimestamp() throws Exception {
+        long now = TimeUnit.MILLISECONDS.toMicros(1500000000000L);
+        Marshal before = Marshal.builder().addTimestamp(-now).build();
+        Marshal epoch = Marshal.builder().addTimestamp(0L).build();
+        Marshal after = Marshal.builder().addTimestamp(now).build();
+
+        assertEquals(now, Marshal.fromBytes(after.toBytes()).getTimestampAt(0));
+        assertEquals(-now, Marshal.fromBytes(before.toBytes()).getTimestampAt(0));
+        assertTrue(before.compareTo(epoch) < 0);
+        assertTrue(epoch.compareTo(after) < 0);
+
+        Marshal newer = Marshal.builder().addDescendingTimestamp(now + 1).build();
+        Marshal older = Marshal.builder().addDescendingTimestamp(now).build();
+        assertTrue(newer.compareTo(older) < 0);
+        assertEquals(now + 1, Marshal.fromBytes(newer.toBytes()).getTimestampAt(0));
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testTimestamp__notTimestamp() throws Exception {
+        Marshal.builder().addLong(1L).build().getTimestampAt(0);
+    }
+
+    @Test
+    public void testNewTypes__writable() throws Exception {
+        Marshal m = Marshal.builder()
+            .addBoolean(true)
+            .addShort((short)-2)
+            .addFloat(-3.14f)
+            .addUuid(UUID.fromString("fefefefe-fefe-fefe-fefe-fefefefefefe"))
+            .addTimestamp(1500000000000000L)
+            .addDescendingUuid(new UUID(1L, -1L))
+            .addDescendingShort((short)7)
+            .build();
+
+        assertEquals(m, Marshal.fromBytes(m.toBytes()));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        m.write(new DataOutputStream(baos));
+        // count, and type code and data of each entry
+        assertEquals(4 + 2 + 3 + 5 + 17 + 9 + 17 + 3, baos.size());
+        assertEquals(m, Marshal.read(new DataInputStream(new ByteArrayInputStream(baos.toByteArray()))));
+    }
+
+    @Test
+    public void testBigDecimal__order() throws Exception {
+        String[] values = {
+            "-1E+100", "-12345.678", "-101", "-100", "-99.5", "-1.000001", "-1", "-0.5", "-0.0101",
+            "-0.01", "-1E-200", "0", "1E-200", "0.001", "0.01", "0.0101", "0.5", "1", "1.000001",
+            "9.99", "10", "99", "100", "101", "12345.678", "1E+100"
+        };
+        Marshal previous = null;
+        for(String value : values) {
+            BigDecimal d = new BigDecimal(value);
+            Marshal m = Marshal.builder().addBigDecimal(d).build();
+            assertEquals(0, d.compareTo(Marshal.fromBytes(m.toBytes()).getBigDecimalAt(0)));
+            if(previous != null)
+                assertTrue(value, previous.compareTo(m) < 0);
+            previous = m;
+        }
+    }
+
+    @Test
+    public void testBigDecimal__scale() throws Exception {
+        Marshal m1 = Marshal.builder().addBigDecimal(new BigDecimal("1.50")).build();
+        Marshal m2 = Marshal.builder().addBigDecimal(new BigDecimal("1.5")).build();
+        Marshal zero = Marshal.builder().addBigDecimal(new BigDecimal("0.000")).build();
+
+        assertArrayEquals(m1.toBytes(), m2.toBytes());
+        assertEquals(m1, m2);
+        assertEquals(new BigDecimal("1.5"), Marshal.fromBytes(m1.toBytes()).getBigDecimalAt(0));
+        assertEquals(BigDecimal.ZERO, zero.getBigDecimalAt(0));
+        assertArrayEquals(new byte[] { 0x11, (byte)0x80, (byte)0xFE }, zero.toBytes());
+    }
+
+    @Test
+    public void testBigInteger() throws Exception {
+        BigInteger big = BigInteger.ONE.shiftLeft(200);
+        BigInteger[] values = {
+            big.negate(), BigInteger.valueOf(Long.MIN_VALUE), BigInteger.valueOf(-1000), BigInteger.ZERO,
+            BigInteger.ONE, BigInteger.TEN, BigInteger.valueOf(Long.MAX_VALUE), big
+        };
+        Marshal previous = null;
+        for(BigInteger value : values) {
+            Marshal m = Marshal.builder().addBigInteger(value).addString("a").build();
+            Marshal read = Marshal.fromBytes(m.toBytes());
+            assertEquals(value, read.getBigIntegerAt(0));
+            assertEquals(m, read);
+            if(previous != null)
+                assertTrue(previous.compareTo(m) < 0);
+            previous = m;
+        }
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testBigInteger__fraction() throws Exception {
+        byte[] bytes = Marshal.builder().addBigDecimal(new BigDecimal("0.5")).build().toBytes();
+        bytes[0] = EntryType.BIG_INTEGER.getTypeCode();
+        Marshal.fromBytes(bytes).getBigIntegerAt(0);
+    }
+
+    @Test
+    public void testBigDecimal__invalid() throws Exception {
+        byte[][] invalid = {
+            { (byte)0x80, 0x00 }, { 0x05 }, { (byte)0x81, (byte)0x80 }, { (byte)0x81, (byte)0x80, 0x03 },
+            { (byte)0x81, (byte)0x80, 0x00 }, { (byte)0x81, (byte)0x80, 0x01, 0x02 }, { (byte)0x81, (byte)0x80, (byte)0xC8 }
+        };
+        for(byte[] data : invalid) {
+            try {
+                EntryType.BIG_DECIMAL.getType().demarshal(new ByteArray(data));
+                fail(Arrays.toString(data));
+            }
+            catch(MarshalException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testBigDecimal__descending() throws Exception {
+        Marshal larger = Marshal.builder().addDescendingBigDecimal(new BigDecimal("100.25")).build();
+        Marshal smaller = Marshal.builder().addDescendingBigDecimal(new BigDecimal("-3")).build();
+        Marshal large = Marshal.builder().addDescendingBigInteger(BigInteger.TEN.pow(40)).build();
+
+        assertTrue(larger.compareTo(smaller) < 0);
+        assertEquals(new BigDecimal("100.25"), Marshal.fromBytes(larger.toBytes()).getBigDecimalAt(0));
+        assertEquals(BigInteger.TEN.pow(40), Marshal.fromBytes(large.toBytes()).getBigIntegerAt(0));
+    }
+
+    @Test
+    public void testBigDecimal__writable() throws Exception {
+        Marshal m = Marshal.builder()
+            .addBigDecimal(new BigDecimal("-12345.678"))
+            .addBigInteger(BigInteger.ONE.shiftLeft(100))
+            .addDescendingBigDecimal(new BigDecimal("1E+30"))
+            .build();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        m.write(new DataOutputStream(baos));
+        Marshal read = Marshal.read(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+        assertEquals(m, read);
+        assertEquals(new BigDecimal("-12345.678"), read.getBigDecimalAt(0));
+    }
+
+    @Test
+    public void testNull() throws Exception {
+        Marshal m = Marshal.builder().addString("a").addNull().addLong(1L).build();
+        byte[] bytes = m.toBytes();
+
+        // the null entry is a type code and a separator
+        assertEquals(3 + 2 + 10, bytes.length);
+        Marshal read = Marshal.fromBytes(bytes);
+        assertEquals(m, read);
+        assertEquals(m.hashCode(), read.hashCode());
+        assertEquals(EntryType.NULL, read.getTypeAt(1));
+        assertTrue(read.isNullAt(1));
+        assertFalse(read.isNullAt(0));
+        assertNull(read.getAt(1));
+        assertEquals(1L, read.getLongAt(2));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        m.write(new DataOutputStream(baos));
+        ByteArrayOutputStream withoutNull = new ByteArrayOutputStream();
+        Marshal.builder().addString("a").addLong(1L).build().write(new DataOutputStream(withoutNull));
+        // the null entry is only a type code
+        assertEquals(withoutNull.size() + 1, baos.size());
+        assertEquals(m, Marshal.read(new DataInputStream(new ByteArrayInputStream(baos.toByteArray()))));
+    }
+
+    @Test
+    public void testNull__only() throws Exception {
+        Marshal m = Marshal.builder().addNull().build();
+        assertArrayEquals(new byte[] { (byte)0xFC, (byte)0xFE }, m.toBytes());
+        assertTrue(Marshal.fromBytes(m.toBytes()).isNullAt(0));
+    }
+
+    @Test
+    public void testNull__sortsLast() {
+        Marshal n = Marshal.builder().addString("key").addNull().build();
+        Marshal[] others = {
+            Marshal.builder().addString("key").addSortableLong(Long.MAX_VALUE).build(),
+            Marshal.builder().addString("key").addByteArray(new ByteArray(new byte[] { (byte)0xFF })).build(),
+            Marshal.builder().addString("key").addDescendingSortableLong(Long.MIN_VALUE).build(),
+            Marshal.builder().addString("key").addDescendingString("").build()
+        };
+        for(Marshal other : others)
+            assertTrue(other.compareTo(n) < 0);
+    }
+
+    @Test
+    public void testNullFirst() throws Exception {
+        Marshal n = Marshal.builder().addString("key").addNullFirst().build();
+        Marshal read = Marshal.fromBytes(n.toBytes());
+        assertEquals(n, read);
+        assertEquals(EntryType.NULL_FIRST, read.getTypeAt(1));
+        assertTrue(read.isNullAt(1));
+        assertNull(read.getAt(1));
+        assertFalse(n.equals(Marshal.builder().addString("key").addNull().build()));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        n.write(new DataOutputStream(baos));
+        assertEquals(n, Marshal.read(new DataInputStream(new ByteArrayInputStream(baos.toByteArray()))));
+
+        // first among descending values, last among ascending ones
+        Marshal[] descending = {
+            Marshal.builder().addString("key").addDescendingSortableLong(Long.MAX_VALUE).build(),
+            Marshal.builder().addString("key").addDescendingByteArray(new ByteArray(new byte[] { (byte)0xFF })).build(),
+            Marshal.builder().addString("key").addNull().build()
+        };
+        for(Marshal other : descending)
+            assertTrue(n.compareTo(other) < 0);
+        assertTrue(Marshal.builder().addString("key").addBigDecimal(BigDecimal.TEN).build().compareTo(n) < 0);
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testNull__typedGetter() throws Exception {
+        Marshal.builder().addNull().build().getLongAt(0);
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testNull__data() throws Exception {
+        byte[] bytes = { (byte)0xFC, 0x01, (byte)0xFE };
+        Marshal.fromBytes(bytes).getAt(0);
+    }
+
+    @Test
+    public void testDescending__sortableLong() throws Exception {
+        long[] values = { Long.MIN_VALUE, -0xFEFEFEFEL, -1L, 0L, 1L, 0xFEL, 0xFEFEFEFEL, Long.MAX_VALUE };
+        for(int i = 0; i < values.length; i++) {
+            Marshal m = Marshal.fromBytes(Marshal.builder().addDescendingSortableLong(values[i]).build().toBytes());
+            assertEquals(EntryType.DESCENDING_SORTABLE_LONG, m.getTypeAt(0));
+            assertEquals(values[i], m.getLongAt(0));
+
+            for(int j = 0; j < values.length; j++) {
+                Marshal other = Marshal.builder().addDescendingSortableLong(values[j]).build();
+                assertEquals(Integer.signum(Long.valueOf(values[j]).compareTo(values[i])),
+                        Integer.signum(m.compareTo(other)));
+            }
+        }
+    }
+
+    @Test
+    public void testDescending__string() throws Exception {
+        String[] values = { "", "a", "ab", "abc", "b", "\u0000a", "\u0001", "\u00fe", "\u00ff", "a\u00fe" };
+        for(int i = 0; i < values.length; i++) {
+            Marshal ascending = Marshal.builder().addString(values[i]).build();
+            Marshal descending = Marshal.builder().addDescendingString(values[i]).build();
+            assertEquals(values[i], Marshal.fromBytes(descending.toBytes()).getStringAt(0));
+
+            // the descending entries sort in the reverse order of the ascending entries
+            for(int j = 0; j < values.length; j++) {
+                Marshal otherAscending = Marshal.builder().addString(values[j]).build();
+                Marshal otherDescending = Marshal.builder().addDescendingString(values[j]).build();
+                assertEquals(Integer.signum(otherAscending.compareTo(ascending)),
+                        Integer.signum(descending.compareTo(otherDescending)));
+            }
+        }
+    }
+
+    @Test
+    public void testDescending__byteArray() throws Exception {
+        byte[][] values = {
+            { 0x00 }, { 0x00, 0x00 }, { 0x01 }, { 0x01, 0x02 }, { 0x02 }, { 0x7F, (byte)0xFE },
+            { (byte)0xFD }, { (byte)0xFE }, { (byte)0xFE, 0x00 }, { (byte)0xFF }, { (byte)0xFF, (byte)0xFF }
+        };
+        for(int i = 0; i < values.length; i++) {
+            Marshal ascending = Marshal.builder().addByteArray(new ByteArray(values[i])).build();
+            Marshal descending = Marshal.builder().addDescendingByteArray(new ByteArray(values[i])).build();
+            assertEquals(new ByteArray(values[i]), Marshal.fromBytes(descending.toBytes()).getByteArrayAt(0));
+
+            for(int j = 0; j < values.length; j++) {
+                Marshal otherAscending = Marshal.builder().addByteArray(new ByteArray(values[j])).build();
+                Marshal otherDescending = Marshal.builder().addDescendingByteArray(new ByteArray(values[j])).build();
+                assertEquals(Integer.signum(otherAscending.compareTo(ascending)),
+                        Integer.signum(descending.compareTo(otherDescending)));
+            }
+        }
+    }
+
+    @Test
+    public void testDescending__fieldOnly() throws Exception {
+        Marshal m1 = Marshal.builder().addString("user").addDescendingLong(5L).addString("a").build();
+        Marshal m2 = Marshal.builder().addString("user").addDescendingLong(3L).addString("b").build();
+        Marshal m3 = Marshal.builder().addString("user").addDescendingLong(3L).addString("c").build();
+
+        assertTrue(m1.compareTo(m2) < 0);
+        assertTrue(m2.compareTo(m3) < 0);
+    }
+
+    @Test
+    public void testDescending__allTypes() throws Exception {
+        Marshal m = Marshal.builder()
+            .addDescendingByte((byte)0x01)
+            .addDescendingByteArray(new ByteArray(new byte[] { 0x00, 0x01, (byte)0xFE, (byte)0xFF }))
+            .addDescendingDouble(-3.14)
+            .addDescendingInteger(22)
+            .addDescendingLong(123456789012345678L)
+            .addDescendingString("Hello, world!")
+            .addDescendingMarshal(Marshal.builder().addString("").addDescendingString("").build())
+            .addDescendingSortableInteger(-22)
+            .addDescendingSortableDouble(Double.NEGATIVE_INFINITY)
+            .build();
+
+        assertEquals(m, Marshal.fromBytes(m.toBytes()));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        m.write(new DataOutputStream(baos));
+        Marshal read = Marshal.read(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+        assertEquals(m, read);
+        assertEquals(22, read.getIntegerAt(3));
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testDescending__unterminated() throws Exception {
+        // a descending string entry without the terminator
+        byte[] bytes = { (byte)0x85, (byte)~'a', (byte)0xFE };
+        Marshal.fromBytes(bytes).getStringAt(0);
+    }
+
+    @Test
+    public void testDescending__entryType() {
+        assertTrue(EntryType.DESCENDING_LONG.isDescending());
+        assertFalse(EntryType.LONG.isDescending());
+        assertEquals(EntryType.DESCENDING_LONG, EntryType.LONG.descending());
+        assertEquals(EntryType.DESCENDING_LONG, EntryType.DESCENDING_LONG.descending());
+        assertEquals(EntryType.LONG, EntryType.DESCENDING_LONG.ascending());
+        assertEquals(EntryType.LONG, EntryType.LONG.ascending());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDescending__legacyEmpty() {
+        EntryType.LEGACY_EMPTY.descending();
+    }
+
     /**
      * Although we do not require (or specify) a stable hash code for serialization, we require a stable hash code
      * across JVM instances. This is used in MapReduce, among other uses. If the components of the hash code change,
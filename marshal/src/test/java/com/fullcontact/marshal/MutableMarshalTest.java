@@ -0,0 +1,230 @@
+package com.fullcontact.marshal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MutableMarshal.
+ */
+@RunWith(JUnit4.class)
+public class MutableMarshalTest {
+    private static final Marshal MARSHAL = Marshal.builder()
+        .addByte((byte)0x80)
+        .addByteArray(new ByteArray(new byte[] { 0, 1, (byte)0xFE }))
+        .addDouble(-3.14)
+        .addInteger(22)
+        .addLong(123456789012345678L)
+        .addString(" Thë quíck bröwn fox jùmps over the lazy dog! ☃")
+        .addMarshal(Marshal.builder().addString("").addMarshal(Marshal.EMPTY).build())
+        .build();
+
+    private static byte[] write(Marshal m) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        m.write(new DataOutputStream(baos));
+        return baos.toByteArray();
+    }
+
+    private static void read(MutableMarshal mutable, Marshal m) throws IOException {
+        mutable.read(new DataInputStream(new ByteArrayInputStream(write(m))));
+    }
+
+    @Test
+    public void testReadFreeze() throws IOException {
+        MutableMarshal mutable = new MutableMarshal();
+        read(mutable, MARSHAL);
+
+        assertEquals(MARSHAL.size(), mutable.size());
+        for(int i = 0; i < MARSHAL.size(); i++) {
+            assertEquals(MARSHAL.getTypeAt(i), mutable.getTypeAt(i));
+            assertEquals(MARSHAL.getAt(i), mutable.getAt(i));
+        }
+        assertEquals(MARSHAL, mutable.freeze());
+    }
+
+    @Test
+    public void testTypedAccessors() throws IOException {
+        MutableMarshal mutable = new MutableMarshal();
+        read(mutable, MARSHAL);
+
+        assertEquals((byte)0x80, mutable.getByteAt(0));
+        assertEquals(MARSHAL.getByteArrayAt(1), mutable.getByteArrayAt(1));
+        assertEquals(-3.14, mutable.getDoubleAt(2), 0.0);
+        assertEquals(22, mutable.getIntegerAt(3));
+        assertEquals(123456789012345678L, mutable.getLongAt(4));
+        assertEquals(MARSHAL.getStringAt(5), mutable.getStringAt(5));
+        assertEquals("", mutable.getMutableMarshalAt(6).getStringAt(0));
+        assertEquals(MARSHAL.getMarshalAt(6), mutable.getMarshalAt(6));
+    }
+
+    @Test
+    public void testSortable() throws IOException {
+        Marshal m = Marshal.builder()
+            .addSortableInteger(-22)
+            .addSortableLong(-123456789012345678L)
+            .addSortableDouble(-3.14)
+            .addVarLong(-1000L)
+            .build();
+
+        MutableMarshal mutable = new MutableMarshal();
+        read(mutable, m);
+
+        assertEquals(EntryType.SORTABLE_INTEGER, mutable.getTypeAt(0));
+        assertEquals(-22, mutable.getIntegerAt(0));
+        assertEquals(-123456789012345678L, mutable.getLongAt(1));
+        assertEquals(-3.14, mutable.getDoubleAt(2), 0.0);
+        assertEquals(-1000L, mutable.getLongAt(3));
+        assertEquals(m, mutable.freeze());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        mutable.write(new DataOutputStream(baos));
+        assertArrayEquals(write(m), baos.toByteArray());
+    }
+
+    @Test
+    public void testNewTypes() throws IOException {
+        UUID uuid = UUID.fromString("fefefefe-fefe-fefe-fefe-fefefefefefe");
+        Marshal m = Marshal.builder()
+            .addBoolean(true)
+            .addShort((short)-2)
+            .addFloat(-3.14f)
+            .addUuid(uuid)
+            .addDescendingTimestamp(1500000000000000L)
+            .build();
+
+        MutableMarshal mutable = new MutableMarshal();
+        read(mutable, m);
+
+        assertTrue(mutable.getBooleanAt(0));
+        assertEquals((short)-2, mutable.getShortAt(1));
+        assertEquals(-3.14f, mutable.getFloatAt(2), 0.0f);
+        assertEquals(uuid, mutable.getUuidAt(3));
+        assertEquals(1500000000000000L, mutable.getTimestampAt(4));
+        assertEquals(m, mutable.freeze());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        mutable.write(new DataOutputStream(baos));
+        assertArrayEquals(write(m), baos.toByteArray());
+    }
+
+    @Test
+    public void testBigNumbers() throws IOException {
+        Marshal m = Marshal.builder()
+            .addBigInteger(BigInteger.ONE.shiftLeft(100))
+            .addDescendingBigDecimal(new BigDecimal("-0.25"))
+            .build();
+
+        MutableMarshal mutable = new MutableMarshal();
+        read(mutable, m);
+
+        assertEquals(BigInteger.ONE.shiftLeft(100), mutable.getBigIntegerAt(0));
+        assertEquals(new BigDecimal("-0.25"), mutable.getBigDecimalAt(1));
+        assertEquals(m, mutable.freeze());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        mutable.write(new DataOutputStream(baos));
+        assertArrayEquals(write(m), baos.toByteArray());
+    }
+
+    @Test
+    public void testNull() throws IOException {
+        Marshal m = Marshal.builder().addNull().addLong(1L).addNullFirst().build();
+
+        MutableMarshal mutable = new MutableMarshal();
+        read(mutable, m);
+
+        assertTrue(mutable.isNullAt(0));
+        assertFalse(mutable.isNullAt(1));
+        assertTrue(mutable.isNullAt(2));
+        assertNull(mutable.getAt(0));
+        assertNull(mutable.getAt(2));
+        assertEquals(m, mutable.freeze());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        mutable.write(new DataOutputStream(baos));
+        assertArrayEquals(write(m), baos.toByteArray());
+    }
+
+    @Test
+    public void testDescending() throws IOException {
+        Marshal m = Marshal.builder()
+            .addDescendingLong(-123456789012345678L)
+            .addDescendingString("abc")
+            .addDescendingByteArray(new ByteArray(new byte[] { 0, 1 }))
+            .build();
+
+        MutableMarshal mutable = new MutableMarshal();
+        read(mutable, m);
+
+        assertEquals(EntryType.DESCENDING_LONG, mutable.getTypeAt(0));
+        assertEquals(-123456789012345678L, mutable.getLongAt(0));
+        assertEquals("abc", mutable.getStringAt(1));
+        assertEquals(new ByteArray(new byte[] { 0, 1 }), mutable.getByteArrayAt(2));
+        assertEquals(m, mutable.freeze());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        mutable.write(new DataOutputStream(baos));
+        assertArrayEquals(write(m), baos.toByteArray());
+    }
+
+    @Test(expected=MarshalException.class)
+    public void testTypedAccessors__invalidType() throws IOException {
+        MutableMarshal mutable = new MutableMarshal();
+        read(mutable, MARSHAL);
+        mutable.getLongAt(3);
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testTypedAccessors__invalidPosition() throws IOException {
+        MutableMarshal mutable = new MutableMarshal();
+        read(mutable, Marshal.builder().addLong(1L).build());
+        mutable.getTypeAt(1);
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        MutableMarshal mutable = new MutableMarshal();
+        read(mutable, MARSHAL);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        mutable.write(new DataOutputStream(baos));
+        assertArrayEquals(write(MARSHAL), baos.toByteArray());
+    }
+
+    @Test
+    public void testReuse() throws IOException {
+        Marshal other = Marshal.builder()
+            .addString("a much longer string than before, to grow the buffer")
+            .addLong(1L)
+            .build();
+        Marshal large = Marshal.builder().appendMarshal(MARSHAL).appendMarshal(MARSHAL).build();
+
+        MutableMarshal mutable = new MutableMarshal();
+        read(mutable, MARSHAL);
+        Marshal frozen = mutable.freeze();
+
+        read(mutable, other);
+        assertEquals(other, mutable.freeze());
+
+        read(mutable, large);
+        assertEquals(large, mutable.freeze());
+
+        read(mutable, Marshal.EMPTY);
+        assertTrue(mutable.isEmpty());
+        assertSame(Marshal.EMPTY, mutable.freeze());
+
+        // frozen values do not share storage with the mutable marshal
+        assertEquals(MARSHAL, frozen);
+    }
+}
@@ -0,0 +1,124 @@
+package com.fullcontact.marshal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for PrefixGroupingIterator and LexicographicFormat.
+ */
+@RunWith(JUnit4.class)
+public class PrefixGroupingIteratorTest {
+    private static List<ByteArray> rows(Marshal... marshals) {
+        List<ByteArray> rows = new ArrayList<ByteArray>();
+        for(Marshal marshal : marshals)
+            rows.add(marshal.toByteArray());
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private static List<Integer> groupSizes(PrefixGroupingIterator groups) {
+        List<Integer> sizes = new ArrayList<Integer>();
+        while(groups.hasNext()) {
+            int size = 0;
+            for(ByteArray row : groups.next())
+                size++;
+            sizes.add(size);
+        }
+        return sizes;
+    }
+
+    @Test
+    public void testPrefixEnd() throws MarshalException {
+        // separator bytes in the data are escaped, and nested marshals are escaped again
+        Marshal marshal = Marshal.builder()
+            .addByteArray(new ByteArray(new byte[] { (byte)0xFE, 1, (byte)0xFE }))
+            .addMarshal(Marshal.builder().addByte((byte)0xFE).addString("x").build())
+            .addLong(7L)
+            .build();
+        byte[] bytes = marshal.toBytes();
+
+        for(int n = 0; n <= 3; n++) {
+            assertEquals(marshal.prefixTerminated(n),
+                    LexicographicFormat.prefix(new ByteArray(bytes), n));
+        }
+        assertEquals(bytes.length, LexicographicFormat.prefixEnd(bytes, 0, bytes.length, 5));
+
+        byte[] empty = Marshal.EMPTY.toBytes();
+        assertEquals(0, LexicographicFormat.prefixEnd(empty, 0, empty.length, 0));
+        assertEquals(empty.length, LexicographicFormat.prefixEnd(empty, 0, empty.length, 1));
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testPrefixEnd__unterminated() throws MarshalException {
+        byte[] bytes = Marshal.builder().addString("abc").build().toBytes();
+        LexicographicFormat.prefixEnd(bytes, 0, bytes.length - 1, 1);
+    }
+
+    @Test
+    public void testGroups() {
+        List<ByteArray> rows = rows(
+            Marshal.builder().addString("a").addInteger(1).addLong(1L).build(),
+            Marshal.builder().addString("a").addInteger(1).addLong(2L).build(),
+            Marshal.builder().addString("a").addInteger(2).addLong(1L).build(),
+            Marshal.builder().addString("b").addInteger(1).addLong(1L).build(),
+            Marshal.builder().addString("b").addInteger(1).addLong(2L).build(),
+            Marshal.builder().addString("b").addInteger(1).addLong(3L).build());
+
+        PrefixGroupingIterator groups = new PrefixGroupingIterator(rows.iterator(), 2);
+
+        PrefixGroupingIterator.Group group = groups.next();
+        assertEquals(Marshal.builder().addString("a").addInteger(1).build().toByteArray(), group.getPrefix());
+        // the prefix is a view of the first row
+        assertSame(rows.get(0).backingArray(), group.getPrefix().backingArray());
+
+        Iterator<ByteArray> iterator = group.iterator();
+        assertSame(rows.get(0), iterator.next());
+        assertSame(rows.get(1), iterator.next());
+        assertFalse(iterator.hasNext());
+
+        assertEquals(Arrays.asList(1, 3), groupSizes(groups));
+    }
+
+    @Test
+    public void testSkipRows() {
+        List<ByteArray> rows = rows(
+            Marshal.builder().addString("a").addLong(1L).build(),
+            Marshal.builder().addString("a").addLong(2L).build(),
+            Marshal.builder().addString("b").addLong(1L).build());
+
+        PrefixGroupingIterator groups = new PrefixGroupingIterator(rows.iterator(), 1);
+        groups.next();
+
+        PrefixGroupingIterator.Group group = groups.next();
+        assertEquals(Marshal.builder().addString("b").build().toByteArray(), group.getPrefix());
+        assertFalse(groups.hasNext());
+    }
+
+    @Test
+    public void testShortRows() {
+        // a row with fewer entries than the prefix forms its own group
+        List<ByteArray> rows = rows(
+            Marshal.builder().addString("a").build(),
+            Marshal.builder().addString("a").addLong(1L).build(),
+            Marshal.builder().addString("a").addLong(1L).addLong(2L).build(),
+            Marshal.builder().addString("a").addLong(1L).addLong(3L).build());
+
+        assertEquals(Arrays.asList(4), groupSizes(new PrefixGroupingIterator(rows.iterator(), 1)));
+        assertEquals(Arrays.asList(1, 3), groupSizes(new PrefixGroupingIterator(rows.iterator(), 2)));
+        assertEquals(Arrays.asList(4), groupSizes(new PrefixGroupingIterator(rows.iterator(), 0)));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertFalse(new PrefixGroupingIterator(new ArrayList<ByteArray>().iterator(), 1).hasNext());
+    }
+}
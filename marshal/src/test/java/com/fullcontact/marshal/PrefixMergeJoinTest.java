@@ -0,0 +1,89 @@
+package com.fullcontact.marshal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for PrefixMergeJoin.
+ */
+@RunWith(JUnit4.class)
+public class PrefixMergeJoinTest {
+    private static ByteArray row(String key, long value) {
+        return Marshal.builder().addString(key).addLong(value).build().toByteArray();
+    }
+
+    private static List<ByteArray> sorted(ByteArray... rows) {
+        List<ByteArray> list = new ArrayList<ByteArray>(Arrays.asList(rows));
+        Collections.sort(list);
+        return list;
+    }
+
+    // left: a x2, b, d; right: a x2, c, d
+    private static final List<ByteArray> LEFT = sorted(row("a", 1), row("a", 2), row("b", 1), row("d", 1));
+    private static final List<ByteArray> RIGHT = sorted(row("a", 10), row("a", 20), row("c", 10), row("d", 10));
+
+    private static List<String> join(PrefixMergeJoin.JoinType type) throws MarshalException {
+        List<String> results = new ArrayList<String>();
+        PrefixMergeJoin join = new PrefixMergeJoin(LEFT.iterator(), RIGHT.iterator(), 1, type);
+        while(join.hasNext()) {
+            PrefixMergeJoin.Row row = join.next();
+            String left = row.getLeft() == null ? "-" : describe(row.getLeft());
+            String right = row.getRight() == null ? "-" : describe(row.getRight());
+            results.add(left + "/" + right);
+        }
+        return results;
+    }
+
+    private static String describe(ByteArray row) throws MarshalException {
+        Marshal marshal = Marshal.fromBytes(row);
+        return marshal.getStringAt(0) + marshal.getLongAt(1);
+    }
+
+    @Test
+    public void testInner() throws MarshalException {
+        assertEquals(Arrays.asList("a1/a10", "a1/a20", "a2/a10", "a2/a20", "d1/d10"),
+                join(PrefixMergeJoin.JoinType.INNER));
+    }
+
+    @Test
+    public void testLeft() throws MarshalException {
+        assertEquals(Arrays.asList("a1/a10", "a1/a20", "a2/a10", "a2/a20", "b1/-", "d1/d10"),
+                join(PrefixMergeJoin.JoinType.LEFT));
+    }
+
+    @Test
+    public void testFullOuter() throws MarshalException {
+        assertEquals(Arrays.asList("a1/a10", "a1/a20", "a2/a10", "a2/a20", "b1/-", "-/c10", "d1/d10"),
+                join(PrefixMergeJoin.JoinType.FULL_OUTER));
+    }
+
+    @Test
+    public void testPrefix() {
+        PrefixMergeJoin join = new PrefixMergeJoin(LEFT.iterator(), RIGHT.iterator(), 1,
+                PrefixMergeJoin.JoinType.INNER);
+        assertEquals(Marshal.builder().addString("a").build().toByteArray(), join.next().getPrefix());
+    }
+
+    @Test
+    public void testEmptySide() throws MarshalException {
+        PrefixMergeJoin join = new PrefixMergeJoin(LEFT.iterator(), new ArrayList<ByteArray>().iterator(), 1,
+                PrefixMergeJoin.JoinType.FULL_OUTER);
+        int count = 0;
+        while(join.hasNext()) {
+            assertNull(join.next().getRight());
+            count++;
+        }
+        assertEquals(4, count);
+
+        assertFalse(new PrefixMergeJoin(LEFT.iterator(), new ArrayList<ByteArray>().iterator(), 1,
+                    PrefixMergeJoin.JoinType.INNER).hasNext());
+    }
+}
@@ -0,0 +1,114 @@
+package com.fullcontact.marshal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for RadixSort.
+ */
+@RunWith(JUnit4.class)
+public class RadixSortTest {
+    private static List<ByteArray> randomKeys(int count, byte[] prefix) {
+        Random random = new Random(11);
+        List<ByteArray> keys = new ArrayList<ByteArray>();
+        for(int i = 0; i < count; i++) {
+            // few distinct bytes and short lengths, to exercise records that are prefixes of others
+            byte[] bytes = new byte[prefix.length + random.nextInt(8)];
+            System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+            for(int j = prefix.length; j < bytes.length; j++)
+                bytes[j] = (byte)(random.nextInt(3) * 0x7F);
+            keys.add(new ByteArray(bytes));
+        }
+        return keys;
+    }
+
+    private static byte[] arena(List<ByteArray> keys, long[] records) {
+        ByteArrayOutputStream arena = new ByteArrayOutputStream();
+        for(int i = 0; i < keys.size(); i++) {
+            records[i] = RadixSort.record(arena.size(), keys.get(i).size());
+            arena.write(keys.get(i).backingArray(), keys.get(i).beginIndex(), keys.get(i).size());
+        }
+        return arena.toByteArray();
+    }
+
+    private static List<ByteArray> sorted(byte[] arena, long[] records) {
+        List<ByteArray> sorted = new ArrayList<ByteArray>();
+        for(long record : records) {
+            int offset = RadixSort.offset(record);
+            sorted.add(new ByteArray(arena, offset, offset + RadixSort.length(record)));
+        }
+        return sorted;
+    }
+
+    @Test
+    public void testSort() {
+        for(int count : new int[] { 0, 1, 10, 1000, 10000 }) {
+            List<ByteArray> keys = randomKeys(count, new byte[0]);
+            long[] records = new long[keys.size()];
+            byte[] arena = arena(keys, records);
+
+            RadixSort.sort(arena, records);
+
+            Collections.sort(keys);
+            assertEquals(keys, sorted(arena, records));
+        }
+    }
+
+    @Test
+    public void testSortRange() {
+        List<ByteArray> keys = randomKeys(1000, new byte[0]);
+        long[] records = new long[keys.size()];
+        byte[] arena = arena(keys, records);
+
+        RadixSort.sort(arena, records, 100, 900);
+
+        List<ByteArray> expected = new ArrayList<ByteArray>(keys);
+        Collections.sort(expected.subList(100, 900));
+        assertEquals(expected, sorted(arena, records));
+    }
+
+    @Test
+    public void testSortParallel() throws InterruptedException {
+        byte[] prefix = Marshal.builder().addString("com.fullcontact.prefix").build().prefixUnterminatedBytes(1);
+        List<ByteArray> keys = randomKeys(10000, prefix);
+        long[] records = new long[keys.size()];
+        byte[] arena = arena(keys, records);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            RadixSort.sort(arena, records, executor);
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        Collections.sort(keys);
+        assertEquals(keys, sorted(arena, records));
+    }
+
+    @Test
+    public void testUnsigned() {
+        List<ByteArray> keys = new ArrayList<ByteArray>();
+        for(int i = 0; i < 256; i++)
+            keys.add(new ByteArray(new byte[] { (byte)(255 - i), 1 }));
+        long[] records = new long[keys.size()];
+        byte[] arena = arena(keys, records);
+
+        RadixSort.sort(arena, records);
+
+        List<ByteArray> sorted = sorted(arena, records);
+        for(int i = 0; i < 256; i++)
+            assertEquals((byte)i, sorted.get(i).getAt(0));
+    }
+}
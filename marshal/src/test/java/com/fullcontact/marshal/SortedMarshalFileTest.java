@@ -0,0 +1,201 @@
+package com.fullcontact.marshal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for SortedMarshalFile.
+ */
+@RunWith(JUnit4.class)
+public class SortedMarshalFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Marshal key(int group, int item) {
+        return Marshal.builder().addString("group").addInteger(group).addLong(item).build();
+    }
+
+    private File writeKeys(int groups, int items, int blockSize, int restartInterval) throws IOException {
+        File file = this.folder.newFile("keys.msf");
+        SortedMarshalFile.Writer writer = new SortedMarshalFile.Writer(file, blockSize, restartInterval);
+        try {
+            for(int group = 0; group < groups; group++) {
+                for(int item = 0; item < items; item++)
+                    writer.append(key(group, item));
+            }
+        }
+        finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testIterate() throws IOException {
+        File file = this.writeKeys(10, 50, 256, 4);
+
+        SortedMarshalFile.Reader reader = new SortedMarshalFile.Reader(file);
+        try {
+            assertTrue(reader.getBlockCount() > 1);
+
+            List<Marshal> keys = new ArrayList<Marshal>();
+            for(Marshal marshal : reader)
+                keys.add(marshal);
+
+            assertEquals(500, keys.size());
+            for(int group = 0; group < 10; group++) {
+                for(int item = 0; item < 50; item++)
+                    assertEquals(key(group, item), keys.get(group * 50 + item));
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testAppend__reusedBuffer() throws IOException {
+        File file = this.folder.newFile("reused.msf");
+        byte[] buffer = key(0, 0).toBytes();
+        SortedMarshalFile.Writer writer = new SortedMarshalFile.Writer(file, 64, 4);
+        try {
+            for(int item = 0; item < 100; item++) {
+                byte[] bytes = key(0, item).toBytes();
+                assertEquals(buffer.length, bytes.length);
+                System.arraycopy(bytes, 0, buffer, 0, bytes.length);
+                writer.append(new ByteArray(buffer));
+            }
+        }
+        finally {
+            writer.close();
+        }
+
+        SortedMarshalFile.Reader reader = new SortedMarshalFile.Reader(file);
+        try {
+            int item = 0;
+            for(Marshal marshal : reader)
+                assertEquals(key(0, item++), marshal);
+            assertEquals(100, item);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testFrontCoding() throws IOException {
+        File file = this.writeKeys(10, 50, SortedMarshalFile.DEFAULT_BLOCK_SIZE,
+                SortedMarshalFile.DEFAULT_RESTART_INTERVAL);
+
+        long raw = 0;
+        for(int group = 0; group < 10; group++) {
+            for(int item = 0; item < 50; item++)
+                raw += key(group, item).toBytes().length;
+        }
+        assertTrue(file.length() < raw / 2);
+    }
+
+    @Test
+    public void testContains() throws IOException {
+        File file = this.writeKeys(10, 50, 256, 4);
+
+        SortedMarshalFile.Reader reader = new SortedMarshalFile.Reader(file);
+        try {
+            for(int group = 0; group < 10; group++) {
+                for(int item = 0; item < 50; item++)
+                    assertTrue(reader.contains(key(group, item)));
+            }
+            assertFalse(reader.contains(key(3, 50)));
+            assertFalse(reader.contains(key(10, 0)));
+            assertFalse(reader.contains(Marshal.EMPTY));
+            assertFalse(reader.contains(key(3, 5).to(2)));
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testFindFirst() throws IOException {
+        File file = this.writeKeys(10, 50, 256, 4);
+
+        SortedMarshalFile.Reader reader = new SortedMarshalFile.Reader(file);
+        try {
+            for(int group = 0; group < 10; group++)
+                assertEquals(key(group, 0), reader.findFirst(key(group, 0).prefixTerminated(2)));
+            assertEquals(key(0, 0), reader.findFirst(new ByteArray(new byte[0])));
+            assertNull(reader.findFirst(key(10, 0).prefixTerminated(2)));
+            assertNull(reader.findFirst(Marshal.builder().addString("other").build().prefixTerminated(1)));
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testIterateFrom() throws IOException {
+        File file = this.writeKeys(10, 50, 256, 4);
+
+        SortedMarshalFile.Reader reader = new SortedMarshalFile.Reader(file);
+        try {
+            Iterator<Marshal> iterator = reader.iterator(key(4, 49).toByteArray());
+            assertEquals(key(4, 49), iterator.next());
+            assertEquals(key(5, 0), iterator.next());
+
+            int count = 2;
+            while(iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+            assertEquals(5 * 50 + 1, count);
+
+            assertFalse(reader.iterator(key(10, 0).toByteArray()).hasNext());
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        File file = this.writeKeys(0, 0, 256, 4);
+
+        SortedMarshalFile.Reader reader = new SortedMarshalFile.Reader(file);
+        try {
+            assertEquals(0, reader.getBlockCount());
+            assertFalse(reader.iterator().hasNext());
+            assertFalse(reader.contains(key(0, 0)));
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutOfOrder() throws IOException {
+        SortedMarshalFile.Writer writer = new SortedMarshalFile.Writer(this.folder.newFile("keys.msf"));
+        try {
+            writer.append(key(1, 0));
+            writer.append(key(0, 0));
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    @Test(expected = MarshalException.class)
+    public void testInvalidFile() throws IOException {
+        new SortedMarshalFile.Reader(this.folder.newFile("empty.msf"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.fullcontact.marshal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for WritableFormat.
+ */
+@RunWith(JUnit4.class)
+public class WritableFormatTest {
+    private static byte[] write(Marshal m) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        m.write(new DataOutputStream(baos));
+        return baos.toByteArray();
+    }
+
+    private static int compare(Marshal m1, Marshal m2, int n) throws IOException {
+        byte[] b1 = write(m1);
+        byte[] b2 = write(m2);
+        return WritableFormat.compare(b1, 0, b1.length, b2, 0, b2.length, n);
+    }
+
+    private static final Marshal NESTED = Marshal.builder()
+        .addByte((byte)1)
+        .addByteArray(new ByteArray(new byte[] { 0, (byte)0xFE, 3 }))
+        .addDouble(3.14)
+        .addInteger(-4)
+        .addLong(1337L)
+        .addString("Hello, wörld!")
+        .addMarshal(Marshal.builder().addString("inner").addMarshal(Marshal.EMPTY).build())
+        .build();
+
+    @Test
+    public void testSkipMarshal() throws IOException {
+        byte[] bytes = write(NESTED);
+        assertEquals(7, WritableFormat.readSize(bytes, 0, bytes.length));
+        assertEquals(bytes.length, WritableFormat.skipMarshal(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void testSkipMarshal__offset() throws IOException {
+        byte[] marshalBytes = write(NESTED);
+        byte[] bytes = new byte[marshalBytes.length + 6];
+        System.arraycopy(marshalBytes, 0, bytes, 3, marshalBytes.length);
+        assertEquals(3 + marshalBytes.length, WritableFormat.skipMarshal(bytes, 3, bytes.length));
+    }
+
+    @Test(expected=MarshalException.class)
+    public void testSkipMarshal__truncated() throws IOException {
+        byte[] bytes = write(NESTED);
+        WritableFormat.skipMarshal(bytes, 0, bytes.length - 1);
+    }
+
+    @Test
+    public void testCompare__equal() throws IOException {
+        assertEquals(0, compare(NESTED, NESTED, Integer.MAX_VALUE));
+        assertEquals(0, compare(Marshal.EMPTY, Marshal.EMPTY, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testCompare__prefix() throws IOException {
+        Marshal m1 = Marshal.builder().addString("a").addLong(1L).addString("x").build();
+        Marshal m2 = Marshal.builder().addString("a").addLong(1L).addString("yy").build();
+        Marshal m3 = Marshal.builder().addString("a").addLong(2L).build();
+
+        assertEquals(0, compare(m1, m2, 2));
+        assertTrue(compare(m1, m2, 3) != 0);
+        assertEquals(-compare(m1, m2, 3), compare(m2, m1, 3));
+        assertTrue(compare(m1, m3, 2) != 0);
+        assertEquals(0, compare(m1, m3, 1));
+        assertEquals(0, compare(m1, m2, 0));
+    }
+
+    @Test
+    public void testCompare__fewerEntriesFirst() throws IOException {
+        Marshal m1 = Marshal.builder().addString("a").build();
+        Marshal m2 = Marshal.builder().addString("a").addLong(1L).build();
+
+        assertTrue(compare(m1, m2, Integer.MAX_VALUE) < 0);
+        assertTrue(compare(m2, m1, Integer.MAX_VALUE) > 0);
+        assertTrue(compare(Marshal.EMPTY, m1, Integer.MAX_VALUE) < 0);
+        assertEquals(0, compare(m1, m2, 1));
+    }
+
+    @Test
+    public void testCompare__contiguousGroups() throws IOException {
+        // keys sharing the same first entry must not be separated by a key with a different one
+        Marshal a1 = Marshal.builder().addString("a").addInteger(Integer.MAX_VALUE).build();
+        Marshal a2 = Marshal.builder().addString("a").addInteger(1).addString("z").build();
+        Marshal b = Marshal.builder().addString("b").build();
+
+        int aToB = compare(a1, b, Integer.MAX_VALUE);
+        assertEquals(Integer.signum(aToB), Integer.signum(compare(a2, b, Integer.MAX_VALUE)));
+    }
+
+    @Test
+    public void testWritePrefix() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        NESTED.writePrefix(new DataOutputStream(baos), 3);
+
+        assertArrayEquals(write(NESTED.to(3)), baos.toByteArray());
+    }
+}